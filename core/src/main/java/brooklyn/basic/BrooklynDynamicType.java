@@ -83,7 +83,7 @@ public abstract class BrooklynDynamicType<T extends BrooklynObject, AbstractT ex
         // NB: official name is usually injected later, e.g. from AbstractEntity.setManagementContext
         this.name = (clazz.getCanonicalName() == null) ? clazz.getName() : clazz.getCanonicalName();
         
-        buildConfigKeys(clazz, null, configKeys);
+        configKeys.putAll(BrooklynTypeDescriptor.of(clazz).getConfigKeyFields());
         if (LOG.isTraceEnabled())
             LOG.trace("Entity {} config keys: {}", (instance==null ? clazz.getName() : instance.getId()), Joiner.on(", ").join(configKeys.keySet()));
     }
@@ -140,6 +140,7 @@ public abstract class BrooklynDynamicType<T extends BrooklynObject, AbstractT ex
 
     /**
      * Finds the config keys defined on the entity's class, statics and optionally any non-static (discouraged).
+     * For those of a class without an instance, prefer {@link BrooklynTypeDescriptor#of(Class)}, which is cached.
      * Prefers keys which overwrite other keys, and prefers keys which are lower in the hierarchy;
      * logs warnings if there are two conflicting keys which don't have an overwriting relationship.
      */
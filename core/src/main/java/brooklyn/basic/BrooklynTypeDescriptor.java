@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.basic;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+import brooklyn.basic.BrooklynDynamicType.FieldAndValue;
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Effector;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.EntityDynamicType;
+import brooklyn.event.Sensor;
+import brooklyn.management.ha.OsgiManager;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * The config keys, sensors and effectors declared by a brooklyn class (in its static fields and annotated methods, 
+ * and those of its super-types), as found by reflection.
+ * <p>
+ * Descriptors are immutable and shared, one per class, so that each new instance of a class (and its
+ * {@link BrooklynDynamicType}) need only copy them rather than repeat the reflection.
+ * <p>
+ * Classes are held by identity, so same-named classes from different class loaders (e.g. different versions of an OSGi
+ * bundle) have their own descriptors. The cache does not keep a class loader alive, bar softly-held descriptors, and the
+ * descriptors of a loader's classes can be {@link #evict(ClassLoader) evicted} when it is discarded, as {@link OsgiManager}
+ * does for its bundles' loaders when it stops.
+ */
+@Beta
+public class BrooklynTypeDescriptor {
+
+    // values refer to their class (e.g. through fields), so are softly held to let the weakly-held class be collected
+    private static final Cache<Class<?>, BrooklynTypeDescriptor> CACHE = CacheBuilder.newBuilder().weakKeys().softValues().build();
+
+    /** the descriptor of the given class, found when first asked for */
+    public static BrooklynTypeDescriptor of(Class<? extends BrooklynObject> clazz) {
+        BrooklynTypeDescriptor result = CACHE.getIfPresent(clazz);
+        if (result == null) {
+            // not found while holding a lock: reading the static fields can initialize other classes, which may want their descriptors
+            result = new BrooklynTypeDescriptor(clazz);
+            BrooklynTypeDescriptor existing = CACHE.asMap().putIfAbsent(clazz, result);
+            if (existing != null) result = existing;
+        }
+        return result;
+    }
+
+    /** discards the descriptors of classes defined by the given class loader */
+    public static void evict(ClassLoader loader) {
+        for (Iterator<Class<?>> iter = CACHE.asMap().keySet().iterator(); iter.hasNext();) {
+            if (iter.next().getClassLoader() == loader) iter.remove();
+        }
+    }
+
+    /** whether the descriptor of the given class is cached, for testing */
+    @VisibleForTesting
+    static boolean isCached(Class<?> clazz) {
+        return CACHE.getIfPresent(clazz) != null;
+    }
+
+    private final Class<? extends BrooklynObject> brooklynClass;
+    private final Map<String, FieldAndValue<ConfigKey<?>>> configKeys;
+    private final Map<String, Sensor<?>> sensors;
+    private final Map<String, Effector<?>> effectors;
+
+    @SuppressWarnings("unchecked")
+    private BrooklynTypeDescriptor(Class<? extends BrooklynObject> clazz) {
+        this.brooklynClass = clazz;
+        
+        Map<String, FieldAndValue<ConfigKey<?>>> keys = Maps.newLinkedHashMap();
+        BrooklynDynamicType.buildConfigKeys(clazz, null, keys);
+        this.configKeys = ImmutableMap.copyOf(keys);
+        
+        if (Entity.class.isAssignableFrom(clazz)) {
+            this.sensors = ImmutableMap.copyOf(EntityDynamicType.findSensors((Class<? extends Entity>) clazz, null));
+            this.effectors = ImmutableMap.copyOf(EntityDynamicType.findEffectors((Class<? extends Entity>) clazz, null));
+        } else {
+            this.sensors = ImmutableMap.of();
+            this.effectors = ImmutableMap.of();
+        }
+    }
+
+    public Class<? extends BrooklynObject> getBrooklynClass() {
+        return brooklynClass;
+    }
+
+    /** config keys, by name */
+    public Map<String, ConfigKey<?>> getConfigKeys() {
+        return Collections.unmodifiableMap(BrooklynDynamicType.value(configKeys));
+    }
+
+    /** config keys and the fields defining them, by name */
+    Map<String, FieldAndValue<ConfigKey<?>>> getConfigKeyFields() {
+        return configKeys;
+    }
+
+    /** sensors, by name; empty unless an entity */
+    public Map<String, Sensor<?>> getSensors() {
+        return sensors;
+    }
+
+    /** effectors, by name; empty unless an entity */
+    public Map<String, Effector<?>> getEffectors() {
+        return effectors;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("class", brooklynClass.getName()).toString();
+    }
+}
@@ -30,9 +30,14 @@ import org.slf4j.LoggerFactory;
 
 import brooklyn.catalog.CatalogLoadMode;
 import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.event.feed.PollScheduler;
 import brooklyn.management.ManagementContext;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpClientPool;
 import brooklyn.util.os.Os;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
 
 /** Config keys for the brooklyn server */
 public class BrooklynServerConfig {
@@ -97,6 +102,57 @@ public class BrooklynServerConfig {
             + "if null or not set, the legacy beahviour of creating backups where possible (e.g. file system) is currently used; "
             + "this key is DEPRECATED in favor of promotion and demotion specific flags now defaulting to true");
 
+    /** see {@link brooklyn.entity.rebind.persister.JournalBasedObjectStore} */
+    @Beta
+    public static final ConfigKey<Boolean> PERSISTENCE_FILE_JOURNAL =
+        ConfigKeys.newBooleanConfigKey("brooklyn.persistence.file.journal",
+            "Whether persisted state on the file system should be appended to a journal, "
+            + "rather than written as a file per item", false);
+
+    /** see {@link brooklyn.util.http.HttpClientPool} */
+    @Beta
+    public static final ConfigKey<Integer> HTTP_POOL_MAX_PER_ROUTE = ConfigKeys.newIntegerConfigKey("brooklyn.http.pool.maxPerRoute",
+        "Maximum pooled http connections to each host and port, shared by http feeds", HttpClientPool.DEFAULT_MAX_PER_ROUTE);
+
+    @Beta
+    public static final ConfigKey<Integer> HTTP_POOL_MAX_TOTAL = ConfigKeys.newIntegerConfigKey("brooklyn.http.pool.maxTotal",
+        "Maximum pooled http connections in total, shared by http feeds", HttpClientPool.DEFAULT_MAX_TOTAL);
+
+    @Beta
+    public static final ConfigKey<Duration> HTTP_POOL_IDLE_TIMEOUT = ConfigKeys.newConfigKey(Duration.class, "brooklyn.http.pool.idleTimeout",
+        "Time after which unused pooled http connections are closed", HttpClientPool.DEFAULT_IDLE_TIMEOUT);
+
+    @Beta
+    public static final ConfigKey<Duration> HTTP_POOL_LEASE_TIMEOUT = ConfigKeys.newConfigKey(Duration.class, "brooklyn.http.pool.leaseTimeout",
+        "Time to wait for a pooled http connection, when all are in use", HttpClientPool.DEFAULT_LEASE_TIMEOUT);
+
+    @Beta
+    public static final ConfigKey<Integer> HTTP_POOL_IO_THREADS = ConfigKeys.newIntegerConfigKey("brooklyn.http.pool.ioThreads",
+        "Number of threads for non-blocking http requests (e.g. from async http feeds)", HttpClientPool.DEFAULT_IO_THREADS);
+
+    /** see {@link brooklyn.event.feed.PollScheduler} */
+    @Beta
+    public static final ConfigKey<Duration> FEED_POLL_TICK = ConfigKeys.newConfigKey(Duration.class, "brooklyn.feed.poll.tick",
+        "Granularity of the timer for feed polls", PollScheduler.DEFAULT_TICK);
+
+    @Beta
+    public static final ConfigKey<Double> FEED_POLL_JITTER = ConfigKeys.newDoubleConfigKey("brooklyn.feed.poll.jitter",
+        "Fraction (0 to 1) of its period by which the delay before each feed poll is randomly varied, "
+        + "so that polls of many entities do not all happen together; 0 (the default) for none", PollScheduler.DEFAULT_JITTER);
+
+    @Beta
+    public static final ConfigKey<Boolean> FEED_POLL_SPREAD_PHASE = ConfigKeys.newBooleanConfigKey("brooklyn.feed.poll.spreadPhase",
+        "Whether the first poll of a feed is at a random time within its first period, rather than immediately", false);
+
+    @Beta
+    public static final ConfigKey<Duration> FEED_POLL_MAX_BACKOFF = ConfigKeys.newConfigKey(Duration.class, "brooklyn.feed.poll.maxBackoff",
+        "Maximum delay between polls of a feed whose polls are failing, backing off exponentially from its period; "
+        + "zero (the default) or less than the period for no backoff", Duration.ZERO);
+
+    @Beta
+    public static final ConfigKey<Boolean> FEED_POLL_DEDUPLICATE = ConfigKeys.newBooleanConfigKey("brooklyn.feed.poll.deduplicate",
+        "Whether identical feed polls (e.g. of the same url, with the same period) are made once and the result shared", false);
+
     public static final ConfigKey<String> BROOKLYN_CATALOG_URL = ConfigKeys.newStringConfigKey("brooklyn.catalog.url",
         "The URL of a catalog.xml descriptor; absent for default (~/.brooklyn/catalog.xml), " +
         "or empty for no URL (use default scanner)",
@@ -124,6 +180,26 @@ public class BrooklynServerConfig {
     public static final ConfigKey<CampPlatform> CAMP_PLATFORM = ConfigKeys.newConfigKey(CampPlatform.class, "brooklyn.camp.platform",
         "Config set at brooklyn management platform to find the CampPlatform instance (bi-directional)");
 
+    public static final ConfigKey<Boolean> EXECUTION_VIRTUAL_THREADS = ConfigKeys.newBooleanConfigKey(
+        "brooklyn.executionManager.virtualThreads",
+        "Whether tasks should run in virtual threads, where the JVM supports them (Java 21+), "
+        + "so that tasks blocked on I/O do not each hold a platform thread; ignored on older JVMs", false);
+
+    public static final ConfigKey<Boolean> EXECUTION_MAILBOX_DELIVERY = ConfigKeys.newBooleanConfigKey(
+        "brooklyn.executionManager.mailboxDelivery",
+        "Whether in-order deliveries (e.g. subscription events) should queue in a mailbox per subscriber, drained in batches "
+        + "by a bounded thread pool, rather than using threads from the shared unbounded pool", false);
+
+    public static final ConfigKey<Integer> EXECUTION_MAILBOX_POOL_SIZE = ConfigKeys.newIntegerConfigKey(
+        "brooklyn.executionManager.mailboxDelivery.poolSize",
+        "Number of threads for draining mailboxes, if "+EXECUTION_MAILBOX_DELIVERY.getName()+" is set; "
+        + "listeners must not block waiting for other deliveries", 16);
+
+    public static final ConfigKey<Integer> EXECUTION_MAILBOX_BATCH_SIZE = ConfigKeys.newIntegerConfigKey(
+        "brooklyn.executionManager.mailboxDelivery.batchSize",
+        "Maximum number of deliveries run from one mailbox before its thread is given to another mailbox, "
+        + "if "+EXECUTION_MAILBOX_DELIVERY.getName()+" is set", 50);
+
     /** @see BrooklynServerPaths#getMgmtBaseDir(ManagementContext) */
     public static String getMgmtBaseDir(ManagementContext mgmt) {
         return BrooklynServerPaths.getMgmtBaseDir(mgmt);
@@ -20,6 +20,7 @@ package brooklyn.enricher;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 import java.util.Collection;
 import java.util.List;
@@ -29,6 +30,8 @@ import java.util.Set;
 import brooklyn.enricher.basic.AbstractEnricher;
 import brooklyn.enricher.basic.Aggregator;
 import brooklyn.enricher.basic.Combiner;
+import brooklyn.enricher.basic.IncrementalReducer;
+import brooklyn.enricher.basic.IncrementalReducers;
 import brooklyn.enricher.basic.Propagator;
 import brooklyn.enricher.basic.Transformer;
 import brooklyn.enricher.basic.UpdatingMap;
@@ -182,6 +185,9 @@ public class Enrichers {
         protected Predicate<Object> valueFilter;
         protected Object defaultValueForUnreportedSensors;
         protected Object valueToReportIfNoSensors;
+        protected IncrementalAggregation incrementalAggregation;
+        protected double percentile;
+        protected Boolean recomputingFully;
         
         public AbstractAggregatorBuilder(AttributeSensor<S> aggregating) {
             super(Aggregator.class);
@@ -210,6 +216,7 @@ public class Enrichers {
         }
         public B computing(Function<? super Collection<S>, ? extends T> val) {
             this.computing = checkNotNull(val);
+            this.incrementalAggregation = null;
             return self();
         }
         @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -220,6 +227,7 @@ public class Enrichers {
                     return sum((Collection)input, (Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors, (TypeToken) publishing.getTypeToken());
                 }};
             this.computing((Function)function);
+            this.incrementalAggregation = IncrementalAggregation.SUM;
             return self();
         }
         @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -230,6 +238,37 @@ public class Enrichers {
                     return average((Collection)input, (Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors, (TypeToken) publishing.getTypeToken());
                 }};
             this.computing((Function)function);
+            this.incrementalAggregation = IncrementalAggregation.AVERAGE;
+            return self();
+        }
+        /** number of members reporting a value (or of all members, if {@link #defaultValueForUnreportedSensors(Object)} is set) */
+        public B computingCount() {
+            return computingIncrementally(IncrementalAggregation.COUNT);
+        }
+        public B computingMin() {
+            return computingIncrementally(IncrementalAggregation.MIN);
+        }
+        public B computingMax() {
+            return computingIncrementally(IncrementalAggregation.MAX);
+        }
+        /** the given percentile (0 to 100) of the values, by the nearest-rank method; see {@link IncrementalReducers#percentile(double, Number, Number, Class)} */
+        public B computingPercentile(double percentile) {
+            checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100: %s", percentile);
+            this.percentile = percentile;
+            return computingIncrementally(IncrementalAggregation.PERCENTILE);
+        }
+        protected B computingIncrementally(IncrementalAggregation val) {
+            // the (recomputing) function is created in build(), once the publishing type is known
+            this.computing = null;
+            this.incrementalAggregation = val;
+            return self();
+        }
+        /** 
+         * Re-applies the computation to all values on every change, rather than updating the aggregate incrementally
+         * (which is done by default for {@link #computingSum()}, {@link #computingAverage()}, etc). 
+         */
+        public B recomputingFully() {
+            this.recomputingFully = true;
             return self();
         }
         public B defaultValueForUnreportedSensors(S val) {
@@ -265,6 +304,14 @@ public class Enrichers {
             } else {
                 valueFilter = null;
             }
+            IncrementalReducer<?, ?> reducer = newIncrementalReducer();
+            Function<?, ?> transformation = computing;
+            if (transformation == null && reducer != null) {
+                transformation = IncrementalReducers.recomputing(reducer);
+            }
+            if (Boolean.TRUE.equals(recomputingFully)) {
+                reducer = null;
+            }
             // FIXME excludingBlank; use valueFilter? exclude means ignored entirely or substituted for defaultMemberValue?
             return super.build().configure(MutableMap.builder()
                             .putIfNotNull(Aggregator.PRODUCER, fromEntity)
@@ -272,7 +319,8 @@ public class Enrichers {
                             .put(Aggregator.SOURCE_SENSOR, aggregating)
                             .putIfNotNull(Aggregator.FROM_CHILDREN, fromChildren)
                             .putIfNotNull(Aggregator.FROM_MEMBERS, fromMembers)
-                            .putIfNotNull(Aggregator.TRANSFORMATION, computing)
+                            .putIfNotNull(Aggregator.TRANSFORMATION, transformation)
+                            .putIfNotNull(Aggregator.INCREMENTAL_REDUCER, reducer)
                             .putIfNotNull(Aggregator.FROM_HARDCODED_PRODUCERS, fromHardcodedProducers)
                             .putIfNotNull(Aggregator.ENTITY_FILTER, entityFilter)
                             .putIfNotNull(Aggregator.VALUE_FILTER, valueFilter)
@@ -296,8 +344,39 @@ public class Enrichers {
                     .add("valueFilter", valueFilter)
                     .add("defaultValueForUnreportedSensors", defaultValueForUnreportedSensors)
                     .add("valueToReportIfNoSensors", valueToReportIfNoSensors)
+                    .add("incrementalAggregation", incrementalAggregation)
+                    .add("recomputingFully", recomputingFully)
                     .toString();
         }
+        
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        protected IncrementalReducer<?, ?> newIncrementalReducer() {
+            if (incrementalAggregation == null) return null;
+            checkNotNull(publishing, "publishing sensor required for %s", incrementalAggregation);
+            if ((defaultValueForUnreportedSensors != null && !(defaultValueForUnreportedSensors instanceof Number))
+                    || (valueToReportIfNoSensors != null && !(valueToReportIfNoSensors instanceof Number))) {
+                // only the full recompute can handle these (or fail, as it would have done before)
+                checkState(computing != null, "%s requires numeric defaults: %s", incrementalAggregation, this);
+                return null;
+            }
+            Number valueIfNull = (Number) defaultValueForUnreportedSensors;
+            Number valueIfNone = (Number) valueToReportIfNoSensors;
+            Class type = publishing.getType();
+            switch (incrementalAggregation) {
+            case SUM: return IncrementalReducers.sum(valueIfNull, valueIfNone, type);
+            case AVERAGE: return IncrementalReducers.average(valueIfNull, valueIfNone, type);
+            case COUNT: return IncrementalReducers.count(valueIfNull, type);
+            case MIN: return IncrementalReducers.min(valueIfNull, valueIfNone, type);
+            case MAX: return IncrementalReducers.max(valueIfNull, valueIfNone, type);
+            case PERCENTILE: return IncrementalReducers.percentile(percentile, valueIfNull, valueIfNone, type);
+            default: throw new IllegalStateException("Unexpected aggregation "+incrementalAggregation);
+            }
+        }
+    }
+    
+    /** the built-in aggregations which can be maintained incrementally, with an {@link IncrementalReducer} */
+    protected enum IncrementalAggregation {
+        SUM, AVERAGE, COUNT, MIN, MAX, PERCENTILE
     }
     
     protected abstract static class AbstractCombinerBuilder<S, T, B extends AbstractCombinerBuilder<S, T, B>> extends AbstractEnricherBuilder<B> {
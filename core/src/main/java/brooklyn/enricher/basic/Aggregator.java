@@ -33,6 +33,7 @@ import brooklyn.config.ConfigKey;
 import brooklyn.config.BrooklynLogging.LoggingLevel;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.enricher.basic.IncrementalReducer.Accumulator;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
@@ -40,7 +41,9 @@ import brooklyn.event.SensorEventListener;
 import brooklyn.util.collections.MutableList;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.guava.Maybe;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import com.google.common.reflect.TypeToken;
@@ -55,8 +58,22 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
     public static final ConfigKey<Sensor<?>> SOURCE_SENSOR = ConfigKeys.newConfigKey(new TypeToken<Sensor<?>>() {}, "enricher.sourceSensor");
     public static final ConfigKey<Function<? super Collection<?>, ?>> TRANSFORMATION = ConfigKeys.newConfigKey(new TypeToken<Function<? super Collection<?>, ?>>() {}, "enricher.transformation");
 
+    /** Optional reducer to maintain the aggregate incrementally as values change, rather than re-applying the
+     * {@link #TRANSFORMATION} to all values on every change; the transformation is still used if the reducer fails. */
+    @Beta
+    public static final ConfigKey<IncrementalReducer<?, ?>> INCREMENTAL_REDUCER = ConfigKeys.newConfigKey(new TypeToken<IncrementalReducer<?, ?>>() {}, "enricher.aggregating.incrementalReducer");
+
+    /** Minimum number of incremental updates between rebuilds of the accumulator from all values;
+     * rebuilding after every max(this, numValues) updates bounds any drift at amortized O(1) cost */
+    protected static final int MIN_UPDATES_BETWEEN_REBUILDS = 100;
+
     protected Sensor<T> sourceSensor;
     protected Function<? super Collection<T>, ? extends U> transformation;
+    protected IncrementalReducer<T, ? extends U> incrementalReducer;
+    
+    /** built lazily from values, and null if not using (or no longer using) the incremental reducer; guarded by values */
+    private transient Accumulator<T, ? extends U> accumulator;
+    private transient int updatesSinceRebuild;
     
     /**
      * Users of values should either on it synchronize when iterating over its entries or use
@@ -72,6 +89,7 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
         super.setEntityLoadingConfig();
         this.sourceSensor = (Sensor<T>) getRequiredConfig(SOURCE_SENSOR);
         this.transformation = (Function<? super Collection<T>, ? extends U>) getRequiredConfig(TRANSFORMATION);
+        this.incrementalReducer = (IncrementalReducer<T, ? extends U>) getConfig(INCREMENTAL_REDUCER);
     }
         
     @Override
@@ -112,7 +130,9 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
                 } else {
                     initialVal = null;
                 }
-                values.put(producer, initialVal != null ? initialVal : defaultMemberValue);
+                T newVal = initialVal != null ? initialVal : defaultMemberValue;
+                values.put(producer, newVal);
+                accumulate(Maybe.<T>absent(), Maybe.of(newVal));
                 //we might skip in onEvent in the short window while !values.containsKey(producer)
                 //but that's okay because the put which would have been done there is done here now
             } else {
@@ -125,7 +145,12 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
     
     @Override
     protected void onProducerRemoved(Entity producer) {
-        values.remove(producer);
+        synchronized (values) {
+            if (values.containsKey(producer)) {
+                T oldVal = values.remove(producer);
+                accumulate(Maybe.of(oldVal), Maybe.<T>absent());
+            }
+        }
         onUpdated();
     }
 
@@ -134,7 +159,8 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
         Entity e = event.getSource();
         synchronized (values) {
             if (values.containsKey(e)) {
-                values.put(e, event.getValue());
+                T oldVal = values.put(e, event.getValue());
+                accumulate(Maybe.of(oldVal), Maybe.of(event.getValue()));
             } else {
                 if (LOG.isDebugEnabled()) LOG.debug("{} received event for unknown producer ({}); presumably that producer has recently been removed", this, e);
             }
@@ -154,11 +180,46 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
     @Override
     protected Object compute() {
         synchronized (values) {
+            if (incrementalReducer != null) {
+                try {
+                    if (accumulator == null || updatesSinceRebuild >= Math.max(MIN_UPDATES_BETWEEN_REBUILDS, values.size())) {
+                        Accumulator<T, ? extends U> newAccumulator = incrementalReducer.newAccumulator();
+                        IncrementalReducers.addAll(newAccumulator, Iterables.filter(values.values(), valueFilter));
+                        accumulator = newAccumulator;
+                        updatesSinceRebuild = 0;
+                    }
+                    return accumulator.get();
+                } catch (Exception e) {
+                    onIncrementalReducerFailed(e);
+                }
+            }
             // TODO Could avoid copying when filter not needed
             List<T> vs = MutableList.copyOf(Iterables.filter(values.values(), valueFilter));
             return transformation.apply(vs);
         }
     }
+
+    /** 
+     * Applies a change in a producer's value to the accumulator, if there is one (it is otherwise built on next compute).
+     * Must be called while synchronized on values.
+     */
+    private void accumulate(Maybe<T> oldVal, Maybe<T> newVal) {
+        if (accumulator == null) return;
+        try {
+            if (oldVal.isPresent() && valueFilter.apply(oldVal.get())) accumulator.remove(oldVal.get());
+            if (newVal.isPresent() && valueFilter.apply(newVal.get())) accumulator.add(newVal.get());
+            updatesSinceRebuild++;
+        } catch (Exception e) {
+            onIncrementalReducerFailed(e);
+        }
+    }
+
+    private void onIncrementalReducerFailed(Exception e) {
+        Exceptions.propagateIfFatal(e);
+        LOG.warn("Incremental aggregation failed for enricher "+this+" ("+incrementalReducer+"); reverting to full recompute on every change: "+e, e);
+        incrementalReducer = null;
+        accumulator = null;
+    }
     
     protected Map<Entity, T> copyOfValues() {
         // Don't use ImmutableMap, as can contain null values
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.enricher.basic;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Computes an aggregate of a changing collection of values incrementally, as an alternative to
+ * re-applying a function to the whole collection whenever any value changes.
+ * <p>
+ * The reducer itself is stateless (and so can be stored in enricher config);
+ * the state is held in the {@link Accumulator}s it creates.
+ *
+ * @see IncrementalReducers
+ * @see Aggregator#INCREMENTAL_REDUCER
+ */
+@Beta
+public interface IncrementalReducer<T, U> {
+
+    Accumulator<T, U> newAccumulator();
+
+    /**
+     * Holds the state of an aggregation. Implementations need not be thread-safe.
+     * <p>
+     * {@link #remove(Object)} is only ever called with a value previously passed to {@link #add(Object)} (and not yet removed).
+     */
+    public interface Accumulator<T, U> {
+        void add(T value);
+        void remove(T value);
+        /** the aggregate of the values currently added */
+        U get();
+    }
+}
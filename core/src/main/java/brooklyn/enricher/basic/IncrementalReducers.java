@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.enricher.basic;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+
+import brooklyn.enricher.basic.IncrementalReducer.Accumulator;
+import brooklyn.util.flags.TypeCoercions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.collect.SortedMultiset;
+import com.google.common.collect.TreeMultiset;
+
+/**
+ * Built-in {@link IncrementalReducer}s for numeric aggregation.
+ * <p>
+ * All of these treat a null value as {@code valueIfNull}, or ignore it if that is null;
+ * report {@code valueIfNone} when there are no (non-ignored) values;
+ * and cast the result to the given (primitive or boxed) number type.
+ * These are the same semantics as the full-recompute functions behind
+ * {@link brooklyn.enricher.Enrichers.AbstractAggregatorBuilder#computingSum()} and
+ * {@link brooklyn.enricher.Enrichers.AbstractAggregatorBuilder#computingAverage()}.
+ * <p>
+ * Sum, count and average update in O(1); min, max and percentile in O(log n).
+ */
+@Beta
+public class IncrementalReducers {
+
+    private IncrementalReducers() {}
+
+    public static <N extends Number> IncrementalReducer<Number, N> sum(Number valueIfNull, Number valueIfNone, Class<N> type) {
+        return new SumReducer<N>(valueIfNull, valueIfNone, type, false);
+    }
+
+    public static <N extends Number> IncrementalReducer<Number, N> average(Number valueIfNull, Number valueIfNone, Class<N> type) {
+        return new SumReducer<N>(valueIfNull, valueIfNone, type, true);
+    }
+
+    /** counts the values which are non-null (or all values, if {@code valueIfNull} is non-null) */
+    public static <N extends Number> IncrementalReducer<Number, N> count(Number valueIfNull, Class<N> type) {
+        return new CountReducer<N>(valueIfNull, type);
+    }
+
+    public static <N extends Number> IncrementalReducer<Number, N> min(Number valueIfNull, Number valueIfNone, Class<N> type) {
+        return new PercentileReducer<N>(0, valueIfNull, valueIfNone, type);
+    }
+
+    public static <N extends Number> IncrementalReducer<Number, N> max(Number valueIfNull, Number valueIfNone, Class<N> type) {
+        return new PercentileReducer<N>(100, valueIfNull, valueIfNone, type);
+    }
+
+    /**
+     * The given percentile (0 to 100) of the values, using the nearest-rank method;
+     * i.e. the smallest value such that at least that percentage of values are less than or equal to it
+     * (so 50 gives the lower median).
+     */
+    public static <N extends Number> IncrementalReducer<Number, N> percentile(double percentile, Number valueIfNull, Number valueIfNone, Class<N> type) {
+        return new PercentileReducer<N>(percentile, valueIfNull, valueIfNone, type);
+    }
+
+    /** A function which (inefficiently) computes the aggregate over a whole collection, with a new accumulator each time */
+    public static <T, U> Function<Collection<T>, U> recomputing(IncrementalReducer<T, U> reducer) {
+        return new RecomputingFunction<T, U>(reducer);
+    }
+
+    /** Adds each of the values to the accumulator, for convenience */
+    public static <T> void addAll(Accumulator<T, ?> accumulator, Iterable<? extends T> values) {
+        for (T value : values) {
+            accumulator.add(value);
+        }
+    }
+
+    protected static <N extends Number> N cast(Number n, Class<N> type) {
+        return TypeCoercions.castPrimitive(n, type);
+    }
+
+    protected abstract static class AbstractNumberReducer<N extends Number> implements IncrementalReducer<Number, N> {
+        protected final Number valueIfNull;
+        protected final Number valueIfNone;
+        protected final Class<N> type;
+
+        protected AbstractNumberReducer(Number valueIfNull, Number valueIfNone, Class<N> type) {
+            this.valueIfNull = valueIfNull;
+            this.valueIfNone = valueIfNone;
+            this.type = checkNotNull(type, "type");
+        }
+
+        /** the value to aggregate in place of the given value; null if it should be ignored */
+        protected Number effective(Number value) {
+            return (value != null) ? value : valueIfNull;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).omitNullValues()
+                    .add("valueIfNull", valueIfNull)
+                    .add("valueIfNone", valueIfNone)
+                    .add("type", type.getSimpleName())
+                    .toString();
+        }
+    }
+
+    protected static class SumReducer<N extends Number> extends AbstractNumberReducer<N> {
+        protected final boolean average;
+
+        protected SumReducer(Number valueIfNull, Number valueIfNone, Class<N> type, boolean average) {
+            super(valueIfNull, valueIfNone, type);
+            this.average = average;
+        }
+
+        @Override
+        public Accumulator<Number, N> newAccumulator() {
+            return new Accumulator<Number, N>() {
+                // integral values are summed exactly, so that removing a value restores the previous sum exactly;
+                // other values are summed as doubles (which, as with any incremental sum, can drift slightly)
+                long integralSum;
+                double fractionalSum;
+                int count;
+
+                @Override public void add(Number value) {
+                    Number v = effective(value);
+                    if (v == null) return;
+                    if (isIntegral(v)) integralSum += v.longValue();
+                    else fractionalSum += v.doubleValue();
+                    count++;
+                }
+                @Override public void remove(Number value) {
+                    Number v = effective(value);
+                    if (v == null) return;
+                    if (isIntegral(v)) integralSum -= v.longValue();
+                    else fractionalSum -= v.doubleValue();
+                    count--;
+                }
+                @Override public N get() {
+                    if (count == 0) return cast(valueIfNone, type);
+                    double sum = integralSum + fractionalSum;
+                    return cast(average ? sum / count : sum, type);
+                }
+            };
+        }
+
+        protected static boolean isIntegral(Number v) {
+            return v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte;
+        }
+
+        @Override
+        public String toString() {
+            return (average ? "average" : "sum") + super.toString();
+        }
+    }
+
+    protected static class CountReducer<N extends Number> extends AbstractNumberReducer<N> {
+        protected CountReducer(Number valueIfNull, Class<N> type) {
+            super(valueIfNull, null, type);
+        }
+
+        @Override
+        public Accumulator<Number, N> newAccumulator() {
+            return new Accumulator<Number, N>() {
+                int count;
+
+                @Override public void add(Number value) {
+                    if (effective(value) != null) count++;
+                }
+                @Override public void remove(Number value) {
+                    if (effective(value) != null) count--;
+                }
+                @Override public N get() {
+                    return cast(count, type);
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "count" + super.toString();
+        }
+    }
+
+    /**
+     * Keeps the values in two sorted multisets, {@code lower} holding the smallest {@code rank(n)} values;
+     * the percentile is then the greatest of those. Each add or remove changes the target rank by at most one,
+     * so rebalancing moves at most one value between the two.
+     */
+    protected static class PercentileReducer<N extends Number> extends AbstractNumberReducer<N> {
+        protected final double percentile;
+
+        protected PercentileReducer(double percentile, Number valueIfNull, Number valueIfNone, Class<N> type) {
+            super(valueIfNull, valueIfNone, type);
+            checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100: %s", percentile);
+            this.percentile = percentile;
+        }
+
+        /** nearest rank, i.e. the 1-based position in the sorted values of the percentile, for n>0 */
+        protected int rank(int n) {
+            return Math.max(1, (int) Math.ceil(percentile / 100 * n));
+        }
+
+        @Override
+        public Accumulator<Number, N> newAccumulator() {
+            return new Accumulator<Number, N>() {
+                final SortedMultiset<Double> lower = TreeMultiset.create();
+                final SortedMultiset<Double> upper = TreeMultiset.create();
+
+                @Override public void add(Number value) {
+                    Number v = effective(value);
+                    if (v == null) return;
+                    Double d = v.doubleValue();
+                    if (lower.isEmpty() || d <= lower.lastEntry().getElement()) {
+                        lower.add(d);
+                    } else {
+                        upper.add(d);
+                    }
+                    rebalance();
+                }
+                @Override public void remove(Number value) {
+                    Number v = effective(value);
+                    if (v == null) return;
+                    Double d = v.doubleValue();
+                    // equal values are interchangeable, so it does not matter which side it is taken from
+                    if (lower.remove(d, 1) == 0) {
+                        upper.remove(d, 1);
+                    }
+                    rebalance();
+                }
+                private void rebalance() {
+                    int n = lower.size() + upper.size();
+                    int target = (n == 0) ? 0 : rank(n);
+                    // moving one occurrence at a time (pollXxxEntry would take all occurrences of the value)
+                    while (lower.size() > target) {
+                        Double d = lower.lastEntry().getElement();
+                        lower.remove(d);
+                        upper.add(d);
+                    }
+                    while (lower.size() < target && !upper.isEmpty()) {
+                        Double d = upper.firstEntry().getElement();
+                        upper.remove(d);
+                        lower.add(d);
+                    }
+                }
+                @Override public N get() {
+                    if (lower.isEmpty()) return cast(valueIfNone, type);
+                    return cast(lower.lastEntry().getElement(), type);
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "percentile(" + percentile + ")" + super.toString();
+        }
+    }
+
+    protected static class RecomputingFunction<T, U> implements Function<Collection<T>, U> {
+        protected final IncrementalReducer<T, U> reducer;
+
+        protected RecomputingFunction(IncrementalReducer<T, U> reducer) {
+            this.reducer = checkNotNull(reducer, "reducer");
+        }
+
+        @Override
+        public U apply(Collection<T> input) {
+            Accumulator<T, U> accumulator = reducer.newAccumulator();
+            if (input != null) addAll(accumulator, input);
+            return accumulator.get();
+        }
+
+        @Override
+        public String toString() {
+            return "recomputing(" + reducer + ")";
+        }
+    }
+}
@@ -1011,19 +1011,8 @@ public abstract class AbstractEntity extends AbstractBrooklynObject implements E
 
     @Override
     public void refreshInheritedConfig() {
-        if (getParent() != null) {
-            configsInternal.setInheritedConfig(((EntityInternal)getParent()).getAllConfig(), ((EntityInternal)getParent()).getAllConfigBag());
-        } else {
-            configsInternal.clearInheritedConfig();
-        }
-
-        refreshInheritedConfigOfChildren();
-    }
-
-    void refreshInheritedConfigOfChildren() {
-        for (Entity it : getChildren()) {
-            ((EntityInternal)it).refreshInheritedConfig();
-        }
+        // inherited config is looked up through the parent when needed, so descendants need not be told
+        configsInternal.refreshInheritedConfig();
     }
 
     @Override
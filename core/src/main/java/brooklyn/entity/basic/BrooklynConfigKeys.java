@@ -19,6 +19,9 @@
 package brooklyn.entity.basic;
 
 import static brooklyn.entity.basic.ConfigKeys.*;
+
+import java.util.Map;
+
 import brooklyn.config.BrooklynServerConfig;
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.trait.Startable;
@@ -29,7 +32,9 @@ import brooklyn.util.internal.ssh.ShellTool;
 import brooklyn.util.internal.ssh.SshTool;
 import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Preconditions;
+import com.google.common.reflect.TypeToken;
 
 /** Commonly used config keys, for use in entities. Similar to {@link Attributes}.
  * See also {@link BrooklynServerConfig} for config keys for controlling the server. */
@@ -154,6 +159,14 @@ public class BrooklynConfigKeys {
     public static final ConfigKey<Duration> START_TIMEOUT = newConfigKey(
             "start.timeout", "Time to wait for process and for SERVICE_UP before failing (in seconds, default 2m)", Duration.seconds(120));
 
+    /** Map of sensor name to the window within which changes are coalesced when published (e.g. "500ms"),
+     * overriding any {@link brooklyn.event.basic.BasicAttributeSensor#getPublishCoalescePeriod()}; 0 disables coalescing for that sensor.
+     * Read when the entity first publishes a sensor. */
+    @Beta
+    public static final ConfigKey<Map<String, Object>> SENSOR_PUBLISH_COALESCE_PERIODS = newConfigKey(new TypeToken<Map<String, Object>>() {}, 
+            "sensors.publish.coalescePeriods", "Map of sensor name to a period within which changes are coalesced, "
+                    + "so subscribers are only told the latest value (the attribute itself is always updated immediately)");
+
     /* selected properties from SshTool for external public access (e.g. putting on entities) */
 
     /** Public-facing global config keys for Brooklyn are defined in ConfigKeys, 
@@ -21,11 +21,15 @@ package brooklyn.entity.basic;
 import static brooklyn.util.GroovyJavaMethods.elvis;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,8 +38,9 @@ import brooklyn.config.ConfigInheritance;
 import brooklyn.config.ConfigKey;
 import brooklyn.config.ConfigKey.HasConfigKey;
 import brooklyn.config.ConfigMap;
+import brooklyn.entity.Entity;
+import brooklyn.event.basic.SensorDependencies;
 import brooklyn.event.basic.StructuredConfigKey;
-import brooklyn.management.ExecutionContext;
 import brooklyn.management.Task;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
@@ -45,10 +50,12 @@ import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.guava.Maybe;
 import brooklyn.util.internal.ConfigKeySelfExtracting;
 import brooklyn.util.task.DeferredSupplier;
+import brooklyn.util.task.MemoizableDeferredSupplier;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
 public class EntityConfigMap implements ConfigMap {
 
@@ -63,23 +70,82 @@ public class EntityConfigMap implements ConfigMap {
      * Map of configuration information that is defined at start-up time for the entity. These
      * configuration parameters are shared and made accessible to the "children" of this
      * entity.
+     * <p>
+     * Changes are made holding its lock, and descendants read it holding its lock (see {@link #copyOwnConfig()}),
+     * as the backing map need not be thread-safe.
      */
     private final Map<ConfigKey<?>,Object> ownConfig;
-    private final Map<ConfigKey<?>,Object> inheritedConfig = Collections.synchronizedMap(new LinkedHashMap<ConfigKey<?>, Object>());
     // TODO do we really want to have *both* bags and maps for these?  danger that they get out of synch.
     // have added some logic (Oct 2014) so that the same changes are applied to both, in most places at least;
     // i (alex) think we should prefer ConfigBag (the input keys don't matter, it is more a question of retrieval keys),
     // but first we need ConfigBag to support StructuredConfigKeys 
     private final ConfigBag localConfigBag;
-    private final ConfigBag inheritedConfigBag;
+
+    /**
+     * Inherited config is not copied down to children: it is looked up through the parent chain when asked for.
+     * Lookups of individual keys are memoized, stamped with this counter; every change to an entity's own config,
+     * or to its parent, takes a new value of the counter as its {@link #modifiedAt}, so a memoized lookup is
+     * still good if no entity from here up to the root has been modified since the lookup began.
+     */
+    private static final AtomicLong MODIFICATION_COUNTER = new AtomicLong();
+
+    private volatile long modifiedAt = MODIFICATION_COUNTER.incrementAndGet();
+
+    private final ConcurrentMap<ConfigKey<?>, InheritedLookup> inheritedLookups = new ConcurrentHashMap<ConfigKey<?>, InheritedLookup>();
+
+    /** the names under which {@link SetFromFlag} says each config key can be given, computed when first needed */
+    private volatile Map<String, ConfigKey<?>> renamedConfigKeys;
+
+    /**
+     * For a {@link #submap(Predicate)}, which is detached from the parent chain, the inherited config at the time it was taken;
+     * otherwise null.
+     */
+    private final Map<ConfigKey<?>,Object> detachedInheritedConfig;
+
+    /**
+     * The values last resolved for keys whose value is a {@link Task} or {@link MemoizableDeferredSupplier}, 
+     * so they need not be resolved again while still current; see {@link #extractValue(ConfigKey, Map)}.
+     */
+    private final ConcurrentMap<ConfigKey<?>, ResolvedValue> resolvedValues = new ConcurrentHashMap<ConfigKey<?>, ResolvedValue>();
+    private final AtomicLong resolutionHits = new AtomicLong();
+    private final AtomicLong resolutionMisses = new AtomicLong();
+    private static final AtomicLong TOTAL_RESOLUTION_HITS = new AtomicLong();
+    private static final AtomicLong TOTAL_RESOLUTION_MISSES = new AtomicLong();
+
+    private static class ResolvedValue {
+        final Object rawval;
+        final Object value;
+        /** the sensors the value was derived from, or null if it cannot change (being the result of a completed task) */
+        final SensorDependencies dependencies;
+
+        ResolvedValue(Object rawval, Object value, SensorDependencies dependencies) {
+            this.rawval = rawval;
+            this.value = value;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private static class InheritedLookup {
+        final Map<ConfigKey<?>,Object> values;
+        final long stamp;
+
+        InheritedLookup(Map<ConfigKey<?>,Object> values, long stamp) {
+            this.values = values;
+            this.stamp = stamp;
+        }
+    }
 
     public EntityConfigMap(AbstractEntity entity, Map<ConfigKey<?>, Object> storage) {
+        this(entity, storage, null);
+    }
+
+    private EntityConfigMap(AbstractEntity entity, Map<ConfigKey<?>, Object> storage, Map<ConfigKey<?>, Object> detachedInheritedConfig) {
         this.entity = checkNotNull(entity, "entity must be specified");
         this.ownConfig = checkNotNull(storage, "storage map must be specified");
+        this.detachedInheritedConfig = detachedInheritedConfig;
         
         // TODO store ownUnused in backing-storage
         this.localConfigBag = ConfigBag.newInstance();
-        this.inheritedConfigBag = ConfigBag.newInstance();
     }
 
     public <T> T getConfig(ConfigKey<T> key) {
@@ -123,23 +189,18 @@ public class EntityConfigMap implements ConfigMap {
             Object rawval = ownConfig.get(key);
             T result = null;
             boolean complete = false;
+            Map<ConfigKey<?>,Object> inheritedVals;
             if (((ConfigKeySelfExtracting<T>)ownKey).isSet(ownConfig)) {
-                ExecutionContext exec = entity.getExecutionContext();
-                result = ((ConfigKeySelfExtracting<T>)ownKey).extractValue(ownConfig, exec);
+                result = extractValue(ownKey, ownConfig);
                 complete = true;
             } else if (isInherited(ownKey, inheritance) && 
-                    ((ConfigKeySelfExtracting<T>)ownKey).isSet(inheritedConfig)) {
-                ExecutionContext exec = entity.getExecutionContext();
-                result = ((ConfigKeySelfExtracting<T>)ownKey).extractValue(inheritedConfig, exec);
+                    ((ConfigKeySelfExtracting<T>)ownKey).isSet(inheritedVals = getInheritedConfig(ownKey))) {
+                result = extractValue(ownKey, inheritedVals);
                 complete = true;
             } else if (localConfigBag.containsKey(ownKey)) {
                 // TODO configBag.get doesn't handle tasks/attributeWhenReady - it only uses TypeCoercions
                 result = localConfigBag.get(ownKey);
                 complete = true;
-            } else if (isInherited(ownKey, inheritance) && 
-                    inheritedConfigBag.containsKey(ownKey)) {
-                result = inheritedConfigBag.get(ownKey);
-                complete = true;
             }
 
             if (rawval instanceof Task) {
@@ -154,6 +215,70 @@ public class EntityConfigMap implements ConfigMap {
         return TypeCoercions.coerce((defaultValue != null) ? defaultValue : ownKey.getDefaultValue(), key.getTypeToken());
     }
 
+    /**
+     * Extracts the value of the key from the given config, reusing the value last resolved for the key if it
+     * was resolved from the same {@link Task}, once that has completed, or from the same {@link MemoizableDeferredSupplier},
+     * so long as none of the sensors it depends on have changed since.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T extractValue(ConfigKey<T> key, Map<ConfigKey<?>,Object> vals) {
+        ConfigKeySelfExtracting<T> extractor = (ConfigKeySelfExtracting<T>) key;
+        Object rawval = vals.get(key);
+        if (key instanceof StructuredConfigKey || !(rawval instanceof Task || rawval instanceof MemoizableDeferredSupplier)) {
+            return extractor.extractValue(vals, entity.getExecutionContext());
+        }
+
+        ResolvedValue resolved = resolvedValues.get(key);
+        if (resolved != null && resolved.rawval == rawval && (resolved.dependencies == null || !resolved.dependencies.isChanged())) {
+            resolutionHits.incrementAndGet();
+            TOTAL_RESOLUTION_HITS.incrementAndGet();
+            if (resolved.dependencies != null) SensorDependencies.recordAll(resolved.dependencies);
+            return (T) resolved.value;
+        }
+        resolutionMisses.incrementAndGet();
+        TOTAL_RESOLUTION_MISSES.incrementAndGet();
+
+        T result;
+        SensorDependencies dependencies = SensorDependencies.startRecording();
+        try {
+            result = extractor.extractValue(vals, entity.getExecutionContext());
+        } finally {
+            dependencies.stopRecording();
+        }
+        if (rawval instanceof Task) {
+            if (((Task<?>) rawval).isDone()) {
+                resolvedValues.put(key, new ResolvedValue(rawval, result, null));
+            }
+        } else if (!dependencies.isEmpty()) {
+            resolvedValues.put(key, new ResolvedValue(rawval, result, dependencies));
+        }
+        return result;
+    }
+
+    /**
+     * Counts of lookups of config whose value is a {@link Task} or {@link MemoizableDeferredSupplier}
+     * which could reuse an earlier result ("hits") or had to resolve the value ("misses"), and the number of keys
+     * with a result held for reuse.
+     */
+    @Beta
+    public Map<String, Object> getResolutionMetrics() {
+        return resolutionMetrics(resolutionHits.get(), resolutionMisses.get())
+                .add("cached", resolvedValues.size());
+    }
+
+    /** As {@link #getResolutionMetrics()}, for lookups of the config of all entities. */
+    @Beta
+    public static Map<String, Object> getTotalResolutionMetrics() {
+        return resolutionMetrics(TOTAL_RESOLUTION_HITS.get(), TOTAL_RESOLUTION_MISSES.get());
+    }
+
+    private static MutableMap<String, Object> resolutionMetrics(long hits, long misses) {
+        return MutableMap.<String, Object>of(
+                "hits", hits,
+                "misses", misses,
+                "hitRate", (hits + misses == 0) ? 0d : (double) hits / (hits + misses));
+    }
+
     private <T> boolean isInherited(ConfigKey<T> key) {
         return isInherited(key, key.getInheritance());
     }
@@ -173,39 +298,195 @@ public class EntityConfigMap implements ConfigMap {
     
     @Override
     public Maybe<Object> getConfigRaw(ConfigKey<?> key, boolean includeInherited) {
-        if (ownConfig.containsKey(key)) return Maybe.of(ownConfig.get(key));
-        if (includeInherited && inheritedConfig.containsKey(key)) return Maybe.of(inheritedConfig.get(key));
+        Maybe<Object> ownVal = getOwnConfig(key);
+        if (ownVal.isPresent()) return ownVal;
+        if (includeInherited && isInherited(key)) {
+            Map<ConfigKey<?>,Object> inheritedVals = getInheritedConfig(key);
+            if (inheritedVals.containsKey(key)) return Maybe.of(inheritedVals.get(key));
+        }
+        return Maybe.absent();
+    }
+
+    /**
+     * The values inherited for the given key (and, for a {@link StructuredConfigKey}, its sub-keys), 
+     * looked up through the parent chain.
+     * <p>
+     * At each ancestor, nearest first, a value set against the key takes precedence over one given by name
+     * (or by a {@link SetFromFlag} name of this entity's key) in its config bag; the nearest ancestor with a
+     * value wins, except that sub-keys of structured keys are merged from all ancestors.
+     */
+    private Map<ConfigKey<?>,Object> getInheritedConfig(ConfigKey<?> key) {
+        if (detachedInheritedConfig != null) {
+            return detachedInheritedConfig;
+        }
+        InheritedLookup lookup = inheritedLookups.get(key);
+        if (lookup != null && lookup.stamp >= getLatestModification()) {
+            return lookup.values;
+        }
+
+        long stamp = MODIFICATION_COUNTER.get();
+        Map<ConfigKey<?>,Object> result = Maps.newLinkedHashMap();
+        Collection<String> names = null;
+        for (EntityConfigMap ancestor = getParentConfigMap(); ancestor != null; ancestor = ancestor.getParentConfigMap()) {
+            if (key instanceof StructuredConfigKey) {
+                StructuredConfigKey structuredKey = (StructuredConfigKey) key;
+                for (Map.Entry<ConfigKey<?>,Object> entry : ancestor.copyOwnConfig().entrySet()) {
+                    ConfigKey<?> contender = entry.getKey();
+                    if ((structuredKey.acceptsKeyMatch(contender) || structuredKey.acceptsSubkey(contender))
+                            && !result.containsKey(contender) && isInherited(contender)) {
+                        result.put(contender, entry.getValue());
+                    }
+                }
+            } else {
+                Maybe<Object> ownVal = ancestor.getOwnConfig(key);
+                if (ownVal.isPresent()) {
+                    result.put(key, ownVal.get());
+                    break;
+                }
+                if (names == null) names = getNames(key);
+                Maybe<Object> val = ancestor.getUnmatchedStringKey(names);
+                if (val.isPresent()) {
+                    result.put(key, val.get());
+                    break;
+                }
+            }
+        }
+        inheritedLookups.put(key, new InheritedLookup(result, stamp));
+        return result;
+    }
+
+    /**
+     * All values inherited from the parent chain, into {@code matched} for those against config keys or given by 
+     * the name of one of this entity's config keys, otherwise into {@code unmatched}.
+     */
+    private void collectInheritedConfig(Map<ConfigKey<?>,Object> matched, Map<String,Object> unmatched) {
+        if (detachedInheritedConfig != null) {
+            matched.putAll(detachedInheritedConfig);
+            return;
+        }
+        for (EntityConfigMap ancestor = getParentConfigMap(); ancestor != null; ancestor = ancestor.getParentConfigMap()) {
+            for (Map.Entry<ConfigKey<?>,Object> entry : ancestor.copyOwnConfig().entrySet()) {
+                if (!matched.containsKey(entry.getKey()) && isInherited(entry.getKey())) {
+                    matched.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (Map.Entry<String,Object> entry : ancestor.localConfigBag.getAllConfig().entrySet()) {
+                String name = entry.getKey();
+                if (ancestor.containsKeyNamed(name)) continue;
+                ConfigKey<?> key = getRenamedConfigKeys().get(name);
+                if (key == null) key = entity.getEntityType().getConfigKey(name);
+                if (key != null) {
+                    if (!matched.containsKey(key) && isInherited(key)) {
+                        matched.put(key, entry.getValue());
+                    }
+                } else if (!unmatched.containsKey(name)) {
+                    // a config bag has discarded the keys, so we must assume default inheritance for things given that way
+                    unmatched.put(name, entry.getValue());
+                }
+            }
+        }
+    }
+
+    /** a copy of this entity's own config, which descendants can iterate over while it is being changed */
+    private Map<ConfigKey<?>,Object> copyOwnConfig() {
+        synchronized (ownConfig) {
+            return new LinkedHashMap<ConfigKey<?>,Object>(ownConfig);
+        }
+    }
+
+    private Maybe<Object> getOwnConfig(ConfigKey<?> key) {
+        synchronized (ownConfig) {
+            return ownConfig.containsKey(key) ? Maybe.of(ownConfig.get(key)) : Maybe.absent();
+        }
+    }
+
+    private EntityConfigMap getParentConfigMap() {
+        Entity parent = entity.getParent();
+        return (parent != null) ? ((EntityInternal)parent).getConfigMap() : null;
+    }
+
+    /** The last time that the config of this entity or of any of its ancestors changed, or that any of them changed parent. */
+    private long getLatestModification() {
+        long result = modifiedAt;
+        for (EntityConfigMap ancestor = getParentConfigMap(); ancestor != null; ancestor = ancestor.getParentConfigMap()) {
+            result = Math.max(result, ancestor.modifiedAt);
+        }
+        return result;
+    }
+
+    private void onModified() {
+        modifiedAt = MODIFICATION_COUNTER.incrementAndGet();
+    }
+
+    /** The names by which the given key can be given in a config bag: its own name, and any {@link SetFromFlag} names on this entity. */
+    private Collection<String> getNames(ConfigKey<?> key) {
+        List<String> result = Lists.newArrayList(key.getName());
+        for (Map.Entry<String, ConfigKey<?>> entry : getRenamedConfigKeys().entrySet()) {
+            if (entry.getValue().equals(key) && !result.contains(entry.getKey())) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /** The value in the config bag under the first of the given names that is not also the name of a key in the config map. */
+    private Maybe<Object> getUnmatchedStringKey(Collection<String> names) {
+        Map<String,Object> vals = localConfigBag.getAllConfig();
+        for (String name : names) {
+            if (vals.containsKey(name) && !containsKeyNamed(name)) return Maybe.of(vals.get(name));
+        }
         return Maybe.absent();
     }
+
+    private boolean containsKeyNamed(String name) {
+        // config keys are equal if their names are
+        return getOwnConfig(ConfigKeys.newConfigKey(Object.class, name)).isPresent();
+    }
+
+    private Map<String, ConfigKey<?>> getRenamedConfigKeys() {
+        Map<String, ConfigKey<?>> result = renamedConfigKeys;
+        if (result == null) {
+            result = Maps.newLinkedHashMap();
+            for (Map.Entry<ConfigKey<?>, SetFromFlag> entry: FlagUtils.getAnnotatedConfigKeys(entity.getClass()).entrySet()) {
+                String rename = entry.getValue().value();
+                if (rename != null) {
+                    result.put(rename, entry.getKey());
+                }
+            }
+            renamedConfigKeys = result;
+        }
+        return result;
+    }
     
     /** an immutable copy of the config visible at this entity, local and inherited (preferring local) */
     public Map<ConfigKey<?>,Object> getAllConfig() {
-        Map<ConfigKey<?>,Object> result = new LinkedHashMap<ConfigKey<?>,Object>(inheritedConfig.size()+ownConfig.size());
-        result.putAll(inheritedConfig);
-        result.putAll(ownConfig);
+        Map<ConfigKey<?>,Object> result = new LinkedHashMap<ConfigKey<?>,Object>();
+        collectInheritedConfig(result, Maps.<String,Object>newLinkedHashMap());
+        result.putAll(copyOwnConfig());
         return Collections.unmodifiableMap(result);
     }
 
     /** an immutable copy of the config defined at this entity, ie not inherited */
     public Map<ConfigKey<?>,Object> getLocalConfig() {
-        Map<ConfigKey<?>,Object> result = new LinkedHashMap<ConfigKey<?>,Object>(ownConfig.size());
-        result.putAll(ownConfig);
-        return Collections.unmodifiableMap(result);
+        return Collections.unmodifiableMap(copyOwnConfig());
     }
     
     /** Creates an immutable copy of the config visible at this entity, local and inherited (preferring local), including those that did not match config keys */
     public ConfigBag getAllConfigBag() {
+        Map<ConfigKey<?>,Object> inheritedConfig = Maps.newLinkedHashMap();
+        Map<String,Object> inheritedUnmatched = Maps.newLinkedHashMap();
+        collectInheritedConfig(inheritedConfig, inheritedUnmatched);
         return ConfigBag.newInstanceCopying(localConfigBag)
-                .putAll(ownConfig)
+                .putAll(copyOwnConfig())
                 .putIfAbsent(inheritedConfig)
-                .putIfAbsent(inheritedConfigBag)
+                .putIfAbsent(inheritedUnmatched)
                 .seal();
     }
 
     /** Creates an immutable copy of the config defined at this entity, ie not inherited, including those that did not match config keys */
     public ConfigBag getLocalConfigBag() {
         return ConfigBag.newInstanceCopying(localConfigBag)
-                .putAll(ownConfig)
+                .putAll(copyOwnConfig())
                 .seal();
     }
 
@@ -226,104 +507,77 @@ public class EntityConfigMap implements ConfigMap {
             }
         }
         Object oldVal;
-        if (key instanceof StructuredConfigKey) {
-            oldVal = ((StructuredConfigKey)key).applyValueToMap(val, ownConfig);
-            // TODO ConfigBag does not handle structured config keys; quick fix is to remove (and should also remove any subkeys;
-            // as it stands if someone set string a.b.c in the config bag then removed structured key a.b, then got a.b.c they'd get a vale);
-            // long term fix is to support structured config keys in ConfigBag, at which point i think we could remove ownConfig altogether
-            localConfigBag.remove(key);
-        } else {
-            oldVal = ownConfig.put(key, val);
-            localConfigBag.put((ConfigKey<Object>)key, v);
+        synchronized (ownConfig) {
+            if (key instanceof StructuredConfigKey) {
+                oldVal = ((StructuredConfigKey)key).applyValueToMap(val, ownConfig);
+                // TODO ConfigBag does not handle structured config keys; quick fix is to remove (and should also remove any subkeys;
+                // as it stands if someone set string a.b.c in the config bag then removed structured key a.b, then got a.b.c they'd get a vale);
+                // long term fix is to support structured config keys in ConfigBag, at which point i think we could remove ownConfig altogether
+                localConfigBag.remove(key);
+            } else {
+                oldVal = ownConfig.put(key, val);
+                localConfigBag.put((ConfigKey<Object>)key, v);
+            }
         }
-        entity.refreshInheritedConfigOfChildren();
+        resolvedValues.remove(key);
+        onModified();
         return oldVal;
     }
     
     public void setLocalConfig(Map<ConfigKey<?>, ?> vals) {
-        ownConfig.clear();
-        localConfigBag.clear();
-        ownConfig.putAll(vals);
-        localConfigBag.putAll(vals);
-    }
-    
-    public void setInheritedConfig(Map<ConfigKey<?>, ?> valsO, ConfigBag configBagVals) {
-        Map<ConfigKey<?>, ?> vals = filterUninheritable(valsO);
-        
-        inheritedConfig.clear();
-        inheritedConfig.putAll(vals);
-
-        // The configBagVals contains all inherited, including strings that did not match a config key on the parent.
-        // They might match a config-key on this entity though, so need to check that:
-        //   - if it matches one of our keys, set it in inheritedConfig
-        //   - otherwise add it to our inheritedConfigBag
-        Set<String> valKeyNames = Sets.newLinkedHashSet();
-        for (ConfigKey<?> key : vals.keySet()) {
-            valKeyNames.add(key.getName());
-        }
-        Map<String,Object> valsUnmatched = MutableMap.<String,Object>builder()
-                .putAll(configBagVals.getAllConfig())
-                .removeAll(valKeyNames)
-                .build();
-        inheritedConfigBag.clear();
-        Map<ConfigKey<?>, SetFromFlag> annotatedConfigKeys = FlagUtils.getAnnotatedConfigKeys(entity.getClass());
-        Map<String, ConfigKey<?>> renamedConfigKeys = Maps.newLinkedHashMap();
-        for (Map.Entry<ConfigKey<?>, SetFromFlag> entry: annotatedConfigKeys.entrySet()) {
-            String rename = entry.getValue().value();
-            if (rename != null) {
-                renamedConfigKeys.put(rename, entry.getKey());
-            }
-        }
-        for (Map.Entry<String,Object> entry : valsUnmatched.entrySet()) {
-            String name = entry.getKey();
-            Object value = entry.getValue();
-            ConfigKey<?> key = renamedConfigKeys.get(name);
-            if (key == null) key = entity.getEntityType().getConfigKey(name);
-            if (key != null) {
-                if (!isInherited(key)) {
-                    // no-op
-                } else if (inheritedConfig.containsKey(key)) {
-                    LOG.warn("Entity "+entity+" inherited duplicate config for key "+key+", via explicit config and string name "+name+"; using value of key");
-                } else {
-                    inheritedConfig.put(key, value);
-                }
-            } else {
-                // a config bag has discarded the keys, so we must assume default inheritance for things given that way
-                // unless we can infer a key; not a big deal, as we should have the key in inheritedConfig for everything
-                // which originated with a key ... but still, it would be nice to clean up the use of config bag!
-                inheritedConfigBag.putStringKey(name, value);
-            }
+        synchronized (ownConfig) {
+            ownConfig.clear();
+            localConfigBag.clear();
+            ownConfig.putAll(vals);
+            localConfigBag.putAll(vals);
         }
+        onModified();
+    }
+
+    /**
+     * To be called when the entity's parent changes. Inherited config is looked up through the parent when
+     * needed, so this just discards memoized lookups (here and in descendants).
+     */
+    public void refreshInheritedConfig() {
+        onModified();
     }
     
-    private Map<ConfigKey<?>, ?> filterUninheritable(Map<ConfigKey<?>, ?> vals) {
-        Map<ConfigKey<?>, Object> result = Maps.newLinkedHashMap();
-        for (Map.Entry<ConfigKey<?>, ?> entry : vals.entrySet()) {
-            if (isInherited(entry.getKey())) {
-                result.put(entry.getKey(), entry.getValue());
-            }
-        }
-        return result;
+    /**
+     * @deprecated since 0.7.0; inherited config is now looked up through the parent, rather than copied;
+     *             this is equivalent to {@link #refreshInheritedConfig()}, ignoring the given values
+     */
+    @Deprecated
+    public void setInheritedConfig(Map<ConfigKey<?>, ?> vals, ConfigBag configBagVals) {
+        refreshInheritedConfig();
     }
     
     public void addToLocalBag(Map<String,?> vals) {
-        localConfigBag.putAll(vals);
-        // quick fix for problem that ownConfig can get out of synch
-        ownConfig.putAll(localConfigBag.getAllConfigAsConfigKeyMap());
+        synchronized (ownConfig) {
+            localConfigBag.putAll(vals);
+            // quick fix for problem that ownConfig can get out of synch
+            ownConfig.putAll(localConfigBag.getAllConfigAsConfigKeyMap());
+        }
+        onModified();
     }
 
+    /**
+     * @deprecated since 0.7.0; inherited config is now looked up through the parent, rather than copied;
+     *             this is equivalent to {@link #refreshInheritedConfig()}
+     */
+    @Deprecated
     public void clearInheritedConfig() {
-        inheritedConfig.clear();
-        inheritedConfigBag.clear();
+        refreshInheritedConfig();
     }
 
     @Override
     public EntityConfigMap submap(Predicate<ConfigKey<?>> filter) {
-        EntityConfigMap m = new EntityConfigMap(entity, Maps.<ConfigKey<?>, Object>newLinkedHashMap());
+        Map<ConfigKey<?>,Object> inheritedConfig = Maps.newLinkedHashMap();
+        collectInheritedConfig(inheritedConfig, Maps.<String,Object>newLinkedHashMap());
+        EntityConfigMap m = new EntityConfigMap(entity, Maps.<ConfigKey<?>, Object>newLinkedHashMap(), Maps.<ConfigKey<?>, Object>newLinkedHashMap());
         for (Map.Entry<ConfigKey<?>,Object> entry: inheritedConfig.entrySet())
             if (filter.apply(entry.getKey()))
-                m.inheritedConfig.put(entry.getKey(), entry.getValue());
-        for (Map.Entry<ConfigKey<?>,Object> entry: ownConfig.entrySet())
+                m.detachedInheritedConfig.put(entry.getKey(), entry.getValue());
+        for (Map.Entry<ConfigKey<?>,Object> entry: copyOwnConfig().entrySet())
             if (filter.apply(entry.getKey()))
                 m.ownConfig.put(entry.getKey(), entry.getValue());
         return m;
@@ -331,7 +585,9 @@ public class EntityConfigMap implements ConfigMap {
 
     @Override
     public String toString() {
-        return super.toString()+"[own="+Entities.sanitize(ownConfig)+"; inherited="+Entities.sanitize(inheritedConfig)+"]";
+        Map<ConfigKey<?>,Object> inheritedConfig = Maps.newLinkedHashMap();
+        collectInheritedConfig(inheritedConfig, Maps.<String,Object>newLinkedHashMap());
+        return super.toString()+"[own="+Entities.sanitize(copyOwnConfig())+"; inherited="+Entities.sanitize(inheritedConfig)+"]";
     }
     
     public Map<String,Object> asMapWithStringKeys() {
@@ -340,12 +596,34 @@ public class EntityConfigMap implements ConfigMap {
 
     @Override
     public int size() {
-        return ownConfig.size() + inheritedConfig.size();
+        Map<ConfigKey<?>,Object> inheritedConfig = Maps.newLinkedHashMap();
+        collectInheritedConfig(inheritedConfig, Maps.<String,Object>newLinkedHashMap());
+        return copyOwnConfig().size() + inheritedConfig.size();
     }
 
+    /** as {@code size() == 0}, but stops at the first value found, rather than collecting all inherited config */
     @Override
     public boolean isEmpty() {
-        return ownConfig.isEmpty() && inheritedConfig.isEmpty();
+        if (getOwnConfigSize() > 0) return false;
+        if (detachedInheritedConfig != null) return detachedInheritedConfig.isEmpty();
+        for (EntityConfigMap ancestor = getParentConfigMap(); ancestor != null; ancestor = ancestor.getParentConfigMap()) {
+            for (ConfigKey<?> key : ancestor.copyOwnConfig().keySet()) {
+                if (isInherited(key)) return false;
+            }
+            for (String name : ancestor.localConfigBag.getAllConfig().keySet()) {
+                if (ancestor.containsKeyNamed(name)) continue;
+                ConfigKey<?> key = getRenamedConfigKeys().get(name);
+                if (key == null) key = entity.getEntityType().getConfigKey(name);
+                if (key != null && isInherited(key)) return false;
+            }
+        }
+        return true;
+    }
+
+    private int getOwnConfigSize() {
+        synchronized (ownConfig) {
+            return ownConfig.size();
+        }
     }
     
 }
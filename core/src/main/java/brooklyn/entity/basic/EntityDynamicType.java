@@ -30,6 +30,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.basic.BrooklynDynamicType;
+import brooklyn.basic.BrooklynTypeDescriptor;
 import brooklyn.config.ConfigKey.HasConfigKey;
 import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
@@ -77,12 +78,13 @@ public class EntityDynamicType extends BrooklynDynamicType<Entity, AbstractEntit
     private EntityDynamicType(Class<? extends Entity> clazz, AbstractEntity entity) {
         super(clazz, entity);
         String id = entity==null ? clazz.getName() : entity.getId();
+        BrooklynTypeDescriptor descriptor = BrooklynTypeDescriptor.of(clazz);
         
-        effectors.putAll(findEffectors(clazz, null));
+        effectors.putAll(descriptor.getEffectors());
         if (LOG.isTraceEnabled())
             LOG.trace("Entity {} effectors: {}", id, Joiner.on(", ").join(effectors.keySet()));
         
-        sensors.putAll(findSensors(clazz, null));
+        sensors.putAll(descriptor.getSensors());
         if (LOG.isTraceEnabled())
             LOG.trace("Entity {} sensors: {}", id, Joiner.on(", ").join(sensors.keySet()));
         
@@ -218,6 +220,7 @@ public class EntityDynamicType extends BrooklynDynamicType<Entity, AbstractEntit
     
     /**
      * Finds the effectors defined on the entity's class, statics and optionally any non-static (discouraged).
+     * For those of a class without an instance, prefer {@link BrooklynTypeDescriptor#of(Class)}, which is cached.
      */
     public static Map<String,Effector<?>> findEffectors(Class<? extends Entity> clazz, Entity optionalEntity) {
         try {
@@ -282,6 +285,7 @@ public class EntityDynamicType extends BrooklynDynamicType<Entity, AbstractEntit
 
     /**
      * Finds the sensors defined on the entity's class, statics and optionally any non-static (discouraged).
+     * For those of a class without an instance, prefer {@link BrooklynTypeDescriptor#of(Class)}, which is cached.
      */
     public static Map<String,Sensor<?>> findSensors(Class<? extends Entity> clazz, Entity optionalEntity) {
         try {
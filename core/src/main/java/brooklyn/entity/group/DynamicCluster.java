@@ -166,6 +166,55 @@ public interface DynamicCluster extends AbstractGroup, Cluster, MemberReplaceabl
             new TypeToken<Set<Location>>() {},
             "dynamiccluster.failedSubLocations", "Sub locations that seem to have failed");
 
+    @Beta
+    @SetFromFlag("maxConcurrentProvisioning")
+    ConfigKey<Integer> PROVISIONING_MAX_CONCURRENT = ConfigKeys.newIntegerConfigKey(
+            "dynamiccluster.provisioning.maxConcurrent",
+            "Maximum number of members being started at once when growing the cluster (if <= 0, then unlimited)",
+            0);
+
+    @Beta
+    @SetFromFlag("provisioningRate")
+    ConfigKey<Double> PROVISIONING_RATE = ConfigKeys.newDoubleConfigKey(
+            "dynamiccluster.provisioning.rate",
+            "Maximum rate, in members per second, at which member starts are issued when growing the cluster (if <= 0, then unlimited)",
+            0d);
+
+    @Beta
+    @SetFromFlag("provisioningBurst")
+    ConfigKey<Integer> PROVISIONING_BURST = ConfigKeys.newIntegerConfigKey(
+            "dynamiccluster.provisioning.burst",
+            "Number of member starts that can be issued at once, ignoring the provisioning rate, after a quiet period",
+            1);
+
+    @Beta
+    @SetFromFlag("provisioningBatchSize")
+    ConfigKey<Integer> PROVISIONING_BATCH_SIZE = ConfigKeys.newIntegerConfigKey(
+            "dynamiccluster.provisioning.batchSize",
+            "Number of members to create and start in each batch when growing the cluster; "
+                    + "if every member of a batch fails then the remaining batches are abandoned (if <= 0, then all in one batch)",
+            0);
+
+    @Beta
+    AttributeSensor<Duration> PROVISIONING_CREATE_TIME = Sensors.newSensor(Duration.class,
+            "dynamiccluster.provisioning.createTime", "Mean time to create each member added by the last resize");
+
+    @Beta
+    AttributeSensor<Duration> PROVISIONING_PROVISION_TIME = Sensors.newSensor(Duration.class,
+            "dynamiccluster.provisioning.provisionTime", "Mean time to provision a machine for each member added by the last resize");
+
+    @Beta
+    AttributeSensor<Duration> PROVISIONING_INSTALL_TIME = Sensors.newSensor(Duration.class,
+            "dynamiccluster.provisioning.installTime", "Mean time to install each member added by the last resize");
+
+    @Beta
+    AttributeSensor<Duration> PROVISIONING_LAUNCH_TIME = Sensors.newSensor(Duration.class,
+            "dynamiccluster.provisioning.launchTime", "Mean time to launch each member added by the last resize");
+
+    @Beta
+    AttributeSensor<Duration> PROVISIONING_START_TIME = Sensors.newSensor(Duration.class,
+            "dynamiccluster.provisioning.startTime", "Mean time to start each member added by the last resize, including waiting for its turn");
+
     AttributeSensor<Boolean> CLUSTER_MEMBER = Sensors.newBooleanSensor(
             "cluster.member", "Set on an entity if it is a member of a cluster");
 
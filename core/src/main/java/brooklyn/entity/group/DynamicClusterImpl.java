@@ -26,7 +26,11 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
@@ -49,9 +53,11 @@ import brooklyn.entity.effector.Effectors;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.entity.trait.Startable;
 import brooklyn.entity.trait.StartableMethods;
+import brooklyn.event.AttributeSensor;
 import brooklyn.location.Location;
 import brooklyn.location.basic.Locations;
 import brooklyn.location.cloud.AvailabilityZoneExtension;
+import brooklyn.management.HasTaskChildren;
 import brooklyn.management.Task;
 import brooklyn.policy.Policy;
 import brooklyn.util.collections.MutableList;
@@ -64,13 +70,16 @@ import brooklyn.util.javalang.JavaClassNames;
 import brooklyn.util.javalang.Reflections;
 import brooklyn.util.task.DynamicTasks;
 import brooklyn.util.task.TaskTags;
+import brooklyn.util.task.TokenBucket;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.text.StringPredicates;
 import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -80,6 +89,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * A cluster of entities that can dynamically increase or decrease the number of entities.
@@ -128,6 +138,8 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
      */
     protected final Object mutex = new Object[0];
 
+    private transient TokenBucket provisioningRateLimiter;
+
     private static final Function<Collection<Entity>, Entity> defaultRemovalStrategy = new Function<Collection<Entity>, Entity>() {
         @Override public Entity apply(Collection<Entity> contenders) {
             // choose newest entity that is stoppable
@@ -631,12 +643,56 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
     }
 
     protected ReferenceWithError<Collection<Entity>> addInEachLocation(Iterable<Location> locations, Map<?,?> flags) {
+        List<Location> locs = ImmutableList.copyOf(locations);
+        Integer batchSize = getConfig(PROVISIONING_BATCH_SIZE);
+        if (batchSize == null || batchSize <= 0) batchSize = Math.max(1, locs.size());
+        Integer maxConcurrent = getConfig(PROVISIONING_MAX_CONCURRENT);
+        if (maxConcurrent == null || maxConcurrent <= 0) maxConcurrent = null;
+        ProvisioningTimings timings = new ProvisioningTimings();
+
+        List<Entity> result = Lists.newArrayList();
+        List<Throwable> errors = Lists.newArrayList();
+        List<List<Location>> batches = Lists.partition(locs, batchSize);
+        for (int i = 0; i < batches.size(); i++) {
+            List<Location> batch = batches.get(i);
+            Map<Entity, Throwable> batchErrors = addBatchInEachLocation(batch, flags, maxConcurrent, timings, result);
+            errors.addAll(batchErrors.values());
+
+            if (batchErrors.size() == batch.size() && i < batches.size() - 1) {
+                int abandoned = locs.size() - (i + 1) * batchSize;
+                LOG.warn("In {}, all {} members of batch {} of {} failed to start; abandoning the remaining {} members",
+                        new Object[] {this, batch.size(), i + 1, batches.size(), abandoned});
+                errors.add(new IllegalStateException("Abandoned adding "+abandoned+" member"+Strings.s(abandoned)+" to "+this
+                        +", because all members of the previous batch failed to start"));
+                break;
+            }
+        }
+        timings.publish();
+
+        if (!errors.isEmpty()) {
+            return ReferenceWithError.<Collection<Entity>>newInstanceMaskingError(result, Exceptions.create(errors));
+        }
+        return ReferenceWithError.<Collection<Entity>>newInstanceWithoutError(result);
+    }
+
+    /**
+     * Creates and starts a member in each of the given locations, adding the successfully started members
+     * to {@code result}; members that fail are quarantined or removed.
+     *
+     * @param maxConcurrent if non-null, the most members to be starting at once
+     * @return the errors of members that failed to start
+     */
+    private Map<Entity, Throwable> addBatchInEachLocation(List<Location> locations, Map<?,?> flags, @Nullable Integer maxConcurrent,
+            ProvisioningTimings timings, List<Entity> result) {
         List<Entity> addedEntities = Lists.newArrayList();
         Map<Entity, Location> addedEntityLocations = Maps.newLinkedHashMap();
-        Map<Entity, Task<?>> tasks = Maps.newLinkedHashMap();
+        Map<Entity, Task<Void>> tasks = Maps.newLinkedHashMap();
+        TokenBucket rateLimiter = getProvisioningRateLimiter();
 
         for (Location loc : locations) {
+            Stopwatch stopwatch = Stopwatch.createStarted();
             Entity entity = addNode(loc, flags);
+            timings.record(PROVISIONING_CREATE_TIME, stopwatch.elapsed(TimeUnit.MILLISECONDS));
             addedEntities.add(entity);
             addedEntityLocations.put(entity, loc);
             Map<String, ?> args = ImmutableMap.of("locations", ImmutableList.of(loc));
@@ -644,11 +700,23 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
             tasks.put(entity, task);
         }
 
-        Task<List<?>> parallel = Tasks.parallel("starting "+tasks.size()+" node"+Strings.s(tasks.size())+" (parallel)", tasks.values());
-        TaskTags.markInessential(parallel);
-        DynamicTasks.queueIfPossible(parallel).orSubmitAsync(this);
+        long queuedUtc = System.currentTimeMillis();
+        Task<?> starting;
+        if (maxConcurrent == null && rateLimiter == null) {
+            starting = Tasks.parallel("starting "+tasks.size()+" node"+Strings.s(tasks.size())+" (parallel)", tasks.values());
+        } else {
+            starting = throttledStarts(tasks.values(), maxConcurrent, rateLimiter);
+        }
+        TaskTags.markInessential(starting);
+        DynamicTasks.queueIfPossible(starting).orSubmitAsync(this);
         Map<Entity, Throwable> errors = waitForTasksOnEntityStart(tasks);
 
+        for (Entity entity : addedEntities) {
+            if (!errors.containsKey(entity)) {
+                timings.recordStart(queuedUtc, tasks.get(entity));
+            }
+        }
+
         // if tracking, then report success/fail to the ZoneFailureDetector
         if (isAvailabilityZoneEnabled()) {
             for (Map.Entry<Entity, Location> entry : addedEntityLocations.entrySet()) {
@@ -663,10 +731,10 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
             }
         }
         
-        Collection<Entity> result = MutableList.<Entity> builder()
+        result.addAll(MutableList.<Entity> builder()
             .addAll(addedEntities)
             .removeAll(errors.keySet())
-            .build();
+            .build());
 
         // quarantine/cleanup as necessary
         if (!errors.isEmpty()) {
@@ -675,10 +743,64 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
             } else {
                 cleanupFailedNodes(errors.keySet());
             }
-            return ReferenceWithError.newInstanceMaskingError(result, Exceptions.create(errors.values()));
         }
+        return errors;
+    }
 
-        return ReferenceWithError.newInstanceWithoutError(result);
+    /**
+     * Submits the members' start tasks in order, as the rate limiter allows and launching the next pending
+     * start only as one finishes when there are already {@code maxConcurrent} running; so only this task waits,
+     * rather than a thread per pending member. Starts not submitted (e.g. if this is cancelled) are cancelled.
+     */
+    private Task<Void> throttledStarts(final Collection<Task<Void>> starts, @Nullable final Integer maxConcurrent, @Nullable final TokenBucket rateLimiter) {
+        return Tasks.<Void>builder().dynamic(false)
+                .name("starting "+starts.size()+" node"+Strings.s(starts.size())+" (throttled)")
+                .body(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        final Semaphore running = (maxConcurrent != null) ? new Semaphore(maxConcurrent) : null;
+                        Runnable onFinished = new Runnable() {
+                            @Override public void run() {
+                                running.release();
+                            }
+                        };
+                        Queue<Task<Void>> pending = Lists.newLinkedList(starts);
+                        try {
+                            while (!pending.isEmpty()) {
+                                if (running != null) running.acquire();
+                                if (rateLimiter != null) rateLimiter.acquire();
+                                Task<Void> start = pending.peek();
+                                if (running != null) start.addListener(onFinished, MoreExecutors.sameThreadExecutor());
+                                Entities.submit(DynamicClusterImpl.this, start);
+                                pending.remove();
+                            }
+                        } finally {
+                            // so that those waiting on the members' starts are not left waiting
+                            for (Task<Void> start : pending) {
+                                start.cancel(true);
+                            }
+                        }
+                        return null;
+                    }
+                }).build();
+    }
+
+    /**
+     * The rate limiter for starting members, shared by successive resizes so that frequent small resizes
+     * are also limited; null if {@link #PROVISIONING_RATE} is not set.
+     */
+    protected synchronized TokenBucket getProvisioningRateLimiter() {
+        Double rate = getConfig(PROVISIONING_RATE);
+        Integer burst = getConfig(PROVISIONING_BURST);
+        if (rate == null || rate <= 0) {
+            provisioningRateLimiter = null;
+        } else {
+            burst = (burst == null || burst <= 0) ? 1 : burst;
+            if (provisioningRateLimiter == null || provisioningRateLimiter.getPermitsPerSecond() != rate || provisioningRateLimiter.getBurst() != burst) {
+                provisioningRateLimiter = new TokenBucket(rate, burst);
+            }
+        }
+        return provisioningRateLimiter;
     }
 
     protected void quarantineFailedNodes(Collection<Entity> failedEntities) {
@@ -850,4 +972,66 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
             Entities.unmanage(member);
         }
     }
+
+    /**
+     * Collects the time taken by each phase of adding members, publishing the mean of each as a sensor.
+     * The provision, install and launch phases are found by name in the member's start task tree
+     * (as named by software processes); members whose start has no such tasks do not count towards them.
+     */
+    private class ProvisioningTimings {
+        private final Map<AttributeSensor<Duration>, long[]> totals = Maps.newLinkedHashMap();
+
+        void record(AttributeSensor<Duration> phase, long millis) {
+            long[] total = totals.get(phase);
+            if (total == null) {
+                total = new long[2];
+                totals.put(phase, total);
+            }
+            total[0] += millis;
+            total[1]++;
+        }
+
+        /** records the member's start, timed from when it was queued (so including waiting for its turn) */
+        void recordStart(long queuedUtc, Task<?> start) {
+            long ended = start.getEndTimeUtc();
+            if (ended >= queuedUtc) {
+                record(PROVISIONING_START_TIME, ended - queuedUtc);
+            }
+            recordPhases(start);
+        }
+
+        private void recordPhases(Task<?> task) {
+            String name = String.valueOf(task.getDisplayName());
+            if (name.startsWith("provisioning")) {
+                recordTask(PROVISIONING_PROVISION_TIME, task);
+                return;
+            } else if (name.equals("install")) {
+                recordTask(PROVISIONING_INSTALL_TIME, task);
+                return;
+            } else if (name.equals("launch")) {
+                recordTask(PROVISIONING_LAUNCH_TIME, task);
+                return;
+            }
+            if (task instanceof HasTaskChildren) {
+                for (Task<?> child : ((HasTaskChildren) task).getChildren()) {
+                    recordPhases(child);
+                }
+            }
+        }
+
+        private void recordTask(AttributeSensor<Duration> phase, Task<?> task) {
+            long started = task.getStartTimeUtc();
+            long ended = task.getEndTimeUtc();
+            if (started >= 0 && ended >= started) {
+                record(phase, ended - started);
+            }
+        }
+
+        void publish() {
+            for (Map.Entry<AttributeSensor<Duration>, long[]> entry : totals.entrySet()) {
+                long[] total = entry.getValue();
+                setAttribute(entry.getKey(), Duration.millis(total[0] / total[1]));
+            }
+        }
+    }
 }
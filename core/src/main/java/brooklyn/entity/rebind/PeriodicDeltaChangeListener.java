@@ -20,6 +20,7 @@ package brooklyn.entity.rebind;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Semaphore;
@@ -33,12 +34,17 @@ import org.slf4j.LoggerFactory;
 import brooklyn.basic.BrooklynObject;
 import brooklyn.basic.BrooklynObjectInternal;
 import brooklyn.catalog.CatalogItem;
+import brooklyn.config.ConfigKey;
 import brooklyn.entity.Entity;
 import brooklyn.entity.Feed;
 import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.rebind.dto.EntityMementoChange;
+import brooklyn.entity.rebind.dto.MementosGenerators;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
 import brooklyn.entity.rebind.persister.BrooklynPersistenceUtils;
 import brooklyn.entity.rebind.persister.PersistenceActivityMetrics;
+import brooklyn.event.AttributeSensor;
 import brooklyn.internal.BrooklynFeatureEnablement;
 import brooklyn.location.Location;
 import brooklyn.management.ExecutionContext;
@@ -60,6 +66,7 @@ import com.google.common.collect.Lists;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -75,7 +82,7 @@ import com.google.common.collect.Sets;
  * @author aled
  *
  */
-public class PeriodicDeltaChangeListener implements ChangeListener {
+public class PeriodicDeltaChangeListener implements EntityFieldChangeListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(PeriodicDeltaChangeListener.class);
 
@@ -94,10 +101,13 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         private Set<String> removedFeedIds = Sets.newLinkedHashSet();
         private Set<String> removedCatalogItemIds = Sets.newLinkedHashSet();
 
+        /** entities where only attributes and/or config have changed; ignored for those also in {@link #entities} */
+        private Map<Entity, FieldChanges> entityFieldChanges = Maps.newLinkedHashMap();
+
         public boolean isEmpty() {
             return locations.isEmpty() && entities.isEmpty() && policies.isEmpty() && 
                     enrichers.isEmpty() && feeds.isEmpty() &&
-                    catalogItems.isEmpty() &&
+                    catalogItems.isEmpty() && entityFieldChanges.isEmpty() &&
                     removedEntityIds.isEmpty() && removedLocationIds.isEmpty() && removedPolicyIds.isEmpty() && 
                     removedEnricherIds.isEmpty() && removedFeedIds.isEmpty() &&
                     removedCatalogItemIds.isEmpty();
@@ -118,9 +128,27 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             }
         }
 
+        public void addAttribute(Entity entity, AttributeSensor<?> attribute) {
+            if (!entities.contains(entity)) getFieldChanges(entity).attributes.add(attribute);
+        }
+
+        public void addConfig(Entity entity, ConfigKey<?> key) {
+            if (!entities.contains(entity)) getFieldChanges(entity).config.add(key);
+        }
+
+        private FieldChanges getFieldChanges(Entity entity) {
+            FieldChanges result = entityFieldChanges.get(entity);
+            if (result == null) {
+                result = new FieldChanges();
+                entityFieldChanges.put(entity, result);
+            }
+            return result;
+        }
+
         public void remove(BrooklynObject instance) {
             BrooklynObjectType type = BrooklynObjectType.of(instance);
             getUnsafeCollectionOfType(type).remove(instance);
+            entityFieldChanges.remove(instance);
             getRemovedIdsOfType(type).add(instance.getId());
         }
 
@@ -156,6 +184,11 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         }
 
     }
+
+    private static class FieldChanges {
+        private Set<AttributeSensor<?>> attributes = Sets.newLinkedHashSet();
+        private Set<ConfigKey<?>> config = Sets.newLinkedHashSet();
+    }
     
     private final ExecutionContext executionContext;
     
@@ -178,6 +211,15 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     private final boolean persistPoliciesEnabled;
     private final boolean persistEnrichersEnabled;
     private final boolean persistFeedsEnabled;
+
+    /** see {@link BrooklynMementoPersisterToObjectStore#getMaxEntityChanges()}; if 0, attribute and config changes persist the whole entity */
+    private final int maxEntityChanges;
+
+    /**
+     * Number of changes appended for each entity since we last persisted its whole memento;
+     * only entities persisted in full since we were started can have changes appended.
+     */
+    private final Map<String, Integer> entityChangeCounts = Maps.newConcurrentMap();
     
     private final Semaphore persistingMutex = new Semaphore(1);
     private final Object startMutex = new Object();
@@ -194,6 +236,8 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         this.persistPoliciesEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_POLICY_PERSISTENCE_PROPERTY);
         this.persistEnrichersEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_ENRICHER_PERSISTENCE_PROPERTY);
         this.persistFeedsEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_FEED_PERSISTENCE_PROPERTY);
+        this.maxEntityChanges = (persister instanceof BrooklynMementoPersisterToObjectStore) 
+                ? ((BrooklynMementoPersisterToObjectStore)persister).getMaxEntityChanges() : 0;
     }
     
     @SuppressWarnings("unchecked")
@@ -205,6 +249,8 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             }
             stopped = false;
             running = true;
+            // the store may have been written by others since we last wrote to it
+            entityChangeCounts.clear();
 
             Callable<Task<?>> taskFactory = new Callable<Task<?>>() {
                 @Override public Task<Void> call() {
@@ -272,6 +318,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         synchronized (this) {
             deltaCollector = new DeltaCollector();
         }
+        entityChangeCounts.clear();
     }
     
     /**
@@ -346,6 +393,38 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             deltaCollector.addIfNotRemoved(instance);
         }
     }
+
+    /**
+     * Generates the changes for entities where only attributes and config have changed.
+     * Entities which cannot have changes appended (because we have not yet persisted them in full,
+     * or because they have had {@link #maxEntityChanges} since then, in which case they are now compacted)
+     * are added to those to be persisted in full.
+     */
+    private List<EntityMementoChange> generateEntityChanges(DeltaCollector deltaCollector) {
+        List<EntityMementoChange> result = Lists.newArrayList();
+        for (Map.Entry<Entity, FieldChanges> entry : deltaCollector.entityFieldChanges.entrySet()) {
+            Entity entity = entry.getKey();
+            if (deltaCollector.entities.contains(entity)) continue;
+            
+            Integer count = entityChangeCounts.get(entity.getId());
+            EntityMementoChange change = null;
+            if (count != null && count < maxEntityChanges) {
+                try {
+                    change = MementosGenerators.newEntityMementoChange(entity, entry.getValue().attributes, entry.getValue().config);
+                } catch (Exception e) {
+                    exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.ENTITY, entity, e);
+                    continue;
+                }
+            }
+            if (change != null) {
+                result.add(change);
+                entityChangeCounts.put(entity.getId(), count+1);
+            } else {
+                deltaCollector.entities.add(entity);
+            }
+        }
+        return result;
+    }
     
     @VisibleForTesting
     public void persistNow() {
@@ -366,18 +445,23 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             
             if (LOG.isDebugEnabled()) LOG.debug("Checkpointing delta of memento: "
                     + "updating entities={}, locations={}, policies={}, enrichers={}, catalog items={}; "
+                    + "changing entities={}; "
                     + "removing entities={}, locations={}, policies={}, enrichers={}, catalog items={}",
                     new Object[] {
                         limitedCountString(prevDeltaCollector.entities), limitedCountString(prevDeltaCollector.locations), limitedCountString(prevDeltaCollector.policies), limitedCountString(prevDeltaCollector.enrichers), limitedCountString(prevDeltaCollector.catalogItems), 
+                        limitedCountString(prevDeltaCollector.entityFieldChanges.keySet()),
                         limitedCountString(prevDeltaCollector.removedEntityIds), limitedCountString(prevDeltaCollector.removedLocationIds), limitedCountString(prevDeltaCollector.removedPolicyIds), limitedCountString(prevDeltaCollector.removedEnricherIds), limitedCountString(prevDeltaCollector.removedCatalogItemIds)});
 
+            List<EntityMementoChange> entityChanges = generateEntityChanges(prevDeltaCollector);
             addReferencedObjects(prevDeltaCollector);
 
             if (LOG.isTraceEnabled()) LOG.trace("Checkpointing delta of memento with references: "
                     + "updating {} entities, {} locations, {} policies, {} enrichers, {} catalog items; "
+                    + "appending {} entity changes; "
                     + "removing {} entities, {} locations, {} policies, {} enrichers, {} catalog items",
                     new Object[] {
                         prevDeltaCollector.entities.size(), prevDeltaCollector.locations.size(), prevDeltaCollector.policies.size(), prevDeltaCollector.enrichers.size(), prevDeltaCollector.catalogItems.size(),
+                        entityChanges.size(),
                         prevDeltaCollector.removedEntityIds.size(), prevDeltaCollector.removedLocationIds.size(), prevDeltaCollector.removedPolicyIds.size(), prevDeltaCollector.removedEnricherIds.size(), prevDeltaCollector.removedCatalogItemIds.size()});
 
             // Generate mementos for everything that has changed in this time period
@@ -390,14 +474,23 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                     for (BrooklynObject instance: prevDeltaCollector.getCollectionOfType(type)) {
                         try {
                             persisterDelta.add(type, ((BrooklynObjectInternal)instance).getRebindSupport().getMemento());
+                            if (type == BrooklynObjectType.ENTITY && maxEntityChanges > 0) {
+                                entityChangeCounts.put(instance.getId(), 0);
+                            }
                         } catch (Exception e) {
                             exceptionHandler.onGenerateMementoFailed(type, instance, e);
                         }
                     }
                 }
+                for (EntityMementoChange change : entityChanges) {
+                    persisterDelta.addEntityChange(change);
+                }
                 for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
                     persisterDelta.removed(type, prevDeltaCollector.getRemovedIdsOfType(type));
                 }
+                for (String id : prevDeltaCollector.removedEntityIds) {
+                    entityChangeCounts.remove(id);
+                }
 
                 /*
                  * Need to guarantee "happens before", with any thread that subsequently reads
@@ -468,6 +561,30 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             deltaCollector.add(instance);
         }
     }
+
+    @Override
+    public synchronized void onAttributeChanged(Entity entity, AttributeSensor<?> attribute) {
+        if (LOG.isTraceEnabled()) LOG.trace("onAttributeChanged: {} {}", entity, attribute);
+        if (!isStopped()) {
+            if (maxEntityChanges > 0) {
+                deltaCollector.addAttribute(entity, attribute);
+            } else {
+                deltaCollector.add(entity);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onConfigChanged(Entity entity, ConfigKey<?> key) {
+        if (LOG.isTraceEnabled()) LOG.trace("onConfigChanged: {} {}", entity, key);
+        if (!isStopped()) {
+            if (maxEntityChanges > 0) {
+                deltaCollector.addConfig(entity, key);
+            } else {
+                deltaCollector.add(entity);
+            }
+        }
+    }
     
     public PersistenceExceptionHandler getExceptionHandler() {
         return exceptionHandler;
@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
 
+import brooklyn.entity.rebind.dto.EntityMementoChange;
 import brooklyn.mementos.BrooklynMementoPersister.Delta;
 import brooklyn.mementos.BrooklynMementoPersister.MutableDelta;
 import brooklyn.mementos.CatalogItemMemento;
@@ -34,6 +35,7 @@ import brooklyn.mementos.PolicyMemento;
 
 import com.google.common.annotations.Beta;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 public class PersisterDeltaImpl implements Delta, MutableDelta {
@@ -54,6 +56,8 @@ public class PersisterDeltaImpl implements Delta, MutableDelta {
     Collection <String> removedFeedIds = Sets.newLinkedHashSet();
     Collection<String> removedCatalogItemIds = Sets.newLinkedHashSet();
 
+    Collection<EntityMementoChange> entityChanges = Lists.newArrayList();
+
     @Override
     public Collection<LocationMemento> locations() {
         return Collections.unmodifiableCollection(locations);
@@ -170,4 +174,15 @@ public class PersisterDeltaImpl implements Delta, MutableDelta {
         getRemovedIdsOfTypeMutable(type).addAll(removedIdsOfType);    
     }
 
+    /** changes to be appended to the persisted state of entities, rather than rewriting their whole memento */
+    @Beta
+    public Collection<EntityMementoChange> entityChanges() {
+        return Collections.unmodifiableCollection(entityChanges);
+    }
+
+    @Beta
+    public void addEntityChange(EntityMementoChange change) {
+        entityChanges.add(change);
+    }
+
 }
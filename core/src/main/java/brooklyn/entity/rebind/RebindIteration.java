@@ -171,6 +171,9 @@ public class RebindIteration {
     // set on run start
     
     private Stopwatch timer;
+    /** time taken by each step of the rebind, recorded as each completes, in order */
+    private final Map<String,Duration> phaseDurations = MutableMap.of();
+    private Stopwatch phaseTimer;
     /** phase is used to ensure our steps are run as we've expected, and documented (in javadoc at top).
      * it's worth the extra effort due to the complication and the subtleties. */
     private int phase = 0;
@@ -237,14 +240,23 @@ public class RebindIteration {
            public Void call() throws Exception {
                
                loadManifestFiles();
+               notePhaseComplete("loadManifests");
                rebuildCatalog();
+               notePhaseComplete("rebuildCatalog");
                instantiateLocationsAndEntities();
+               notePhaseComplete("instantiateLocationsAndEntities");
                instantiateMementos();
+               notePhaseComplete("loadMementos");
                instantiateAdjuncts(instantiator); 
+               notePhaseComplete("instantiateAdjuncts");
                reconstructEverything();
+               notePhaseComplete("reconstruct");
                associateAdjunctsWithEntities();
+               notePhaseComplete("associateAdjuncts");
                manageTheObjects();
+               notePhaseComplete("manage");
                finishingUp();
+               notePhaseComplete("finishingUp");
                
                return null;
            }
@@ -264,6 +276,7 @@ public class RebindIteration {
                 readOnlyRebindCount.incrementAndGet();
 
             timer = Stopwatch.createStarted();
+            phaseTimer = Stopwatch.createStarted();
             exceptionHandler.onStart(rebindContext);
 
             target.call();
@@ -271,10 +284,13 @@ public class RebindIteration {
             exceptionHandler.onDone();
             
             rebindMetrics.noteSuccess(Duration.of(timer));
+            rebindMetrics.notePhaseDurations(phaseDurations);
             noteErrors(exceptionHandler, null);
             
         } catch (Exception e) {
             rebindMetrics.noteFailure(Duration.of(timer));
+            // phases which completed before the failure
+            rebindMetrics.notePhaseDurations(phaseDurations);
             
             Exceptions.propagateIfFatal(e);
             noteErrors(exceptionHandler, e);
@@ -286,6 +302,13 @@ public class RebindIteration {
         }
     }
     
+    protected void notePhaseComplete(String name) {
+        Duration duration = Duration.of(phaseTimer);
+        phaseDurations.put(name, duration);
+        logRebindingDebug("Rebind phase {} complete in {}", name, duration);
+        phaseTimer = Stopwatch.createStarted();
+    }
+
     protected void checkEnteringPhase(int targetPhase) {
         phase++;
         checkContinuingPhase(targetPhase);
@@ -308,7 +331,11 @@ public class RebindIteration {
         if (mementoRawData!=null || mementoManifest!=null)
             throw new IllegalStateException("Memento data is already set");
         
-        mementoRawData = persistenceStoreAccess.loadMementoRawData(exceptionHandler);
+        if (!rebindManager.isRebindStreaming()) {
+            mementoRawData = persistenceStoreAccess.loadMementoRawData(exceptionHandler);
+        }
+        // if streaming, the raw data is left null, so the persister reads each item in parallel as it parses it,
+        // rather than holding the whole persisted state in memory; it is re-read when loading the mementos
         mementoManifest = persistenceStoreAccess.loadMementoManifest(mementoRawData, exceptionHandler);
 
         determineStateFromManifestFiles();
@@ -459,6 +486,8 @@ public class RebindIteration {
         checkEnteringPhase(4);
         
         memento = persistenceStoreAccess.loadMemento(mementoRawData, lookupContext, exceptionHandler);
+        // not needed after this, and can be large
+        mementoRawData = null;
     }
 
     private void instantiateAdjuncts(BrooklynObjectInstantiator instantiator) {
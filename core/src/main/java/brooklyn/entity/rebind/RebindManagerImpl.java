@@ -36,11 +36,13 @@ import brooklyn.config.BrooklynServerConfig;
 import brooklyn.config.ConfigKey;
 import brooklyn.enricher.basic.AbstractEnricher;
 import brooklyn.entity.Application;
+import brooklyn.entity.Entity;
 import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
 import brooklyn.entity.rebind.persister.BrooklynPersistenceUtils;
 import brooklyn.entity.rebind.persister.BrooklynPersistenceUtils.CreateBackupMode;
 import brooklyn.entity.rebind.persister.PersistenceActivityMetrics;
+import brooklyn.event.AttributeSensor;
 import brooklyn.internal.BrooklynFeatureEnablement;
 import brooklyn.management.ExecutionContext;
 import brooklyn.management.ManagementContext;
@@ -99,6 +101,14 @@ public class RebindManagerImpl implements RebindManager {
                 + "then linear regression to allow max 5% at 100 items and above", 
                 QuorumChecks.newLinearRange("[[0,-2],[10,8],[100,95],[200,190]]"));
 
+    @Beta
+    public static final ConfigKey<Boolean> REBIND_STREAMING =
+        ConfigKeys.newBooleanConfigKey("rebind.streaming",
+                "Whether to read and parse each persisted item in parallel as it is needed, "
+                + "rather than first loading the raw contents of the entire persisted state into memory; "
+                + "this bounds memory use when rebinding large estates, at the cost of reading each item more than once",
+                false);
+
     public static final Logger LOG = LoggerFactory.getLogger(RebindManagerImpl.class);
 
     private final ManagementContextInternal managementContext;
@@ -126,6 +136,7 @@ public class RebindManagerImpl implements RebindManager {
     private RebindFailureMode addPolicyFailureMode;
     private RebindFailureMode loadPolicyFailureMode;
     private QuorumCheck danglingRefsQuorumRequiredHealthy;
+    private boolean rebindStreaming;
     
     private PersistenceActivityMetrics rebindMetrics = new PersistenceActivityMetrics();
     private PersistenceActivityMetrics persistMetrics = new PersistenceActivityMetrics();
@@ -171,6 +182,7 @@ public class RebindManagerImpl implements RebindManager {
         loadPolicyFailureMode = managementContext.getConfig().getConfig(LOAD_POLICY_FAILURE_MODE);
         
         danglingRefsQuorumRequiredHealthy = managementContext.getConfig().getConfig(DANGLING_REFERENCES_MIN_REQUIRED_HEALTHY);
+        rebindStreaming = managementContext.getConfig().getConfig(REBIND_STREAMING);
 
         LOG.debug("{} initialized, settings: policies={}, enrichers={}, feeds={}, catalog={}",
                 new Object[]{this, persistPoliciesEnabled, persistEnrichersEnabled, persistFeedsEnabled, persistCatalogItemsEnabled});
@@ -199,6 +211,12 @@ public class RebindManagerImpl implements RebindManager {
         return persistenceRunning;
     }
     
+    /** @see #REBIND_STREAMING */
+    @Beta
+    public boolean isRebindStreaming() {
+        return rebindStreaming;
+    }
+
     public boolean isReadOnlyRunning() {
         return readOnlyRunning;
     }
@@ -564,7 +582,7 @@ public class RebindManagerImpl implements RebindManager {
      * failed to persist, and we'd expect other threads to throw the OutOfMemoryError so
      * we shouldn't lose anything.
      */
-    private static class SafeChangeListener implements ChangeListener {
+    private static class SafeChangeListener implements EntityFieldChangeListener {
         private final ChangeListener delegate;
         
         public SafeChangeListener(ChangeListener delegate) {
@@ -597,6 +615,32 @@ public class RebindManagerImpl implements RebindManager {
                 LOG.error("Error persisting mememento onUnmanaged("+instance+"); continuing.", t);
             }
         }
+
+        @Override
+        public void onAttributeChanged(Entity entity, AttributeSensor<?> attribute) {
+            try {
+                if (delegate instanceof EntityFieldChangeListener) {
+                    ((EntityFieldChangeListener)delegate).onAttributeChanged(entity, attribute);
+                } else {
+                    delegate.onChanged(entity);
+                }
+            } catch (Throwable t) {
+                LOG.error("Error persisting mememento onAttributeChanged("+entity+", "+attribute+"); continuing.", t);
+            }
+        }
+
+        @Override
+        public void onConfigChanged(Entity entity, ConfigKey<?> key) {
+            try {
+                if (delegate instanceof EntityFieldChangeListener) {
+                    ((EntityFieldChangeListener)delegate).onConfigChanged(entity, key);
+                } else {
+                    delegate.onChanged(entity);
+                }
+            } catch (Throwable t) {
+                LOG.error("Error persisting mememento onConfigChanged("+entity+", "+key+"); continuing.", t);
+            }
+        }
     }
 
     public int getReadOnlyRebindCount() {
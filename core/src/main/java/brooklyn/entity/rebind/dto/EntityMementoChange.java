@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.dto;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.event.AttributeSensor;
+import brooklyn.mementos.EntityMemento;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A change to the attributes and/or config of an entity, recorded after its (base) {@link EntityMemento}
+ * was persisted, so that the whole memento does not have to be rewritten each time an attribute changes.
+ * <p>
+ * The changed values are held in a partial {@link EntityMemento}, containing only those attributes and config,
+ * so they are serialized (and their keys resolved on deserialization) exactly as in the full memento.
+ *
+ * @see MementosGenerators#newEntityMementoChange(brooklyn.entity.Entity, Collection, Collection)
+ */
+@Beta
+public class EntityMementoChange implements Serializable {
+
+    private static final long serialVersionUID = -2440593466346367373L;
+
+    private String id;
+    private EntityMemento changed;
+    private List<String> removedAttributes;
+
+    @SuppressWarnings("unused") // For deserialisation
+    private EntityMementoChange() {}
+
+    public EntityMementoChange(EntityMemento changed, Collection<String> removedAttributes) {
+        this.changed = checkNotNull(changed, "changed");
+        this.id = changed.getId();
+        this.removedAttributes = (removedAttributes == null || removedAttributes.isEmpty()) ? null : ImmutableList.copyOf(removedAttributes);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /** a partial memento, containing just the changed attributes and config */
+    public EntityMemento getChanged() {
+        return changed;
+    }
+
+    public List<String> getRemovedAttributes() {
+        return removedAttributes == null ? Collections.<String>emptyList() : removedAttributes;
+    }
+
+    /** returns a new memento, being the given one with this change applied */
+    public EntityMemento applyTo(EntityMemento base) {
+        if (!Objects.equal(id, base.getId())) {
+            throw new IllegalArgumentException("Change for entity "+id+" cannot be applied to memento of "+base.getId());
+        }
+        BasicEntityMemento.Builder builder = BasicEntityMemento.builder().from(base);
+        for (AttributeSensor<?> key : changed.getAttributes().keySet()) {
+            removeNamed(builder.attributes, key.getName());
+        }
+        for (String name : getRemovedAttributes()) {
+            removeNamed(builder.attributes, name);
+        }
+        builder.attributes.putAll(changed.getAttributes());
+        for (ConfigKey<?> key : changed.getConfig().keySet()) {
+            removeNamed(builder.config, key.getName());
+            builder.configUnmatched.remove(key.getName());
+        }
+        builder.config.putAll(changed.getConfig());
+        return builder.build();
+    }
+
+    /* keys are matched by name, as the same key may have been deserialized as different instances */
+    private static void removeNamed(Map<? extends Object, Object> map, String name) {
+        for (Iterator<? extends Object> iter = map.keySet().iterator(); iter.hasNext(); ) {
+            Object key = iter.next();
+            String keyName = (key instanceof ConfigKey) ? ((ConfigKey<?>)key).getName() : ((AttributeSensor<?>)key).getName();
+            if (name.equals(keyName)) iter.remove();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("id", id)
+                .add("attributes", changed.getAttributes().keySet())
+                .add("config", changed.getConfig().keySet())
+                .add("removedAttributes", getRemovedAttributes())
+                .toString();
+    }
+}
@@ -22,6 +22,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -61,8 +63,10 @@ import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.flags.FlagUtils;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
 
 public class MementosGenerators {
 
@@ -210,7 +214,48 @@ public class MementosGenerators {
 
         return builder;
     }
-    
+
+    /**
+     * Inspects an entity to record the current values of just the given attributes and config keys,
+     * as a change to be applied to its last persisted memento. Attributes which are no longer set are
+     * recorded as removed.
+     *
+     * @return the change, or null if the change cannot be represented in this way (e.g. local config was removed),
+     *         in which case the full memento should be generated
+     */
+    @Beta
+    public static EntityMementoChange newEntityMementoChange(Entity entityRaw, Collection<? extends AttributeSensor<?>> attributes, Collection<? extends ConfigKey<?>> configKeys) {
+        EntityInternal entity = (EntityInternal) entityRaw;
+        BasicEntityMemento.Builder builder = BasicEntityMemento.builder();
+        builder.id = entity.getId();
+        builder.type = entity.getClass().getName();
+        builder.typeClass = entity.getClass();
+
+        if (!configKeys.isEmpty()) {
+            Map<ConfigKey<?>, Object> localConfig = entity.getConfigMap().getLocalConfig();
+            for (ConfigKey<?> key : configKeys) {
+                if (!localConfig.containsKey(key)) return null;
+                builder.config.put(key, configValueToPersistable(localConfig.get(key)));
+            }
+        }
+
+        List<String> removedAttributes = Lists.newArrayList();
+        if (!attributes.isEmpty()) {
+            @SuppressWarnings("rawtypes")
+            Map<AttributeSensor, Object> allAttributes = entity.getAllAttributes();
+            for (AttributeSensor<?> key : attributes) {
+                if (key.getPersistenceMode() == SensorPersistenceMode.NONE) continue;
+                if (allAttributes.containsKey(key)) {
+                    builder.attributes.put(key, allAttributes.get(key));
+                } else {
+                    removedAttributes.add(key.getName());
+                }
+            }
+        }
+
+        return new EntityMementoChange(builder.build(), removedAttributes);
+    }
+
     public static Function<Entity, EntityMemento> entityMementoFunction() {
         return new Function<Entity,EntityMemento>() {
             @Override
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import brooklyn.mementos.BrooklynMementoPersister.LookupContext;
+
+import com.google.common.annotations.Beta;
+import com.google.common.io.BaseEncoding;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+
+/**
+ * A compact binary alternative to {@link XmlMementoSerializer}.
+ * <p>
+ * This writes exactly the same tree as the XML serializer (using the same aliases and converters,
+ * so references to entities, locations etc are still written as ids and resolved through the {@link LookupContext}),
+ * but with XStream's binary encoding, which writes each element name only once, and then compressed.
+ * As the store is text-based, the result is base64-encoded, after a header line
+ * <code>{@value #HEADER_PREFIX}<i>version</i></code>.
+ * <p>
+ * Because the tree is the same, it is as tolerant of changes to the persisted classes as the XML is,
+ * and the two forms can be converted without deserializing (see {@link #toXml(String)} and {@link #fromXml(String)}).
+ * Both this and {@link XmlMementoSerializer} read either form, detecting which it is.
+ */
+@Beta
+public class BinaryMementoSerializer<T> implements MementoSerializer<T> {
+
+    public static final String HEADER_PREFIX = "#brooklyn-binary-memento:v";
+    public static final int FORMAT_VERSION = 1;
+
+    private static final XppDriver XML_DRIVER = new XppDriver();
+
+    private final XmlMementoSerializer<T> xmlSerializer;
+
+    public BinaryMementoSerializer(ClassLoader classLoader) {
+        this(new XmlMementoSerializer<T>(classLoader));
+    }
+
+    /** uses the aliases, converters and lookup context of the given serializer */
+    public BinaryMementoSerializer(XmlMementoSerializer<T> xmlSerializer) {
+        this.xmlSerializer = checkNotNull(xmlSerializer, "xmlSerializer");
+    }
+
+    @Override
+    public String toString(T memento) {
+        BinaryOutput out = new BinaryOutput();
+        try {
+            xmlSerializer.serialize(memento, out.writer);
+            return out.finish();
+        } finally {
+            out.release();
+        }
+    }
+
+    @Override
+    public T fromString(String string) {
+        if (!isBinary(string)) return xmlSerializer.fromString(string);
+        BinaryStreamReader reader = newBinaryReader(string);
+        try {
+            return xmlSerializer.deserialize(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public void setLookupContext(LookupContext lookupContext) {
+        xmlSerializer.setLookupContext(lookupContext);
+    }
+
+    @Override
+    public void unsetLookupContext() {
+        xmlSerializer.unsetLookupContext();
+    }
+
+    /** whether the given persisted contents are in this binary form (rather than XML) */
+    public static boolean isBinary(String contents) {
+        return contents!=null && contents.startsWith(HEADER_PREFIX);
+    }
+
+    /** converts persisted contents in this binary form to the equivalent XML, without deserializing; XML is returned unchanged */
+    public static String toXml(String contents) {
+        if (!isBinary(contents)) return contents;
+        StringWriter result = new StringWriter();
+        BinaryStreamReader reader = newBinaryReader(contents);
+        try {
+            copy(reader, XML_DRIVER.createWriter(result));
+        } finally {
+            reader.close();
+        }
+        return result.toString();
+    }
+
+    /** converts persisted XML contents to the equivalent binary form, without deserializing; binary contents are returned unchanged */
+    public static String fromXml(String contents) {
+        if (contents==null || isBinary(contents)) return contents;
+        BinaryOutput out = new BinaryOutput();
+        try {
+            new HierarchicalStreamCopier().copy(XML_DRIVER.createReader(new StringReader(contents)), out.writer);
+            return out.finish();
+        } finally {
+            out.release();
+        }
+    }
+
+    private static void copy(HierarchicalStreamReader reader, HierarchicalStreamWriter writer) {
+        try {
+            new HierarchicalStreamCopier().copy(reader, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /** the binary writer writes a few bytes at a time, so is buffered ahead of the (native) compression */
+    private static class BinaryOutput {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        final BinaryStreamWriter writer = new BinaryStreamWriter(new BufferedOutputStream(new DeflaterOutputStream(bytes, deflater)));
+
+        String finish() {
+            writer.close();
+            return encode(bytes.toByteArray());
+        }
+        void release() {
+            deflater.end();
+        }
+    }
+
+    private static BinaryStreamReader newBinaryReader(String contents) {
+        int headerEnd = contents.indexOf('\n');
+        if (headerEnd < 0) throw new IllegalStateException("Invalid binary memento; no header line");
+        String version = contents.substring(HEADER_PREFIX.length(), headerEnd).trim();
+        int versionNumber;
+        try {
+            versionNumber = Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid binary memento; bad version '"+version+"'", e);
+        }
+        if (versionNumber > FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported binary memento version "+versionNumber+"; only versions up to "+FORMAT_VERSION+" supported");
+        }
+        byte[] bytes = BaseEncoding.base64().decode(contents.substring(headerEnd+1).trim());
+        // InflaterInputStream releases its inflater when closed
+        return new BinaryStreamReader(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes))));
+    }
+
+    private static String encode(byte[] bytes) {
+        return HEADER_PREFIX + FORMAT_VERSION + "\n" + BaseEncoding.base64().encode(bytes);
+    }
+}
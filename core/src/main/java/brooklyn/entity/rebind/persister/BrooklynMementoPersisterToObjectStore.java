@@ -48,8 +48,10 @@ import brooklyn.entity.rebind.PeriodicDeltaChangeListener;
 import brooklyn.entity.rebind.PersistenceExceptionHandler;
 import brooklyn.entity.rebind.PersisterDeltaImpl;
 import brooklyn.entity.rebind.RebindExceptionHandler;
+import brooklyn.entity.rebind.RebindManagerImpl;
 import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
 import brooklyn.entity.rebind.dto.BrooklynMementoManifestImpl;
+import brooklyn.entity.rebind.dto.EntityMementoChange;
 import brooklyn.entity.rebind.persister.PersistenceObjectStore.StoreObjectAccessor;
 import brooklyn.entity.rebind.persister.PersistenceObjectStore.StoreObjectAccessorWithLock;
 import brooklyn.management.classloading.ClassLoaderFromBrooklynClassLoadingContext;
@@ -58,6 +60,7 @@ import brooklyn.mementos.BrooklynMementoManifest;
 import brooklyn.mementos.BrooklynMementoPersister;
 import brooklyn.mementos.BrooklynMementoRawData;
 import brooklyn.mementos.CatalogItemMemento;
+import brooklyn.mementos.EntityMemento;
 import brooklyn.mementos.Memento;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.CompoundRuntimeException;
@@ -99,7 +102,25 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             "Maximum number of attempts to serialize a memento (e.g. if first attempts fail because of concurrent modifications of an entity)", 
             5);
 
+    @Beta
+    public static final ConfigKey<MementoFormat> PERSISTER_FORMAT = ConfigKeys.newConfigKey(MementoFormat.class,
+            "persister.format",
+            "Format in which to write mementos to this store; items in either format are read, regardless of this setting",
+            MementoFormat.XML);
+
+    @Beta
+    public static final ConfigKey<Integer> PERSISTER_MAX_ENTITY_CHANGES = ConfigKeys.newIntegerConfigKey(
+            "persister.changeLog.maxEntityChanges",
+            "Maximum number of attribute and config changes to append to an entity's persisted state (see MementoChangeLog) "
+            + "before rewriting its memento in full; 0 (the default) always rewrites the whole memento. "
+            + "Only applies to file-based persistence; object stores always rewrite the whole memento. "
+            + "Note that tools working on the raw persisted state should be given compacted state.",
+            0);
+
     private final PersistenceObjectStore objectStore;
+    private final MementoFormat format;
+    private final int maxEntityChanges;
+    private final boolean streaming;
     private final MementoSerializer<Object> serializerWithStandardClassLoader;
 
     private final Map<String, StoreObjectAccessorWithLock> writers = new LinkedHashMap<String, PersistenceObjectStore.StoreObjectAccessorWithLock>();
@@ -120,8 +141,11 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         this.objectStore = checkNotNull(objectStore, "objectStore");
         this.brooklynProperties = brooklynProperties;
         
+        this.format = brooklynProperties.getConfig(PERSISTER_FORMAT);
+        this.maxEntityChanges = supportsChangeLog(objectStore) ? brooklynProperties.getConfig(PERSISTER_MAX_ENTITY_CHANGES) : 0;
+        this.streaming = Boolean.TRUE.equals(brooklynProperties.getConfig(RebindManagerImpl.REBIND_STREAMING));
         int maxSerializationAttempts = brooklynProperties.getConfig(PERSISTER_MAX_SERIALIZATION_ATTEMPTS);
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
+        MementoSerializer<Object> rawSerializer = format.newSerializer(classLoader);
         this.serializerWithStandardClassLoader = new RetryingMementoSerializer<Object>(rawSerializer, maxSerializationAttempts);
 
         int maxThreadPoolSize = brooklynProperties.getConfig(PERSISTER_MAX_THREAD_POOL_SIZE);
@@ -155,7 +179,7 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     
     protected MementoSerializer<Object> getSerializerWithCustomClassLoader(LookupContext lookupContext, ClassLoader classLoader) {
         int maxSerializationAttempts = brooklynProperties.getConfig(PERSISTER_MAX_SERIALIZATION_ATTEMPTS);
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
+        MementoSerializer<Object> rawSerializer = format.newSerializer(classLoader);
         MementoSerializer<Object> result = new RetryingMementoSerializer<Object>(rawSerializer, maxSerializationAttempts);
         result.setLookupContext(lookupContext);
         return result;
@@ -217,6 +241,24 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         return objectStore;
     }
 
+    /**
+     * The number of {@link PersisterDeltaImpl#entityChanges()} which may be appended to an entity's persisted state
+     * before it is rewritten in full; 0 if changes are not accepted.
+     */
+    @Beta
+    public int getMaxEntityChanges() {
+        return maxEntityChanges;
+    }
+
+    /**
+     * Whether changes can be appended to items in the given store. Only file-based stores append durably and cheaply;
+     * blob stores (e.g. jclouds) append by fetching and re-uploading the whole object, which is neither cheaper than
+     * rewriting the memento nor atomic.
+     */
+    protected static boolean supportsChangeLog(PersistenceObjectStore objectStore) {
+        return objectStore instanceof FileBasedObjectStore;
+    }
+
     protected StoreObjectAccessorWithLock getWriter(String path) {
         String id = path.substring(path.lastIndexOf('/')+1);
         synchronized (writers) {
@@ -281,8 +323,10 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
                     Exceptions.propagateIfFatal(e);
                     exceptionHandler.onLoadMementoFailed(type, "memento "+id+" read error", e);
                 }
+                // raw data is always given as XML, whatever format it is stored in
+                contents = MementoFormat.XML.convert(contents);
                 
-                String xmlId = (String) XmlUtil.xpath(contents, "/"+type.toCamelCase()+"/id");
+                String xmlId = (String) XmlUtil.xpath(MementoChangeLog.getBase(contents), "/"+type.toCamelCase()+"/id");
                 String safeXmlId = Strings.makeValidFilename(xmlId);
                 if (!Objects.equal(id, safeXmlId))
                     LOG.warn("ID mismatch on "+type.toCamelCase()+", "+id+" from path, "+safeXmlId+" from xml");
@@ -313,16 +357,22 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         return loadMementoManifest(null, exceptionHandler);
     }
     
+    /**
+     * If the raw data is null, it is loaded first; or if {@link RebindManagerImpl#REBIND_STREAMING} is set,
+     * each item is instead read as it is visited (see {@link #visitMementoStreaming(String, Visitor, RebindExceptionHandler)}).
+     */
     @Override
     public BrooklynMementoManifest loadMementoManifest(BrooklynMementoRawData mementoData, final RebindExceptionHandler exceptionHandler) throws IOException {
-        if (mementoData==null)
+        if (mementoData==null && !streaming)
             mementoData = loadMementoRawData(exceptionHandler);
         
         final BrooklynMementoManifestImpl.Builder builder = BrooklynMementoManifestImpl.builder();
 
         Visitor visitor = new Visitor() {
             @Override
-            public void visit(BrooklynObjectType type, String objectId, final String contents) throws Exception {
+            public void visit(BrooklynObjectType type, String objectId, String storedContents) throws Exception {
+                // changes are only to attributes and config, so the base memento has everything needed here
+                final String contents = MementoFormat.XML.convert(MementoChangeLog.getBase(storedContents));
                 final String prefix = "/"+type.toCamelCase()+"/";
 
                 class XPathHelper {
@@ -363,7 +413,11 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
 
         Stopwatch stopwatch = Stopwatch.createStarted();
 
-        visitMemento("manifests", mementoData, visitor, exceptionHandler);
+        if (mementoData!=null) {
+            visitMemento("manifests", mementoData, visitor, exceptionHandler);
+        } else {
+            visitMementoStreaming("manifests", visitor, exceptionHandler);
+        }
         
         BrooklynMementoManifest result = builder.build();
 
@@ -384,9 +438,13 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         return loadMemento(null, lookupContext, exceptionHandler);
     }
     
+    /**
+     * If the raw data is null, it is loaded first; or if {@link RebindManagerImpl#REBIND_STREAMING} is set,
+     * each item is instead read as it is visited (see {@link #visitMementoStreaming(String, Visitor, RebindExceptionHandler)}).
+     */
     @Override
     public BrooklynMemento loadMemento(BrooklynMementoRawData mementoData, final LookupContext lookupContext, final RebindExceptionHandler exceptionHandler) throws IOException {
-        if (mementoData==null)
+        if (mementoData==null && !streaming)
             mementoData = loadMementoRawData(exceptionHandler);
 
         Stopwatch stopwatch = Stopwatch.createStarted();
@@ -397,7 +455,13 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             @Override
             public void visit(BrooklynObjectType type, String objectId, String contents) throws Exception {
                 try {
-                    Memento memento = (Memento) getSerializerWithCustomClassLoader(lookupContext, type, objectId).fromString(contents);
+                    MementoSerializer<Object> serializer = getSerializerWithCustomClassLoader(lookupContext, type, objectId);
+                    Memento memento = (Memento) serializer.fromString(MementoChangeLog.getBase(contents));
+                    if (memento != null && type == BrooklynObjectType.ENTITY && MementoChangeLog.hasChanges(contents)) {
+                        for (String change : MementoChangeLog.getChanges(contents)) {
+                            memento = ((EntityMementoChange) serializer.fromString(change)).applyTo((EntityMemento) memento);
+                        }
+                    }
                     if (memento == null) {
                         LOG.warn("No "+type.toCamelCase()+"-memento deserialized from " + objectId + "; ignoring and continuing");
                     } else {
@@ -413,7 +477,11 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         // TODO not convinced this is single threaded on reads; maybe should get a new one each time?
         getSerializerWithStandardClassLoader().setLookupContext(lookupContext);
         try {
-            visitMemento("deserialization", mementoData, visitor, exceptionHandler);
+            if (mementoData!=null) {
+                visitMemento("deserialization", mementoData, visitor, exceptionHandler);
+            } else {
+                visitMementoStreaming("deserialization", visitor, exceptionHandler);
+            }
         } finally {
             getSerializerWithStandardClassLoader().unsetLookupContext();
         }
@@ -436,6 +504,22 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     }
     
     protected void visitMemento(final String phase, final BrooklynMementoRawData rawData, final Visitor visitor, final RebindExceptionHandler exceptionHandler) {
+        visitMemento(phase, rawData, visitor, exceptionHandler, false);
+    }
+
+    /**
+     * As {@link #visitMemento(String, BrooklynMementoRawData, Visitor, RebindExceptionHandler)}, but listing the items
+     * and then reading each in the same (parallel) job that visits it. At most one item per persister thread is therefore
+     * held in memory at any time, instead of the contents of every item.
+     * <p>
+     * Items are identified by their file name, rather than by the id in their contents.
+     */
+    protected void visitMementoStreaming(final String phase, final Visitor visitor, final RebindExceptionHandler exceptionHandler) {
+        visitMemento(phase, listMementoSubPathsAsData(exceptionHandler), visitor, exceptionHandler, true);
+    }
+
+    private void visitMemento(final String phase, final BrooklynMementoRawData rawData, final Visitor visitor, final RebindExceptionHandler exceptionHandler,
+            final boolean dataIsSubPath) {
         List<ListenableFuture<?>> futures = Lists.newArrayList();
         
         class VisitorWrapper implements Runnable {
@@ -446,8 +530,22 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
                 this.objectIdAndData = objectIdAndData;
             }
             public void run() {
+                String data = objectIdAndData.getValue();
+                if (dataIsSubPath) {
+                    try {
+                        data = read(data);
+                    } catch (Exception e) {
+                        Exceptions.propagateIfFatal(e);
+                        exceptionHandler.onLoadMementoFailed(type, "memento "+objectIdAndData.getKey()+" read error", e);
+                        return;
+                    }
+                    if (data==null) {
+                        LOG.debug("Memento "+type.toCamelCase()+" "+objectIdAndData.getKey()+" no longer present ("+phase+"); ignoring");
+                        return;
+                    }
+                }
                 try {
-                    visitor.visit(type, objectIdAndData.getKey(), objectIdAndData.getValue());
+                    visitor.visit(type, objectIdAndData.getKey(), data);
                 } catch (Exception e) {
                     Exceptions.propagateIfFatal(e);
                     exceptionHandler.onLoadMementoFailed(type, "memento "+objectIdAndData.getKey()+" "+phase+" error", e);
@@ -560,9 +658,11 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         
         if (LOG.isDebugEnabled()) LOG.debug("7 in {}: "
                 + "updated {} entities, {} locations, {} policies, {} enrichers, {} catalog items; "
+                + "appended {} entity changes; "
                 + "removed {} entities, {} locations, {} policies, {} enrichers, {} catalog items",
                     new Object[] {Time.makeTimeStringRounded(stopwatch),
                         delta.entities().size(), delta.locations().size(), delta.policies().size(), delta.enrichers().size(), delta.catalogItems().size(),
+                        (delta instanceof PersisterDeltaImpl) ? ((PersisterDeltaImpl)delta).entityChanges().size() : 0,
                         delta.removedEntityIds().size(), delta.removedLocationIds().size(), delta.removedPolicyIds().size(), delta.removedEnricherIds().size(), delta.removedCatalogItemIds().size()});
     }
     
@@ -590,6 +690,11 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
                     futures.add(asyncPersist(type.getSubPathName(), entity, exceptionHandler));
                 }
             }
+            if (delta instanceof PersisterDeltaImpl) {
+                for (EntityMementoChange change : ((PersisterDeltaImpl)delta).entityChanges()) {
+                    futures.add(asyncAppend(BrooklynObjectType.ENTITY.getSubPathName(), change, exceptionHandler));
+                }
+            }
             for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
                 for (String id : delta.getRemovedIdsOfType(type)) {
                     futures.add(asyncDelete(type.getSubPathName(), id, exceptionHandler));
@@ -655,12 +760,26 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             if (content==null) {
                 LOG.warn("Null content for "+type+" "+id);
             }
-            getWriter(getPath(subPath, id)).put(content);
+            getWriter(getPath(subPath, id)).put(format.convert(content));
         } catch (Exception e) {
             exceptionHandler.onPersistRawMementoFailed(type, id, e);
         }
     }
     
+    private void append(String subPath, EntityMementoChange change, PersistenceExceptionHandler exceptionHandler) {
+        try {
+            StoreObjectAccessorWithLock writer = getWriter(getPath(subPath, change.getId()));
+            if (!writer.exists()) {
+                // the base memento was never written (or has since been deleted); the next full write will include this change
+                LOG.debug("Not appending change to "+subPath+" "+change.getId()+", as no memento present");
+                return;
+            }
+            writer.append(MementoChangeLog.toRecord(getSerializerWithStandardClassLoader().toString(change)));
+        } catch (Exception e) {
+            exceptionHandler.onPersistRawMementoFailed(BrooklynObjectType.ENTITY, change.getId(), e);
+        }
+    }
+
     private void delete(String subPath, String id, PersistenceExceptionHandler exceptionHandler) {
         try {
             StoreObjectAccessorWithLock w = getWriter(getPath(subPath, id));
@@ -687,6 +806,13 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             }});
     }
 
+    private ListenableFuture<?> asyncAppend(final String subPath, final EntityMementoChange change, final PersistenceExceptionHandler exceptionHandler) {
+        return executor.submit(new Runnable() {
+            public void run() {
+                append(subPath, change, exceptionHandler);
+            }});
+    }
+
     private ListenableFuture<?> asyncDelete(final String subPath, final String id, final PersistenceExceptionHandler exceptionHandler) {
         return executor.submit(new Runnable() {
             public void run() {
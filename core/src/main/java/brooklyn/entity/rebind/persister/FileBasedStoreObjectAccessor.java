@@ -19,6 +19,7 @@
 package brooklyn.entity.rebind.persister;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Date;
 
@@ -27,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.io.FileUtil;
+import brooklyn.util.stream.Streams;
 import brooklyn.util.text.Strings;
 
 import com.google.common.base.Charsets;
@@ -82,13 +84,23 @@ public class FileBasedStoreObjectAccessor implements PersistenceObjectStore.Stor
         }
     }
 
+    /**
+     * Appends to the file, syncing it to disk before returning. Unlike {@link #put(String)} this cannot be atomic,
+     * so callers appending records should make it possible to detect one which was only partly written
+     * (as {@link MementoChangeLog} does).
+     */
     @Override
     public void append(String val) {
         try {
             if (val==null) val = "";
             FileUtil.setFilePermissionsTo600(file);
-            Files.append(val, file, Charsets.UTF_8);
-            
+            FileOutputStream out = new FileOutputStream(file, true);
+            try {
+                out.write(val.getBytes(Charsets.UTF_8));
+                out.getFD().sync();
+            } finally {
+                Streams.closeQuietly(out);
+            }
         } catch (IOException e) {
             throw Exceptions.propagate(e);
         }
@@ -0,0 +1,940 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.rebind.BrooklynObjectType;
+import brooklyn.management.ha.HighAvailabilityMode;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableSet;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.io.FileUtil;
+import brooklyn.util.time.Time;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingInputStream;
+
+/**
+ * A file-based store which, for the memento sub-paths ({@link #JOURNALED_SUB_PATHS}), appends every put, append and delete
+ * to a journal of sequential segment files, rather than writing (and renaming) a file per item.
+ * Other sub-paths, such as the management plane records written by every node, are files as in {@link FileBasedObjectStore}.
+ * <p>
+ * Concurrent writes are committed together: whichever writer gets there first appends all queued records
+ * to the current segment in one write, and syncs it once. Each record is checksummed. An in-memory index
+ * maps each item to the location of its contents in the segments, so reads are a positioned read of just that item.
+ * <p>
+ * When the segments hold more than {@link #getCompactionRatio()} times the live data, they are compacted in the background:
+ * the current segment is sealed, the live items are copied into a new segment, and the old segments are deleted.
+ * <p>
+ * Only one node may write the journal: a node becomes the writer in {@link #prepareForMasterUse()},
+ * and then starts a new segment; writing without having done so fails with an {@link IllegalStateException},
+ * rather than writing alongside the master. Other nodes (e.g. HA standbys) tail the journal
+ * each time the items are listed, reading only records appended since they last looked,
+ * and reloading everything if segments they had read have since been compacted.
+ * A torn or corrupt record (e.g. after a crash) ends the reading of its segment.
+ * <p>
+ * Items previously written as files by {@link FileBasedObjectStore} are read,
+ * and are copied into the journal when this node becomes the writer. This migration is one-way, as a file-based store
+ * does not read the journal; the original files are therefore moved to {@link #PRE_JOURNAL_BACKUP_SUB_PATH}
+ * rather than deleted, from where they can be restored to go back to a file-based store (losing later changes).
+ */
+@Beta
+public class JournalBasedObjectStore extends FileBasedObjectStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalBasedObjectStore.class);
+
+    public static final Set<String> JOURNALED_SUB_PATHS;
+    static {
+        Set<String> subPaths = MutableSet.of();
+        for (BrooklynObjectType type : BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
+            subPaths.add(type.getSubPathName());
+        }
+        JOURNALED_SUB_PATHS = ImmutableSet.copyOf(subPaths);
+    }
+
+    public static final String JOURNAL_SUB_PATH = "journal";
+
+    /** where files written by {@link FileBasedObjectStore} are kept once they have been copied into the journal */
+    public static final String PRE_JOURNAL_BACKUP_SUB_PATH = "pre-journal-backup";
+
+    public static final long DEFAULT_COMPACTION_MIN_BYTES = 1024*1024;
+    public static final double DEFAULT_COMPACTION_RATIO = 2.0;
+
+    private static final int RECORD_MAGIC = 0x424a524e;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_APPEND = 2;
+    private static final byte OP_DELETE = 3;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+
+    /** where a part of an item's contents is stored */
+    private static class Location {
+        final long segment;
+        final long offset;
+        final int length;
+        /** size of the whole record, for deciding when to compact */
+        final int recordLength;
+        Location(long segment, long offset, int length, int recordLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.recordLength = recordLength;
+        }
+    }
+
+    /** an item in the index; immutable, so compaction can detect if an item has been written since it was copied */
+    private static class Item {
+        final List<Location> parts;
+        final long lastModified;
+        Item(List<Location> parts, long lastModified) {
+            this.parts = parts;
+            this.lastModified = lastModified;
+        }
+        int length() {
+            int result = 0;
+            for (Location part : parts) result += part.length;
+            return result;
+        }
+        long recordLength() {
+            long result = 0;
+            for (Location part : parts) result += part.recordLength;
+            return result;
+        }
+    }
+
+    /** a record waiting to be committed */
+    private static class PendingRecord {
+        final byte op;
+        final String path;
+        final long timestamp;
+        final byte[] bytes;
+        final int contentOffset;
+        final int contentLength;
+        boolean done;
+        Exception error;
+        PendingRecord(byte op, String path, long timestamp, byte[] bytes, int contentOffset, int contentLength) {
+            this.op = op;
+            this.path = path;
+            this.timestamp = timestamp;
+            this.bytes = bytes;
+            this.contentOffset = contentOffset;
+            this.contentLength = contentLength;
+        }
+    }
+
+    private final File journalDir;
+    private final long compactionMinBytes;
+    private final double compactionRatio;
+
+    private final ConcurrentMap<String, Item> index = Maps.newConcurrentMap();
+
+    /** guards the journal state below, and serializes commits */
+    private final Object journalMutex = new Object();
+    /** held to read from segments, and exclusively to delete them */
+    private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+    /** records queued for the next commit; guarded by itself */
+    private final List<PendingRecord> pending = Lists.newArrayList();
+
+    // guarded by journalMutex
+    private boolean loaded = false;
+    private volatile boolean writer = false;
+    private final SortedMap<Long, Long> segmentSizes = Maps.newTreeMap();
+    private long tailSegment = -1;
+    private long tailPosition = 0;
+    private long liveBytes = 0;
+    private FileOutputStream activeOut;
+    private long activeSegment = -1;
+    private boolean compacting = false;
+
+    private final Map<Long, FileChannel> readChannels = Maps.newConcurrentMap();
+    private final ExecutorService compactionExecutor;
+
+    public JournalBasedObjectStore(File basedir) {
+        this(basedir, DEFAULT_COMPACTION_MIN_BYTES, DEFAULT_COMPACTION_RATIO);
+    }
+
+    /**
+     * @param compactionMinBytes size of the journal below which it is not compacted
+     * @param compactionRatio    compact when the journal is larger than this multiple of the live data
+     */
+    public JournalBasedObjectStore(File basedir, long compactionMinBytes, double compactionRatio) {
+        super(basedir);
+        this.journalDir = new File(basedir, JOURNAL_SUB_PATH);
+        this.compactionMinBytes = compactionMinBytes;
+        this.compactionRatio = compactionRatio;
+        this.compactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+                Thread result = new Thread(r, "brooklyn-persister-journal-compaction");
+                result.setDaemon(true);
+                return result;
+            }});
+    }
+
+    public double getCompactionRatio() {
+        return compactionRatio;
+    }
+
+    @Override
+    public void prepareForSharedUse(PersistMode persistMode, HighAvailabilityMode haMode) {
+        super.prepareForSharedUse(persistMode, haMode);
+        if (journalDir.mkdir()) {
+            try {
+                FileUtil.setFilePermissionsTo700(journalDir);
+            } catch (IOException e) {
+                LOG.warn("Unable to set journal directory permissions to 700 (continuing): "+journalDir);
+            }
+        }
+    }
+
+    @Override
+    public void prepareForMasterUse() {
+        super.prepareForMasterUse();
+        becomeWriter();
+    }
+
+    @Override
+    public StoreObjectAccessor newAccessor(String path) {
+        if (!isJournaled(path)) return super.newAccessor(path);
+        return new JournalObjectAccessor(path, super.newAccessor(path));
+    }
+
+    @Override
+    public List<String> listContentsWithSubPath(String parentSubPath) {
+        if (!JOURNALED_SUB_PATHS.contains(parentSubPath)) return super.listContentsWithSubPath(parentSubPath);
+        refresh();
+        String prefix = parentSubPath+"/";
+        Set<String> result = MutableSet.of();
+        for (String path : index.keySet()) {
+            if (path.startsWith(prefix)) result.add(path);
+        }
+        // items not yet moved into the journal
+        result.addAll(super.listContentsWithSubPath(parentSubPath));
+        return ImmutableList.copyOf(result);
+    }
+
+    @Override
+    public void close() {
+        compactionExecutor.shutdownNow();
+        try {
+            compactionExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+        synchronized (journalMutex) {
+            closeJournal();
+        }
+        super.close();
+    }
+
+    @Override
+    public void deleteCompletely() {
+        synchronized (journalMutex) {
+            closeJournal();
+            index.clear();
+            segmentSizes.clear();
+            loaded = false;
+            tailSegment = -1;
+            tailPosition = 0;
+            liveBytes = 0;
+        }
+        super.deleteCompletely();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("basedir", getBaseDir()).toString();
+    }
+
+    protected boolean isJournaled(String path) {
+        int slash = path.indexOf('/');
+        return slash > 0 && JOURNALED_SUB_PATHS.contains(path.substring(0, slash));
+    }
+
+    @VisibleForTesting
+    public List<File> getSegmentFiles() {
+        synchronized (journalMutex) {
+            List<File> result = MutableList.of();
+            for (Long segment : segmentSizes.keySet()) {
+                result.add(segmentFile(segment));
+            }
+            return result;
+        }
+    }
+
+    /** the total size of the journal segments, and the size of the live records in them */
+    @VisibleForTesting
+    public long[] getJournalAndLiveBytes() {
+        synchronized (journalMutex) {
+            return new long[] { totalBytes(), liveBytes };
+        }
+    }
+
+    /** compacts the journal now, if this node is the writer */
+    @VisibleForTesting
+    public void compactNow() {
+        synchronized (journalMutex) {
+            if (!writer || compacting) return;
+            compacting = true;
+        }
+        compact();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // reading the journal
+
+    /** reads anything appended to the journal (by another node) since we last read it */
+    protected void refresh() {
+        synchronized (journalMutex) {
+            if (!journalDir.exists()) {
+                loaded = true;
+                return;
+            }
+            List<Long> segments = listSegments();
+            if (writer) {
+                if (!segments.isEmpty() && Iterables.getLast(segments) > activeSegment) {
+                    LOG.warn("Journal "+journalDir+" written by another node since "+this+" became the writer; no longer writing, and reloading");
+                    closeJournal();
+                    reload(segments);
+                }
+                return;
+            }
+            if (loaded && !segments.containsAll(segmentSizes.keySet())) {
+                // compacted by the writer
+                LOG.debug("Journal {} compacted by another node; reloading", journalDir);
+                reload(segments);
+                return;
+            }
+            loaded = true;
+            for (Long segment : segments) {
+                if (segment < tailSegment) continue;
+                long from = (segment == tailSegment) ? tailPosition : 0;
+                try {
+                    tailPosition = replay(segment, from);
+                    tailSegment = segment;
+                } catch (FileNotFoundException e) {
+                    // compacted by the writer since we listed
+                    LOG.debug("Journal segment {} removed while reading; reloading", segment);
+                    reload(listSegments());
+                    return;
+                }
+            }
+        }
+    }
+
+    private void reload(List<Long> segments) {
+        index.clear();
+        segmentSizes.clear();
+        closeReadChannels();
+        liveBytes = 0;
+        tailSegment = -1;
+        tailPosition = 0;
+        loaded = true;
+        for (Long segment : segments) {
+            try {
+                tailPosition = replay(segment, 0);
+                tailSegment = segment;
+            } catch (FileNotFoundException e) {
+                throw new IllegalStateException("Journal segment "+segmentFile(segment)+" removed while reloading "+this, e);
+            }
+        }
+    }
+
+    /** applies the records in the segment from the given position, returning the end of the last complete record */
+    private long replay(long segment, long from) throws FileNotFoundException {
+        File file = segmentFile(segment);
+        long position = from;
+        FileInputStream raw = new FileInputStream(file);
+        try {
+            if (from > 0) raw.getChannel().position(from);
+            CountingInputStream counting = new CountingInputStream(new BufferedInputStream(raw));
+            CheckedInputStream checked = new CheckedInputStream(counting, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            while (true) {
+                int magic;
+                try {
+                    magic = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (magic != RECORD_MAGIC) {
+                    LOG.warn("Corrupt record in journal segment "+file+" at "+position+"; ignoring the rest of the segment");
+                    break;
+                }
+                checked.getChecksum().reset();
+                try {
+                    byte op = in.readByte();
+                    long timestamp = in.readLong();
+                    String path = in.readUTF();
+                    int length = in.readInt();
+                    long contentOffset = from + counting.getCount();
+                    if (length > 0) {
+                        // skip over the contents, just checksumming them; they are read from the segment when needed
+                        byte[] buf = new byte[Math.min(length, 8192)];
+                        int remaining = length;
+                        while (remaining > 0) {
+                            int read = in.read(buf, 0, Math.min(remaining, buf.length));
+                            if (read < 0) throw new EOFException();
+                            remaining -= read;
+                        }
+                    }
+                    long expectedChecksum = checked.getChecksum().getValue();
+                    long checksum = in.readLong();
+                    if (checksum != expectedChecksum) {
+                        LOG.warn("Checksum mismatch in journal segment "+file+" at "+position+"; ignoring the rest of the segment");
+                        break;
+                    }
+                    apply(op, path, timestamp, new Location(segment, contentOffset, Math.max(length, 0), (int) (from + counting.getCount() - position)));
+                    position = from + counting.getCount();
+                } catch (EOFException e) {
+                    // incomplete record; either being written now, or torn by a crash
+                    if (LOG.isTraceEnabled()) LOG.trace("Incomplete record in journal segment {} at {}", file, position);
+                    break;
+                }
+            }
+            segmentSizes.put(segment, file.length());
+            return position;
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            try {
+                raw.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing journal segment "+file+" (continuing): "+e);
+            }
+        }
+    }
+
+    /** updates the index; must hold the journal mutex */
+    private void apply(byte op, String path, long timestamp, Location location) {
+        Item old = index.get(path);
+        switch (op) {
+        case OP_PUT:
+            index.put(path, new Item(ImmutableList.of(location), timestamp));
+            liveBytes += location.recordLength - (old == null ? 0 : old.recordLength());
+            break;
+        case OP_APPEND:
+            List<Location> parts = (old == null) ? ImmutableList.<Location>of() : old.parts;
+            index.put(path, new Item(ImmutableList.<Location>builder().addAll(parts).add(location).build(), timestamp));
+            liveBytes += location.recordLength;
+            break;
+        case OP_DELETE:
+            if (old != null) {
+                index.remove(path);
+                liveBytes -= old.recordLength();
+            }
+            break;
+        default:
+            throw new IllegalStateException("Unknown journal operation "+op+" for "+path+" in "+journalDir);
+        }
+    }
+
+    private String read(Item item) {
+        segmentsLock.readLock().lock();
+        try {
+            byte[] result = new byte[item.length()];
+            int offset = 0;
+            for (Location part : item.parts) {
+                ByteBuffer buf = ByteBuffer.wrap(result, offset, part.length);
+                FileChannel channel = getReadChannel(part.segment);
+                long position = part.offset;
+                while (buf.hasRemaining()) {
+                    int read = channel.read(buf, position);
+                    if (read < 0) throw new EOFException("Journal segment "+part.segment+" truncated");
+                    position += read;
+                }
+                offset += part.length;
+            }
+            return new String(result, Charsets.UTF_8);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+    }
+
+    private FileChannel getReadChannel(long segment) throws FileNotFoundException {
+        // a channel is closed if a thread reading it is interrupted, so reopen if need be
+        FileChannel result = readChannels.get(segment);
+        if (result == null || !result.isOpen()) {
+            synchronized (readChannels) {
+                result = readChannels.get(segment);
+                if (result == null || !result.isOpen()) {
+                    result = new RandomAccessFile(segmentFile(segment), "r").getChannel();
+                    readChannels.put(segment, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // writing the journal
+
+    protected void becomeWriter() {
+        synchronized (journalMutex) {
+            if (writer) return;
+            refresh();
+            if (!journalDir.exists() && !journalDir.mkdirs()) {
+                throw new IllegalStateException("Cannot create journal directory "+journalDir);
+            }
+            activeSegment = segmentSizes.isEmpty() ? 1 : segmentSizes.lastKey()+1;
+            openActiveSegment();
+            writer = true;
+            LOG.debug("{} writing journal segment {}", this, activeSegment);
+        }
+        moveFilesIntoJournal();
+    }
+
+    private void openActiveSegment() {
+        try {
+            File file = segmentFile(activeSegment);
+            activeOut = new FileOutputStream(file, true);
+            FileUtil.setFilePermissionsTo600(file);
+            segmentSizes.put(activeSegment, file.length());
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * copies items written by {@link FileBasedObjectStore} (e.g. before switching to the journal) into the journal,
+     * and then moves their files to {@link #PRE_JOURNAL_BACKUP_SUB_PATH}
+     */
+    private void moveFilesIntoJournal() {
+        File backupDir = new File(getBaseDir(), PRE_JOURNAL_BACKUP_SUB_PATH);
+        for (String subPath : JOURNALED_SUB_PATHS) {
+            for (String path : super.listContentsWithSubPath(subPath)) {
+                StoreObjectAccessor fileAccessor = super.newAccessor(path);
+                if (!index.containsKey(path)) {
+                    String contents = fileAccessor.get();
+                    if (contents != null) write(OP_PUT, path, contents);
+                }
+                File file = new File(getBaseDir(), path);
+                File backup = new File(backupDir, path);
+                try {
+                    backup.getParentFile().mkdirs();
+                    FileBasedObjectStore.moveFile(file, backup);
+                    LOG.info("Moved {} into journal {}; original kept as {}", new Object[] { path, journalDir, backup });
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    LOG.warn("Unable to move "+file+" to "+backup+" after copying it into the journal; deleting it: "+e);
+                    fileAccessor.delete();
+                }
+            }
+        }
+    }
+
+    private void write(byte op, String path, String contents) {
+        if (!writer) throw new IllegalStateException("Cannot write "+path+" to journal "+journalDir+"; not prepared for master use");
+        PendingRecord record = newRecord(op, path, contents);
+        synchronized (pending) {
+            pending.add(record);
+        }
+        synchronized (journalMutex) {
+            if (!record.done) {
+                commit();
+            }
+            if (record.error != null) {
+                throw Exceptions.propagate(record.error);
+            }
+        }
+        maybeCompact();
+    }
+
+    /** writes all pending records in one go; must hold the journal mutex */
+    private void commit() {
+        List<PendingRecord> batch;
+        synchronized (pending) {
+            batch = ImmutableList.copyOf(pending);
+            pending.clear();
+        }
+        if (batch.isEmpty()) return;
+        try {
+            if (!writer) throw new IllegalStateException("No longer writing to journal "+journalDir);
+            int size = 0;
+            for (PendingRecord record : batch) size += record.bytes.length;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+            for (PendingRecord record : batch) out.write(record.bytes);
+            long position = segmentSizes.get(activeSegment);
+            try {
+                writeToActiveSegment(out.toByteArray());
+            } catch (Exception e) {
+                discardPartialWrite(position);
+                throw e;
+            }
+
+            for (PendingRecord record : batch) {
+                apply(record.op, record.path, record.timestamp, new Location(activeSegment, position + record.contentOffset, record.contentLength, record.bytes.length));
+                position += record.bytes.length;
+                record.done = true;
+            }
+            segmentSizes.put(activeSegment, position);
+        } catch (Exception e) {
+            for (PendingRecord record : batch) {
+                record.error = e;
+                record.done = true;
+            }
+        }
+    }
+
+    /** appends to the active segment, syncing it to disk; must hold the journal mutex */
+    @VisibleForTesting
+    protected void writeToActiveSegment(byte[] bytes) throws IOException {
+        activeOut.write(bytes);
+        activeOut.getChannel().force(false);
+    }
+
+    /**
+     * Removes anything written to the active segment after the given position, after a failed write;
+     * otherwise the locations of later records would be wrong, and a torn record would end replay of the segment,
+     * losing the records after it. If the segment cannot be truncated, it is sealed and a new one started.
+     */
+    private void discardPartialWrite(long position) {
+        try {
+            activeOut.getChannel().truncate(position);
+            activeOut.getChannel().force(false);
+            if (activeOut.getChannel().size() == position) return;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.debug("Unable to truncate journal segment "+activeSegment+" of "+this+" after failed write: "+e);
+        }
+        LOG.warn("Unable to truncate journal segment "+activeSegment+" of "+this+" after failed write; starting a new segment");
+        closeActiveSegment();
+        segmentSizes.put(activeSegment, segmentFile(activeSegment).length());
+        activeSegment++;
+        openActiveSegment();
+    }
+
+    private static PendingRecord newRecord(byte op, String path, String contents) {
+        return newRecord(op, path, contents, System.currentTimeMillis());
+    }
+
+    private static PendingRecord newRecord(byte op, String path, String contents, long timestamp) {
+        try {
+            byte[] content = (contents == null) ? new byte[0] : contents.getBytes(Charsets.UTF_8);
+            ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + path.length() + 32);
+            DataOutputStream bodyOut = new DataOutputStream(body);
+            bodyOut.writeByte(op);
+            bodyOut.writeLong(timestamp);
+            bodyOut.writeUTF(path);
+            bodyOut.writeInt(op == OP_DELETE ? -1 : content.length);
+            int contentOffset = 4 + bodyOut.size();
+            if (op != OP_DELETE) bodyOut.write(content);
+            bodyOut.flush();
+            byte[] bodyBytes = body.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bodyBytes);
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream(bodyBytes.length + 12);
+            DataOutputStream recordOut = new DataOutputStream(record);
+            recordOut.writeInt(RECORD_MAGIC);
+            recordOut.write(bodyBytes);
+            recordOut.writeLong(crc.getValue());
+            recordOut.flush();
+            return new PendingRecord(op, path, timestamp, record.toByteArray(), contentOffset, op == OP_DELETE ? 0 : content.length);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // compaction
+
+    private void maybeCompact() {
+        synchronized (journalMutex) {
+            if (!writer || compacting) return;
+            long total = totalBytes();
+            if (total < compactionMinBytes || total <= compactionRatio * liveBytes) return;
+            compacting = true;
+        }
+        try {
+            compactionExecutor.submit(new Runnable() {
+                @Override public void run() {
+                    compact();
+                }});
+        } catch (Exception e) {
+            // e.g. closed
+            synchronized (journalMutex) {
+                compacting = false;
+            }
+            LOG.debug("Unable to schedule compaction of "+this+" (continuing): "+e);
+        }
+    }
+
+    /**
+     * Seals the current segment and starts a new one; copies the live items in the sealed segments into another new segment,
+     * which is replayed before the new current segment; and then deletes the sealed segments.
+     * Items written while copying are left pointing at the current segment.
+     */
+    private void compact() {
+        boolean compacted = false;
+        try {
+            long compactedSegment;
+            List<Long> sealedSegments;
+            Map<String, Item> snapshot;
+            synchronized (journalMutex) {
+                if (!writer) return;
+                commit();
+                sealedSegments = ImmutableList.copyOf(segmentSizes.keySet());
+                closeActiveSegment();
+                compactedSegment = activeSegment+1;
+                activeSegment = compactedSegment+1;
+                openActiveSegment();
+                snapshot = ImmutableMap.copyOf(index);
+            }
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            File file = segmentFile(compactedSegment);
+            File tmpFile = new File(file.getPath()+".tmp");
+            Map<String, Item> compactedItems = Maps.newLinkedHashMap();
+            long position = 0;
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                BufferedOutputStream bufferedOut = new BufferedOutputStream(out);
+                for (Map.Entry<String, Item> entry : snapshot.entrySet()) {
+                    // keeps the item's last-modified time, so it is not reset to the time of compaction on replay
+                    PendingRecord record = newRecord(OP_PUT, entry.getKey(), read(entry.getValue()), entry.getValue().lastModified);
+                    bufferedOut.write(record.bytes);
+                    compactedItems.put(entry.getKey(), new Item(ImmutableList.of(new Location(compactedSegment, position + record.contentOffset, record.contentLength, record.bytes.length)),
+                            entry.getValue().lastModified));
+                    position += record.bytes.length;
+                }
+                bufferedOut.flush();
+                out.getChannel().force(false);
+            } finally {
+                out.close();
+            }
+            FileUtil.setFilePermissionsTo600(tmpFile);
+            FileBasedObjectStore.moveFile(tmpFile, file);
+
+            synchronized (journalMutex) {
+                if (!writer) return;
+                segmentsLock.writeLock().lock();
+                try {
+                    for (Map.Entry<String, Item> entry : compactedItems.entrySet()) {
+                        Item old = snapshot.get(entry.getKey());
+                        Item current = index.get(entry.getKey());
+                        if (current == old) {
+                            index.put(entry.getKey(), entry.getValue());
+                        } else if (current != null && current.parts.size() > old.parts.size()
+                                && current.parts.subList(0, old.parts.size()).equals(old.parts)) {
+                            // appended to while compacting
+                            index.put(entry.getKey(), new Item(ImmutableList.<Location>builder()
+                                    .addAll(entry.getValue().parts)
+                                    .addAll(current.parts.subList(old.parts.size(), current.parts.size()))
+                                    .build(), current.lastModified));
+                        }
+                        // else replaced or deleted while compacting, so no longer refers to the sealed segments
+                    }
+                    segmentSizes.put(compactedSegment, position);
+                    liveBytes = 0;
+                    for (Item item : index.values()) liveBytes += item.recordLength();
+                    for (Long segment : sealedSegments) {
+                        FileChannel channel = readChannels.remove(segment);
+                        if (channel != null) channel.close();
+                        segmentSizes.remove(segment);
+                        if (!segmentFile(segment).delete()) {
+                            LOG.warn("Unable to delete compacted journal segment "+segmentFile(segment));
+                        }
+                    }
+                } finally {
+                    segmentsLock.writeLock().unlock();
+                }
+            }
+            LOG.debug("Compacted journal {} in {}: {} items, {} bytes, from {} segments",
+                    new Object[] { journalDir, Time.makeTimeStringRounded(stopwatch), compactedItems.size(), position, sealedSegments.size() });
+            compacted = true;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.warn("Problem compacting journal "+journalDir+" (continuing, uncompacted): "+e, e);
+        } finally {
+            synchronized (journalMutex) {
+                compacting = false;
+            }
+        }
+        // items may have been rewritten while compacting
+        if (compacted) maybeCompact();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+
+    private File segmentFile(long segment) {
+        return new File(journalDir, String.format("segment-%012d.log", segment));
+    }
+
+    private List<Long> listSegments() {
+        List<Long> result = MutableList.of();
+        String[] names = journalDir.list();
+        if (names == null) return result;
+        for (String name : names) {
+            Matcher matcher = SEGMENT_NAME.matcher(name);
+            if (matcher.matches()) result.add(Long.parseLong(matcher.group(1)));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private long totalBytes() {
+        long result = 0;
+        for (Long size : segmentSizes.values()) result += size;
+        return result;
+    }
+
+    private void closeActiveSegment() {
+        if (activeOut != null) {
+            try {
+                activeOut.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing journal segment "+activeSegment+" of "+this+" (continuing): "+e);
+            }
+            activeOut = null;
+        }
+    }
+
+    private void closeReadChannels() {
+        for (FileChannel channel : readChannels.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing journal segment of "+this+" (continuing): "+e);
+            }
+        }
+        readChannels.clear();
+    }
+
+    private void closeJournal() {
+        closeActiveSegment();
+        closeReadChannels();
+        writer = false;
+    }
+
+    private class JournalObjectAccessor implements StoreObjectAccessor {
+        private final String path;
+        /** for items not yet moved into the journal */
+        private final StoreObjectAccessor fileAccessor;
+
+        JournalObjectAccessor(String path, StoreObjectAccessor fileAccessor) {
+            this.path = path;
+            this.fileAccessor = fileAccessor;
+        }
+
+        @Override
+        public String get() {
+            ensureLoaded();
+            Item item = index.get(path);
+            if (item == null) return fileAccessor.get();
+            try {
+                return read(item);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                // a non-writer's segment may have been compacted away since we read the index
+                refresh();
+                item = index.get(path);
+                return (item == null) ? null : read(item);
+            }
+        }
+
+        @Override
+        public boolean exists() {
+            ensureLoaded();
+            return index.containsKey(path) || fileAccessor.exists();
+        }
+
+        @Override
+        public void put(String contentsToReplaceOrCreate) {
+            write(OP_PUT, path, contentsToReplaceOrCreate);
+        }
+
+        @Override
+        public void append(String contentsToAppendOrCreate) {
+            write(OP_APPEND, path, contentsToAppendOrCreate);
+        }
+
+        @Override
+        public void delete() {
+            ensureLoaded();
+            if (index.containsKey(path)) write(OP_DELETE, path, null);
+            fileAccessor.delete();
+        }
+
+        @Override
+        public Date getLastModifiedDate() {
+            ensureLoaded();
+            Item item = index.get(path);
+            return (item == null) ? fileAccessor.getLastModifiedDate() : new Date(item.lastModified);
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("path", path).add("journal", journalDir).toString();
+        }
+    }
+
+    private void ensureLoaded() {
+        synchronized (journalMutex) {
+            if (!loaded) refresh();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.rebind.dto.EntityMementoChange;
+import brooklyn.util.collections.MutableList;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+
+/**
+ * The layout of a persisted item which has had changes appended to it:
+ * the base memento, followed by zero or more change records (such as {@link EntityMementoChange}),
+ * each starting on a new line after a {@link #RECORD_SEPARATOR} line.
+ * Each part is serialized independently, so may be in either {@link MementoFormat}.
+ * <p>
+ * The separator line also gives the length and CRC-32 checksum of its record, so that a record which was
+ * only partly written (e.g. if the process died while appending it) can be detected; such a record,
+ * and anything after it, is ignored when reading.
+ * <p>
+ * Items are compacted by rewriting them in full, which discards their change records.
+ */
+@Beta
+public class MementoChangeLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MementoChangeLog.class);
+
+    public static final String RECORD_SEPARATOR = "#brooklyn-memento-change";
+
+    private static final String RECORD_START = "\n"+RECORD_SEPARATOR;
+
+    private MementoChangeLog() {}
+
+    /** the contents to append to an item, to record the given serialized change */
+    public static String toRecord(String serializedChange) {
+        return RECORD_START + " " + serializedChange.length() + " " + Long.toHexString(checksum(serializedChange)) + "\n" + serializedChange;
+    }
+
+    public static boolean hasChanges(String contents) {
+        return contents!=null && contents.indexOf(RECORD_START) >= 0;
+    }
+
+    /** the base memento of the given contents, without any change records */
+    public static String getBase(String contents) {
+        if (contents==null) return null;
+        int end = contents.indexOf(RECORD_START);
+        return (end < 0) ? contents : contents.substring(0, end);
+    }
+
+    /** the serialized change records in the given contents, in the order they were appended */
+    public static List<String> getChanges(String contents) {
+        List<String> parts = split(contents);
+        return parts.isEmpty() ? parts : parts.subList(1, parts.size());
+    }
+
+    /** the base memento and then each complete change record */
+    public static List<String> split(String contents) {
+        List<String> result = MutableList.of();
+        if (contents==null) return result;
+        int start = contents.indexOf(RECORD_START);
+        if (start < 0) {
+            result.add(contents);
+            return result;
+        }
+        result.add(contents.substring(0, start));
+        while (start >= 0 && start < contents.length()) {
+            int headerStart = start + RECORD_START.length();
+            int headerEnd = contents.indexOf('\n', headerStart);
+            if (headerEnd < 0) {
+                return dropIncomplete(result, "incomplete separator");
+            }
+            String header = contents.substring(headerStart, headerEnd).trim();
+            int recordStart = headerEnd + 1;
+            String[] lengthAndChecksum = header.split(" ");
+            int length;
+            long checksum;
+            try {
+                length = Integer.parseInt(lengthAndChecksum[0]);
+                checksum = Long.parseLong(lengthAndChecksum[1], 16);
+            } catch (RuntimeException e) {
+                return dropIncomplete(result, "invalid separator '"+header+"'");
+            }
+            int recordEnd = recordStart + length;
+            if (recordEnd > contents.length()) {
+                return dropIncomplete(result, "truncated record");
+            }
+            String record = contents.substring(recordStart, recordEnd);
+            if (checksum(record) != checksum) {
+                return dropIncomplete(result, "checksum mismatch");
+            }
+            result.add(record);
+            start = recordEnd;
+            if (start < contents.length() && !contents.startsWith(RECORD_START, start)) {
+                return dropIncomplete(result, "unexpected content after record");
+            }
+        }
+        return result;
+    }
+
+    private static List<String> dropIncomplete(List<String> result, String reason) {
+        LOG.warn("Ignoring incomplete change record ("+reason+") after "+(result.size()-1)+" complete record(s); "
+                + "the item was probably being appended to when the process stopped");
+        return result;
+    }
+
+    /** the inverse of {@link #split(String)} */
+    public static String join(List<String> parts) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) {
+            result.append((i == 0) ? parts.get(i) : toRecord(parts.get(i)));
+        }
+        return result.toString();
+    }
+
+    private static long checksum(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(Charsets.UTF_8));
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import java.util.List;
+
+import brooklyn.util.collections.MutableList;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * The format in which mementos are written to a persistence store.
+ * Either format can always be read, as the format of each item is detected when it is read.
+ */
+@Beta
+public enum MementoFormat {
+    /** see {@link XmlMementoSerializer} */
+    XML,
+    /** see {@link BinaryMementoSerializer} */
+    BINARY;
+
+    /** the format of the given persisted contents */
+    public static MementoFormat of(String contents) {
+        return BinaryMementoSerializer.isBinary(contents) ? BINARY : XML;
+    }
+
+    /** converts the given persisted contents to this format, if not already in it (without deserializing them);
+     * any change records (see {@link MementoChangeLog}) are converted individually */
+    public String convert(String contents) {
+        if (MementoChangeLog.hasChanges(contents)) {
+            List<String> parts = MutableList.of();
+            for (String part : MementoChangeLog.split(contents)) {
+                parts.add(convertPart(part));
+            }
+            return MementoChangeLog.join(parts);
+        }
+        return convertPart(contents);
+    }
+
+    private String convertPart(String contents) {
+        switch (this) {
+        case XML: return BinaryMementoSerializer.toXml(contents);
+        case BINARY: return BinaryMementoSerializer.fromXml(contents);
+        default: throw new IllegalStateException("Unexpected format "+this);
+        }
+    }
+
+    /** a serializer which writes this format */
+    public <T> MementoSerializer<T> newSerializer(ClassLoader classLoader) {
+        switch (this) {
+        case XML: return new XmlMementoSerializer<T>(classLoader);
+        case BINARY: return new BinaryMementoSerializer<T>(classLoader);
+        default: throw new IllegalStateException("Unexpected format "+this);
+        }
+    }
+}
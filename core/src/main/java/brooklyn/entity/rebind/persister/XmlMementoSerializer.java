@@ -42,6 +42,7 @@ import brooklyn.entity.rebind.dto.BasicEntityMemento;
 import brooklyn.entity.rebind.dto.BasicFeedMemento;
 import brooklyn.entity.rebind.dto.BasicLocationMemento;
 import brooklyn.entity.rebind.dto.BasicPolicyMemento;
+import brooklyn.entity.rebind.dto.EntityMementoChange;
 import brooklyn.entity.rebind.dto.MutableBrooklynMemento;
 import brooklyn.entity.trait.Identifiable;
 import brooklyn.event.basic.BasicAttributeSensor;
@@ -85,6 +86,7 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
         xstream.alias("brooklyn", MutableBrooklynMemento.class);
         
         xstream.alias("entity", BasicEntityMemento.class);
+        xstream.alias("entityChange", EntityMementoChange.class);
         xstream.alias("location", BasicLocationMemento.class);
         xstream.alias("policy", BasicPolicyMemento.class);
         xstream.alias("feed", BasicFeedMemento.class);
@@ -137,6 +139,15 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
         }
     }
 
+    /** also accepts the form written by {@link BinaryMementoSerializer}, so that stores can change format */
+    @Override
+    public T fromString(String string) {
+        if (BinaryMementoSerializer.isBinary(string)) {
+            return new BinaryMementoSerializer<T>(this).fromString(string);
+        }
+        return super.fromString(string);
+    }
+
     @Override
     public void setLookupContext(LookupContext lookupContext) {
         this.lookupContext = checkNotNull(lookupContext, "lookupContext");
@@ -59,6 +59,9 @@ public final class AttributeMap implements Serializable {
     // Assumed to be something like a ConcurrentMap passed in.
     private final Map<Collection<String>, Object> values;
 
+    /** created on first publish */
+    private transient volatile AttributePublicationCoalescer publisher;
+
     /**
      * Creates a new AttributeMap.
      *
@@ -116,9 +119,20 @@ public final class AttributeMap implements Serializable {
 
     public <T> T update(AttributeSensor<T> attribute, T newValue) {
         T oldValue = updateWithoutPublishing(attribute, newValue);
-        entity.emitInternal(attribute, newValue);
+        getPublisher().publish(attribute, newValue);
         return oldValue;
     }
+
+    private AttributePublicationCoalescer getPublisher() {
+        AttributePublicationCoalescer result = publisher;
+        if (result == null) {
+            synchronized (this) {
+                result = publisher;
+                if (result == null) publisher = result = new AttributePublicationCoalescer(entity, this);
+            }
+        }
+        return result;
+    }
     
     public <T> T updateWithoutPublishing(AttributeSensor<T> attribute, T newValue) {
         if (log.isTraceEnabled()) {
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.basic;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.basic.AbstractEntity;
+import brooklyn.entity.basic.BrooklynConfigKeys;
+import brooklyn.event.AttributeSensor;
+import brooklyn.management.ExecutionManager;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Publishes attribute changes for an {@link AttributeMap}, coalescing changes to those attributes which
+ * are configured with a period (see {@link BasicAttributeSensor#getPublishCoalescePeriod()}
+ * and {@link BrooklynConfigKeys#SENSOR_PUBLISH_COALESCE_PERIODS}).
+ * <p>
+ * For such an attribute, a change when the attribute is quiet is published immediately and opens a window.
+ * Changes within the window are recorded in the map as normal but not published; when the window ends,
+ * if there were any, the latest value is published once and another window opened.
+ * A window with no changes returns the attribute to quiet.
+ * Subscribers therefore see at most one event per window for the attribute, and always eventually see the latest value.
+ * <p>
+ * Coalescing only applies while the entity is deployed; before that (and for all other attributes)
+ * every change is published directly.
+ */
+class AttributePublicationCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(AttributePublicationCoalescer.class);
+
+    private static class Window {
+        boolean dirty;
+        boolean closed;
+    }
+
+    private final AbstractEntity entity;
+    private final AttributeMap attributes;
+
+    /** keyed by sensor name; present only while the attribute has a window open */
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<String, Window>();
+
+    /** read from the entity's config once deployed; null until then */
+    private volatile Map<String, Duration> configuredPeriods;
+
+    private volatile BasicExecutionManager executionManager;
+
+    AttributePublicationCoalescer(AbstractEntity entity, AttributeMap attributes) {
+        this.entity = entity;
+        this.attributes = attributes;
+    }
+
+    <T> void publish(AttributeSensor<T> attribute, T newValue) {
+        Duration period = getPeriod(attribute);
+        BasicExecutionManager em = (period == null) ? null : getExecutionManager();
+        if (em == null) {
+            entity.emitInternal(attribute, newValue);
+            return;
+        }
+
+        String name = attribute.getName();
+        while (true) {
+            Window window = windows.get(name);
+            if (window == null) {
+                window = new Window();
+                if (windows.putIfAbsent(name, window) == null) {
+                    try {
+                        entity.emitInternal(attribute, newValue);
+                    } finally {
+                        scheduleEndOfWindow(em, attribute, window, period);
+                    }
+                    return;
+                }
+            } else {
+                synchronized (window) {
+                    if (!window.closed) {
+                        window.dirty = true;
+                        return;
+                    }
+                }
+                // closed windows are removed while holding the lock, so next time round will not see this one
+            }
+        }
+    }
+
+    private <T> void scheduleEndOfWindow(final BasicExecutionManager em, final AttributeSensor<T> attribute, final Window window, final Duration period) {
+        try {
+            em.scheduleUntracked(new Runnable() {
+                @Override public void run() {
+                    endOfWindow(em, attribute, window, period);
+                }
+                @Override public String toString() {
+                    return "coalesced publication of "+attribute.getName()+" on "+entity;
+                }
+            }, period.toMillisecondsRoundingUp());
+        } catch (RejectedExecutionException e) {
+            // shutting down; leave the attribute quiet so that later changes are still published directly
+            log.debug("Unable to schedule coalesced publication of "+attribute.getName()+" on "+entity+": "+e);
+            close(attribute, window);
+        }
+    }
+
+    private <T> void endOfWindow(BasicExecutionManager em, AttributeSensor<T> attribute, Window window, Duration period) {
+        synchronized (window) {
+            if (!window.dirty) {
+                close(attribute, window);
+                return;
+            }
+            window.dirty = false;
+        }
+        try {
+            entity.emitInternal(attribute, attributes.getValue(attribute));
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            if (entity.getManagementSupport().isNoLongerManaged()) {
+                if (log.isTraceEnabled()) log.trace("Discarding coalesced publication of "+attribute.getName()+" on "+entity+", no longer managed");
+                close(attribute, window);
+                return;
+            }
+            log.warn("Error publishing coalesced "+attribute.getName()+" on "+entity+" (continuing): "+e, e);
+        }
+        scheduleEndOfWindow(em, attribute, window, period);
+    }
+
+    private void close(AttributeSensor<?> attribute, Window window) {
+        synchronized (window) {
+            window.closed = true;
+            windows.remove(attribute.getName(), window);
+        }
+    }
+
+    private Duration getPeriod(AttributeSensor<?> attribute) {
+        Map<String, Duration> overrides = getConfiguredPeriods();
+        if (overrides == null) return null;
+        Duration result = overrides.get(attribute.getName());
+        if (result == null && attribute instanceof BasicAttributeSensor) {
+            result = ((BasicAttributeSensor<?>)attribute).getPublishCoalescePeriod();
+        }
+        return (result != null && result.isPositive()) ? result : null;
+    }
+
+    private Map<String, Duration> getConfiguredPeriods() {
+        Map<String, Duration> result = configuredPeriods;
+        if (result == null) {
+            if (!entity.getManagementSupport().isDeployed()) return null;
+            Map<String, Duration> periods = Maps.newLinkedHashMap();
+            Map<String, Object> raw = entity.getConfig(BrooklynConfigKeys.SENSOR_PUBLISH_COALESCE_PERIODS);
+            if (raw != null) {
+                for (Map.Entry<String, Object> entry : raw.entrySet()) {
+                    try {
+                        Duration period = Duration.of(entry.getValue());
+                        periods.put(entry.getKey(), (period != null) ? period : Duration.ZERO);
+                    } catch (Exception e) {
+                        Exceptions.propagateIfFatal(e);
+                        log.warn("Invalid publish coalesce period for "+entry.getKey()+" on "+entity+" (ignoring): "+entry.getValue());
+                    }
+                }
+            }
+            configuredPeriods = result = ImmutableMap.copyOf(periods);
+        }
+        return result;
+    }
+
+    private BasicExecutionManager getExecutionManager() {
+        BasicExecutionManager result = executionManager;
+        if (result == null) {
+            ExecutionManager em = entity.getManagementContext().getExecutionManager();
+            if (!(em instanceof BasicExecutionManager)) {
+                // can't schedule the end of a window; fall back to publishing every change
+                return null;
+            }
+            executionManager = result = (BasicExecutionManager) em;
+        }
+        return result;
+    }
+}
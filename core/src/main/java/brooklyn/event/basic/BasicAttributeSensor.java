@@ -22,7 +22,9 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
+import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
 import com.google.common.reflect.TypeToken;
 
 /**
@@ -32,6 +34,7 @@ public class BasicAttributeSensor<T> extends BasicSensor<T> implements Attribute
     private static final long serialVersionUID = -2493209215974820300L;
     
     private final SensorPersistenceMode persistence;
+    private final Duration publishCoalescePeriod;
 
     public BasicAttributeSensor(Class<T> type, String name) {
         this(type, name, name);
@@ -50,8 +53,14 @@ public class BasicAttributeSensor<T> extends BasicSensor<T> implements Attribute
     }
     
     public BasicAttributeSensor(TypeToken<T> typeToken, String name, String description, SensorPersistenceMode persistence) {
+        this(typeToken, name, description, persistence, null);
+    }
+
+    @Beta
+    public BasicAttributeSensor(TypeToken<T> typeToken, String name, String description, SensorPersistenceMode persistence, Duration publishCoalescePeriod) {
         super(typeToken, name, description);
         this.persistence = checkNotNull(persistence, "persistence");
+        this.publishCoalescePeriod = publishCoalescePeriod;
     }
 
     @Override
@@ -59,4 +68,14 @@ public class BasicAttributeSensor<T> extends BasicSensor<T> implements Attribute
         // persistence could be null if deserializing state written by an old version; in which case default to 'required'
         return (persistence != null) ? persistence : SensorPersistenceMode.REQUIRED;
     }
+
+    /**
+     * The window within which changes to this attribute are coalesced when published, 
+     * so that listeners see only the latest value; or null (the default) to publish every change.
+     * Can be overridden per entity with {@link brooklyn.entity.basic.BrooklynConfigKeys#SENSOR_PUBLISH_COALESCE_PERIODS}.
+     */
+    @Beta
+    public Duration getPublishCoalescePeriod() {
+        return publishCoalescePeriod;
+    }
 }
@@ -674,6 +674,7 @@ public class DependentConfiguration {
         }
         public Task<V> build() {
             validate();
+            SensorDependencies.record(source, sensor);
             
             return Tasks.<V>builder().dynamic(false)
                 .name("waiting on "+sensor.getName())
@@ -685,6 +686,7 @@ public class DependentConfiguration {
         
         public V runNow() {
             validate();
+            SensorDependencies.record(source, sensor);
             return new WaitInTaskForAttributeReady<T,V>(this).call();
         }
         private void validate() {
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.basic;
+
+import java.util.Map;
+
+import brooklyn.entity.Entity;
+import brooklyn.event.AttributeSensor;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+
+/**
+ * The sensors that a value was derived from, with the values those sensors had when they were read,
+ * so that a result computed from them can be reused until one of them changes.
+ * <p>
+ * Dependencies are recorded on the current thread, between {@link #startRecording()} and {@link #stopRecording()},
+ * by calls to {@link #record(Entity, AttributeSensor)}; {@link DependentConfiguration#attributeWhenReady(Entity, AttributeSensor)}
+ * and its builder record the sensor they wait on. Recordings nest, with dependencies also counting against the
+ * enclosing recording. Sensors read in other threads (e.g. by tasks submitted while resolving) are not recorded.
+ */
+@Beta
+public class SensorDependencies {
+
+    private static final ThreadLocal<SensorDependencies> CURRENT = new ThreadLocal<SensorDependencies>();
+
+    private final SensorDependencies outer;
+    private final Map<SensorOnEntity, Object> values = MutableMap.of();
+    private boolean stopped;
+
+    private SensorDependencies(SensorDependencies outer) {
+        this.outer = outer;
+    }
+
+    /** starts recording, on this thread, the sensors which values are derived from; must be followed by {@link #stopRecording()} */
+    public static SensorDependencies startRecording() {
+        SensorDependencies result = new SensorDependencies(CURRENT.get());
+        CURRENT.set(result);
+        return result;
+    }
+
+    /** notes that the value currently being computed on this thread depends on the given sensor; does nothing if not recording */
+    public static void record(Entity entity, AttributeSensor<?> sensor) {
+        SensorDependencies current = CURRENT.get();
+        if (current != null) {
+            current.add(new SensorOnEntity(entity, sensor), entity.getAttribute(sensor));
+        }
+    }
+
+    /** notes that the value currently being computed on this thread depends on all the given sensors; does nothing if not recording */
+    public static void recordAll(SensorDependencies dependencies) {
+        SensorDependencies current = CURRENT.get();
+        if (current != null) {
+            synchronized (dependencies) {
+                for (Map.Entry<SensorOnEntity, Object> entry : dependencies.values.entrySet()) {
+                    current.add(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private synchronized void add(SensorOnEntity sensor, Object value) {
+        if (!values.containsKey(sensor)) values.put(sensor, value);
+        if (outer != null) outer.add(sensor, value);
+    }
+
+    /** stops this recording, which must be the most recent one started on this thread that has not yet been stopped */
+    public void stopRecording() {
+        if (stopped) return;
+        if (CURRENT.get() != this) {
+            throw new IllegalStateException("Recording of sensor dependencies "+this+" is not the current one on this thread");
+        }
+        stopped = true;
+        if (outer != null) {
+            CURRENT.set(outer);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /** whether any of the sensors now has a different value from when it was recorded */
+    public synchronized boolean isChanged() {
+        for (Map.Entry<SensorOnEntity, Object> entry : values.entrySet()) {
+            if (!Objects.equal(entry.getKey().getValue(), entry.getValue())) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Objects.toStringHelper(this).add("sensors", values.keySet()).toString();
+    }
+
+    private static class SensorOnEntity {
+        final Entity entity;
+        final AttributeSensor<?> sensor;
+
+        SensorOnEntity(Entity entity, AttributeSensor<?> sensor) {
+            this.entity = entity;
+            this.sensor = sensor;
+        }
+
+        Object getValue() {
+            return entity.getAttribute(sensor);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SensorOnEntity)) return false;
+            SensorOnEntity o = (SensorOnEntity) obj;
+            return entity.equals(o.entity) && sensor.getName().equals(o.sensor.getName());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(entity, sensor.getName());
+        }
+
+        @Override
+        public String toString() {
+            return entity+"."+sensor.getName();
+        }
+    }
+}
@@ -57,6 +57,7 @@ public class Sensors {
         private TypeToken<T> type;
         private String description;
         private SensorPersistenceMode persistence;
+        private Duration publishCoalescePeriod;
         
         protected Builder() { // use builder(type, name) instead
         }
@@ -75,8 +76,13 @@ public class Sensors {
         public Builder<T> persistence(SensorPersistenceMode val) {
             this.persistence = val; return this;
         }
+        /** coalesces publication of changes within the given window, so listeners are only told the latest value;
+         * see {@link BasicAttributeSensor#getPublishCoalescePeriod()} */
+        public Builder<T> publishCoalescePeriod(Duration val) {
+            this.publishCoalescePeriod = val; return this;
+        }
         public AttributeSensor<T> build() {
-            return new BasicAttributeSensor<T>(type, name, description, persistence);
+            return new BasicAttributeSensor<T>(type, name, description, persistence, publishCoalescePeriod);
         }
     }
 
@@ -21,6 +21,7 @@ package brooklyn.event.feed;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collection;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +39,9 @@ import brooklyn.policy.basic.AbstractEntityAdjunct;
 import brooklyn.util.javalang.JavaClassNames;
 import brooklyn.util.text.Strings;
 
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableMap;
+
 /** 
  * Captures common fields and processes for sensor feeds.
  * These generally poll or subscribe to get sensor values for an entity.
@@ -237,6 +241,16 @@ public abstract class AbstractFeed extends AbstractEntityAdjunct implements Feed
     protected void postStop() {
     }
     
+    /**
+     * Counts and latency and lateness histograms of the polls of this feed.
+     * @see Poller#getMetrics()
+     */
+    @Beta
+    public Map<String, Object> getPollMetrics() {
+        Poller<?> poller = getPoller();
+        return (poller != null) ? poller.getMetrics() : ImmutableMap.<String, Object>of();
+    }
+    
     /**
      * For overriding, where sub-class can change return-type generics!
      */
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Counts of durations (in milliseconds) in fixed, roughly logarithmic, buckets;
+ * cheap enough to record every poll, and thread-safe.
+ * Percentiles are approximate: they are reported as the upper bound of the bucket containing them.
+ */
+@Beta
+public class PollHistogram {
+
+    /** upper bounds (inclusive) of the buckets, in millis; the last bucket is unbounded */
+    private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long millis) {
+        if (millis < 0) millis = 0;
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) bucket++;
+        counts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(millis);
+        long oldMax;
+        while (millis > (oldMax = max.get())) {
+            if (max.compareAndSet(oldMax, millis)) break;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /** the approximate given percentile (0 to 100), or -1 if nothing recorded */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) return -1;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return BOUNDS[i];
+        }
+        return max.get();
+    }
+
+    /** count, mean, max and approximate percentiles, and the non-empty buckets */
+    public Map<String, Object> toMap() {
+        long total = count.get();
+        Map<String, Object> buckets = MutableMap.of();
+        for (int i = 0; i <= BOUNDS.length; i++) {
+            long val = counts.get(i);
+            if (val > 0) buckets.put(i < BOUNDS.length ? "<="+BOUNDS[i]+"ms" : ">"+BOUNDS[BOUNDS.length-1]+"ms", val);
+        }
+        return MutableMap.<String, Object>builder()
+                .put("count", total)
+                .put("meanMs", total == 0 ? 0 : sum.get() / total)
+                .put("maxMs", max.get())
+                .put("p50Ms", getPercentile(50))
+                .put("p90Ms", getPercentile(90))
+                .put("p99Ms", getPercentile(99))
+                .put("buckets", buckets)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()+toMap();
+    }
+}
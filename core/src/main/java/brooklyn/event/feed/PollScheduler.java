@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.BrooklynServerConfig;
+import brooklyn.config.StringConfigMap;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Schedules the periodic polls of all {@link Poller}s of a management context, using a single timer thread
+ * (a hashed timing wheel) rather than a scheduled task per poll job. Each poll is still run as a task of its entity.
+ * <p>
+ * To avoid the polls of many entities with the same period firing in synchronized waves:
+ * <ul>
+ *   <li>the delay before each poll can be varied randomly by up to a fraction ({@code jitter}) of the period;
+ *   <li>the first poll of each job can be at a random point in its first period ({@code spreadPhase}).
+ * </ul>
+ * Polls which fail (i.e. throw) are retried with exponential backoff, up to {@code maxBackoff} between polls
+ * (if that is longer than the period). If {@code deduplicate} is set, jobs with the same {@link Subscriber#getDeduplicationKey() key}
+ * and period (e.g. the same URL polled by two feeds) are run once, with the result given to each subscriber.
+ * All of these are off by default, so polls are made at the same times as with a scheduled task per poll job.
+ * <p>
+ * As with {@link brooklyn.util.task.ScheduledTask}, the delay is counted from the end of the previous poll,
+ * so a slow poll is never run concurrently with itself.
+ * <p>
+ * Configured by the {@link BrooklynServerConfig} {@code brooklyn.feed.poll.*} keys.
+ */
+@Beta
+public class PollScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PollScheduler.class);
+
+    public static final Duration DEFAULT_TICK = Duration.millis(10);
+    public static final double DEFAULT_JITTER = 0;
+    public static final int WHEEL_SIZE = 512;
+
+    /** A poll job, scheduled by {@link PollScheduler#subscribe(Subscriber, Duration)} */
+    @Beta
+    public interface Subscriber {
+        /**
+         * Subscribers with equal (non-null) keys and the same period share one poll;
+         * null means this subscriber's job is never shared.
+         */
+        Object getDeduplicationKey();
+
+        /** false if the next poll should be skipped for this subscriber, e.g. because its entity is not up */
+        boolean isEnabled();
+
+        /** true if this subscriber can never poll again (e.g. its entity is no longer managed), so should be unsubscribed */
+        boolean isObsolete();
+
+        /**
+         * Runs the poll (typically asynchronously, as a task of the subscriber's entity), giving the result to each
+         * of the recipients (which includes this subscriber, and others with the same key).
+         *
+         * @param dueTime when the poll was due, for reporting lateness
+         * @return completes when the poll has completed, with whether it succeeded
+         */
+        ListenableFuture<Boolean> poll(List<Subscriber> recipients, long dueTime);
+    }
+
+    /** Returned from {@link PollScheduler#subscribe(Subscriber, Duration)}, to stop polling */
+    @Beta
+    public interface Subscription {
+        void unsubscribe();
+        /** false once unsubscribed (including if obsolete), or if the scheduler is closed */
+        boolean isActive();
+    }
+
+    /** a scheduler configured by the {@code brooklyn.feed.poll.*} keys in the given config */
+    public static PollScheduler newInstance(StringConfigMap config) {
+        return new PollScheduler(
+                config.getConfig(BrooklynServerConfig.FEED_POLL_TICK),
+                config.getConfig(BrooklynServerConfig.FEED_POLL_JITTER),
+                config.getConfig(BrooklynServerConfig.FEED_POLL_SPREAD_PHASE),
+                config.getConfig(BrooklynServerConfig.FEED_POLL_MAX_BACKOFF),
+                config.getConfig(BrooklynServerConfig.FEED_POLL_DEDUPLICATE));
+    }
+
+    private final long tickMillis;
+    private final double jitter;
+    private final boolean spreadPhase;
+    private final Duration maxBackoff;
+    private final boolean deduplicate;
+    private final Random random = new Random();
+
+    private final Map<Object, Registration> registrations = MutableMap.of();
+    private final Queue<Registration> pending = new ConcurrentLinkedQueue<Registration>();
+    private final AtomicLong pollCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong sharedCount = new AtomicLong();
+    private Thread timerThread;
+    private volatile boolean closed;
+
+    /**
+     * @param tick         granularity of the timer
+     * @param jitter       fraction (0 to 1) of the period by which each delay is randomly varied
+     * @param spreadPhase  whether the first poll of each job is at a random time within its first period, rather than immediately
+     * @param maxBackoff   maximum delay between polls of a failing job (ignored if less than the job's period)
+     * @param deduplicate  whether to share the polls of subscribers with equal keys
+     */
+    public PollScheduler(Duration tick, double jitter, boolean spreadPhase, Duration maxBackoff, boolean deduplicate) {
+        if (jitter < 0 || jitter > 1) throw new IllegalArgumentException("Jitter must be between 0 and 1, but was "+jitter);
+        this.tickMillis = Math.max(1, tick.toMilliseconds());
+        this.jitter = jitter;
+        this.spreadPhase = spreadPhase;
+        this.maxBackoff = maxBackoff;
+        this.deduplicate = deduplicate;
+    }
+
+    /** schedules polls of the given subscriber, until unsubscribed or {@link Subscriber#isObsolete() obsolete} */
+    public Subscription subscribe(final Subscriber subscriber, Duration period) {
+        Object dedupKey = deduplicate ? subscriber.getDeduplicationKey() : null;
+        final Object key = (dedupKey != null) ? new RegistrationKey(dedupKey, period.toMilliseconds()) : new Object();
+        Registration registration;
+        boolean added = false;
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("Poll scheduler closed: "+this);
+            registration = registrations.get(key);
+            if (registration == null) {
+                registration = new Registration(key, period.toMilliseconds());
+                registrations.put(key, registration);
+                added = true;
+            } else {
+                sharedCount.incrementAndGet();
+            }
+            registration.subscribers.add(subscriber);
+            startTimer();
+        }
+        if (added) {
+            long initialDelay = spreadPhase ? (long) (random.nextDouble() * registration.periodMillis) : 0;
+            schedule(registration, System.currentTimeMillis() + initialDelay);
+        }
+        final Registration finalRegistration = registration;
+        return new Subscription() {
+            @Override public void unsubscribe() {
+                remove(finalRegistration, subscriber);
+            }
+            @Override public boolean isActive() {
+                return !closed && finalRegistration.subscribers.contains(subscriber);
+            }};
+    }
+
+    /**
+     * Counts of {@code registrations} (distinct scheduled jobs), {@code subscribers}, and subscribers sharing another's job
+     * ({@code shared}); and of {@code polls} run, {@code skipped} (e.g. as entity not up) and {@code failures}.
+     */
+    public Map<String, Object> getMetrics() {
+        int registrationCount, subscriberCount = 0;
+        synchronized (this) {
+            registrationCount = registrations.size();
+            for (Registration registration : registrations.values()) {
+                subscriberCount += registration.subscribers.size();
+            }
+        }
+        return MutableMap.<String, Object>builder()
+                .put("registrations", registrationCount)
+                .put("subscribers", subscriberCount)
+                .put("shared", sharedCount.get())
+                .put("polls", pollCount.get())
+                .put("skipped", skippedCount.get())
+                .put("failures", failureCount.get())
+                .build();
+    }
+
+    /** stops all polling */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            registrations.clear();
+            thread = timerThread;
+        }
+        if (thread != null) thread.interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()+"[tick="+tickMillis+"ms; jitter="+jitter+"; spreadPhase="+spreadPhase+"]";
+    }
+
+    private void remove(Registration registration, Subscriber subscriber) {
+        synchronized (this) {
+            registration.subscribers.remove(subscriber);
+            if (registration.subscribers.isEmpty()) {
+                registration.cancelled = true;
+                if (registrations.get(registration.key) == registration) registrations.remove(registration.key);
+            }
+        }
+    }
+
+    private void schedule(Registration registration, long dueTime) {
+        registration.dueTime = dueTime;
+        pending.add(registration);
+    }
+
+    private long nextDelay(Registration registration) {
+        double delay = registration.periodMillis;
+        if (registration.consecutiveFailures > 0 && maxBackoff.toMilliseconds() > registration.periodMillis) {
+            delay = Math.min(delay * Math.pow(2, Math.min(registration.consecutiveFailures, 30)), maxBackoff.toMilliseconds());
+        }
+        if (jitter > 0) {
+            delay *= 1 + jitter * (2 * random.nextDouble() - 1);
+        }
+        return (long) delay;
+    }
+
+    private void fire(final Registration registration, long now) {
+        if (registration.cancelled || closed) return;
+
+        List<Subscriber> recipients = MutableList.of();
+        for (Subscriber subscriber : registration.subscribers) {
+            try {
+                if (subscriber.isObsolete()) {
+                    if (LOG.isDebugEnabled()) LOG.debug("Unsubscribing obsolete poll job {}", subscriber);
+                    remove(registration, subscriber);
+                } else if (subscriber.isEnabled()) {
+                    recipients.add(subscriber);
+                }
+            } catch (Exception e) {
+                LOG.warn("Problem checking poll job "+subscriber+" (continuing): "+e, e);
+            }
+        }
+        if (registration.cancelled) return;
+        if (recipients.isEmpty()) {
+            skippedCount.incrementAndGet();
+            schedule(registration, now + nextDelay(registration));
+            return;
+        }
+
+        pollCount.incrementAndGet();
+        ListenableFuture<Boolean> result;
+        try {
+            result = recipients.get(0).poll(recipients, registration.dueTime);
+        } catch (Throwable t) {
+            // treated as a failed poll, so it is still rescheduled
+            LOG.warn("Problem starting poll job "+recipients.get(0)+" (continuing): "+t, t);
+            result = Futures.immediateFuture(false);
+        }
+        Futures.addCallback(result, new FutureCallback<Boolean>() {
+            @Override public void onSuccess(Boolean success) {
+                onPollDone(registration, Boolean.TRUE.equals(success));
+            }
+            @Override public void onFailure(Throwable t) {
+                onPollDone(registration, false);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private void onPollDone(Registration registration, boolean success) {
+        if (success) {
+            registration.consecutiveFailures = 0;
+        } else {
+            registration.consecutiveFailures++;
+            failureCount.incrementAndGet();
+        }
+        schedule(registration, System.currentTimeMillis() + nextDelay(registration));
+    }
+
+    private void startTimer() {
+        if (timerThread != null) return;
+        timerThread = new Thread(new Runnable() {
+            @Override public void run() {
+                runTimer();
+            }}, "brooklyn-poll-scheduler");
+        timerThread.setDaemon(true);
+        timerThread.start();
+    }
+
+    /** the hashed timing wheel: each bucket holds the registrations due when the cursor next reaches it, or some whole number of rotations later */
+    private void runTimer() {
+        @SuppressWarnings("unchecked")
+        List<Registration>[] wheel = new List[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = MutableList.of();
+        }
+        long startTime = System.currentTimeMillis();
+        long tick = 0;
+        try {
+            while (!closed) {
+                long tickTime = startTime + tick*tickMillis;
+                long sleep = tickTime - System.currentTimeMillis();
+                if (sleep > 0) Thread.sleep(sleep);
+
+                Registration registration;
+                while ((registration = pending.poll()) != null) {
+                    if (registration.cancelled) continue;
+                    long ticksAway = Math.max(0, (registration.dueTime - tickTime + tickMillis - 1) / tickMillis);
+                    registration.rounds = ticksAway / WHEEL_SIZE;
+                    wheel[(int) ((tick + ticksAway) % WHEEL_SIZE)].add(registration);
+                }
+
+                List<Registration> bucket = wheel[(int) (tick % WHEEL_SIZE)];
+                long now = System.currentTimeMillis();
+                for (Iterator<Registration> iter = bucket.iterator(); iter.hasNext();) {
+                    registration = iter.next();
+                    if (registration.cancelled) {
+                        iter.remove();
+                    } else if (registration.rounds <= 0) {
+                        iter.remove();
+                        try {
+                            fire(registration, now);
+                        } catch (Throwable t) {
+                            // so that one bad poll does not stop all the others
+                            LOG.warn("Problem firing poll "+registration+" (continuing): "+t, t);
+                        }
+                    } else {
+                        registration.rounds--;
+                    }
+                }
+                tick++;
+            }
+        } catch (InterruptedException e) {
+            if (!closed) LOG.warn("Poll scheduler "+this+" interrupted; no further polls will be made");
+        } catch (Throwable t) {
+            LOG.error("Poll scheduler "+this+" failed; no further polls will be made: "+t, t);
+            throw Exceptions.propagate(t);
+        }
+    }
+
+    private static class RegistrationKey {
+        final Object dedupKey;
+        final long periodMillis;
+        RegistrationKey(Object dedupKey, long periodMillis) {
+            this.dedupKey = dedupKey;
+            this.periodMillis = periodMillis;
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(dedupKey, periodMillis);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RegistrationKey)) return false;
+            RegistrationKey o = (RegistrationKey) obj;
+            return dedupKey.equals(o.dedupKey) && periodMillis == o.periodMillis;
+        }
+    }
+
+    /** one scheduled job; apart from the subscribers, only accessed by the timer thread or by its single in-progress poll */
+    private static class Registration {
+        final Object key;
+        final long periodMillis;
+        final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+        volatile boolean cancelled;
+        volatile long dueTime;
+        volatile int consecutiveFailures;
+        long rounds;
+
+        Registration(Object key, long periodMillis) {
+            this.key = key;
+            this.periodMillis = periodMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Registration["+subscribers+"; period="+periodMillis+"ms]";
+        }
+    }
+}
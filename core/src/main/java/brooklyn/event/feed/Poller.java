@@ -19,8 +19,11 @@
 package brooklyn.event.feed;
 
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,19 +34,31 @@ import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.management.Task;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.task.DynamicSequentialTask;
-import brooklyn.util.task.ScheduledTask;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 
 /** 
  * For executing periodic polls.
  * Jobs are added to the schedule, and then the poller is started.
  * The jobs will then be executed periodically, and the handler called for the result/failure.
+ * <p>
+ * The polls are timed by the management context's {@link PollScheduler}, shared by all pollers,
+ * and each poll is run as a task of the entity. Jobs which are equal to the jobs of other pollers (with the same period)
+ * are run once, with the result given to the handlers of each.
  * 
  * Assumes the schedule+start will be done single threaded, and that stop will not be done concurrently.
  */
@@ -53,42 +68,177 @@ public class Poller<V> {
     private final EntityLocal entity;
     private final boolean onlyIfServiceUp;
     private final Set<Callable<?>> oneOffJobs = new LinkedHashSet<Callable<?>>();
-    private final Set<PollJob<V>> pollJobs = new LinkedHashSet<PollJob<V>>();
+    private final Set<PollJob> pollJobs = new LinkedHashSet<PollJob>();
     private final Set<Task<?>> oneOffTasks = new LinkedHashSet<Task<?>>();
-    private final Set<ScheduledTask> tasks = new LinkedHashSet<ScheduledTask>();
+    private final Set<PollScheduler.Subscription> subscriptions = new LinkedHashSet<PollScheduler.Subscription>();
     private volatile boolean started = false;
     
-    private static class PollJob<V> {
+    private class PollJob implements PollScheduler.Subscriber {
         final PollHandler<? super V> handler;
         final Duration pollPeriod;
-        final Runnable wrappedJob;
+        /** exactly one of job and asyncJob is set */
+        final Callable<V> job;
+        final Callable<? extends ListenableFuture<? extends V>> asyncJob;
+        final PollHistogram latency = new PollHistogram();
+        final PollHistogram lateness = new PollHistogram();
+        final AtomicLong failures = new AtomicLong();
         private boolean loggedPreviousException = false;
         
         PollJob(final Callable<V> job, final PollHandler<? super V> handler, Duration period) {
             this.handler = handler;
             this.pollPeriod = period;
-            
-            wrappedJob = new Runnable() {
-                public void run() {
-                    try {
-                        V val = job.call();
-                        loggedPreviousException = false;
-                        if (handler.checkSuccess(val)) {
-                            handler.onSuccess(val);
-                        } else {
-                            handler.onFailure(val);
+            this.job = job;
+            this.asyncJob = null;
+        }
+        
+        /**
+         * For a job which starts a request and returns its future; the handler is called when that completes,
+         * typically in a thread of whatever is doing the request.
+         */
+        PollJob(final PollHandler<? super V> handler, Duration period, final Callable<? extends ListenableFuture<? extends V>> job) {
+            this.handler = handler;
+            this.pollPeriod = period;
+            this.job = null;
+            this.asyncJob = job;
+        }
+        
+        @Override
+        public Object getDeduplicationKey() {
+            // jobs are compared with equals, so only those which define it (e.g. in terms of the url polled) are ever shared
+            return (job != null) ? job : ImmutableList.of("async", asyncJob);
+        }
+        
+        @Override
+        public boolean isEnabled() {
+            return started && (!onlyIfServiceUp || Boolean.TRUE.equals(entity.getAttribute(Attributes.SERVICE_UP)));
+        }
+        
+        @Override
+        public boolean isObsolete() {
+            return ((EntityInternal)entity).getManagementSupport().isNoLongerManaged();
+        }
+        
+        @Override
+        public ListenableFuture<Boolean> poll(final List<PollScheduler.Subscriber> recipients, final long dueTime) {
+            final SettableFuture<Boolean> result = SettableFuture.create();
+            final Object jobForLogging = (job != null) ? job : asyncJob;
+            final boolean[] handedOff = new boolean[1];
+            DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", handler.getDescription(), "entity", entity), 
+                new Callable<Void>() { public Void call() {
+                    final long startTime = System.currentTimeMillis();
+                    for (PollScheduler.Subscriber recipient : recipients) {
+                        ((Poller<?>.PollJob)recipient).lateness.record(startTime - dueTime);
+                    }
+                    if (job != null) {
+                        try {
+                            V val = job.call();
+                            recordLatency(recipients, startTime);
+                            deliver(recipients, val);
+                            result.set(true);
+                        } catch (Exception e) {
+                            recordLatency(recipients, startTime);
+                            deliverException(recipients, jobForLogging, e);
+                            result.set(false);
                         }
+                        return null;
+                    }
+                    ListenableFuture<? extends V> future;
+                    try {
+                        future = asyncJob.call();
                     } catch (Exception e) {
-                        if (loggedPreviousException) {
-                            if (log.isTraceEnabled()) log.trace("PollJob for {}, repeated consecutive failures, handling {} using {}", new Object[] {job, e, handler});
-                        } else {
-                            if (log.isDebugEnabled()) log.debug("PollJob for {} handling {} using {}", new Object[] {job, e, handler});
-                            loggedPreviousException = true;
-                        }
-                        handler.onException(e);
+                        deliverException(recipients, jobForLogging, e);
+                        result.set(false);
+                        return null;
                     }
-                }
-            };
+                    handedOff[0] = true;
+                    Futures.addCallback(future, new FutureCallback<V>() {
+                        @Override public void onSuccess(V val) {
+                            recordLatency(recipients, startTime);
+                            deliver(recipients, val);
+                            result.set(true);
+                        }
+                        @Override public void onFailure(Throwable t) {
+                            recordLatency(recipients, startTime);
+                            Exceptions.propagateIfFatal(t);
+                            deliverException(recipients, jobForLogging, (t instanceof Exception) ? (Exception)t : new RuntimeException(t));
+                            result.set(false);
+                        }
+                    });
+                    return null; 
+                } } );
+            BrooklynTaskTags.setTransient(task);
+            Entities.submit(entity, task).addListener(new Runnable() {
+                @Override public void run() {
+                    // e.g. if cancelled before it ran
+                    if (!handedOff[0]) result.set(false);
+                }}, MoreExecutors.sameThreadExecutor());
+            return result;
+        }
+        
+        private void recordLatency(List<PollScheduler.Subscriber> recipients, long startTime) {
+            long duration = System.currentTimeMillis() - startTime;
+            for (PollScheduler.Subscriber recipient : recipients) {
+                ((Poller<?>.PollJob)recipient).latency.record(duration);
+            }
+        }
+        
+        private void deliver(List<PollScheduler.Subscriber> recipients, Object val) {
+            for (PollScheduler.Subscriber recipient : recipients) {
+                ((Poller<?>.PollJob)recipient).onResult(val);
+            }
+        }
+        
+        private void deliverException(List<PollScheduler.Subscriber> recipients, Object job, Exception e) {
+            for (PollScheduler.Subscriber recipient : recipients) {
+                ((Poller<?>.PollJob)recipient).onException(job, e);
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void onResult(Object val) {
+            // ignore results of a poll in progress when stopped
+            if (!started) return;
+            try {
+                onValue((V) val);
+            } catch (Exception e) {
+                onException((job != null) ? job : asyncJob, e);
+            }
+        }
+        
+        private void onValue(V val) {
+            loggedPreviousException = false;
+            if (handler.checkSuccess(val)) {
+                handler.onSuccess(val);
+            } else {
+                handler.onFailure(val);
+            }
+        }
+        
+        private void onException(Object job, Exception e) {
+            if (!started) return;
+            failures.incrementAndGet();
+            if (loggedPreviousException) {
+                if (log.isTraceEnabled()) log.trace("PollJob for {}, repeated consecutive failures, handling {} using {}", new Object[] {job, e, handler});
+            } else {
+                if (log.isDebugEnabled()) log.debug("PollJob for {} handling {} using {}", new Object[] {job, e, handler});
+                loggedPreviousException = true;
+            }
+            handler.onException(e);
+        }
+        
+        Map<String, Object> getMetrics() {
+            return MutableMap.<String, Object>builder()
+                    .put("period", pollPeriod.toMilliseconds())
+                    .put("polls", lateness.getCount())
+                    .put("failures", failures.get())
+                    .put("latency", latency.toMap())
+                    .put("lateness", lateness.toMap())
+                    .build();
+        }
+        
+        @Override
+        public String toString() {
+            return "PollJob["+handler.getDescription()+"; "+entity+"]";
         }
     }
     
@@ -117,9 +267,23 @@ public class Poller<V> {
         if (started) {
             throw new IllegalStateException("Cannot schedule additional tasks after poller has started");
         }
-        PollJob<V> foo = new PollJob<V>(job, handler, period);
+        PollJob foo = new PollJob(job, handler, period);
         pollJobs.add(foo);
     }
+    
+    /**
+     * As {@link #scheduleAtFixedRate(Callable, PollHandler, Duration)}, but where the job does not block:
+     * it starts a request (e.g. using {@link brooklyn.util.http.NioHttpClient}) and returns a future,
+     * and the handler is called when that completes. The next poll is not scheduled until then,
+     * so no poll thread is held waiting on a slow or unresponsive endpoint.
+     */
+    @Beta
+    public void scheduleAsyncAtFixedRate(Callable<? extends ListenableFuture<? extends V>> job, PollHandler<? super V> handler, Duration period) {
+        if (started) {
+            throw new IllegalStateException("Cannot schedule additional tasks after poller has started");
+        }
+        pollJobs.add(new PollJob(handler, period, job));
+    }
 
     @SuppressWarnings({ "unchecked" })
     public void start() {
@@ -139,25 +303,11 @@ public class Poller<V> {
             oneOffTasks.add(((EntityInternal)entity).getExecutionContext().submit(task));
         }
         
-        for (final PollJob<V> pollJob : pollJobs) {
-            final String scheduleName = pollJob.handler.getDescription();
+        PollScheduler scheduler = null;
+        for (final PollJob pollJob : pollJobs) {
             if (pollJob.pollPeriod.compareTo(Duration.ZERO) > 0) {
-                Callable<Task<?>> pollingTaskFactory = new Callable<Task<?>>() {
-                    public Task<?> call() {
-                        DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", scheduleName, "entity", entity), 
-                            new Callable<Void>() { public Void call() {
-                                if (onlyIfServiceUp && !Boolean.TRUE.equals(entity.getAttribute(Attributes.SERVICE_UP))) {
-                                        return null;
-                                }
-                                pollJob.wrappedJob.run();
-                                return null; 
-                            } } );
-                        BrooklynTaskTags.setTransient(task);
-                        return task;
-                    }
-                };
-                ScheduledTask task = new ScheduledTask(MutableMap.of("period", pollJob.pollPeriod, "displayName", "scheduled:"+scheduleName), pollingTaskFactory);
-                tasks.add((ScheduledTask)Entities.submit(entity, task));
+                if (scheduler == null) scheduler = ((ManagementContextInternal)((EntityInternal)entity).getManagementContext()).getPollScheduler();
+                subscriptions.add(scheduler.subscribe(pollJob, pollJob.pollPeriod));
             } else {
                 if (log.isDebugEnabled()) log.debug("Activating poll (but leaving off, as period {}) for {} (using {})", new Object[] {pollJob.pollPeriod, entity, this});
             }
@@ -175,25 +325,34 @@ public class Poller<V> {
         for (Task<?> task : oneOffTasks) {
             if (task != null) task.cancel(true);
         }
-        for (ScheduledTask task : tasks) {
-            if (task != null) task.cancel();
+        for (PollScheduler.Subscription subscription : subscriptions) {
+            subscription.unsubscribe();
         }
         oneOffTasks.clear();
-        tasks.clear();
+        subscriptions.clear();
     }
 
     public boolean isRunning() {
-        boolean hasActiveTasks = false;
-        for (Task<?> task: tasks) {
-            if (task.isBegun() && !task.isDone()) {
-                hasActiveTasks = true;
-                break;
-            }
+        if (!started) return false;
+        for (PollScheduler.Subscription subscription : subscriptions) {
+            if (subscription.isActive()) return true;
         }
-        if (!started && hasActiveTasks) {
-            log.warn("Poller should not be running, but has active tasks, tasks: "+tasks);
+        return false;
+    }
+    
+    /**
+     * For each poll job (by its handler's description): the number of {@code polls} and {@code failures},
+     * and histograms of the {@code latency} of polls and their {@code lateness} (how long after they were due they started).
+     */
+    @Beta
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = MutableMap.of();
+        for (PollJob pollJob : pollJobs) {
+            String name = pollJob.handler.getDescription();
+            if (result.containsKey(name)) name = name+"#"+pollJob.hashCode();
+            result.put(name, pollJob.getMetrics());
         }
-        return started && hasActiveTasks;
+        return result;
     }
     
     protected boolean isEmpty() {
@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.net.URI;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,16 +38,21 @@ import org.slf4j.LoggerFactory;
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
 import brooklyn.event.feed.Poller;
+import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.util.http.HttpClientPool;
 import brooklyn.util.http.HttpTool;
 import brooklyn.util.http.HttpTool.HttpClientBuilder;
 import brooklyn.util.http.HttpToolResponse;
+import brooklyn.util.http.NioHttpClient;
 import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
@@ -58,6 +64,8 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * Provides a feed of attribute values, by polling over http.
@@ -112,6 +120,14 @@ public class HttpFeed extends AbstractFeed {
             new TypeToken<SetMultimap<HttpPollIdentifier, HttpPollConfig<?>>>() {},
             "polls");
 
+    /** 
+     * Whether to poll http endpoints with the management context's shared non-blocking client,
+     * so that slow or unresponsive servers do not each hold a thread; https endpoints are polled as normal.
+     */
+    @Beta
+    public static final ConfigKey<Boolean> ASYNC = ConfigKeys.newBooleanConfigKey("feed.http.async",
+            "Whether to poll http endpoints without blocking a thread per request", false);
+
     public static Builder builder() {
         return new Builder();
     }
@@ -119,6 +135,7 @@ public class HttpFeed extends AbstractFeed {
     public static class Builder {
         private EntityLocal entity;
         private boolean onlyIfServiceUp = false;
+        private boolean async = false;
         private Supplier<URI> baseUriProvider;
         private Duration period = Duration.millis(500);
         private List<HttpPollConfig<?>> polls = Lists.newArrayList();
@@ -139,6 +156,14 @@ public class HttpFeed extends AbstractFeed {
             this.onlyIfServiceUp = onlyIfServiceUp; 
             return this; 
         }
+        /** @see HttpFeed#ASYNC */
+        @Beta
+        public Builder async() { return async(true); }
+        @Beta
+        public Builder async(boolean async) {
+            this.async = async;
+            return this;
+        }
         public Builder baseUri(Supplier<URI> val) {
             if (baseUri!=null && val!=null)
                 throw new IllegalStateException("Builder cannot take both a URI and a URI Provider");
@@ -250,7 +275,7 @@ public class HttpFeed extends AbstractFeed {
 
         @Override
         public int hashCode() {
-            return Objects.hashCode(method, uriProvider, headers, body, credentials);
+            return Objects.hashCode(method, uriProvider, headers, Arrays.hashCode(body), credentials, connectionTimeout, socketTimeout);
         }
         
         @Override
@@ -262,8 +287,10 @@ public class HttpFeed extends AbstractFeed {
             return Objects.equal(method, o.method) &&
                     Objects.equal(uriProvider, o.uriProvider) &&
                     Objects.equal(headers, o.headers) &&
-                    Objects.equal(body, o.body) &&
-                    Objects.equal(credentials, o.credentials);
+                    Arrays.equals(body, o.body) &&
+                    Objects.equal(credentials, o.credentials) &&
+                    Objects.equal(connectionTimeout, o.connectionTimeout) &&
+                    Objects.equal(socketTimeout, o.socketTimeout);
         }
     }
     
@@ -275,6 +302,7 @@ public class HttpFeed extends AbstractFeed {
     
     protected HttpFeed(Builder builder) {
         setConfig(ONLY_IF_SERVICE_UP, builder.onlyIfServiceUp);
+        setConfig(ASYNC, builder.async);
         Map<String,String> baseHeaders = ImmutableMap.copyOf(checkNotNull(builder.headers, "headers"));
         
         SetMultimap<HttpPollIdentifier, HttpPollConfig<?>> polls = HashMultimap.<HttpPollIdentifier,HttpPollConfig<?>>create();
@@ -319,6 +347,7 @@ public class HttpFeed extends AbstractFeed {
             //     threads of execution, it is highly recommended that each thread maintains its
             //     own dedicated instance of HttpContext.
             //  http://hc.apache.org/httpcomponents-client-ga/tutorial/html/connmgmt.html
+            // The clients' connections are pooled by the management context, and shared with other feeds.
             final HttpClient httpClient = createHttpClient(pollInfo);
 
             Set<HttpPollConfig<?>> configs = polls.get(pollInfo);
@@ -330,38 +359,107 @@ public class HttpFeed extends AbstractFeed {
                 if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
             }
 
-            Callable<HttpToolResponse> pollJob;
+            if (!(pollInfo.method.equals("get") || pollInfo.method.equals("post") || pollInfo.method.equals("head"))) {
+                throw new IllegalStateException("Unexpected http method: "+pollInfo.method);
+            }
+            HttpPollJob pollJob = new HttpPollJob(pollInfo, httpClient);
             
+            if (Boolean.TRUE.equals(getConfig(ASYNC))) {
+                getPoller().scheduleAsyncAtFixedRate(new AsyncHttpPollJob(pollJob), new DelegatingPollHandler<HttpToolResponse>(handlers), Duration.millis(minPeriod));
+            } else {
+                getPoller().scheduleAtFixedRate(pollJob, new DelegatingPollHandler<HttpToolResponse>(handlers), minPeriod);
+            }
+        }
+    }
+
+    /**
+     * Makes the request of a poll. Jobs for equal requests are equal, so that the {@link brooklyn.event.feed.PollScheduler}
+     * can make the request once for all feeds polling the same url with the same period.
+     */
+    private class HttpPollJob implements Callable<HttpToolResponse> {
+        final HttpPollIdentifier pollInfo;
+        final HttpClient httpClient;
+        
+        HttpPollJob(HttpPollIdentifier pollInfo, HttpClient httpClient) {
+            this.pollInfo = pollInfo;
+            this.httpClient = httpClient;
+        }
+        public HttpToolResponse call() throws Exception {
+            if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
             if (pollInfo.method.equals("get")) {
-                pollJob = new Callable<HttpToolResponse>() {
-                    public HttpToolResponse call() throws Exception {
-                        if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
-                        return HttpTool.httpGet(httpClient, pollInfo.uriProvider.get(), pollInfo.headers);
-                    }};
+                return HttpTool.httpGet(httpClient, pollInfo.uriProvider.get(), pollInfo.headers);
             } else if (pollInfo.method.equals("post")) {
-                pollJob = new Callable<HttpToolResponse>() {
-                    public HttpToolResponse call() throws Exception {
-                        if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
-                        return HttpTool.httpPost(httpClient, pollInfo.uriProvider.get(), pollInfo.headers, pollInfo.body);
-                    }};
-            } else if (pollInfo.method.equals("head")) {
-                pollJob = new Callable<HttpToolResponse>() {
-                    public HttpToolResponse call() throws Exception {
-                        if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
-                        return HttpTool.httpHead(httpClient, pollInfo.uriProvider.get(), pollInfo.headers);
-                    }};
+                return HttpTool.httpPost(httpClient, pollInfo.uriProvider.get(), pollInfo.headers, pollInfo.body);
             } else {
-                throw new IllegalStateException("Unexpected http method: "+pollInfo.method);
+                return HttpTool.httpHead(httpClient, pollInfo.uriProvider.get(), pollInfo.headers);
             }
-            
-            getPoller().scheduleAtFixedRate(pollJob, new DelegatingPollHandler<HttpToolResponse>(handlers), minPeriod);
         }
+        @Override
+        public int hashCode() {
+            return pollInfo.hashCode();
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof HttpPollJob) && pollInfo.equals(((HttpPollJob)obj).pollInfo);
+        }
+        @Override
+        public String toString() {
+            return "http poll of "+pollInfo.uriProvider.get();
+        }
+    }
+    
+    /**
+     * A poll job which makes the request with the shared {@link NioHttpClient} if it can,
+     * or otherwise (e.g. for https) makes it with the blocking job.
+     */
+    private class AsyncHttpPollJob implements Callable<ListenableFuture<HttpToolResponse>> {
+        final HttpPollJob blockingJob;
+        final HttpClientPool pool;
+        
+        AsyncHttpPollJob(HttpPollJob blockingJob) {
+            this.blockingJob = blockingJob;
+            this.pool = getHttpClientPool();
+        }
+        public ListenableFuture<HttpToolResponse> call() throws Exception {
+            HttpPollIdentifier pollInfo = blockingJob.pollInfo;
+            URI uri = pollInfo.uriProvider.get();
+            if (!NioHttpClient.isSupported(uri)) {
+                return Futures.immediateFuture(blockingJob.call());
+            }
+            if (log.isTraceEnabled()) log.trace("async http polling for {} sensors at {}", entity, pollInfo);
+            return pool.getNioClient().request(pollInfo.method, uri)
+                    .headers(pollInfo.headers)
+                    .body(pollInfo.body)
+                    .credentials(pollInfo.credentials.orNull())
+                    .connectionTimeout(pollInfo.connectionTimeout)
+                    .socketTimeout(pollInfo.socketTimeout)
+                    .laxRedirect(true)
+                    .execute();
+        }
+        @Override
+        public int hashCode() {
+            return blockingJob.hashCode();
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof AsyncHttpPollJob) && blockingJob.equals(((AsyncHttpPollJob)obj).blockingJob);
+        }
+        @Override
+        public String toString() {
+            return "async "+blockingJob;
+        }
+    }
+
+    /** the connections shared by the http feeds of all entities in this management context */
+    private HttpClientPool getHttpClientPool() {
+        return ((ManagementContextInternal) ((EntityInternal) entity).getManagementContext()).getHttpClientPool();
     }
 
     // TODO Should we really trustAll for https? Make configurable?
     private HttpClient createHttpClient(HttpPollIdentifier pollIdentifier) {
         URI uri = pollIdentifier.uriProvider.get();
         HttpClientBuilder builder = HttpTool.httpClientBuilder()
+                .pool(getHttpClientPool())
                 .trustAll()
                 .laxRedirect(true);
         if (uri != null) builder.uri(uri);
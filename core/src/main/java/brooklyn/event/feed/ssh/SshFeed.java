@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -38,6 +39,7 @@ import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
+import brooklyn.event.feed.PollHandler;
 import brooklyn.event.feed.Poller;
 import brooklyn.location.basic.Locations;
 import brooklyn.location.basic.Machines;
@@ -46,12 +48,15 @@ import brooklyn.util.config.ConfigBag;
 import brooklyn.util.internal.ssh.SshTool;
 import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Objects;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
@@ -101,6 +106,10 @@ public class SshFeed extends AbstractFeed {
     
     public static final ConfigKey<Boolean> EXEC_AS_COMMAND = ConfigKeys.newBooleanConfigKey("execAsCommand");
     
+    /** @see Builder#batched(boolean) */
+    @Beta
+    public static final ConfigKey<Boolean> BATCHED = ConfigKeys.newBooleanConfigKey("batched");
+    
     @SuppressWarnings("serial")
     public static final ConfigKey<SetMultimap<SshPollIdentifier, SshPollConfig<?>>> POLLS = ConfigKeys.newConfigKey(
             new TypeToken<SetMultimap<SshPollIdentifier, SshPollConfig<?>>>() {},
@@ -117,6 +126,7 @@ public class SshFeed extends AbstractFeed {
         private Duration period = Duration.of(500, TimeUnit.MILLISECONDS);
         private List<SshPollConfig<?>> polls = Lists.newArrayList();
         private boolean execAsCommand = false;
+        private boolean batched = false;
         private String uniqueTag;
         private volatile boolean built;
         
@@ -158,6 +168,21 @@ public class SshFeed extends AbstractFeed {
             execAsCommand = false;
             return this;
         }
+        @Beta
+        public Builder batched() {
+            return batched(true);
+        }
+        /**
+         * Whether to combine the commands polled at the same period into one script, 
+         * so that each poll needs only one ssh execution rather than one per command.
+         * Each command still gets its own exit status, stdout and stderr, 
+         * and is run with its own env in a subshell.
+         */
+        @Beta
+        public Builder batched(boolean val) {
+            batched = val;
+            return this;
+        }
         public Builder uniqueTag(String uniqueTag) {
             this.uniqueTag = uniqueTag;
             return this;
@@ -216,6 +241,7 @@ public class SshFeed extends AbstractFeed {
         setConfig(ONLY_IF_SERVICE_UP, builder.onlyIfServiceUp);
         setConfig(MACHINE, builder.machine != null ? builder.machine : null);
         setConfig(EXEC_AS_COMMAND, builder.execAsCommand);
+        setConfig(BATCHED, builder.batched);
         
         SetMultimap<SshPollIdentifier, SshPollConfig<?>> polls = HashMultimap.<SshPollIdentifier,SshPollConfig<?>>create();
         for (SshPollConfig<?> config : builder.polls) {
@@ -240,6 +266,8 @@ public class SshFeed extends AbstractFeed {
     @Override
     protected void preStart() {
         SetMultimap<SshPollIdentifier, SshPollConfig<?>> polls = getConfig(POLLS);
+        boolean batched = Boolean.TRUE.equals(getConfig(BATCHED));
+        Map<Long, Map<SshPollIdentifier, DelegatingPollHandler<SshPollValue>>> pollsByPeriod = Maps.newLinkedHashMap();
         
         for (final SshPollIdentifier pollInfo : polls.keySet()) {
             Set<SshPollConfig<?>> configs = polls.get(pollInfo);
@@ -251,6 +279,16 @@ public class SshFeed extends AbstractFeed {
                 if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
             }
             
+            if (batched) {
+                Map<SshPollIdentifier, DelegatingPollHandler<SshPollValue>> batch = pollsByPeriod.get(minPeriod);
+                if (batch == null) {
+                    batch = Maps.newLinkedHashMap();
+                    pollsByPeriod.put(minPeriod, batch);
+                }
+                batch.put(pollInfo, new DelegatingPollHandler<SshPollValue>(handlers));
+                continue;
+            }
+            
             getPoller().scheduleAtFixedRate(
                     new Callable<SshPollValue>() {
                         public SshPollValue call() throws Exception {
@@ -259,6 +297,28 @@ public class SshFeed extends AbstractFeed {
                     new DelegatingPollHandler<SshPollValue>(handlers),
                     minPeriod);
         }
+        
+        for (Map.Entry<Long, Map<SshPollIdentifier, DelegatingPollHandler<SshPollValue>>> entry : pollsByPeriod.entrySet()) {
+            final Map<SshPollIdentifier, DelegatingPollHandler<SshPollValue>> batch = entry.getValue();
+            if (batch.size() == 1) {
+                final SshPollIdentifier pollInfo = Iterables.getOnlyElement(batch.keySet());
+                getPoller().scheduleAtFixedRate(
+                        new Callable<SshPollValue>() {
+                            public SshPollValue call() throws Exception {
+                                return exec(pollInfo.command.get(), pollInfo.env.get());
+                            }}, 
+                        batch.get(pollInfo),
+                        entry.getKey());
+            } else {
+                getBatchPoller().scheduleAtFixedRate(
+                        new Callable<List<Object>>() {
+                            public List<Object> call() throws Exception {
+                                return execBatch(batch.keySet());
+                            }}, 
+                        new BatchPollHandler(ImmutableList.copyOf(batch.values())),
+                        entry.getKey());
+            }
+        }
     }
     
     @SuppressWarnings("unchecked")
@@ -266,6 +326,11 @@ public class SshFeed extends AbstractFeed {
         return (Poller<SshPollValue>) super.getPoller();
     }
     
+    @SuppressWarnings("unchecked")
+    private Poller<List<Object>> getBatchPoller() {
+        return (Poller<List<Object>>) super.getPoller();
+    }
+    
     private SshPollValue exec(String command, Map<String,String> env) throws IOException {
         SshMachineLocation machine = getMachine();
         Boolean execAsCommand = getConfig(EXEC_AS_COMMAND);
@@ -288,4 +353,91 @@ public class SshFeed extends AbstractFeed {
 
         return new SshPollValue(machine, exitStatus, new String(stdout.toByteArray()), new String(stderr.toByteArray()));
     }
+
+    /**
+     * Runs the commands as one script, returning for each (in order) its {@link SshPollValue}, 
+     * or the exception if its result could not be determined.
+     */
+    private List<Object> execBatch(Collection<SshPollIdentifier> pollInfos) throws IOException {
+        SshPollBatch batch = new SshPollBatch();
+        for (SshPollIdentifier pollInfo : pollInfos) {
+            batch.add(pollInfo.command.get(), pollInfo.env.get());
+        }
+        SshMachineLocation machine = getMachine();
+        List<String> script = batch.toScript();
+        if (log.isTraceEnabled()) log.trace("Ssh polling for {}, executing batch of {} commands: {}", new Object[] {machine, batch.size(), script});
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+        int exitStatus;
+        ConfigBag flags = ConfigBag.newInstance()
+            .configure(SshTool.PROP_NO_EXTRA_OUTPUT, true)
+            .configure(SshTool.PROP_OUT_STREAM, stdout)
+            .configure(SshTool.PROP_ERR_STREAM, stderr);
+        if (Boolean.TRUE.equals(getConfig(EXEC_AS_COMMAND))) {
+            exitStatus = machine.execCommands(flags.getAllConfig(), "ssh-feed", script);
+        } else {
+            exitStatus = machine.execScript(flags.getAllConfig(), "ssh-feed", script);
+        }
+
+        return batch.parse(machine, exitStatus, new String(stdout.toByteArray()), new String(stderr.toByteArray()));
+    }
+    
+    /**
+     * Hands each result of {@link SshFeed#execBatch(Collection)} to the handlers of the corresponding command.
+     */
+    private static class BatchPollHandler implements PollHandler<List<Object>> {
+        private final List<DelegatingPollHandler<SshPollValue>> handlers;
+        
+        BatchPollHandler(List<DelegatingPollHandler<SshPollValue>> handlers) {
+            this.handlers = handlers;
+        }
+        
+        @Override
+        public boolean checkSuccess(List<Object> val) {
+            // success or otherwise is decided per command
+            return true;
+        }
+
+        @Override
+        public void onSuccess(List<Object> val) {
+            for (int i = 0; i < handlers.size(); i++) {
+                DelegatingPollHandler<SshPollValue> handler = handlers.get(i);
+                Object result = val.get(i);
+                if (result instanceof Exception) {
+                    handler.onException((Exception) result);
+                } else if (handler.checkSuccess((SshPollValue) result)) {
+                    handler.onSuccess((SshPollValue) result);
+                } else {
+                    handler.onFailure((SshPollValue) result);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(List<Object> val) {
+            onSuccess(val);
+        }
+
+        @Override
+        public void onException(Exception exception) {
+            for (DelegatingPollHandler<SshPollValue> handler : handlers) {
+                handler.onException(exception);
+            }
+        }
+
+        @Override
+        public String getDescription() {
+            List<String> descriptions = Lists.newArrayList();
+            for (DelegatingPollHandler<SshPollValue> handler : handlers) {
+                descriptions.add(handler.getDescription());
+            }
+            return descriptions.toString();
+        }
+        
+        @Override
+        public String toString() {
+            return super.toString()+"["+getDescription()+"]";
+        }
+    }
 }
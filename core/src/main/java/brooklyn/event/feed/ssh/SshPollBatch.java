@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.ssh;
+
+import java.util.List;
+import java.util.Map;
+
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.text.Identifiers;
+import brooklyn.util.text.StringEscapes.BashStringEscapes;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Combines several ssh poll commands into one script, so that they can be run with a single ssh execution,
+ * and splits the output of that script back into an {@link SshPollValue} for each command.
+ * <p>
+ * Each command runs in its own subshell (with {@code set -e}, as for a script on its own, and with its own env),
+ * and its stdout and stderr are framed by marker lines which include a random token, so that they are
+ * very unlikely to be confused with the output of the commands.
+ */
+class SshPollBatch {
+
+    private final String marker;
+    private final List<String> commands = Lists.newArrayList();
+    private final List<Map<String, String>> envs = Lists.newArrayList();
+
+    SshPollBatch() {
+        this("brooklyn-ssh-feed-"+Identifiers.makeRandomId(8));
+    }
+
+    SshPollBatch(String marker) {
+        this.marker = marker;
+    }
+
+    void add(String command, Map<String, String> env) {
+        commands.add(command);
+        envs.add(env);
+    }
+
+    int size() {
+        return commands.size();
+    }
+
+    /** The lines of the combined script; each line is also valid on its own, for executing as a command. */
+    List<String> toScript() {
+        List<String> result = Lists.newArrayList();
+        // failure of one command must not stop the others
+        result.add("set +e");
+        for (int i = 0; i < commands.size(); i++) {
+            StringBuilder subshell = new StringBuilder("( set -e\n");
+            Map<String, String> env = envs.get(i);
+            if (env != null) {
+                for (Map.Entry<String, String> entry : env.entrySet()) {
+                    if (entry.getKey() == null || entry.getValue() == null) continue;
+                    subshell.append("export ").append(entry.getKey()).append("=")
+                            .append(BashStringEscapes.wrapBash(entry.getValue())).append("\n");
+                }
+            }
+            subshell.append(commands.get(i)).append("\n) </dev/null");
+
+            result.add("printf '%s\\n' '"+startMarker(i)+"'; printf '%s\\n' '"+startMarker(i)+"' >&2");
+            result.add(subshell.toString());
+            result.add("__brooklyn_rc=$?; printf '%s\\n' \""+endMarker(i)+":$__brooklyn_rc\"; printf '%s\\n' '"+endMarker(i)+"' >&2");
+        }
+        return result;
+    }
+
+    /**
+     * Splits the output of the combined script. The result for each command is its {@link SshPollValue},
+     * or an exception if its output could not be found (e.g. if the script was killed part way through).
+     */
+    List<Object> parse(SshMachineLocation machine, int exitStatus, String stdout, String stderr) {
+        List<Object> result = Lists.newArrayListWithCapacity(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            String start = startMarker(i)+"\n";
+            String end = endMarker(i);
+
+            int outStart = stdout.indexOf(start);
+            int outEnd = (outStart >= 0) ? stdout.indexOf(end+":", outStart + start.length()) : -1;
+            int errStart = stderr.indexOf(start);
+            int errEnd = (errStart >= 0) ? stderr.indexOf(end+"\n", errStart + start.length()) : -1;
+
+            Integer commandExitStatus = null;
+            if (outEnd >= 0) {
+                int statusStart = outEnd + end.length() + 1;
+                int statusEnd = stdout.indexOf('\n', statusStart);
+                try {
+                    commandExitStatus = Integer.parseInt(stdout.substring(statusStart, (statusEnd >= 0) ? statusEnd : stdout.length()).trim());
+                } catch (NumberFormatException e) {
+                    // treated as missing, below
+                }
+            }
+
+            if (commandExitStatus == null || errEnd < 0) {
+                result.add(new IllegalStateException("No output for batched ssh poll command "+(i+1)+" of "+commands.size()+
+                        " (batch exit status "+exitStatus+"): "+commands.get(i)));
+            } else {
+                result.add(new SshPollValue(machine, commandExitStatus,
+                        stdout.substring(outStart + start.length(), outEnd),
+                        stderr.substring(errStart + start.length(), errEnd)));
+            }
+        }
+        return result;
+    }
+
+    private String startMarker(int index) {
+        return marker+":start:"+index;
+    }
+
+    private String endMarker(int index) {
+        return marker+":end:"+index;
+    }
+}
@@ -498,6 +498,10 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
                 @Override
                 public T apply(SshTool input) {
                     T result = task.apply(input);
+                    if (input instanceof SshjTool) {
+                        // a shared connection would otherwise outlive this location's tools
+                        ((SshjTool) input).retireSharedConnection();
+                    }
                     if (LOG.isDebugEnabled()) {
                         LOG.debug("{} invalidating all sshPoolCache entries: {}", SshMachineLocation.this, sshPoolCache.stats().toString());
                     }
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.concurrent.Callable;
 
 import javax.annotation.Nullable;
@@ -41,6 +42,7 @@ import brooklyn.entity.Application;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.basic.EntityConfigMap;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.rebind.RebindManager;
 import brooklyn.entity.rebind.persister.BrooklynPersistenceUtils;
@@ -57,11 +59,13 @@ import brooklyn.management.ha.ManagementPlaneSyncRecordPersister.Delta;
 import brooklyn.management.internal.LocalEntityManager;
 import brooklyn.management.internal.LocationManagerInternal;
 import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.management.internal.ManagementMetricsSource;
 import brooklyn.management.internal.ManagementTransitionInfo.ManagementTransitionMode;
 import brooklyn.util.collections.MutableList;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.exceptions.ReferenceWithError;
+import brooklyn.util.internal.ssh.sshj.SshjSessionRegistry;
 import brooklyn.util.task.ScheduledTask;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.text.Strings;
@@ -74,6 +78,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 /**
@@ -150,6 +155,7 @@ public class HighAvailabilityManagerImpl implements HighAvailabilityManager {
     private volatile PersistenceActivityMetrics managementStateWritePersistenceMetrics = new PersistenceActivityMetrics();
     private volatile PersistenceActivityMetrics managementStateReadPersistenceMetrics = new PersistenceActivityMetrics();
     private final long startTimeUtc;
+    private volatile List<ManagementMetricsSource> metricsSources;
     
     public HighAvailabilityManagerImpl(ManagementContextInternal managementContext) {
         this.managementContext = managementContext;
@@ -1069,8 +1075,22 @@ public class HighAvailabilityManagerImpl implements HighAvailabilityManager {
         result.putAll(managementContext.getRebindManager().getMetrics());
         result.put("managementStatePersistence", 
             MutableMap.of("read", managementStateReadPersistenceMetrics, "write", managementStateWritePersistenceMetrics));
+        result.put("httpClientPool", managementContext.getHttpClientPool().getMetrics());
+        result.put("pollScheduler", managementContext.getPollScheduler().getMetrics());
+        result.put("sshSessions", SshjSessionRegistry.getDefault().getMetrics());
+        result.put("configResolution", EntityConfigMap.getTotalResolutionMetrics());
+        for (ManagementMetricsSource source : getMetricsSources()) {
+            result.put(source.getName(), source.getMetrics());
+        }
         
         return result;
     }
     
+    protected List<ManagementMetricsSource> getMetricsSources() {
+        if (metricsSources == null) {
+            metricsSources = ImmutableList.copyOf(ServiceLoader.load(ManagementMetricsSource.class));
+        }
+        return metricsSources;
+    }
+    
 }
@@ -27,11 +27,14 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleWiring;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.basic.BrooklynTypeDescriptor;
 import brooklyn.catalog.CatalogItem.CatalogBundle;
 import brooklyn.config.BrooklynServerConfig;
 import brooklyn.config.BrooklynServerPaths;
@@ -81,6 +84,7 @@ public class OsgiManager {
     public void stop() {
         try {
             if (framework!=null) {
+                evictCachedTypes();
                 framework.stop();
                 framework.waitForStop(0); // 0 means indefinite
             }
@@ -111,6 +115,20 @@ public class OsgiManager {
         framework = null;
     }
 
+    /** discards the cached descriptors of types from our bundles, as those classes go with the framework */
+    protected void evictCachedTypes() {
+        BundleContext context = framework.getBundleContext();
+        if (context==null) return;
+        for (Bundle b: context.getBundles()) {
+            // the system and extension bundles' classes come from the application class path
+            if (b.getBundleId()==0 || Osgis.isExtensionBundle(b)) continue;
+            BundleWiring wiring = b.adapt(BundleWiring.class);
+            if (wiring!=null && wiring.getClassLoader()!=null) {
+                BrooklynTypeDescriptor.evict(wiring.getClassLoader());
+            }
+        }
+    }
+
     public synchronized void registerBundle(CatalogBundle bundle) {
         try {
             if (checkBundleInstalledThrowIfInconsistent(bundle)) {
@@ -53,6 +53,7 @@ import brooklyn.entity.drivers.downloads.BasicDownloadsManager;
 import brooklyn.entity.drivers.downloads.DownloadResolverManager;
 import brooklyn.entity.rebind.RebindManager;
 import brooklyn.entity.rebind.RebindManagerImpl;
+import brooklyn.event.feed.PollScheduler;
 import brooklyn.internal.storage.BrooklynStorage;
 import brooklyn.internal.storage.DataGrid;
 import brooklyn.internal.storage.DataGridFactory;
@@ -75,6 +76,7 @@ import brooklyn.util.ResourceUtils;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpClientPool;
 import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.Tasks;
 
@@ -162,6 +164,10 @@ public abstract class AbstractManagementContext implements ManagementContextInte
 
     private final BrooklynStorage storage;
 
+    private HttpClientPool httpClientPool;
+
+    private PollScheduler pollScheduler;
+
     private volatile boolean running = true;
 
     protected Maybe<URI> uri = Maybe.absent();
@@ -192,6 +198,10 @@ public abstract class AbstractManagementContext implements ManagementContextInte
         running = false;
         rebindManager.stop();
         storage.terminate();
+        synchronized (this) {
+            if (httpClientPool != null) httpClientPool.close();
+            if (pollScheduler != null) pollScheduler.close();
+        }
         // Don't unmanage everything; different entities get given their events at different times 
         // so can cause problems (e.g. a group finds out that a member is unmanaged, before the
         // group itself has been told that it is unmanaged).
@@ -207,6 +217,22 @@ public abstract class AbstractManagementContext implements ManagementContextInte
         return storage;
     }
     
+    @Override
+    public synchronized HttpClientPool getHttpClientPool() {
+        if (httpClientPool == null) {
+            httpClientPool = HttpClientPool.newInstance(configMap);
+        }
+        return httpClientPool;
+    }
+
+    @Override
+    public synchronized PollScheduler getPollScheduler() {
+        if (pollScheduler == null) {
+            pollScheduler = PollScheduler.newInstance(configMap);
+        }
+        return pollScheduler;
+    }
+
     @Override
     public RebindManager getRebindManager() {
         return rebindManager;
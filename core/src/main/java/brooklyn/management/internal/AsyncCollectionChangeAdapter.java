@@ -27,7 +27,6 @@ import brooklyn.management.ExecutionManager;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.task.BasicExecutionManager;
-import brooklyn.util.task.SingleThreadedScheduler;
 
 public class AsyncCollectionChangeAdapter<Item> implements CollectionChangeListener<Item> {
     
@@ -39,7 +38,7 @@ public class AsyncCollectionChangeAdapter<Item> implements CollectionChangeListe
     public AsyncCollectionChangeAdapter(ExecutionManager executor, CollectionChangeListener<Item> delegate) {
         this.executor = checkNotNull(executor, "executor");
         this.delegate = checkNotNull(delegate, "delegate");
-        ((BasicExecutionManager) executor).setTaskSchedulerForTag(delegate, SingleThreadedScheduler.class);
+        ((BasicExecutionManager) executor).setTaskSchedulerForTag(delegate, ((BasicExecutionManager) executor).getSerialTaskSchedulerType());
     }
 
     @Override
@@ -231,7 +231,11 @@ public class BrooklynGarbageCollector {
             executionManager.getNumActiveTasks()+" active, "+
             executionManager.getNumIncompleteTasks()+" unfinished; "+
             executionManager.getNumInMemoryTasks()+" remembered, "+
-            executionManager.getTotalTasksSubmitted()+" total submitted)";
+            executionManager.getTotalTasksSubmitted()+" total submitted); "+
+            "delivery: " + (executionManager.isUsingMailboxPool() 
+                ? "mailboxes ("+executionManager.getNumActiveMailboxThreads()+" of "+executionManager.getMailboxPoolSize()+" threads busy, "+
+                    executionManager.getNumMailboxesWaiting()+" mailboxes waiting)"
+                : "thread per backlog");
     }
     
     public void shutdownNow() {
@@ -350,17 +354,17 @@ public class BrooklynGarbageCollector {
         for (Object tag : taskTags) {
             if (isTagIgnoredForGc(tag)) continue;
             
-            Set<Task<?>> tasksWithTag = executionManager.tasksWithTagLiveOrNull(tag);
-            if (tasksWithTag==null) continue;
+            int numTasksWithTag = executionManager.getNumTasksWithTag(tag);
+            if (numTasksWithTag==0) continue;
             AtomicInteger overA = null;
             if (tag instanceof WrappedEntity) {
-                int over = tasksWithTag.size() - maxTasksPerEntity;
+                int over = numTasksWithTag - maxTasksPerEntity;
                 if (over>0) {
                     overA = new AtomicInteger(over);
                     taskEntityTagsOverCapacity.put(tag, overA);
                 }
             } else {
-                int over = tasksWithTag.size() - maxTasksPerTag;
+                int over = numTasksWithTag - maxTasksPerTag;
                 if (over>0) {
                     overA = new AtomicInteger(over);
                     taskNonEntityTagsOverCapacity.put(tag, overA);
@@ -34,10 +34,13 @@ import brooklyn.entity.Feed;
 import brooklyn.entity.basic.AbstractEntity;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.rebind.ChangeListener;
+import brooklyn.entity.rebind.EntityFieldChangeListener;
 import brooklyn.event.AttributeSensor;
 import brooklyn.management.ExecutionContext;
 import brooklyn.management.ManagementContext;
 import brooklyn.management.SubscriptionContext;
+import brooklyn.management.SubscriptionManager;
 import brooklyn.management.entitlement.EntitlementManager;
 import brooklyn.management.entitlement.Entitlements;
 import brooklyn.management.entitlement.Entitlements.EntityAndItem;
@@ -316,6 +319,10 @@ public class EntityManagementSupport {
                 throw new IllegalStateException("Has different management context: "+managementContext+"; expected "+info.getManagementContext());
             }
             getSubscriptionContext().unsubscribeAll();
+            SubscriptionManager subscriptionManager = managementContext.getSubscriptionManager();
+            if (subscriptionManager instanceof LocalSubscriptionManager) {
+                ((LocalSubscriptionManager) subscriptionManager).discardIndexFor(entity);
+            }
             entityChangeListener = EntityChangeListener.NOOP;
             managementContextUsable.set(false);
             currentlyDeployed.set(false);
@@ -449,11 +456,21 @@ public class EntityManagementSupport {
             // TODO Could make this more efficient by inspecting the attribute to decide if needs persisted
             // immediately, or not important, or transient (e.g. do we really need to persist 
             // request-per-second count for rebind purposes?!)
-            getManagementContext().getRebindManager().getChangeListener().onChanged(entity);
+            ChangeListener listener = getManagementContext().getRebindManager().getChangeListener();
+            if (listener instanceof EntityFieldChangeListener) {
+                ((EntityFieldChangeListener)listener).onAttributeChanged(entity, attribute);
+            } else {
+                listener.onChanged(entity);
+            }
         }
         @Override
         public void onConfigChanged(ConfigKey<?> key) {
-            getManagementContext().getRebindManager().getChangeListener().onChanged(entity);
+            ChangeListener listener = getManagementContext().getRebindManager().getChangeListener();
+            if (listener instanceof EntityFieldChangeListener) {
+                ((EntityFieldChangeListener)listener).onConfigChanged(entity, key);
+            } else {
+                listener.onChanged(entity);
+            }
         }
         @Override
         public void onEffectorStarting(Effector<?> effector) {
@@ -36,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import brooklyn.config.BrooklynProperties;
 import brooklyn.config.BrooklynProperties.Factory.Builder;
+import brooklyn.config.BrooklynServerConfig;
 import brooklyn.entity.Application;
 import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
@@ -62,6 +63,7 @@ import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.DynamicTasks;
 import brooklyn.util.task.TaskTags;
 import brooklyn.util.task.Tasks;
+import brooklyn.util.task.VirtualThreadExecutionManager;
 import brooklyn.util.text.Strings;
 
 import com.google.common.annotations.Beta;
@@ -308,7 +310,13 @@ public class LocalManagementContext extends AbstractManagementContext {
         if (!isRunning()) throw new IllegalStateException("Management context no longer running");
 
         if (execution == null) {
-            execution = new BasicExecutionManager(getManagementNodeId());
+            execution = configMap.getConfig(BrooklynServerConfig.EXECUTION_VIRTUAL_THREADS) 
+                    ? new VirtualThreadExecutionManager(getManagementNodeId()) 
+                    : new BasicExecutionManager(getManagementNodeId());
+            if (configMap.getConfig(BrooklynServerConfig.EXECUTION_MAILBOX_DELIVERY)) {
+                execution.useMailboxPool(configMap.getConfig(BrooklynServerConfig.EXECUTION_MAILBOX_POOL_SIZE), 
+                        configMap.getConfig(BrooklynServerConfig.EXECUTION_MAILBOX_BATCH_SIZE));
+            }
             gc = new BrooklynGarbageCollector(configMap, execution, getStorage());
         }
         return execution;
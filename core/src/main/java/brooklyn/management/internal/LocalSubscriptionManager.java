@@ -19,7 +19,6 @@
 package brooklyn.management.internal;
 
 import static brooklyn.util.JavaGroovyEquivalents.elvis;
-import static brooklyn.util.JavaGroovyEquivalents.groovyTruth;
 import static brooklyn.util.JavaGroovyEquivalents.join;
 import static brooklyn.util.JavaGroovyEquivalents.mapOf;
 
@@ -45,12 +44,13 @@ import brooklyn.management.ExecutionManager;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
 import brooklyn.util.task.BasicExecutionManager;
-import brooklyn.util.task.SingleThreadedScheduler;
 import brooklyn.util.text.Identifiers;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimaps;
 
 /**
@@ -71,9 +71,26 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     protected final ConcurrentMap<String, Subscription> allSubscriptions = new ConcurrentHashMap<String, Subscription>();
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsBySubscriber = new ConcurrentHashMap<Object, Set<Subscription>>();
+    /** values are immutable, and replaced (copy-on-write) when subscribing or unsubscribing */
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByToken = new ConcurrentHashMap<Object, Set<Subscription>>();
     
+    /**
+     * Index of the subscriptions to deliver to for a concrete sensor (by name) and source entity (by id),
+     * i.e. with the wildcard subscriptions already merged in. Entries are populated lazily on publish
+     * and invalidated on subscribe/unsubscribe, so that publish does not need to take a lock;
+     * a source's entries are discarded when it is unmanaged (see {@link #discardIndexFor(Entity)}).
+     */
+    @SuppressWarnings("rawtypes")
+    private final ConcurrentMap<String, ConcurrentMap<Object, Set<Subscription>>> subscriptionsBySensorThenSource = new ConcurrentHashMap<String, ConcurrentMap<Object, Set<Subscription>>>();
+    /** number of subscriptions per sensor name, excluding subscriptions to all sensors; used to short-circuit publish */
+    private final ConcurrentMap<String, Integer> subscriptionCountBySensorName = new ConcurrentHashMap<String, Integer>();
+    private volatile int subscriptionCountForAllSensors = 0;
+    /** incremented on every change to subscriptionsByToken, before the index is invalidated */
+    private final AtomicLong subscriptionsVersion = new AtomicLong();
+    /** stands in for a null source entity in {@link #subscriptionsBySensorThenSource} */
+    private static final Object NULL_SOURCE = new Object();
+    
     public LocalSubscriptionManager(ExecutionManager m) {
         this.em = m;
     }
@@ -110,12 +127,12 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         
         if (LOG.isDebugEnabled()) LOG.debug("Creating subscription {} for {} on {} {} in {}", new Object[] {s.id, s.subscriber, producer, sensor, this});
         allSubscriptions.put(s.id, s);
-        addToMapOfSets(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        addToTokenIndex(s);
         if (s.subscriber!=null) {
             addToMapOfSets(subscriptionsBySubscriber, s.subscriber, s);
         }
         if (!s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
-            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, ((BasicExecutionManager) em).getSerialTaskSchedulerType());
         }
         return s;
     }
@@ -125,13 +142,57 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return (Set<SubscriptionHandle>) ((Set<?>) elvis(subscriptionsBySubscriber.get(subscriber), Collections.emptySet()));
     }
 
-    public synchronized Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
-        Set<SubscriptionHandle> subscriptions = new LinkedHashSet<SubscriptionHandle>();
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, null)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, null)), Collections.emptySet()));
-        return subscriptions;
+    /**
+     * Returns an immutable set of the subscriptions for the given source-sensor pair, including those
+     * subscribed to all entities and/or all sensors. Does not take a lock; the result is cached until
+     * a relevant subscription is added or removed.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
+        String sensorName = (sensor == null) ? null : sensor.getName();
+        if (sensorName == null) {
+            // not indexed; only expected from callers outside of publish
+            return (Set<SubscriptionHandle>) (Set) computeSubscriptionsForEntitySensor(source, sensor);
+        }
+        if (subscriptionCountForAllSensors == 0 && !subscriptionCountBySensorName.containsKey(sensorName)) {
+            return Collections.emptySet();
+        }
+        
+        ConcurrentMap<Object, Set<Subscription>> bySource = subscriptionsBySensorThenSource.get(sensorName);
+        if (bySource == null) {
+            subscriptionsBySensorThenSource.putIfAbsent(sensorName, new ConcurrentHashMap<Object, Set<Subscription>>());
+            bySource = subscriptionsBySensorThenSource.get(sensorName);
+            // could be null if invalidated concurrently; just don't cache in that case
+            if (bySource == null) return (Set<SubscriptionHandle>) (Set) computeSubscriptionsForEntitySensor(source, sensor);
+        }
+        Object sourceKey = (source == null) ? NULL_SOURCE : source.getId();
+        Set<Subscription> result = bySource.get(sourceKey);
+        if (result == null) {
+            long version = subscriptionsVersion.get();
+            result = computeSubscriptionsForEntitySensor(source, sensor);
+            Set<Subscription> existing = bySource.putIfAbsent(sourceKey, result);
+            if (existing != null) {
+                result = existing;
+            } else if (subscriptionsVersion.get() != version) {
+                // subscriptions changed while computing, and the invalidation may have run before our put
+                bySource.remove(sourceKey, result);
+            }
+        }
+        return (Set<SubscriptionHandle>) (Set) result;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Set<Subscription> computeSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
+        ImmutableSet.Builder<Subscription> subscriptions = ImmutableSet.builder();
+        addAllIfNotNull(subscriptions, subscriptionsByToken.get(makeEntitySensorToken(source, sensor)));
+        addAllIfNotNull(subscriptions, subscriptionsByToken.get(makeEntitySensorToken(null, sensor)));
+        addAllIfNotNull(subscriptions, subscriptionsByToken.get(makeEntitySensorToken(source, null)));
+        addAllIfNotNull(subscriptions, subscriptionsByToken.get(makeEntitySensorToken(null, null)));
+        return subscriptions.build();
+    }
+    
+    private static <T> void addAllIfNotNull(ImmutableSet.Builder<T> builder, Set<T> items) {
+        if (items != null) builder.addAll(items);
     }
 
     /**
@@ -144,7 +205,7 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (!(sh instanceof Subscription)) throw new IllegalArgumentException("Only subscription handles of type Subscription supported: sh="+sh+"; type="+(sh != null ? sh.getClass().getCanonicalName() : null));
         Subscription s = (Subscription) sh;
         boolean result = allSubscriptions.remove(s.id) != null;
-        boolean b2 = removeFromMapOfCollections(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        boolean b2 = removeFromTokenIndex(s);
         assert result==b2;
         if (s.subscriber!=null) {
             boolean b3 = removeFromMapOfCollections(subscriptionsBySubscriber, s.subscriber, s);
@@ -152,7 +213,7 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         }
 
         // FIXME ALEX - this seems wrong
-        ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+        ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, ((BasicExecutionManager) em).getSerialTaskSchedulerType());
         return result;
     }
 
@@ -162,11 +223,11 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         
         // delivery in parallel/background, using execution manager
         
-        // subscriptions, should define SingleThreadedScheduler for any subscriber ID tag
+        // subscriptions, should define SingleThreadedScheduler (or MailboxScheduler) for any subscriber ID tag
         // in order to ensure callbacks are invoked in the order they are submitted
         // (recommend exactly one per subscription to prevent deadlock)
         // this is done with:
-        // em.setTaskSchedulerForTag(subscriberId, SingleThreadedScheduler.class);
+        // em.setTaskSchedulerForTag(subscriberId, em.getSerialTaskSchedulerType());
         
         //note, generating the notifications must be done in the calling thread to preserve order
         //e.g. emit(A); emit(B); should cause onEvent(A); onEvent(B) in that order
@@ -174,7 +235,7 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         totalEventsPublishedCount.incrementAndGet();
         
         Set<Subscription> subs = (Set<Subscription>) ((Set<?>) getSubscriptionsForEntitySensor(event.getSource(), event.getSensor()));
-        if (groovyTruth(subs)) {
+        if (!subs.isEmpty()) {
             if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(subs, ",")});
             for (Subscription s : subs) {
                 if (s.eventFilter!=null && !s.eventFilter.apply(event))
@@ -216,6 +277,93 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return tostring;
     }
     
+    /** caller must hold the lock on this, as subscribe and unsubscribe do */
+    @SuppressWarnings("rawtypes")
+    private void addToTokenIndex(Subscription s) {
+        Object token = makeEntitySensorToken(s.producer, s.sensor);
+        Set<Subscription> existing = subscriptionsByToken.get(token);
+        Set<Subscription> updated = (existing == null) 
+                ? ImmutableSet.<Subscription>of(s) 
+                : ImmutableSet.<Subscription>builder().addAll(existing).add(s).build();
+        subscriptionsByToken.put(token, updated);
+        if (s.sensor == null) {
+            subscriptionCountForAllSensors++;
+        } else {
+            Integer count = subscriptionCountBySensorName.get(s.sensor.getName());
+            subscriptionCountBySensorName.put(s.sensor.getName(), (count == null) ? 1 : count+1);
+        }
+        invalidateIndexFor(s);
+    }
+    
+    /** caller must hold the lock on this, as subscribe and unsubscribe do */
+    @SuppressWarnings("rawtypes")
+    private boolean removeFromTokenIndex(Subscription s) {
+        Object token = makeEntitySensorToken(s.producer, s.sensor);
+        Set<Subscription> existing = subscriptionsByToken.get(token);
+        if (existing == null || !existing.contains(s)) return false;
+        if (existing.size() == 1) {
+            subscriptionsByToken.remove(token);
+        } else {
+            ImmutableSet.Builder<Subscription> updated = ImmutableSet.builder();
+            for (Subscription other : existing) {
+                if (!other.equals(s)) updated.add(other);
+            }
+            subscriptionsByToken.put(token, updated.build());
+        }
+        if (s.sensor == null) {
+            subscriptionCountForAllSensors--;
+        } else {
+            Integer count = subscriptionCountBySensorName.get(s.sensor.getName());
+            if (count == null || count <= 1) {
+                subscriptionCountBySensorName.remove(s.sensor.getName());
+            } else {
+                subscriptionCountBySensorName.put(s.sensor.getName(), count-1);
+            }
+        }
+        invalidateIndexFor(s);
+        return true;
+    }
+    
+    /** discards the cached entries in {@link #subscriptionsBySensorThenSource} which the given subscription could affect */
+    @SuppressWarnings("rawtypes")
+    private void invalidateIndexFor(Subscription s) {
+        subscriptionsVersion.incrementAndGet();
+        if (s.sensor == null) {
+            if (s.producer == null) {
+                subscriptionsBySensorThenSource.clear();
+            } else {
+                discardIndexFor(s.producer);
+            }
+        } else {
+            if (s.producer == null) {
+                subscriptionsBySensorThenSource.remove(s.sensor.getName());
+            } else {
+                ConcurrentMap<Object, Set<Subscription>> bySource = subscriptionsBySensorThenSource.get(s.sensor.getName());
+                if (bySource != null) bySource.remove(s.producer.getId());
+            }
+        }
+    }
+
+    /**
+     * Discards the cached entries in {@link #subscriptionsBySensorThenSource} for the given source entity;
+     * called when it is unmanaged, as otherwise entries added when it published to wildcard subscriptions
+     * would be kept for as long as those subscriptions.
+     */
+    @SuppressWarnings("rawtypes")
+    public void discardIndexFor(Entity source) {
+        for (ConcurrentMap<Object, Set<Subscription>> bySource : subscriptionsBySensorThenSource.values()) {
+            bySource.remove(source.getId());
+        }
+    }
+
+    /** the number of source entities with cached subscriptions for the given sensor; for testing */
+    @VisibleForTesting
+    @SuppressWarnings("rawtypes")
+    int getNumIndexedSources(Sensor<?> sensor) {
+        Map<Object, Set<Subscription>> bySource = subscriptionsBySensorThenSource.get(sensor.getName());
+        return (bySource == null) ? 0 : bySource.size();
+    }
+    
     /**
      * Copied from LanguageUtils.groovy, to remove dependency.
      * 
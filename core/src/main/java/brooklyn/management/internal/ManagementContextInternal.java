@@ -29,6 +29,7 @@ import brooklyn.config.ConfigKey;
 import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.BrooklynTaskTags;
+import brooklyn.event.feed.PollScheduler;
 import brooklyn.entity.proxying.InternalEntityFactory;
 import brooklyn.entity.proxying.InternalLocationFactory;
 import brooklyn.entity.proxying.InternalPolicyFactory;
@@ -38,8 +39,11 @@ import brooklyn.management.ManagementContext;
 import brooklyn.management.Task;
 import brooklyn.management.ha.OsgiManager;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpClientPool;
 import brooklyn.util.task.TaskTags;
 
+import com.google.common.annotations.Beta;
+
 public interface ManagementContextInternal extends ManagementContext {
 
     public static final String SUB_TASK_TAG = TaskTags.SUB_TASK_TAG;
@@ -71,6 +75,14 @@ public interface ManagementContextInternal extends ManagementContext {
     <T> Task<T> invokeEffector(final Entity entity, final Effector<T> eff, @SuppressWarnings("rawtypes") final Map parameters);
 
     BrooklynStorage getStorage();
+
+    /** pooled http connections, for use by e.g. http feeds of all entities */
+    @Beta
+    HttpClientPool getHttpClientPool();
+
+    /** times the polls of the feeds of all entities */
+    @Beta
+    PollScheduler getPollScheduler();
     
     BrooklynProperties getBrooklynProperties();
     
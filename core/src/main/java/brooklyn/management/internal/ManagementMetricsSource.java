@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.management.internal;
+
+import java.util.Map;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Metrics of something shared by all management contexts in the JVM, such as a connection pool in a
+ * downstream project, to be reported with those of the management node.
+ * <p>
+ * Implementations are found with {@link java.util.ServiceLoader}, so must have a no-arg constructor
+ * and be listed in {@code META-INF/services}.
+ */
+@Beta
+public interface ManagementMetricsSource {
+
+    /** the key under which the metrics are reported */
+    public String getName();
+
+    public Map<String, Object> getMetrics();
+
+}
@@ -50,6 +50,7 @@ import brooklyn.entity.rebind.ChangeListener;
 import brooklyn.entity.rebind.PersistenceExceptionHandler;
 import brooklyn.entity.rebind.RebindExceptionHandler;
 import brooklyn.entity.rebind.RebindManager;
+import brooklyn.event.feed.PollScheduler;
 import brooklyn.internal.storage.BrooklynStorage;
 import brooklyn.location.Location;
 import brooklyn.location.LocationRegistry;
@@ -71,6 +72,7 @@ import brooklyn.management.ha.OsgiManager;
 import brooklyn.mementos.BrooklynMementoPersister;
 import brooklyn.mementos.BrooklynMementoRawData;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpClientPool;
 import brooklyn.util.time.Duration;
 
 import com.google.common.base.Objects;
@@ -277,6 +279,18 @@ public class NonDeploymentManagementContext implements ManagementContextInternal
         return initialManagementContext.getStorage();
     }
     
+    @Override
+    public HttpClientPool getHttpClientPool() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getHttpClientPool();
+    }
+
+    @Override
+    public PollScheduler getPollScheduler() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getPollScheduler();
+    }
+
     @Override
     public RebindManager getRebindManager() {
         // There was a race where EffectorUtils on invoking an effector calls:
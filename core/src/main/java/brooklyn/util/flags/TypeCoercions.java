@@ -64,11 +64,14 @@ import brooklyn.util.text.Strings;
 import brooklyn.util.time.Duration;
 import brooklyn.util.yaml.Yamls;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -91,6 +94,17 @@ public class TypeCoercions {
     @GuardedBy("TypeCoercions.class")
     private static Table<Class, Class, Function> registry = HashBasedTable.create();
 
+    /**
+     * The resolved {@link CoercionPlan}s, by target type and then source type, including where there is no
+     * way to coerce, so that the reflective searches and the registry are only consulted on first use.
+     * Read without locking; only added to while holding the lock, and cleared when an adapter is registered,
+     * so a plan from a stale registry is never cached.
+     * <p>
+     * Types are weakly held (and plans, which may refer to the types' methods, softly held)
+     * so that caching a plan does not stop a type's class loader from being collected.
+     */
+    private static final Cache<Class, Cache<Class, CoercionPlan>> plans = CacheBuilder.newBuilder().weakKeys().build();
+
     /**
      * Attempts to coerce {@code value} to {@code targetType}.
      * <p>
@@ -158,104 +172,177 @@ public class TypeCoercions {
 
         if (targetType.isInstance(value)) return (T) value;
 
+        return (T) getCoercionPlan(value.getClass(), targetType).coerce(value, targetTypeToken);
+    }
+
+    /**
+     * How to coerce values of one type to another, as found by the checks described in {@link #coerce(Object, Class)}.
+     * Depends only on the two types, so is resolved once per pair and cached.
+     */
+    private static class CoercionPlan {
+        private enum Kind { CAST_PRIMITIVE, STRING_TO_PRIMITIVE, TO_STRING, AS_METHOD, FROM_METHOD, BOXED, ENUM, ADAPTER, NONE }
+
+        private final Kind kind;
+        private final Method method;
+        private final Class boxedType;
+        /** the registered adapter; for {@link Kind#ENUM} the fallback if the value does not name a constant */
+        private final Function adapter;
+
+        private CoercionPlan(Kind kind, Method method, Class boxedType, Function adapter) {
+            this.kind = kind;
+            this.method = method;
+            this.boxedType = boxedType;
+            this.adapter = adapter;
+        }
+
+        @SuppressWarnings("unchecked")
+        Object coerce(Object value, TypeToken<?> targetTypeToken) {
+            Class<?> targetType = targetTypeToken.getRawType();
+            switch (kind) {
+            case CAST_PRIMITIVE:
+                // Don't just rely on Java to do its normal casting later; if caller writes
+                // long `l = coerce(new Integer(1), Long.class)` then letting java do its casting will fail,
+                // because an Integer will not automatically be unboxed and cast to a long
+                return castPrimitive(value, targetType);
+            case STRING_TO_PRIMITIVE:
+                return stringToPrimitive((String)value, targetType);
+            case TO_STRING:
+                return value.toString();
+            case AS_METHOD:
+                try {
+                    return method.invoke(value);
+                } catch (Exception e) {
+                    throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+method.getName()+" adapting failed, "+e);
+                }
+            case FROM_METHOD:
+                try {
+                    return method.invoke(null, value);
+                } catch (Exception e) {
+                    throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+method.getName()+" adapting failed, "+e);
+                }
+            case BOXED:
+                try {
+                    return TypeCoercions.coerce(value, boxedType);
+                } catch (Exception e) {
+                    throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): unboxing failed, "+e);
+                }
+            case ENUM:
+                Object result = stringToEnum((Class<Enum>) targetType, null).apply(String.valueOf(value));
+                if (result != null) return result;
+                if (adapter != null) return adapt(value, targetTypeToken);
+                break;
+            case ADAPTER:
+                return adapt(value, targetTypeToken);
+            case NONE:
+                break;
+            }
+            throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object adapt(Object value, TypeToken<?> targetTypeToken) {
+            Object result = adapter.apply(value);
+
+            // Check if need to unwrap again (e.g. if want List<Integer> and are given a String "1,2,3"
+            // then we'll have so far converted to List.of("1", "2", "3"). Call recursively.
+            // First check that value has changed, to avoid stack overflow!
+            if (!Objects.equal(value, result) && targetTypeToken.getType() instanceof ParameterizedType) {
+                // Could duplicate check for `result instanceof Collection` etc; but recursive call
+                // will be fine as if that doesn't match we'll safely reach `targetType.isInstance(value)`
+                // and just return the result.
+                return TypeCoercions.coerce(result, targetTypeToken);
+            }
+            return result;
+        }
+    }
+
+    private static CoercionPlan getCoercionPlan(Class<?> sourceType, Class<?> targetType) {
+        Cache<Class, CoercionPlan> plansForTarget = plans.getIfPresent(targetType);
+        CoercionPlan result = (plansForTarget != null) ? plansForTarget.getIfPresent(sourceType) : null;
+        if (result != null) return result;
+
+        synchronized (TypeCoercions.class) {
+            result = resolveCoercionPlan(sourceType, targetType);
+            plansForTarget = plans.getIfPresent(targetType);
+            if (plansForTarget == null) {
+                plansForTarget = CacheBuilder.newBuilder().weakKeys().softValues().build();
+                plans.put(targetType, plansForTarget);
+            }
+            plansForTarget.put(sourceType, result);
+            return result;
+        }
+    }
+
+    @GuardedBy("TypeCoercions.class")
+    private static CoercionPlan resolveCoercionPlan(Class<?> sourceType, Class<?> targetType) {
         // TODO use registry first?
 
         //deal with primitive->primitive casting
-        if (isPrimitiveOrBoxer(targetType) && isPrimitiveOrBoxer(value.getClass())) {
-            // Don't just rely on Java to do its normal casting later; if caller writes
-            // long `l = coerce(new Integer(1), Long.class)` then letting java do its casting will fail,
-            // because an Integer will not automatically be unboxed and cast to a long
-            return castPrimitive(value, (Class<T>)targetType);
+        if (isPrimitiveOrBoxer(targetType) && isPrimitiveOrBoxer(sourceType)) {
+            return new CoercionPlan(CoercionPlan.Kind.CAST_PRIMITIVE, null, null, null);
         }
 
         //deal with string->primitive
-        if (value instanceof String && isPrimitiveOrBoxer(targetType)) {
-            return stringToPrimitive((String)value, (Class<T>)targetType);
+        if (sourceType == String.class && isPrimitiveOrBoxer(targetType)) {
+            return new CoercionPlan(CoercionPlan.Kind.STRING_TO_PRIMITIVE, null, null, null);
         }
 
         //deal with primitive->string
-        if (isPrimitiveOrBoxer(value.getClass()) && targetType.equals(String.class)) {
-            return (T) value.toString();
+        if (isPrimitiveOrBoxer(sourceType) && targetType.equals(String.class)) {
+            return new CoercionPlan(CoercionPlan.Kind.TO_STRING, null, null, null);
         }
 
         //look for value.asType where Type is castable to targetType
         String targetTypeSimpleName = getVerySimpleName(targetType);
         if (targetTypeSimpleName!=null && targetTypeSimpleName.length()>0) {
-            for (Method m: value.getClass().getMethods()) {
+            for (Method m: sourceType.getMethods()) {
                 if (m.getName().startsWith("as") && m.getParameterTypes().length==0 &&
                         targetType.isAssignableFrom(m.getReturnType()) ) {
                     if (m.getName().equals("as"+getVerySimpleName(m.getReturnType()))) {
-                        try {
-                            return (T) m.invoke(value);
-                        } catch (Exception e) {
-                            throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                        }
+                        return new CoercionPlan(CoercionPlan.Kind.AS_METHOD, m, null, null);
                     }
                 }
             }
         }
-        
+
         //now look for static TargetType.fromType(Type t) where value instanceof Type  
         for (Method m: targetType.getMethods()) {
             if (((m.getModifiers()&Modifier.STATIC)==Modifier.STATIC) && 
                     m.getName().startsWith("from") && m.getParameterTypes().length==1 &&
-                    m.getParameterTypes()[0].isInstance(value)) {
+                    m.getParameterTypes()[0].isAssignableFrom(sourceType)) {
                 if (m.getName().equals("from"+getVerySimpleName(m.getParameterTypes()[0]))) {
-                    try {
-                        return (T) m.invoke(null, value);
-                    } catch (Exception e) {
-                        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                    }
+                    return new CoercionPlan(CoercionPlan.Kind.FROM_METHOD, m, null, null);
                 }
             }
         }
-        
+
        //ENHANCEMENT could look in type hierarchy of both types for a conversion method...
-        
-        //primitives get run through again boxed up
+
+        //primitives get run through again boxed up (values are never of primitive type, so only the target needs boxing)
         Class boxedT = UNBOXED_TO_BOXED_TYPES.get(targetType);
-        Class boxedVT = UNBOXED_TO_BOXED_TYPES.get(value.getClass());
-        if (boxedT!=null || boxedVT!=null) {
-            try {
-                if (boxedT==null) boxedT=targetType;
-                Object boxedV;
-                if (boxedVT==null) { boxedV = value; }
-                else { boxedV = boxedVT.getConstructor(value.getClass()).newInstance(value); }
-                return (T) coerce(boxedV, boxedT);
-            } catch (Exception e) {
-                throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): unboxing failed, "+e);
+        if (boxedT!=null) {
+            return new CoercionPlan(CoercionPlan.Kind.BOXED, null, boxedT, null);
+        }
+
+        //look in registry
+        Function adapter = null;
+        for (Map.Entry<Class, Function> entry : registry.row(targetType).entrySet()) {
+            if (entry.getKey().isAssignableFrom(sourceType)) {
+                adapter = entry.getValue();
+                break;
             }
         }
 
-        //for enums call valueOf with the string representation of the value
+        //for enums call valueOf with the string representation of the value, then fall back to the registry
         if (targetType.isEnum()) {
-            T result = (T) stringToEnum((Class<Enum>) targetType, null).apply(String.valueOf(value));
-            if (result != null) return result;
+            return new CoercionPlan(CoercionPlan.Kind.ENUM, null, null, adapter);
         }
-
-        //now look in registry
-        synchronized (TypeCoercions.class) {
-            Map<Class, Function> adapters = registry.row(targetType);
-            for (Map.Entry<Class, Function> entry : adapters.entrySet()) {
-                if (entry.getKey().isInstance(value)) {
-                    T result = (T) entry.getValue().apply(value);
-                    
-                    // Check if need to unwrap again (e.g. if want List<Integer> and are given a String "1,2,3"
-                    // then we'll have so far converted to List.of("1", "2", "3"). Call recursively.
-                    // First check that value has changed, to avoid stack overflow!
-                    if (!Objects.equal(value, result) && targetTypeToken.getType() instanceof ParameterizedType) {
-                        // Could duplicate check for `result instanceof Collection` etc; but recursive call
-                        // will be fine as if that doesn't match we'll safely reach `targetType.isInstance(value)`
-                        // and just return the result.
-                        return coerce(result, targetTypeToken);
-                    }
-                    return result;
-                }
-            }
+        if (adapter != null) {
+            return new CoercionPlan(CoercionPlan.Kind.ADAPTER, null, null, adapter);
         }
 
         //not found
-        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
+        return new CoercionPlan(CoercionPlan.Kind.NONE, null, null, null);
     }
 
     /**
@@ -475,7 +562,17 @@ public class TypeCoercions {
 
     /** Registers an adapter for use with type coercion. Returns any old adapter. */
     public synchronized static <A,B> Function registerAdapter(Class<A> sourceType, Class<B> targetType, Function<? super A,B> fn) {
-        return registry.put(targetType, sourceType, fn);
+        Function result = registry.put(targetType, sourceType, fn);
+        plans.invalidateAll();
+        return result;
+    }
+
+    /** Removes any adapter registered for the given types, e.g. to restore the registry after a test. Returns the old adapter. */
+    @Beta
+    public synchronized static <A,B> Function unregisterAdapter(Class<A> sourceType, Class<B> targetType) {
+        Function result = registry.remove(targetType, sourceType);
+        plans.invalidateAll();
+        return result;
     }
 
     static { BrooklynInitialization.initTypeCoercionStandardAdapters(); }
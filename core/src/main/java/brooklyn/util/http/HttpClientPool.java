@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.http;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.BrooklynServerConfig;
+import brooklyn.config.StringConfigMap;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.http.HttpTool.TrustAllStrategy;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Pooled connections shared by many {@link org.apache.http.client.HttpClient}s,
+ * so that e.g. the http feeds of many entities reuse kept-alive connections (up to a limit per host and port),
+ * rather than each having their own connection manager.
+ * <p>
+ * There is one connection manager for each {@link TrustMode}, each with its own https socket factory;
+ * as that factory's SSL context is shared, so is its cache of TLS sessions, so reconnecting to a server
+ * can usually resume a session rather than doing a full handshake.
+ * <p>
+ * Connections idle for longer than the idle timeout are closed in the background.
+ * <p>
+ * Use {@link HttpTool.HttpClientBuilder#pool(HttpClientPool)} to build clients which use a given pool;
+ * by default clients are not pooled. Each management context has its own pool,
+ * configured by the {@link BrooklynServerConfig} {@code brooklyn.http.pool.*} keys, and closed when it terminates.
+ */
+@Beta
+public class HttpClientPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClientPool.class);
+
+    public static final int DEFAULT_MAX_PER_ROUTE = 8;
+    public static final int DEFAULT_MAX_TOTAL = 1024;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.seconds(30);
+    public static final Duration DEFAULT_LEASE_TIMEOUT = Duration.seconds(30);
+    public static final int DEFAULT_IO_THREADS = 2;
+
+    /** how https server certificates are checked */
+    public enum TrustMode {
+        /** using the default java trust store */
+        DEFAULT,
+        TRUST_SELF_SIGNED,
+        TRUST_ALL
+    }
+
+    /** a pool configured by the {@code brooklyn.http.pool.*} keys in the given config */
+    public static HttpClientPool newInstance(StringConfigMap config) {
+        return new HttpClientPool(
+                config.getConfig(BrooklynServerConfig.HTTP_POOL_MAX_PER_ROUTE),
+                config.getConfig(BrooklynServerConfig.HTTP_POOL_MAX_TOTAL),
+                config.getConfig(BrooklynServerConfig.HTTP_POOL_IDLE_TIMEOUT),
+                config.getConfig(BrooklynServerConfig.HTTP_POOL_LEASE_TIMEOUT),
+                config.getConfig(BrooklynServerConfig.HTTP_POOL_IO_THREADS));
+    }
+
+    private final int maxPerRoute;
+    private final int maxTotal;
+    private final Duration idleTimeout;
+    private final Duration leaseTimeout;
+    private final int ioThreads;
+
+    private final Map<TrustMode, PoolingClientConnectionManager> connectionManagers = Maps.newEnumMap(TrustMode.class);
+    private final AtomicLong clientCount = new AtomicLong();
+    private ScheduledExecutorService evictor;
+    private NioHttpClient nioClient;
+    private boolean closed;
+
+    /**
+     * @param maxPerRoute  maximum connections to any one host and port
+     * @param maxTotal     maximum connections for each {@link TrustMode}
+     * @param idleTimeout  time after which unused connections are closed
+     * @param leaseTimeout time to wait for a connection, when there are already the maximum number
+     */
+    public HttpClientPool(int maxPerRoute, int maxTotal, Duration idleTimeout, Duration leaseTimeout) {
+        this(maxPerRoute, maxTotal, idleTimeout, leaseTimeout, DEFAULT_IO_THREADS);
+    }
+
+    /**
+     * @param ioThreads number of threads for the {@link #getNioClient() non-blocking client}
+     */
+    public HttpClientPool(int maxPerRoute, int maxTotal, Duration idleTimeout, Duration leaseTimeout, int ioThreads) {
+        this.maxPerRoute = maxPerRoute;
+        this.maxTotal = maxTotal;
+        this.idleTimeout = idleTimeout;
+        this.leaseTimeout = leaseTimeout;
+        this.ioThreads = ioThreads;
+    }
+
+    public Duration getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    /** the shared connection manager for clients using the given trust mode for https */
+    public synchronized ClientConnectionManager getConnectionManager(TrustMode trustMode) {
+        if (closed) throw new IllegalStateException("Http client pool closed: "+this);
+        PoolingClientConnectionManager result = connectionManagers.get(trustMode);
+        if (result == null) {
+            result = new PoolingClientConnectionManager(newSchemeRegistry(trustMode));
+            result.setDefaultMaxPerRoute(maxPerRoute);
+            result.setMaxTotal(maxTotal);
+            connectionManagers.put(trustMode, result);
+            startEvictor();
+        }
+        clientCount.incrementAndGet();
+        return result;
+    }
+
+    /** 
+     * The shared non-blocking client, for polling many http endpoints without a thread per request;
+     * its threads are started on first use.
+     */
+    public synchronized NioHttpClient getNioClient() {
+        if (closed) throw new IllegalStateException("Http client pool closed: "+this);
+        if (nioClient == null) {
+            nioClient = new NioHttpClient(ioThreads);
+        }
+        return nioClient;
+    }
+
+    /**
+     * Counts of the pooled connections: {@code leased} (in use), {@code available} (idle, kept alive),
+     * {@code pending} (requests waiting for a connection) and {@code max}; and {@code clients},
+     * the number of clients built using the pool; and {@code asyncRequests}, {@code asyncFailures} and {@code asyncInFlight}
+     * for the {@link #getNioClient() non-blocking client}.
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        int leased = 0, available = 0, pending = 0, max = 0;
+        for (PoolingClientConnectionManager connectionManager : connectionManagers.values()) {
+            PoolStats stats = connectionManager.getTotalStats();
+            leased += stats.getLeased();
+            available += stats.getAvailable();
+            pending += stats.getPending();
+            max += stats.getMax();
+        }
+        Map<String, Object> nioMetrics = (nioClient != null) ? nioClient.getMetrics() : ImmutableMap.<String, Object>of();
+        return MutableMap.<String, Object>builder()
+                .put("leased", leased)
+                .put("available", available)
+                .put("pending", pending)
+                .put("max", max)
+                .put("clients", clientCount.get())
+                .put("asyncRequests", nioMetrics.containsKey("requests") ? nioMetrics.get("requests") : 0L)
+                .put("asyncFailures", nioMetrics.containsKey("failures") ? nioMetrics.get("failures") : 0L)
+                .put("asyncInFlight", nioMetrics.containsKey("inFlight") ? nioMetrics.get("inFlight") : 0)
+                .build();
+    }
+
+    /** closes all connections; clients using this pool can no longer be used */
+    public synchronized void close() {
+        closed = true;
+        if (evictor != null) evictor.shutdownNow();
+        for (PoolingClientConnectionManager connectionManager : connectionManagers.values()) {
+            connectionManager.shutdown();
+        }
+        connectionManagers.clear();
+        if (nioClient != null) nioClient.close();
+        nioClient = null;
+    }
+
+    protected synchronized void closeIdleConnections() {
+        for (PoolingClientConnectionManager connectionManager : connectionManagers.values()) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private SchemeRegistry newSchemeRegistry(TrustMode trustMode) {
+        SchemeRegistry result = SchemeRegistryFactory.createDefault();
+        try {
+            switch (trustMode) {
+            case DEFAULT:
+                break;
+            case TRUST_SELF_SIGNED:
+                result.register(new Scheme("https", 443, new SSLSocketFactory(new TrustSelfSignedStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER)));
+                break;
+            case TRUST_ALL:
+                result.register(new Scheme("https", 443, new SSLSocketFactory(new TrustAllStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER)));
+                break;
+            default:
+                throw new IllegalStateException("Unexpected trust mode "+trustMode);
+            }
+        } catch (Exception e) {
+            LOG.warn("Error setting trust mode "+trustMode+" for "+this);
+            throw Exceptions.propagate(e);
+        }
+        return result;
+    }
+
+    private void startEvictor() {
+        if (evictor != null) return;
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+                Thread result = new Thread(r, "brooklyn-http-pool-evictor");
+                result.setDaemon(true);
+                return result;
+            }});
+        long period = Math.max(idleTimeout.toMilliseconds()/2, 1);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override public void run() {
+                try {
+                    closeIdleConnections();
+                } catch (Exception e) {
+                    LOG.warn("Problem closing idle connections of "+HttpClientPool.this+" (continuing): "+e, e);
+                }
+            }}, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()+"[maxPerRoute="+maxPerRoute+"; maxTotal="+maxTotal+"; ioThreads="+ioThreads+"]";
+    }
+}
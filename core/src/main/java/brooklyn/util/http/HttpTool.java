@@ -39,6 +39,8 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.params.HttpClientParams;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
@@ -66,6 +68,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.http.HttpClientPool.TrustMode;
 import brooklyn.util.net.URLParamEncoder;
 import brooklyn.util.text.Strings;
 import brooklyn.util.time.Duration;
@@ -103,6 +106,7 @@ public class HttpTool {
         private ConnectionReuseStrategy reuseStrategy;
         private boolean trustAll;
         private boolean trustSelfSigned;
+        private HttpClientPool pool;
 
         public HttpClientBuilder clientConnectionManager(ClientConnectionManager val) {
             this.clientConnectionManager = checkNotNull(val, "clientConnectionManager");
@@ -171,9 +175,26 @@ public class HttpTool {
             this.trustSelfSigned = true;
             return this;
         }
+        /** a pool of connections to share with other clients, rather than the client having its own connection manager;
+         * not used if a {@link #clientConnectionManager(ClientConnectionManager)} or {@link #socketFactory(SchemeSocketFactory)} is given */
+        public HttpClientBuilder pool(HttpClientPool val) {
+            this.pool = checkNotNull(val, "pool");
+            return this;
+        }
         public HttpClient build() {
-            final DefaultHttpClient httpClient = new DefaultHttpClient(clientConnectionManager);
+            boolean isHttps = https == Boolean.TRUE || (uri!=null && uri.toString().startsWith("https:"));
+            ClientConnectionManager connectionManager = clientConnectionManager;
+            HttpClientPool connectionPool = null;
+            if (connectionManager == null && socketFactory == null && pool != null) {
+                connectionPool = pool;
+                TrustMode trustMode = !isHttps ? TrustMode.DEFAULT : trustAll ? TrustMode.TRUST_ALL : trustSelfSigned ? TrustMode.TRUST_SELF_SIGNED : TrustMode.DEFAULT;
+                connectionManager = connectionPool.getConnectionManager(trustMode);
+            }
+            final DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager);
             httpClient.setParams(httpParams);
+            if (connectionPool != null && httpClient.getParams().getParameter(ClientPNames.CONN_MANAGER_TIMEOUT) == null) {
+                HttpClientParams.setConnectionManagerTimeout(httpClient.getParams(), connectionPool.getLeaseTimeout().toMilliseconds());
+            }
     
             // support redirects for POST (similar to `curl --post301 -L`)
             // http://stackoverflow.com/questions/3658721/httpclient-4-error-302-how-to-redirect
@@ -183,7 +204,8 @@ public class HttpTool {
             if (reuseStrategy != null) {
                 httpClient.setReuseStrategy(reuseStrategy);
             }
-            if (https == Boolean.TRUE || (uri!=null && uri.toString().startsWith("https:"))) {
+            // pooled connections use the pool's socket factory for the trust mode
+            if (isHttps && connectionPool == null) {
                 try {
                     if (port == null) {
                         port = (uri != null && uri.getPort() >= 0) ? uri.getPort() : 443;
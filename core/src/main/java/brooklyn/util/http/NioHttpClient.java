@@ -0,0 +1,655 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.http;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * A minimal non-blocking HTTP/1.1 client, for polling many endpoints without a thread per request:
+ * requests are multiplexed over a few selector threads, and the returned futures are completed
+ * (and so their listeners run) on a small pool of completion threads.
+ * <p>
+ * Only plain {@code http} URIs are supported (see {@link #isSupported(URI)}); callers should use {@link HttpTool}
+ * for others. Each request uses a new connection (closed when the response is complete), credentials are sent
+ * preemptively as basic auth, and redirects can be followed (as {@link org.apache.http.impl.client.LaxRedirectStrategy}).
+ * Host names are resolved when the request is started, on a separate pool of resolver threads (so that a slow
+ * DNS lookup does not hold up the other requests on that selector thread); the connection timeout includes
+ * the time to resolve.
+ */
+@Beta
+public class NioHttpClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioHttpClient.class);
+
+    public static final Duration DEFAULT_CONNECTION_TIMEOUT = Duration.seconds(30);
+    public static final Duration DEFAULT_SOCKET_TIMEOUT = Duration.seconds(60);
+    public static final int MAX_REDIRECTS = 5;
+
+    private static final byte[] HEADERS_END = "\r\n\r\n".getBytes(Charsets.ISO_8859_1);
+    private static final byte[] LINE_END = "\r\n".getBytes(Charsets.ISO_8859_1);
+
+    /** true if the given URI can be requested with this client */
+    public static boolean isSupported(URI uri) {
+        return uri != null && "http".equalsIgnoreCase(uri.getScheme()) && uri.getHost() != null;
+    }
+
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+    private final ExecutorService completionExecutor;
+    private final ExecutorService resolverExecutor;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * @param ioThreads number of selector threads, and of threads for completing requests and for resolving host names
+     */
+    public NioHttpClient(int ioThreads) {
+        if (ioThreads < 1) throw new IllegalArgumentException("Must have at least one thread, but given "+ioThreads);
+        completionExecutor = Executors.newFixedThreadPool(ioThreads, newThreadFactory("brooklyn-http-nio-completion"));
+        resolverExecutor = Executors.newFixedThreadPool(ioThreads, newThreadFactory("brooklyn-http-nio-resolver"));
+        eventLoops = new EventLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            eventLoops[i] = new EventLoop("brooklyn-http-nio-"+i);
+            eventLoops[i].start();
+        }
+    }
+
+    public RequestBuilder request(String method, URI uri) {
+        return new RequestBuilder(method, uri);
+    }
+
+    public class RequestBuilder {
+        private final String method;
+        private final URI uri;
+        private Map<String, String> headers = ImmutableMap.of();
+        private byte[] body;
+        private Credentials credentials;
+        private Duration connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+        private Duration socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+        private boolean laxRedirect;
+
+        RequestBuilder(String method, URI uri) {
+            this.method = checkNotNull(method, "method").toUpperCase();
+            this.uri = checkNotNull(uri, "uri");
+        }
+        public RequestBuilder headers(Map<String, String> val) {
+            if (val != null) headers = val;
+            return this;
+        }
+        public RequestBuilder body(byte[] val) {
+            body = val;
+            return this;
+        }
+        public RequestBuilder credentials(Credentials val) {
+            credentials = val;
+            return this;
+        }
+        public RequestBuilder connectionTimeout(Duration val) {
+            if (val != null) connectionTimeout = val;
+            return this;
+        }
+        public RequestBuilder socketTimeout(Duration val) {
+            if (val != null) socketTimeout = val;
+            return this;
+        }
+        /** similar to curl --post301 -L` */
+        public RequestBuilder laxRedirect(boolean val) {
+            laxRedirect = val;
+            return this;
+        }
+        public ListenableFuture<HttpToolResponse> execute() {
+            if (!isSupported(uri)) throw new IllegalArgumentException("Unsupported URI for non-blocking http: "+uri);
+            if (closed) throw new IllegalStateException("Client closed: "+NioHttpClient.this);
+            Exchange exchange = new Exchange(this, method, uri, body, 0, SettableFuture.<HttpToolResponse>create(), System.currentTimeMillis());
+            requestCount.incrementAndGet();
+            inFlightCount.incrementAndGet();
+            eventLoops[Math.abs(nextEventLoop.getAndIncrement() % eventLoops.length)].submit(exchange);
+            return exchange.future;
+        }
+    }
+
+    /** counts of requests made, failed, and now in flight */
+    public Map<String, Object> getMetrics() {
+        return MutableMap.<String, Object>of(
+                "requests", requestCount.get(),
+                "failures", failureCount.get(),
+                "inFlight", inFlightCount.get());
+    }
+
+    /** fails all requests in flight */
+    public void close() {
+        closed = true;
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.selector.wakeup();
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            try {
+                eventLoop.join(10*1000);
+            } catch (InterruptedException e) {
+                throw Exceptions.propagate(e);
+            }
+        }
+        completionExecutor.shutdown();
+        resolverExecutor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()+"[ioThreads="+eventLoops.length+"]";
+    }
+
+    private static ThreadFactory newThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            final AtomicInteger count = new AtomicInteger();
+            @Override public Thread newThread(Runnable r) {
+                Thread result = new Thread(r, prefix+"-"+count.incrementAndGet());
+                result.setDaemon(true);
+                return result;
+            }};
+    }
+
+    /**
+     * a request and its response; only accessed by its event loop thread once submitted,
+     * apart from setting {@link #address} or {@link #resolveError} before handing it back to that thread
+     */
+    private static class Exchange {
+        final RequestBuilder request;
+        final String method;
+        final URI uri;
+        final byte[] body;
+        final int redirects;
+        final SettableFuture<HttpToolResponse> future;
+        final long startTime;
+
+        InetSocketAddress address;
+        Exception resolveError;
+        SocketChannel channel;
+        ByteBuffer out;
+        long deadline;
+        long firstResponseTime = -1;
+
+        byte[] in = new byte[4096];
+        int inLength;
+        int headersSearched;
+        int headersEnd = -1;
+        int statusCode;
+        Map<String, List<String>> headers;
+        long contentLength = -1;
+        boolean chunked;
+        int chunkPos = -1;
+        ByteArrayOutputStream chunkedContent;
+        byte[] content;
+
+        Exchange(RequestBuilder request, String method, URI uri, byte[] body, int redirects, SettableFuture<HttpToolResponse> future, long startTime) {
+            this.request = request;
+            this.method = method;
+            this.uri = uri;
+            this.body = body;
+            this.redirects = redirects;
+            this.future = future;
+            this.startTime = startTime;
+        }
+
+        byte[] toRequestBytes() {
+            StringBuilder result = new StringBuilder();
+            String path = uri.getRawPath();
+            if (path == null || path.isEmpty()) path = "/";
+            if (uri.getRawQuery() != null) path += "?"+uri.getRawQuery();
+            result.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+            result.append("Host: ").append(uri.getHost()).append(uri.getPort() >= 0 ? ":"+uri.getPort() : "").append("\r\n");
+            boolean hasAuthorization = false;
+            for (Map.Entry<String, String> header : request.headers.entrySet()) {
+                result.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+                if ("Authorization".equalsIgnoreCase(header.getKey())) hasAuthorization = true;
+            }
+            if (!hasAuthorization && request.credentials instanceof UsernamePasswordCredentials) {
+                result.append("Authorization: ").append(HttpTool.toBasicAuthorizationValue((UsernamePasswordCredentials) request.credentials).trim()).append("\r\n");
+            }
+            if (body != null) {
+                result.append("Content-Length: ").append(body.length).append("\r\n");
+            }
+            result.append("Connection: close\r\n\r\n");
+            byte[] head = result.toString().getBytes(Charsets.ISO_8859_1);
+            if (body == null) return head;
+            byte[] all = new byte[head.length + body.length];
+            System.arraycopy(head, 0, all, 0, head.length);
+            System.arraycopy(body, 0, all, head.length, body.length);
+            return all;
+        }
+
+        void append(ByteBuffer buf) {
+            if (inLength + buf.remaining() > in.length) {
+                byte[] bigger = new byte[Math.max(in.length*2, inLength + buf.remaining())];
+                System.arraycopy(in, 0, bigger, 0, inLength);
+                in = bigger;
+            }
+            int count = buf.remaining();
+            buf.get(in, inLength, count);
+            inLength += count;
+        }
+
+        /** parses what has been read so far, returning true if the response is complete */
+        boolean parse(boolean eof) throws IOException {
+            if (headersEnd < 0) {
+                int end = indexOf(in, headersSearched, inLength, HEADERS_END);
+                if (end < 0) {
+                    if (eof) throw new EOFException("Connection closed before response from "+uri);
+                    headersSearched = Math.max(0, inLength - HEADERS_END.length + 1);
+                    return false;
+                }
+                headersEnd = end + HEADERS_END.length;
+                parseHeaders(new String(in, 0, end, Charsets.ISO_8859_1));
+            }
+            if (method.equals("HEAD") || statusCode / 100 == 1 || statusCode == 204 || statusCode == 304) {
+                content = new byte[0];
+                return true;
+            }
+            if (chunked) {
+                if (decodeChunked()) return true;
+                if (eof) throw new EOFException("Connection closed before end of chunked response from "+uri);
+                return false;
+            }
+            int length = inLength - headersEnd;
+            if (contentLength >= 0) {
+                if (length >= contentLength) {
+                    content = copyOf(in, headersEnd, (int) contentLength);
+                    return true;
+                }
+                if (eof) throw new EOFException("Connection closed after "+length+" of "+contentLength+" bytes of response from "+uri);
+                return false;
+            }
+            if (eof) {
+                content = copyOf(in, headersEnd, length);
+                return true;
+            }
+            return false;
+        }
+
+        private void parseHeaders(String head) throws IOException {
+            String[] lines = head.split("\r\n");
+            String[] statusLine = lines[0].split(" ", 3);
+            if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/")) {
+                throw new IOException("Invalid status line from "+uri+": "+lines[0]);
+            }
+            try {
+                statusCode = Integer.parseInt(statusLine[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid status line from "+uri+": "+lines[0]);
+            }
+            Map<String, List<String>> result = Maps.newLinkedHashMap();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) continue;
+                String name = lines[i].substring(0, colon).trim();
+                String value = lines[i].substring(colon+1).trim();
+                List<String> values = result.get(name);
+                if (values == null) {
+                    values = MutableList.of();
+                    result.put(name, values);
+                }
+                values.add(value);
+                if ("Content-Length".equalsIgnoreCase(name)) {
+                    try {
+                        contentLength = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid content length from "+uri+": "+value);
+                    }
+                } else if ("Transfer-Encoding".equalsIgnoreCase(name) && value.toLowerCase().contains("chunked")) {
+                    chunked = true;
+                }
+            }
+            for (Map.Entry<String, List<String>> entry : result.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+            headers = result;
+        }
+
+        /**
+         * decodes the chunks read since the last call, setting {@link #content} and returning true when the last chunk is read;
+         * each chunk is copied once, when all of it has been read, so a large body read in many pieces is not decoded repeatedly
+         */
+        private boolean decodeChunked() throws IOException {
+            if (chunkPos < 0) {
+                chunkPos = headersEnd;
+                chunkedContent = new ByteArrayOutputStream();
+            }
+            while (true) {
+                int lineEnd = indexOf(in, chunkPos, inLength, LINE_END);
+                if (lineEnd < 0) return false;
+                String sizeLine = new String(in, chunkPos, lineEnd - chunkPos, Charsets.ISO_8859_1);
+                int extension = sizeLine.indexOf(';');
+                if (extension >= 0) sizeLine = sizeLine.substring(0, extension);
+                int size;
+                try {
+                    size = Integer.parseInt(sizeLine.trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size from "+uri+": "+sizeLine);
+                }
+                int pos = lineEnd + LINE_END.length;
+                if (size == 0) {
+                    // optional trailers, then an empty line
+                    boolean complete = (inLength - pos >= LINE_END.length && in[pos] == '\r' && in[pos+1] == '\n')
+                            || indexOf(in, pos, inLength, HEADERS_END) >= 0;
+                    if (!complete) return false;
+                    content = chunkedContent.toByteArray();
+                    return true;
+                }
+                if (pos + size + LINE_END.length > inLength) return false;
+                chunkedContent.write(in, pos, size);
+                chunkPos = pos + size + LINE_END.length;
+            }
+        }
+
+        String getHeader(String name) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(name) && !entry.getValue().isEmpty()) return entry.getValue().get(0);
+            }
+            return null;
+        }
+
+        HttpToolResponse toResponse(long now) {
+            long firstResponse = (firstResponseTime >= 0 ? firstResponseTime : now) - startTime;
+            return new HttpToolResponse(statusCode, headers, content, startTime, firstResponse, now - startTime);
+        }
+    }
+
+    private static int indexOf(byte[] buf, int start, int end, byte[] target) {
+        outer:
+        for (int i = start; i <= end - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (buf[i+j] != target[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] copyOf(byte[] buf, int start, int length) {
+        byte[] result = new byte[length];
+        System.arraycopy(buf, start, result, 0, length);
+        return result;
+    }
+
+    private class EventLoop extends Thread {
+        private final Selector selector;
+        private final Queue<Exchange> submitted = new ConcurrentLinkedQueue<Exchange>();
+        private final Queue<Exchange> resolved = new ConcurrentLinkedQueue<Exchange>();
+        private final Set<Exchange> active = Sets.newLinkedHashSet();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(16*1024);
+
+        EventLoop(String name) {
+            super(name);
+            setDaemon(true);
+            try {
+                selector = Selector.open();
+            } catch (IOException e) {
+                throw Exceptions.propagate(e);
+            }
+        }
+
+        void submit(Exchange exchange) {
+            submitted.add(exchange);
+            selector.wakeup();
+            if (closed && submitted.remove(exchange)) {
+                // the event loop may already have stopped, so will not fail it; only it touches the other requests
+                notifyFailed(exchange, new IllegalStateException("Client closed: "+NioHttpClient.this));
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    Exchange exchange;
+                    while ((exchange = submitted.poll()) != null) {
+                        start(exchange);
+                    }
+                    while ((exchange = resolved.poll()) != null) {
+                        // unless it timed out while resolving
+                        if (active.contains(exchange)) connect(exchange);
+                    }
+                    selector.select(nextTimeout());
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                    expireTimedOut();
+                }
+            } catch (ClosedSelectorException e) {
+                // closing
+            } catch (Throwable t) {
+                LOG.error("Event loop of "+NioHttpClient.this+" failed; failing its requests: "+t, t);
+            } finally {
+                failAll(new IllegalStateException("Client closed: "+NioHttpClient.this));
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    LOG.debug("Error closing selector of "+NioHttpClient.this+" (continuing): "+e);
+                }
+            }
+        }
+
+        private long nextTimeout() {
+            long now = System.currentTimeMillis();
+            long result = 1000;
+            for (Exchange exchange : active) {
+                result = Math.min(result, exchange.deadline - now);
+            }
+            return Math.max(result, 1);
+        }
+
+        private void start(final Exchange exchange) {
+            try {
+                final String host = exchange.uri.getHost();
+                final int port = exchange.uri.getPort() >= 0 ? exchange.uri.getPort() : 80;
+                exchange.out = ByteBuffer.wrap(exchange.toRequestBytes());
+                exchange.deadline = System.currentTimeMillis() + exchange.request.connectionTimeout.toMilliseconds();
+                active.add(exchange);
+                if (InetAddresses.isInetAddress(host)) {
+                    exchange.address = new InetSocketAddress(InetAddresses.forString(host), port);
+                    connect(exchange);
+                } else {
+                    resolverExecutor.execute(new Runnable() {
+                        @Override public void run() {
+                            try {
+                                InetSocketAddress address = new InetSocketAddress(host, port);
+                                if (address.isUnresolved()) throw new UnknownHostException(host);
+                                exchange.address = address;
+                            } catch (Exception e) {
+                                exchange.resolveError = e;
+                            }
+                            resolved.add(exchange);
+                            selector.wakeup();
+                        }});
+                }
+            } catch (Exception e) {
+                fail(exchange, e);
+            }
+        }
+
+        private void connect(Exchange exchange) {
+            try {
+                if (exchange.resolveError != null) throw exchange.resolveError;
+                exchange.channel = SocketChannel.open();
+                exchange.channel.configureBlocking(false);
+                boolean connected = exchange.channel.connect(exchange.address);
+                exchange.channel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, exchange);
+            } catch (Exception e) {
+                fail(exchange, e);
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            Exchange exchange = (Exchange) key.attachment();
+            if (!key.isValid()) return;
+            try {
+                long socketTimeout = exchange.request.socketTimeout.toMilliseconds();
+                if (key.isConnectable()) {
+                    if (exchange.channel.finishConnect()) {
+                        key.interestOps(SelectionKey.OP_WRITE);
+                        exchange.deadline = System.currentTimeMillis() + socketTimeout;
+                    }
+                } else if (key.isWritable()) {
+                    exchange.channel.write(exchange.out);
+                    exchange.deadline = System.currentTimeMillis() + socketTimeout;
+                    if (!exchange.out.hasRemaining()) key.interestOps(SelectionKey.OP_READ);
+                } else if (key.isReadable()) {
+                    readBuffer.clear();
+                    int read = exchange.channel.read(readBuffer);
+                    long now = System.currentTimeMillis();
+                    if (read > 0) {
+                        if (exchange.firstResponseTime < 0) exchange.firstResponseTime = now;
+                        readBuffer.flip();
+                        exchange.append(readBuffer);
+                        exchange.deadline = now + socketTimeout;
+                    }
+                    if (exchange.parse(read < 0)) {
+                        complete(exchange, now);
+                    }
+                }
+            } catch (Exception e) {
+                fail(exchange, e);
+            }
+        }
+
+        private void expireTimedOut() {
+            long now = System.currentTimeMillis();
+            for (Exchange exchange : MutableList.copyOf(active)) {
+                if (now > exchange.deadline) {
+                    String phase = (exchange.channel == null) ? "resolving host of" : exchange.channel.isConnected() ? "reading from" : "connecting to";
+                    fail(exchange, new SocketTimeoutException("Timeout "+phase+" "+exchange.uri));
+                }
+            }
+        }
+
+        private void complete(Exchange exchange, long now) {
+            close(exchange);
+            String location = exchange.getHeader("Location");
+            int code = exchange.statusCode;
+            if (exchange.request.laxRedirect && location != null && exchange.redirects < MAX_REDIRECTS
+                    && (code == 301 || code == 302 || code == 303 || code == 307 || code == 308)) {
+                URI redirect = exchange.uri.resolve(location);
+                if (isSupported(redirect)) {
+                    boolean sameMethod = (code == 307 || code == 308 || exchange.method.equals("HEAD"));
+                    start(new Exchange(exchange.request, sameMethod ? exchange.method : "GET", redirect, sameMethod ? exchange.body : null,
+                            exchange.redirects+1, exchange.future, exchange.startTime));
+                    return;
+                }
+            }
+            inFlightCount.decrementAndGet();
+            final HttpToolResponse response = exchange.toResponse(now);
+            final SettableFuture<HttpToolResponse> future = exchange.future;
+            completionExecutor.execute(new Runnable() {
+                @Override public void run() {
+                    future.set(response);
+                }});
+        }
+
+        private void fail(Exchange exchange, Exception e) {
+            close(exchange);
+            notifyFailed(exchange, e);
+        }
+
+        /** completes the exchange's future with the given error; does not touch the event loop's state, so can be called from any thread */
+        private void notifyFailed(Exchange exchange, final Exception e) {
+            inFlightCount.decrementAndGet();
+            failureCount.incrementAndGet();
+            if (LOG.isTraceEnabled()) LOG.trace("Request to "+exchange.uri+" failed: "+e);
+            final SettableFuture<HttpToolResponse> future = exchange.future;
+            try {
+                completionExecutor.execute(new Runnable() {
+                    @Override public void run() {
+                        future.setException(e);
+                    }});
+            } catch (Exception e2) {
+                // shutting down
+                future.setException(e);
+            }
+        }
+
+        private void close(Exchange exchange) {
+            active.remove(exchange);
+            if (exchange.channel != null) {
+                try {
+                    exchange.channel.close();
+                } catch (IOException e) {
+                    LOG.debug("Error closing connection to "+exchange.uri+" (continuing): "+e);
+                }
+            }
+        }
+
+        private void failAll(Exception e) {
+            Exchange exchange;
+            while ((exchange = submitted.poll()) != null) {
+                active.add(exchange);
+            }
+            for (Exchange activeExchange : MutableList.copyOf(active)) {
+                fail(activeExchange, e);
+            }
+        }
+    }
+}
@@ -23,8 +23,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Callable;
 
 import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.connection.channel.direct.Session;
 import net.schmizz.sshj.transport.verification.PromiscuousVerifier;
 import net.schmizz.sshj.userauth.keyprovider.OpenSSHKeyFile;
 import net.schmizz.sshj.userauth.password.PasswordUtils;
@@ -34,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import brooklyn.util.GroovyJavaMethods;
 import brooklyn.util.internal.ssh.SshAbstractTool.SshAction;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.Objects;
 import com.google.common.net.HostAndPort;
@@ -58,6 +61,10 @@ public class SshjClientConnection implements SshAction<SSHClient> {
         protected long connectTimeout;
         protected long sessionTimeout;
         protected boolean strictHostKeyChecking;
+        protected boolean shareConnection;
+        protected long keepAliveInterval;
+        protected int maxSessionsPerConnection = 10;
+        protected int maxConcurrentSessionsPerHost;
 
         public Builder hostAndPort(HostAndPort hostAndPort) {
             this.hostAndPort = hostAndPort;
@@ -110,6 +117,30 @@ public class SshjClientConnection implements SshAction<SSHClient> {
             return this;
         }
 
+        /** whether to lease a connection from the {@link SshjSessionRegistry}, shared with other users with the same credentials */
+        public Builder shareConnection(boolean val) {
+            this.shareConnection = val;
+            return this;
+        }
+
+        /** for a shared connection, millis between keep-alives; if 0 then none */
+        public Builder keepAliveInterval(long val) {
+            this.keepAliveInterval = val;
+            return this;
+        }
+
+        /** for a shared connection, the number of users it can have before another is opened */
+        public Builder maxSessionsPerConnection(int val) {
+            this.maxSessionsPerConnection = val;
+            return this;
+        }
+
+        /** for a shared connection, the number of concurrent sessions to the host; if 0 then unlimited */
+        public Builder maxConcurrentSessionsPerHost(int val) {
+            this.maxConcurrentSessionsPerHost = val;
+            return this;
+        }
+
         public SshjClientConnection build() {
             return new SshjClientConnection(this);
         }
@@ -129,8 +160,13 @@ public class SshjClientConnection implements SshAction<SSHClient> {
     private final boolean strictHostKeyChecking;
     private final int connectTimeout;
     private final int sessionTimeout;
+    private final boolean shareConnection;
+    private final long keepAliveInterval;
+    private final int maxSessionsPerConnection;
+    private final int maxConcurrentSessionsPerHost;
     
     SSHClient ssh;
+    private SshjSessionRegistry.Lease lease;
 
     private SshjClientConnection(Builder builder) {
         this.hostAndPort = checkNotNull(builder.hostAndPort);
@@ -142,6 +178,10 @@ public class SshjClientConnection implements SshAction<SSHClient> {
         this.strictHostKeyChecking = builder.strictHostKeyChecking;
         this.connectTimeout = checkInt("connectTimeout", builder.connectTimeout, Integer.MAX_VALUE);
         this.sessionTimeout = checkInt("sessionTimeout", builder.sessionTimeout, Integer.MAX_VALUE);
+        this.shareConnection = builder.shareConnection;
+        this.keepAliveInterval = builder.keepAliveInterval;
+        this.maxSessionsPerConnection = builder.maxSessionsPerConnection;
+        this.maxConcurrentSessionsPerHost = builder.maxConcurrentSessionsPerHost;
     }
 
     static Integer checkInt(String context, long value, Integer ifTooLarge) {
@@ -160,9 +200,14 @@ public class SshjClientConnection implements SshAction<SSHClient> {
         return ssh != null && ssh.isAuthenticated();
     }
 
+    /** Disconnects, or if the connection is shared then gives up this user's lease of it. */
     @Override
     public void clear() {
-        if (ssh != null && ssh.isConnected()) {
+        if (lease != null) {
+            if (LOG.isTraceEnabled()) LOG.trace("Releasing shared connection of SshjClientConnection {} ({})", this, System.identityHashCode(this));
+            lease.release();
+            lease = null;
+        } else if (ssh != null && ssh.isConnected()) {
             try {
                 if (LOG.isTraceEnabled()) LOG.trace("Disconnecting SshjClientConnection {} ({})", this, System.identityHashCode(this));
                 ssh.disconnect();
@@ -175,41 +220,100 @@ public class SshjClientConnection implements SshAction<SSHClient> {
 
     @Override
     public SSHClient create() throws Exception {
-        if (LOG.isTraceEnabled()) LOG.trace("Connecting SshjClientConnection {} ({})", this, System.identityHashCode(this));
-        ssh = new net.schmizz.sshj.SSHClient();
+        if (shareConnection) {
+            if (LOG.isTraceEnabled()) LOG.trace("Leasing shared connection for SshjClientConnection {} ({})", this, System.identityHashCode(this));
+            SshjSessionRegistry.Key key = new SshjSessionRegistry.Key(hostAndPort, username, password, privateKeyData, 
+                    privateKeyFile, privateKeyPassphrase, strictHostKeyChecking, sessionTimeout);
+            lease = SshjSessionRegistry.getDefault().lease(key, maxSessionsPerConnection, maxConcurrentSessionsPerHost, 
+                    Duration.millis(keepAliveInterval), new Callable<SSHClient>() {
+                        @Override public SSHClient call() throws Exception {
+                            return newConnectedClient();
+                        }});
+            ssh = lease.getSSHClient();
+        } else {
+            if (LOG.isTraceEnabled()) LOG.trace("Connecting SshjClientConnection {} ({})", this, System.identityHashCode(this));
+            ssh = newConnectedClient();
+        }
+        return ssh;
+    }
+
+    private SSHClient newConnectedClient() throws Exception {
+        SSHClient result = new net.schmizz.sshj.SSHClient();
         if (!strictHostKeyChecking) {
-            ssh.addHostKeyVerifier(new PromiscuousVerifier());
+            result.addHostKeyVerifier(new PromiscuousVerifier());
         }
         if (connectTimeout != 0) {
-            ssh.setConnectTimeout(connectTimeout);
+            result.setConnectTimeout(connectTimeout);
         }
         if (sessionTimeout != 0) {
-            ssh.setTimeout(sessionTimeout);
+            result.setTimeout(sessionTimeout);
         }
-        ssh.connect(hostAndPort.getHostText(), hostAndPort.getPortOrDefault(22));
+        result.connect(hostAndPort.getHostText(), hostAndPort.getPortOrDefault(22));
         
-        if (password != null) {
-            ssh.authPassword(username, password);
-        } else if (privateKeyData != null) {
-            OpenSSHKeyFile key = new OpenSSHKeyFile();
-            key.init(privateKeyData, null, 
-                    GroovyJavaMethods.truth(privateKeyPassphrase) ? 
-                            PasswordUtils.createOneOff(privateKeyPassphrase.toCharArray())
-                            : null);
-            ssh.authPublickey(username, key);
-        } else if (privateKeyFile != null) {
-            OpenSSHKeyFile key = new OpenSSHKeyFile();
-            key.init(privateKeyFile, 
-                    GroovyJavaMethods.truth(privateKeyPassphrase) ? 
-                            PasswordUtils.createOneOff(privateKeyPassphrase.toCharArray())
-                            : null);
-            ssh.authPublickey(username, key);
-        } else {
-            // Accept defaults (in ~/.ssh)
-            ssh.authPublickey(username);
+        try {
+            if (password != null) {
+                result.authPassword(username, password);
+            } else if (privateKeyData != null) {
+                OpenSSHKeyFile key = new OpenSSHKeyFile();
+                key.init(privateKeyData, null, 
+                        GroovyJavaMethods.truth(privateKeyPassphrase) ? 
+                                PasswordUtils.createOneOff(privateKeyPassphrase.toCharArray())
+                                : null);
+                result.authPublickey(username, key);
+            } else if (privateKeyFile != null) {
+                OpenSSHKeyFile key = new OpenSSHKeyFile();
+                key.init(privateKeyFile, 
+                        GroovyJavaMethods.truth(privateKeyPassphrase) ? 
+                                PasswordUtils.createOneOff(privateKeyPassphrase.toCharArray())
+                                : null);
+                result.authPublickey(username, key);
+            } else {
+                // Accept defaults (in ~/.ssh)
+                result.authPublickey(username);
+            }
+        } catch (Exception e) {
+            try {
+                result.disconnect();
+            } catch (IOException e2) {
+                if (LOG.isDebugEnabled()) LOG.debug("<< exception disconnecting from {} after failed auth: {}", hostAndPort, e2.getMessage());
+            }
+            throw e;
         }
         
-        return ssh;
+        return result;
+    }
+
+    /**
+     * Opens a session on the current connection; if shared, this counts against the host's limit of
+     * concurrent sessions until reported by {@link #sessionClosed(Session)}.
+     */
+    public Session startSession() throws Exception {
+        if (lease != null) {
+            return lease.startSession();
+        } else {
+            return ssh.startSession();
+        }
+    }
+
+    /** Records that a session from {@link #startSession()} has been closed. */
+    public void sessionClosed(Session session) {
+        if (lease != null && session != null) {
+            lease.sessionClosed(session);
+        }
+    }
+
+    /**
+     * If the connection is shared, stops it being used for new leases, so that it is closed once its
+     * current users are done and subsequent users get a new login.
+     */
+    public void retireSharedConnection() {
+        if (lease != null) {
+            lease.retire();
+        }
+    }
+
+    public boolean isShared() {
+        return shareConnection;
     }
 
     /**
@@ -277,6 +381,7 @@ public class SshjClientConnection implements SshAction<SSHClient> {
                 .add("privateKeyFile", privateKeyFile)
                 .add("privateKey", (privateKeyData != null ? "xxxxxx" : null))
                 .add("connectTimeout", connectTimeout)
-                .add("sessionTimeout", sessionTimeout).toString();
+                .add("sessionTimeout", sessionTimeout)
+                .add("shared", shareConnection).toString();
     }
 }
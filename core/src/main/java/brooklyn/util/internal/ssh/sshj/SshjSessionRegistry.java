@@ -0,0 +1,522 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.internal.ssh.sshj;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.connection.channel.direct.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Long-lived ssh connections, shared by the {@link SshjTool}s configured with {@link SshjTool#PROP_SHARE_CONNECTIONS}
+ * which connect to the same host and port, as the same user with the same credentials. Their commands run in
+ * channels (sshj {@link Session}s) multiplexed over the shared connection, so only the first of them pays for
+ * the key exchange and authentication.
+ * <p>
+ * A connection is leased to at most {@code maxLeasesPerConnection} tools at once (cf. {@code MaxSessions} of
+ * OpenSSH's sshd, which defaults to 10); beyond that another connection is opened. Connections send keep-alives,
+ * and are closed once they have had no users for the idle timeout. A connection found to be no longer connected,
+ * or {@link Lease#retire() retired} by a user (e.g. so that the next login sees changes to the user's groups),
+ * is replaced for new users.
+ * <p>
+ * The number of concurrent channels to a host (across all connections to it) can also be limited, in which case
+ * callers wait for one to be closed; users giving different limits for the same host are each held to their own.
+ * Sftp channels are not counted.
+ * <p>
+ * New connections are opened without holding the lock of their pool, so that a slow or unreachable host does not
+ * hold up the reuse of connections which have spare capacity, nor the closing of idle ones.
+ */
+@Beta
+public class SshjSessionRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SshjSessionRegistry.class);
+
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ONE_MINUTE;
+
+    private static final SshjSessionRegistry DEFAULT = new SshjSessionRegistry(DEFAULT_IDLE_TIMEOUT);
+
+    /** the registry used by all {@link SshjTool}s */
+    public static SshjSessionRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    private final Duration idleTimeout;
+    private final Map<Key, Pool> pools = Maps.newLinkedHashMap();
+    /** by host and port, and the limit */
+    private final Map<List<Object>, HostLimit> hostLimits = Maps.newLinkedHashMap();
+    private ScheduledExecutorService reaper;
+
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong idleCloses = new AtomicLong();
+    private final AtomicLong channelsOpened = new AtomicLong();
+    private final AtomicLong channelWaits = new AtomicLong();
+
+    public SshjSessionRegistry(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Leases a connection for the given key, using the given connector to open a new (connected and authenticated)
+     * one if there is not already a usable one with spare capacity. The caller must {@link Lease#release() release} it when done.
+     *
+     * @param maxLeasesPerConnection the number of users a connection can have before another is opened
+     * @param maxChannelsPerHost the number of concurrent channels to the key's host, or 0 for unlimited
+     * @param keepAliveInterval the interval between keep-alives on a new connection, or null or zero for none
+     */
+    public Lease lease(Key key, int maxLeasesPerConnection, int maxChannelsPerHost, Duration keepAliveInterval, Callable<SSHClient> connector) throws Exception {
+        while (true) {
+            Pool pool;
+            synchronized (pools) {
+                pool = pools.get(key);
+                if (pool == null) {
+                    pool = new Pool(key);
+                    pools.put(key, pool);
+                }
+            }
+
+            synchronized (pool) {
+                if (pool.removed) {
+                    // raced with the reaper discarding the empty pool; try again with a new one
+                    continue;
+                }
+                SharedConnection best = null;
+                for (Iterator<SharedConnection> iter = pool.connections.iterator(); iter.hasNext();) {
+                    SharedConnection conn = iter.next();
+                    if (!conn.retired && !conn.isUsable()) {
+                        conn.retired = true;
+                        pool.pendingReconnects++;
+                    }
+                    if (conn.retired) {
+                        if (conn.leases == 0) {
+                            iter.remove();
+                            closeQuietly(conn);
+                        }
+                    } else if (conn.leases < maxLeasesPerConnection && (best == null || conn.leases < best.leases)) {
+                        best = conn;
+                    }
+                }
+                if (best != null) {
+                    best.leases++;
+                    reuses.incrementAndGet();
+                    return new Lease(best, acquireHostLimit(key.hostAndPort, maxChannelsPerHost));
+                }
+                // stops the reaper discarding the pool while we connect
+                pool.connecting++;
+            }
+
+            SharedConnection conn = connect(pool, keepAliveInterval, connector);
+            return new Lease(conn, acquireHostLimit(key.hostAndPort, maxChannelsPerHost));
+        }
+    }
+
+    /** opens a connection, without holding the pool's lock, and adds it to the pool with the caller as its first user */
+    private SharedConnection connect(Pool pool, Duration keepAliveInterval, Callable<SSHClient> connector) throws Exception {
+        SSHClient ssh;
+        try {
+            ssh = connector.call();
+        } catch (Exception e) {
+            connectFailures.incrementAndGet();
+            synchronized (pool) {
+                pool.connecting--;
+            }
+            throw e;
+        }
+        if (keepAliveInterval != null && keepAliveInterval.toMilliseconds() > 0) {
+            ssh.getTransport().setHeartbeatInterval((int) Math.max(1, keepAliveInterval.toSeconds()));
+        }
+        SharedConnection result = new SharedConnection(pool, ssh);
+        boolean replacing;
+        int open;
+        synchronized (pool) {
+            pool.connecting--;
+            pool.connections.add(result);
+            result.leases++;
+            replacing = pool.pendingReconnects > 0;
+            if (replacing) pool.pendingReconnects--;
+            open = pool.connections.size();
+        }
+
+        connects.incrementAndGet();
+        if (replacing) reconnects.incrementAndGet();
+        if (LOG.isDebugEnabled()) LOG.debug("{} shared ssh connection to {}@{} ({} open for this user)",
+                new Object[] {(replacing ? "Re-opened" : "Opened"), pool.key.user, pool.key.hostAndPort, open});
+        startReaper();
+        return result;
+    }
+
+    private HostLimit acquireHostLimit(HostAndPort hostAndPort, int maxChannelsPerHost) {
+        if (maxChannelsPerHost <= 0) return null;
+        synchronized (hostLimits) {
+            List<Object> limitKey = ImmutableList.<Object>of(hostAndPort, maxChannelsPerHost);
+            HostLimit result = hostLimits.get(limitKey);
+            if (result == null) {
+                result = new HostLimit(maxChannelsPerHost);
+                hostLimits.put(limitKey, result);
+            }
+            result.users++;
+            return result;
+        }
+    }
+
+    private void releaseHostLimit(HostLimit hostLimit) {
+        synchronized (hostLimits) {
+            hostLimit.users--;
+        }
+    }
+
+    private void release(SharedConnection conn) {
+        Pool pool = conn.pool;
+        synchronized (pool) {
+            conn.leases--;
+            conn.lastReleasedTime = System.currentTimeMillis();
+            if (conn.retired && conn.leases <= 0) {
+                pool.connections.remove(conn);
+                closeQuietly(conn);
+            }
+        }
+    }
+
+    private void retire(SharedConnection conn) {
+        synchronized (conn.pool) {
+            if (!conn.retired) {
+                if (LOG.isDebugEnabled()) LOG.debug("Retiring shared ssh connection to {}@{}", conn.pool.key.user, conn.pool.key.hostAndPort);
+                conn.retired = true;
+            }
+        }
+    }
+
+    /**
+     * Closes connections that have had no users for the idle timeout, or are no longer usable and have no users,
+     * and forgets the channel limits of hosts with no users.
+     */
+    public void closeIdle() {
+        List<Pool> allPools;
+        synchronized (pools) {
+            allPools = Lists.newArrayList(pools.values());
+        }
+        long cutoff = System.currentTimeMillis() - idleTimeout.toMilliseconds();
+        for (Pool pool : allPools) {
+            synchronized (pool) {
+                for (Iterator<SharedConnection> iter = pool.connections.iterator(); iter.hasNext();) {
+                    SharedConnection conn = iter.next();
+                    if (conn.leases == 0 && (conn.retired || conn.lastReleasedTime < cutoff || !conn.isUsable())) {
+                        iter.remove();
+                        closeQuietly(conn);
+                        idleCloses.incrementAndGet();
+                    }
+                }
+                if (pool.connections.isEmpty() && pool.connecting == 0) {
+                    synchronized (pools) {
+                        pool.removed = true;
+                        pools.remove(pool.key);
+                    }
+                }
+            }
+        }
+        synchronized (hostLimits) {
+            for (Iterator<HostLimit> iter = hostLimits.values().iterator(); iter.hasNext();) {
+                if (iter.next().users == 0) iter.remove();
+            }
+        }
+    }
+
+    private synchronized void startReaper() {
+        if (reaper == null) {
+            reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("brooklyn-sshj-session-reaper-%d")
+                    .setDaemon(true)
+                    .build());
+            long period = Math.max(1000, idleTimeout.toMilliseconds() / 2);
+            reaper.scheduleWithFixedDelay(new Runnable() {
+                @Override public void run() {
+                    try {
+                        closeIdle();
+                    } catch (Throwable t) {
+                        LOG.warn("Problem closing idle shared ssh connections (continuing)", t);
+                        Exceptions.propagateIfFatal(t);
+                    }
+                }}, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void closeQuietly(SharedConnection conn) {
+        try {
+            if (LOG.isDebugEnabled()) LOG.debug("Closing shared ssh connection to {}@{}", conn.pool.key.user, conn.pool.key.hostAndPort);
+            if (conn.ssh.isConnected()) conn.ssh.disconnect();
+        } catch (IOException e) {
+            // as for SshjClientConnection.clear: the other side has often already gone away, so swallow
+            if (LOG.isDebugEnabled()) LOG.debug("Caught exception closing shared ssh connection to {} ({})", conn.pool.key.hostAndPort, e.getMessage());
+        }
+    }
+
+    /**
+     * The number of open connections (sessions), their users (leases) and open channels, the per-host channel limits
+     * in use, and counts of connects, reconnects, connect failures, reuses, idle connections closed, channels opened, and waits for the per-host channel limit.
+     */
+    public Map<String, Object> getMetrics() {
+        int sessions = 0;
+        int leases = 0;
+        int channels = 0;
+        List<Pool> allPools;
+        synchronized (pools) {
+            allPools = Lists.newArrayList(pools.values());
+        }
+        for (Pool pool : allPools) {
+            synchronized (pool) {
+                for (SharedConnection conn : pool.connections) {
+                    sessions++;
+                    leases += conn.leases;
+                    channels += conn.channels.get();
+                }
+            }
+        }
+        int limits;
+        synchronized (hostLimits) {
+            limits = hostLimits.size();
+        }
+        return MutableMap.<String, Object>builder()
+                .put("sessions", sessions)
+                .put("leases", leases)
+                .put("channels", channels)
+                .put("hostLimits", limits)
+                .put("connects", connects.get())
+                .put("reconnects", reconnects.get())
+                .put("connectFailures", connectFailures.get())
+                .put("reuses", reuses.get())
+                .put("idleCloses", idleCloses.get())
+                .put("channelsOpened", channelsOpened.get())
+                .put("channelWaits", channelWaits.get())
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("metrics", getMetrics()).toString();
+    }
+
+    /**
+     * A user's lease of a shared connection. Channels must be opened with {@link #startSession()},
+     * and {@link #sessionClosed(Session) reported} once closed, so that they are counted against the host's limit.
+     */
+    public class Lease {
+        private final SharedConnection conn;
+        private final HostLimit hostLimit;
+        private final Set<Session> sessions = Collections.newSetFromMap(new IdentityHashMap<Session, Boolean>());
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(SharedConnection conn, HostLimit hostLimit) {
+            this.conn = conn;
+            this.hostLimit = hostLimit;
+        }
+
+        public SSHClient getSSHClient() {
+            return conn.ssh;
+        }
+
+        /** Opens a channel on the shared connection, first waiting if the host is at its limit of concurrent channels. */
+        public Session startSession() throws Exception {
+            if (hostLimit != null && !hostLimit.permits.tryAcquire()) {
+                channelWaits.incrementAndGet();
+                hostLimit.permits.acquire();
+            }
+            Session result;
+            try {
+                result = conn.ssh.startSession();
+            } catch (Exception e) {
+                if (hostLimit != null) hostLimit.permits.release();
+                throw e;
+            }
+            synchronized (sessions) {
+                sessions.add(result);
+            }
+            conn.channels.incrementAndGet();
+            channelsOpened.incrementAndGet();
+            return result;
+        }
+
+        /** Records that the given channel (from {@link #startSession()}) is closed. Safe to call more than once. */
+        public void sessionClosed(Session session) {
+            boolean removed;
+            synchronized (sessions) {
+                removed = sessions.remove(session);
+            }
+            if (removed) {
+                conn.channels.decrementAndGet();
+                if (hostLimit != null) hostLimit.permits.release();
+            }
+        }
+
+        /** Stops the connection being leased to new users; it is closed once all current users have released it. */
+        public void retire() {
+            SshjSessionRegistry.this.retire(conn);
+        }
+
+        /** Gives up this lease, and the accounting of any channels not reported closed. Safe to call more than once. */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                List<Session> unclosed;
+                synchronized (sessions) {
+                    unclosed = Lists.newArrayList(sessions);
+                }
+                for (Session session : unclosed) {
+                    sessionClosed(session);
+                }
+                if (hostLimit != null) releaseHostLimit(hostLimit);
+                SshjSessionRegistry.this.release(conn);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("host", conn.pool.key.hostAndPort).add("user", conn.pool.key.user)
+                    .add("released", released.get()).toString();
+        }
+    }
+
+    private static class Pool {
+        final Key key;
+        final List<SharedConnection> connections = Lists.newArrayList();
+        int pendingReconnects;
+        /** the number of connections being opened, not yet in {@link #connections} */
+        int connecting;
+        boolean removed;
+
+        Pool(Key key) {
+            this.key = key;
+        }
+    }
+
+    /** the channels allowed to a host, by users who gave the same limit; users are counted while they have leases */
+    private static class HostLimit {
+        final Semaphore permits;
+        int users;
+
+        HostLimit(int maxChannels) {
+            this.permits = new Semaphore(maxChannels, true);
+        }
+    }
+
+    private static class SharedConnection {
+        final Pool pool;
+        final SSHClient ssh;
+        final AtomicLong channels = new AtomicLong();
+        int leases;
+        boolean retired;
+        long lastReleasedTime = System.currentTimeMillis();
+
+        SharedConnection(Pool pool, SSHClient ssh) {
+            this.pool = pool;
+            this.ssh = ssh;
+        }
+
+        boolean isUsable() {
+            return ssh.isConnected() && ssh.isAuthenticated();
+        }
+    }
+
+    /**
+     * Identifies the connections that can be shared: the host and port, the user, a digest of the credentials
+     * (so that the secrets themselves are not held), whether the host key is checked, and the session timeout
+     * (which applies to the whole connection).
+     */
+    public static class Key {
+        final HostAndPort hostAndPort;
+        final String user;
+        final String credentialsFingerprint;
+        final boolean strictHostKeyChecking;
+        final long sessionTimeout;
+
+        public Key(HostAndPort hostAndPort, String user, String password, String privateKeyData, File privateKeyFile,
+                String privateKeyPassphrase, boolean strictHostKeyChecking, long sessionTimeout) {
+            this.hostAndPort = hostAndPort;
+            this.user = user;
+            this.credentialsFingerprint = fingerprint(password, privateKeyData,
+                    (privateKeyFile != null ? privateKeyFile.getAbsolutePath() : null), privateKeyPassphrase);
+            this.strictHostKeyChecking = strictHostKeyChecking;
+            this.sessionTimeout = sessionTimeout;
+        }
+
+        private static String fingerprint(String... vals) {
+            Hasher hasher = Hashing.sha256().newHasher();
+            for (String val : vals) {
+                // distinguishes null from empty, and stops values running into each other
+                if (val == null) {
+                    hasher.putInt(-1);
+                } else {
+                    hasher.putInt(val.length()).putString(val, Charsets.UTF_8);
+                }
+            }
+            return hasher.hash().toString();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key o = (Key) obj;
+            return Objects.equal(hostAndPort, o.hostAndPort) && Objects.equal(user, o.user)
+                    && credentialsFingerprint.equals(o.credentialsFingerprint)
+                    && strictHostKeyChecking == o.strictHostKeyChecking && sessionTimeout == o.sessionTimeout;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(hostAndPort, user, credentialsFingerprint, strictHostKeyChecking, sessionTimeout);
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("hostAndPort", hostAndPort).add("user", user).toString();
+        }
+    }
+}
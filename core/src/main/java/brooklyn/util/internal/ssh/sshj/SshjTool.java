@@ -18,6 +18,7 @@
  */
 package brooklyn.util.internal.ssh.sshj;
 
+import static brooklyn.entity.basic.ConfigKeys.newConfigKey;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Throwables.getCausalChain;
 import static com.google.common.collect.Iterables.any;
@@ -53,6 +54,7 @@ import org.apache.commons.io.input.ProxyInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.ConfigKey;
 import brooklyn.internal.BrooklynFeatureEnablement;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.exceptions.RuntimeTimeoutException;
@@ -69,6 +71,7 @@ import brooklyn.util.text.Strings;
 import brooklyn.util.time.Duration;
 import brooklyn.util.time.Time;
 
+import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
@@ -103,6 +106,16 @@ public class SshjTool extends SshAbstractTool implements SshTool {
 
     private static final Logger LOG = LoggerFactory.getLogger(SshjTool.class);
 
+    /** @see SshjSessionRegistry */
+    @Beta
+    public static final ConfigKey<Boolean> PROP_SHARE_CONNECTIONS = newConfigKey("shareConnections", "Whether to share long-lived ssh connections with other tools for the same host, user and credentials, running commands as channels multiplexed over them", false);
+    @Beta
+    public static final ConfigKey<Long> PROP_KEEP_ALIVE_INTERVAL = newConfigKey("keepAliveInterval", "Time (in milliseconds) between keep-alives on a shared ssh connection; if 0 then none", 30*1000L);
+    @Beta
+    public static final ConfigKey<Integer> PROP_MAX_SESSIONS_PER_CONNECTION = newConfigKey("maxSessionsPerConnection", "Max number of tools using a shared ssh connection at once, before another connection is opened (cf. MaxSessions of sshd)", 10);
+    @Beta
+    public static final ConfigKey<Integer> PROP_MAX_CONCURRENT_SESSIONS_PER_HOST = newConfigKey("maxConcurrentSessionsPerHost", "Max number of concurrent sessions over shared ssh connections to a host, beyond which commands wait; if 0 then unlimited", 0);
+
     protected final int sshTries;
     protected final long sshTriesTimeout;
     protected final BackoffLimitedRetryHandler backoffLimitedRetryHandler;
@@ -140,6 +153,10 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         protected int sshTries = 4;  //allow 4 tries by default, much safer
         protected long sshTriesTimeout = 2*60*1000;  //allow 2 minutes by default (so if too slow trying sshTries times, abort anyway)
         protected long sshRetryDelay = 50L;
+        protected boolean shareConnections;
+        protected long keepAliveInterval = PROP_KEEP_ALIVE_INTERVAL.getDefaultValue();
+        protected int maxSessionsPerConnection = PROP_MAX_SESSIONS_PER_CONNECTION.getDefaultValue();
+        protected int maxConcurrentSessionsPerHost;
         
         @Override
         public B from(Map<String,?> props) {
@@ -149,6 +166,10 @@ public class SshjTool extends SshAbstractTool implements SshTool {
             sshRetryDelay = getOptionalVal(props, PROP_SSH_RETRY_DELAY);
             connectTimeout = getOptionalVal(props, PROP_CONNECT_TIMEOUT);
             sessionTimeout = getOptionalVal(props, PROP_SESSION_TIMEOUT);
+            shareConnections = getOptionalVal(props, PROP_SHARE_CONNECTIONS);
+            keepAliveInterval = getOptionalVal(props, PROP_KEEP_ALIVE_INTERVAL);
+            maxSessionsPerConnection = getOptionalVal(props, PROP_MAX_SESSIONS_PER_CONNECTION);
+            maxConcurrentSessionsPerHost = getOptionalVal(props, PROP_MAX_CONCURRENT_SESSIONS_PER_HOST);
             return self();
         }
         public B connectTimeout(int val) {
@@ -166,6 +187,10 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         public B sshRetryDelay(long val) {
             this.sshRetryDelay = val; return self();
         }
+        @Beta
+        public B shareConnections(boolean val) {
+            this.shareConnections = val; return self();
+        }
         @Override
         @SuppressWarnings("unchecked")
         public T build() {
@@ -194,6 +219,10 @@ public class SshjTool extends SshAbstractTool implements SshTool {
                 .strictHostKeyChecking(strictHostKeyChecking)
                 .connectTimeout(builder.connectTimeout)
                 .sessionTimeout(builder.sessionTimeout)
+                .shareConnection(builder.shareConnections)
+                .keepAliveInterval(builder.keepAliveInterval)
+                .maxSessionsPerConnection(builder.maxSessionsPerConnection)
+                .maxConcurrentSessionsPerHost(builder.maxConcurrentSessionsPerHost)
                 .build();
         
         if (LOG.isTraceEnabled()) LOG.trace("Created SshTool {} ({})", this, System.identityHashCode(this));
@@ -228,6 +257,15 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         }
     }
 
+    /**
+     * If this tool {@link #PROP_SHARE_CONNECTIONS shares} its connection, stops the connection being used by other tools
+     * once they are done with it, so that the next use gets a new login (e.g. to see changes to the user's groups).
+     */
+    @Beta
+    public void retireSharedConnection() {
+        sshClientConnection.retireSharedConnection();
+    }
+
     @Override
     public boolean isConnected() {
         return sshClientConnection.isConnected() && sshClientConnection.isAuthenticated();
@@ -819,6 +857,11 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         };
     }
     
+    private void closeSessionWhispering(Session session, Object context) {
+        closeWhispering(session, context);
+        sshClientConnection.sessionClosed(session);
+    }
+
     protected SshAction<Session> newSessionAction() {
 
         return new SshAction<Session>() {
@@ -827,14 +870,14 @@ public class SshjTool extends SshAbstractTool implements SshTool {
 
             @Override
             public void clear() throws TransportException, ConnectionException {
-                closeWhispering(session, this);
+                closeSessionWhispering(session, this);
                 session = null;
             }
 
             @Override
             public Session create() throws Exception {
                 checkConnected();
-                session = sshClientConnection.ssh.startSession();
+                session = sshClientConnection.startSession();
                 if (allocatePTY) {
                     session.allocatePTY(TERM, 80, 24, 0, 0, Collections.<PTYMode, Integer> emptyMap());
                 }
@@ -872,7 +915,7 @@ public class SshjTool extends SshAbstractTool implements SshTool {
 
         @Override
         public void clear() throws TransportException, ConnectionException {
-            closeWhispering(session, this);
+            closeSessionWhispering(session, this);
             closeWhispering(shell, this);
             closeWhispering(outgobbler, this);
             closeWhispering(errgobbler, this);
@@ -949,7 +992,7 @@ public class SshjTool extends SshAbstractTool implements SshTool {
 
         @Override
         public void clear() throws TransportException, ConnectionException {
-            closeWhispering(session, this);
+            closeSessionWhispering(session, this);
             closeWhispering(shell, this);
             closeWhispering(outgobbler, this);
             closeWhispering(errgobbler, this);
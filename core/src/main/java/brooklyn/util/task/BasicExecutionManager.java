@@ -20,9 +20,9 @@ package brooklyn.util.task;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -33,10 +33,14 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -92,15 +96,20 @@ public class BasicExecutionManager implements ExecutionManager {
         
     private final ScheduledExecutorService delayedRunner;
     
+    /** bounded pool for draining {@link MailboxScheduler}s; null unless {@link #useMailboxPool(int, int)} was called */
+    private volatile ThreadPoolExecutor mailboxRunner;
+    
+    private volatile int mailboxBatchSize = MailboxScheduler.DEFAULT_BATCH_SIZE;
+    
     // TODO Could have a set of all knownTasks; but instead we're having a separate set per tag,
     // so the same task could be listed multiple times if it has multiple tags...
 
-    //access to this field AND to members in this field is synchronized, 
-    //to allow us to preserve order while guaranteeing thread-safe
-    //(but more testing is needed before we are completely sure it is thread-safe!)
-    //synch blocks are as finely grained as possible for efficiency;
-    //NB CopyOnWriteArraySet is a perf bottleneck, and the simple map makes it easier to remove when a tag is empty
-    private Map<Object,Set<Task<?>>> tasksByTag = new HashMap<Object,Set<Task<?>>>();
+    //both the map and the sets in it are concurrent, so that submission, completion, GC and queries
+    //do not contend on a single monitor; an emptied set is retired (atomically with the check that it is empty)
+    //before being removed from the map, and adders retry with a new set if theirs was retired (see addTaskToTag);
+    //the sets keep submission order, as callers rely on that (e.g. listing effector calls on an entity)
+    //NB CopyOnWriteArraySet is a perf bottleneck
+    private final ConcurrentMap<Object,ConcurrentInsertionOrderedTaskSet> tasksByTag = new ConcurrentHashMap<Object,ConcurrentInsertionOrderedTaskSet>();
     
     private ConcurrentMap<String,Task<?>> tasksById = new ConcurrentHashMap<String,Task<?>>();
 
@@ -132,9 +141,7 @@ public class BasicExecutionManager implements ExecutionManager {
                 .setDaemon(true)
                 .build();
                 
-        // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
-        runner = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
-                daemonThreadFactory);
+        runner = newRunner(contextid, daemonThreadFactory);
             
         delayedRunner = new ScheduledThreadPoolExecutor(1, daemonThreadFactory);
     }
@@ -158,9 +165,76 @@ public class BasicExecutionManager implements ExecutionManager {
                 .build();
     }
     
+    /** 
+     * Creates the executor on which tasks' jobs are run; for use by overriders (e.g. to run tasks on other kinds of thread).
+     * As with {@link #newThreadFactory(String)}, this is called by the constructor.
+     */
+    protected ExecutorService newRunner(String contextid, ThreadFactory daemonThreadFactory) {
+        // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
+                daemonThreadFactory);
+    }
+    
     public void shutdownNow() {
         runner.shutdownNow();
         delayedRunner.shutdownNow();
+        if (mailboxRunner!=null) mailboxRunner.shutdownNow();
+    }
+    
+    /**
+     * Runs the given job once after the given delay (in millis), on the thread used for scheduling {@link ScheduledTask}s,
+     * without creating a {@link Task}. Only for quick non-blocking housekeeping, such as flushing coalesced 
+     * sensor publications; anything more substantial should be submitted as a task.
+     */
+    @Beta
+    public ScheduledFuture<?> scheduleUntracked(Runnable job, long delayMillis) {
+        return delayedRunner.schedule(job, delayMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Switches in-order delivery (i.e. tags using {@link #getSerialTaskSchedulerType()}, such as subscription deliveries)
+     * to {@link MailboxScheduler} mailboxes drained by a fixed pool of the given size, 
+     * instead of {@link SingleThreadedScheduler}s using the shared unbounded pool.
+     * <p>
+     * Must be called before any serial task schedulers are set, typically when the management context is created.
+     */
+    @Beta
+    public synchronized void useMailboxPool(int poolSize, int batchSize) {
+        Preconditions.checkArgument(poolSize > 0, "poolSize must be positive: %s", poolSize);
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive: %s", batchSize);
+        if (mailboxRunner!=null) throw new IllegalStateException("Mailbox pool already configured for "+this);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 10L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), 
+                daemonThreadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        mailboxBatchSize = batchSize;
+        mailboxRunner = pool;
+    }
+    
+    public boolean isUsingMailboxPool() {
+        return mailboxRunner!=null;
+    }
+    
+    /** the {@link TaskScheduler} to use for tags whose tasks must run one at a time in submission order */
+    public Class<? extends TaskScheduler> getSerialTaskSchedulerType() {
+        return isUsingMailboxPool() ? MailboxScheduler.class : SingleThreadedScheduler.class;
+    }
+    
+    /** max threads for draining mailboxes, or 0 if not {@link #isUsingMailboxPool()} */
+    public int getMailboxPoolSize() {
+        ThreadPoolExecutor pool = mailboxRunner;
+        return pool!=null ? pool.getMaximumPoolSize() : 0;
+    }
+    
+    /** number of threads currently draining mailboxes */
+    public int getNumActiveMailboxThreads() {
+        ThreadPoolExecutor pool = mailboxRunner;
+        return pool!=null ? pool.getActiveCount() : 0;
+    }
+    
+    /** number of mailboxes with work, waiting for a thread to drain them */
+    public int getNumMailboxesWaiting() {
+        ThreadPoolExecutor pool = mailboxRunner;
+        return pool!=null ? pool.getQueue().size() : 0;
     }
     
     public void addListener(ExecutionListener listener) {
@@ -178,11 +252,9 @@ public class BasicExecutionManager implements ExecutionManager {
      * a reference to it as a tag.
      */
     public void deleteTag(Object tag) {
-        Set<Task<?>> tasks;
-        synchronized (tasksByTag) {
-            tasks = tasksByTag.remove(tag);
-        }
+        ConcurrentInsertionOrderedTaskSet tasks = tasksByTag.remove(tag);
         if (tasks != null) {
+            tasks.retire();
             for (Task<?> task : tasks) {
                 deleteTask(task);
             }
@@ -204,13 +276,12 @@ public class BasicExecutionManager implements ExecutionManager {
     protected boolean deleteTaskNonRecursive(Task<?> task) {
         Set<?> tags = checkNotNull(task, "task").getTags();
         for (Object tag : tags) {
-            synchronized (tasksByTag) {
-                Set<Task<?>> tasks = tasksWithTagLiveOrNull(tag);
-                if (tasks != null) {
-                    tasks.remove(task);
-                    if (tasks.isEmpty()) {
-                        tasksByTag.remove(tag);
-                    }
+            ConcurrentInsertionOrderedTaskSet tasks = tasksByTag.get(tag);
+            if (tasks != null) {
+                tasks.remove(task);
+                if (tasks.retireIfEmpty()) {
+                    // only removes if still this set; any concurrent adder will find it retired and use a new set
+                    tasksByTag.remove(tag, tasks);
                 }
             }
         }
@@ -246,24 +317,117 @@ public class BasicExecutionManager implements ExecutionManager {
         return tasksById.size();
     }
 
-    private Set<Task<?>> tasksWithTagCreating(Object tag) {
+    private void addTaskToTag(Object tag, Task<?> task) {
         Preconditions.checkNotNull(tag);
-        synchronized (tasksByTag) {
-            Set<Task<?>> result = tasksWithTagLiveOrNull(tag);
-            if (result==null) {
-                result = Collections.synchronizedSet(new LinkedHashSet<Task<?>>());
-                tasksByTag.put(tag, result);
+        while (true) {
+            ConcurrentInsertionOrderedTaskSet tasks = tasksByTag.get(tag);
+            if (tasks==null) {
+                ConcurrentInsertionOrderedTaskSet newTasks = new ConcurrentInsertionOrderedTaskSet();
+                tasks = tasksByTag.putIfAbsent(tag, newTasks);
+                if (tasks==null) tasks = newTasks;
             }
-            return result;
+            if (tasks.addUnlessRetired(task)) return;
+            // the set was emptied concurrently, and is being discarded; remove it (if not already) and try again
+            tasksByTag.remove(tag, tasks);
         }
     }
 
-    /** exposes live view, for internal use only */
+    /** 
+     * Concurrent set which iterates in the order tasks were added (weakly consistent, as for other concurrent collections).
+     * Membership is tracked by a hash map, with a skip-list of insertion sequence numbers giving the order.
+     * <p>
+     * Once emptied and {@link #retireIfEmpty() retired}, the set is about to be discarded from the tag index,
+     * so {@link #addUnlessRetired(Task)} refuses to add to it; the two hold the set's lock, so an addition
+     * either makes the set non-empty before it is checked or sees that it has been retired.
+     */
+    private static class ConcurrentInsertionOrderedTaskSet extends AbstractSet<Task<?>> {
+        private final AtomicLong nextSequence = new AtomicLong();
+        private final ConcurrentMap<Task<?>, Long> sequenceByTask = new ConcurrentHashMap<Task<?>, Long>();
+        private final ConcurrentNavigableMap<Long, Task<?>> taskBySequence = new ConcurrentSkipListMap<Long, Task<?>>();
+        private boolean retired = false;
+
+        synchronized boolean addUnlessRetired(Task<?> task) {
+            if (retired) return false;
+            add(task);
+            return true;
+        }
+
+        synchronized boolean retireIfEmpty() {
+            if (retired || !isEmpty()) return false;
+            retired = true;
+            return true;
+        }
+
+        synchronized void retire() {
+            retired = true;
+        }
+
+        @Override
+        public boolean add(Task<?> task) {
+            Long seq = nextSequence.incrementAndGet();
+            if (sequenceByTask.putIfAbsent(task, seq) != null) return false;
+            taskBySequence.put(seq, task);
+            // a concurrent remove between the two puts will not have found our entry in taskBySequence;
+            // undo it in that case, so iteration does not return (and retain) a task no longer in the set
+            if (!seq.equals(sequenceByTask.get(task))) {
+                taskBySequence.remove(seq, task);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object task) {
+            Long seq = sequenceByTask.remove(task);
+            if (seq == null) return false;
+            taskBySequence.remove(seq);
+            return true;
+        }
+
+        @Override
+        public boolean contains(Object task) {
+            return sequenceByTask.containsKey(task);
+        }
+
+        @Override
+        public int size() {
+            return sequenceByTask.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return sequenceByTask.isEmpty();
+        }
+
+        @Override
+        public Iterator<Task<?>> iterator() {
+            final Iterator<Task<?>> delegate = taskBySequence.values().iterator();
+            return new Iterator<Task<?>>() {
+                Task<?> last;
+                @Override public boolean hasNext() {
+                    return delegate.hasNext();
+                }
+                @Override public Task<?> next() {
+                    return last = delegate.next();
+                }
+                @Override public void remove() {
+                    if (last == null) throw new IllegalStateException();
+                    ConcurrentInsertionOrderedTaskSet.this.remove(last);
+                    last = null;
+                }
+            };
+        }
+    }
+
+    /** exposes live view (a concurrent set, in submission order), for internal use only */
     @Beta
     public Set<Task<?>> tasksWithTagLiveOrNull(Object tag) {
-        synchronized (tasksByTag) {
-            return tasksByTag.get(tag);
-        }
+        return tasksByTag.get(tag);
+    }
+
+    /** number of tasks currently known with the given tag; cheap, as it does not copy the set */
+    public int getNumTasksWithTag(Object tag) {
+        Set<Task<?>> tasks = tasksByTag.get(tag);
+        return tasks==null ? 0 : tasks.size();
     }
 
     @Override
@@ -284,9 +448,7 @@ public class BasicExecutionManager implements ExecutionManager {
     public Set<Task<?>> getTasksWithTag(Object tag) {
         Set<Task<?>> result = tasksWithTagLiveOrNull(tag);
         if (result==null) return Collections.emptySet();
-        synchronized (result) {
-            return (Set<Task<?>>)Collections.unmodifiableSet(new LinkedHashSet<Task<?>>(result));
-        }
+        return (Set<Task<?>>)Collections.unmodifiableSet(new LinkedHashSet<Task<?>>(result));
     }
     
     @Override
@@ -296,9 +458,7 @@ public class BasicExecutionManager implements ExecutionManager {
         while (ti.hasNext()) {
             Set<Task<?>> tasksForTag = tasksWithTagLiveOrNull(ti.next());
             if (tasksForTag!=null) {
-                synchronized (tasksForTag) {
-                    result.addAll(tasksForTag);
-                }
+                result.addAll(tasksForTag);
             }
         }
         return Collections.unmodifiableSet(result);
@@ -307,20 +467,27 @@ public class BasicExecutionManager implements ExecutionManager {
     /** only works with at least one tag; returns empty if no tags */
     @Override
     public Set<Task<?>> getTasksWithAllTags(Iterable<?> tags) {
-        //NB: for this method retrieval for multiple tags could be made (much) more efficient (if/when it is used with multiple tags!)
-        //by first looking for the least-used tag, getting those tasks, and then for each of those tasks
-        //checking whether it contains the other tags (looking for second-least used, then third-least used, etc)
+        // iterate over the smallest of the tag sets, checking membership of the others
+        List<Set<Task<?>>> tagSets = MutableList.of();
+        Set<Task<?>> smallest = null;
+        for (Object tag : tags) {
+            Set<Task<?>> tasksForTag = tasksWithTagLiveOrNull(tag);
+            if (tasksForTag==null) return Collections.emptySet();
+            tagSets.add(tasksForTag);
+            if (smallest==null || tasksForTag.size() < smallest.size()) smallest = tasksForTag;
+        }
+        if (smallest==null) return Collections.emptySet();
+        
         Set<Task<?>> result = new LinkedHashSet<Task<?>>();
-        boolean first = true;
-        Iterator<?> ti = tags.iterator();
-        while (ti.hasNext()) {
-            Object tag = ti.next();
-            if (first) { 
-                first = false;
-                result.addAll(getTasksWithTag(tag));
-            } else {
-                result.retainAll(getTasksWithTag(tag));
+        for (Task<?> task : smallest) {
+            boolean inAll = true;
+            for (Set<Task<?>> tasksForTag : tagSets) {
+                if (tasksForTag!=smallest && !tasksForTag.contains(task)) {
+                    inAll = false;
+                    break;
+                }
             }
+            if (inAll) result.add(task);
         }
         return Collections.unmodifiableSet(result);
     }
@@ -330,9 +497,7 @@ public class BasicExecutionManager implements ExecutionManager {
     public Collection<Task<?>> allTasksLive() { return tasksById.values(); }
     
     public Set<Object> getTaskTags() { 
-        synchronized (tasksByTag) {
-            return Collections.unmodifiableSet(Sets.newLinkedHashSet(tasksByTag.keySet())); 
-        }
+        return Collections.unmodifiableSet(Sets.newLinkedHashSet(tasksByTag.keySet())); 
     }
 
     public Task<?> submit(Runnable r) { return submit(new LinkedHashMap<Object,Object>(1), r); }
@@ -608,7 +773,7 @@ public class BasicExecutionManager implements ExecutionManager {
         if (flags.get("tags")!=null) ((TaskInternal<?>)task).getMutableTags().addAll((Collection<?>)flags.remove("tags"));
 
         for (Object tag: ((TaskInternal<?>)task).getTags()) {
-            tasksWithTagCreating(tag).add(task);
+            addTaskToTag(tag, task);
         }
     }
 
@@ -724,7 +889,12 @@ public class BasicExecutionManager implements ExecutionManager {
      */
     public void setTaskSchedulerForTag(Object tag, TaskScheduler scheduler) {
         synchronized (schedulerByTag) {
-            scheduler.injectExecutor(runner);
+            if (scheduler instanceof MailboxScheduler && mailboxRunner!=null) {
+                scheduler.injectExecutor(mailboxRunner);
+                ((MailboxScheduler)scheduler).setBatchSize(mailboxBatchSize);
+            } else {
+                scheduler.injectExecutor(runner);
+            }
 
             Object old = schedulerByTag.put(tag, scheduler);
             if (old!=null && old!=scheduler) {
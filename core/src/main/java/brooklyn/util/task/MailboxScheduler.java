@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.management.Task;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Like {@link SingleThreadedScheduler}, ensures that {@link Task}s execute with in-order
+ * single-threaded semantics, in submission order, but as an actor-style mailbox.
+ * <p>
+ * Submissions are queued, and at most one drain job per mailbox is ever given to the executor.
+ * That job runs up to {@link #getBatchSize()} queued submissions in the same thread and then,
+ * if more remain, re-submits itself to the back of the executor's queue so that other mailboxes
+ * get a turn. This means a backlog does not need a thread (or a new executor job) per queued item,
+ * and so is suitable for use with a bounded pool.
+ * <p>
+ * Because every job runs in a pooled thread shared with other mailboxes, jobs should not block
+ * for long (and must not block waiting for another mailbox's job, if the pool is bounded).
+ */
+@Beta
+public class MailboxScheduler implements TaskScheduler, CanSetName {
+    private static final Logger LOG = LoggerFactory.getLogger(MailboxScheduler.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private final Queue<FutureTask<?>> mailbox = new ConcurrentLinkedQueue<FutureTask<?>>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable drainer = new Runnable() {
+        @Override public void run() {
+            drain();
+        }
+        @Override public String toString() {
+            return "MailboxScheduler.drain("+MailboxScheduler.this+")";
+        }
+    };
+
+    private ExecutorService executor;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    private String name;
+    private volatile int lastSizeWarn = 0;
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name!=null ? "MailboxScheduler["+name+"]" : super.toString();
+    }
+
+    @Override
+    public void injectExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /** the maximum number of jobs run in a thread before yielding it to other mailboxes */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive, for "+this+": "+batchSize);
+        this.batchSize = batchSize;
+    }
+
+    /** number of jobs submitted but not yet started */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> c) {
+        FutureTask<T> f = new FutureTask<T>(c);
+        mailbox.add(f);
+        int size = queueSize.incrementAndGet();
+        if (size>1 && (size == 50 || (size<=500 && (size%100)==0) || (size%1000)==0) && size!=lastSizeWarn) {
+            LOG.warn("{} is backing up, {} tasks queued", this, size);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Task queue backing up detail, queue "+this+"; task context is "+Tasks.current()+"; latest task is "+c+"; first task is "+mailbox.peek());
+            }
+            lastSizeWarn = size;
+        }
+        scheduleDrainIfIdle();
+        return f;
+    }
+
+    private void scheduleDrainIfIdle() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainer);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            int max = batchSize;
+            for (int i=0; i<max; i++) {
+                FutureTask<?> f = mailbox.poll();
+                if (f==null) break;
+                queueSize.decrementAndGet();
+                // no-op if cancelled while queued; errors are recorded in the future
+                f.run();
+                // as ThreadPoolExecutor does between jobs, don't leak a cancellation interrupt to the next job
+                Thread.interrupted();
+            }
+        } finally {
+            drainScheduled.set(false);
+            // anything added after our last poll will not have scheduled a drain, because we were still marked as scheduled
+            if (!mailbox.isEmpty()) {
+                try {
+                    scheduleDrainIfIdle();
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("Unable to continue draining "+this+" ("+queueSize.get()+" queued); executor rejected: "+e);
+                }
+            }
+        }
+    }
+}
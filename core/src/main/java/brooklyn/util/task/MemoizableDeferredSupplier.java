@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import brooklyn.event.basic.SensorDependencies;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A {@link DeferredSupplier} whose result depends only on the values of sensors, which it
+ * {@link SensorDependencies#record(brooklyn.entity.Entity, brooklyn.event.AttributeSensor) records}
+ * in the thread calling {@link #get()} (as creating a
+ * {@link brooklyn.event.basic.DependentConfiguration#attributeWhenReady(brooklyn.entity.Entity, brooklyn.event.AttributeSensor) attributeWhenReady}
+ * task does).
+ * <p>
+ * When used as a config value, the result is reused by subsequent calls to getConfig until one of those sensors changes.
+ * If no sensors are recorded the result is not reused.
+ */
+@Beta
+public interface MemoizableDeferredSupplier<T> extends DeferredSupplier<T> {
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import java.util.concurrent.TimeUnit;
+
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+/**
+ * A token-bucket rate limiter: permits are issued at a steady rate, and up to {@code burst} unused
+ * permits can be saved up and then taken all at once.
+ * <p>
+ * Callers are served in the order they ask: each {@link #reserve()} takes a permit immediately, going
+ * into debt if none is available, and returns how long the caller must wait before it is due.
+ */
+@Beta
+public class TokenBucket {
+
+    private final double permitsPerSecond;
+    private final double permitsPerNano;
+    private final double burst;
+    private final Ticker ticker;
+
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, Ticker.systemTicker());
+    }
+
+    public TokenBucket(double permitsPerSecond, int burst, Ticker ticker) {
+        Preconditions.checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive, but was %s", permitsPerSecond);
+        Preconditions.checkArgument(burst > 0, "burst must be positive, but was %s", burst);
+        this.permitsPerSecond = permitsPerSecond;
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.ticker = ticker;
+        this.tokens = burst;
+        this.lastRefill = ticker.read();
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return (int) burst;
+    }
+
+    /** Takes a permit, returning how long to wait before using it (zero if one was available). */
+    public synchronized Duration reserve() {
+        long now = ticker.read();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        tokens -= 1;
+        if (tokens >= 0) return Duration.ZERO;
+        return Duration.nanos((long) Math.ceil(-tokens / permitsPerNano));
+    }
+
+    /** Takes a permit, sleeping until it is due; interruption is propagated as unchecked. */
+    public void acquire() {
+        Time.sleep(reserve());
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("permitsPerSecond", getPermitsPerSecond()).add("burst", getBurst()).toString();
+    }
+}
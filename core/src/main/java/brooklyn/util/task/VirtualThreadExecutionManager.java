@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * An {@link BasicExecutionManager} which runs each task's job in its own virtual thread, where the JVM
+ * supports them (Java 21+), falling back to the usual pool of platform threads otherwise.
+ * <p>
+ * This suits the many tasks which spend most of their time blocked, e.g. waiting on ssh or http,
+ * as these then no longer each hold a platform thread. Everything else is as for the 
+ * {@link BasicExecutionManager}: {@link Tasks#current()} and {@link DynamicTasks} use thread-locals
+ * (which virtual threads support), and scheduled tasks' timing remains on a platform thread.
+ * <p>
+ * Note that a virtual thread blocked inside a {@code synchronized} block (including in {@link Object#wait()})
+ * pins its carrier thread on current JVMs, so code which waits that way still consumes a platform thread.
+ */
+@Beta
+public class VirtualThreadExecutionManager extends BasicExecutionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadExecutionManager.class);
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+    private static final Method THREAD_OF_VIRTUAL;
+    private static final Method VIRTUAL_BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    static {
+        Method newThreadPerTaskExecutor = null;
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = Class.forName("java.lang.Thread$Builder$OfVirtual").getMethod("name", String.class, long.class);
+            factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+        } catch (Exception e) {
+            // not supported in this JVM
+            newThreadPerTaskExecutor = null;
+        }
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        THREAD_OF_VIRTUAL = ofVirtual;
+        VIRTUAL_BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+    }
+
+    /** whether this JVM supports virtual threads */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    private boolean usingVirtualThreads;
+
+    public VirtualThreadExecutionManager(String contextid) {
+        super(contextid);
+    }
+
+    /** whether tasks are actually being run on virtual threads, i.e. false if we fell back to platform threads */
+    public boolean isUsingVirtualThreads() {
+        return usingVirtualThreads;
+    }
+
+    @Override
+    protected ExecutorService newRunner(String contextid, ThreadFactory daemonThreadFactory) {
+        // called from super's constructor, so any field initializers have not yet run; hence no initializer for usingVirtualThreads
+        if (isVirtualThreadsSupported()) {
+            try {
+                Object builder = VIRTUAL_BUILDER_NAME.invoke(THREAD_OF_VIRTUAL.invoke(null), "brooklyn-execmanager-"+contextid+"-virtual-", 0L);
+                ThreadFactory virtualThreadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+                ExecutorService result = (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, virtualThreadFactory);
+                usingVirtualThreads = true;
+                return result;
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                log.warn("Unable to use virtual threads for "+contextid+"; falling back to platform threads: "+e, e);
+            }
+        } else {
+            log.debug("Virtual threads not supported in this JVM ("+System.getProperty("java.version")+"); "
+                    + "execution manager "+contextid+" using platform threads");
+        }
+        return super.newRunner(contextid, daemonThreadFactory);
+    }
+}
@@ -33,6 +33,8 @@ import brooklyn.util.collections.MutableSet;
 
 import com.google.common.collect.ImmutableList;
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import com.thoughtworks.xstream.mapper.MapperWrapper;
 
 public class XmlSerializer<T> {
@@ -84,6 +86,17 @@ public class XmlSerializer<T> {
         return (T) xstream.fromXML(xml);
     }
 
+    /** as {@link #serialize(Object, Writer)}, but to any XStream writer, such as a binary one */
+    public void serialize(Object object, HierarchicalStreamWriter writer) {
+        xstream.marshal(object, writer);
+    }
+
+    /** as {@link #deserialize(Reader)}, but from any XStream reader, such as a binary one */
+    @SuppressWarnings("unchecked")
+    public T deserialize(HierarchicalStreamReader reader) {
+        return (T) xstream.unmarshal(reader);
+    }
+
     public String toString(T memento) {
         Writer writer = new StringWriter();
         serialize(memento, writer);
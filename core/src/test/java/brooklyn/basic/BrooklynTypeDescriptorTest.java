@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.basic;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.InputStream;
+
+import org.testng.annotations.Test;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.Entity;
+import brooklyn.entity.annotation.Effector;
+import brooklyn.entity.basic.AbstractEntity;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.policy.basic.AbstractPolicy;
+
+import com.google.common.io.ByteStreams;
+
+public class BrooklynTypeDescriptorTest extends BrooklynAppUnitTestSupport {
+
+    public static class MyEntity extends AbstractEntity {
+        public static final ConfigKey<String> MY_CONFIG = ConfigKeys.newStringConfigKey("my.config");
+        public static final AttributeSensor<String> MY_SENSOR = Sensors.newStringSensor("my.sensor");
+        
+        @Effector
+        public String myEffector() {
+            return "done";
+        }
+    }
+    
+    public static class MyPolicy extends AbstractPolicy {
+        public static final ConfigKey<String> MY_CONFIG = ConfigKeys.newStringConfigKey("my.config");
+    }
+    
+    @Test
+    public void testDescribesEntityClass() throws Exception {
+        BrooklynTypeDescriptor descriptor = BrooklynTypeDescriptor.of(MyEntity.class);
+        
+        assertSame(descriptor.getConfigKeys().get("my.config"), MyEntity.MY_CONFIG);
+        assertSame(descriptor.getSensors().get("my.sensor"), MyEntity.MY_SENSOR);
+        assertTrue(descriptor.getEffectors().containsKey("myEffector"));
+        assertSame(BrooklynTypeDescriptor.of(MyEntity.class), descriptor);
+    }
+    
+    @Test
+    public void testDescribesPolicyClass() throws Exception {
+        BrooklynTypeDescriptor descriptor = BrooklynTypeDescriptor.of(MyPolicy.class);
+        
+        assertSame(descriptor.getConfigKeys().get("my.config"), MyPolicy.MY_CONFIG);
+        assertTrue(descriptor.getSensors().isEmpty());
+        assertTrue(descriptor.getEffectors().isEmpty());
+    }
+    
+    @Test
+    public void testInstancesShareDescriptorButNotChangesToTheirType() throws Exception {
+        EntityInternal entity1 = (EntityInternal) app.createAndManageChild(EntitySpec.create(Entity.class, MyEntity.class));
+        EntityInternal entity2 = (EntityInternal) app.createAndManageChild(EntitySpec.create(Entity.class, MyEntity.class));
+        BrooklynTypeDescriptor descriptor = BrooklynTypeDescriptor.of(MyEntity.class);
+        
+        assertSame(entity1.getEntityType().getEffectorByName("myEffector").get(), descriptor.getEffectors().get("myEffector"));
+        assertSame(entity2.getEntityType().getEffectorByName("myEffector").get(), descriptor.getEffectors().get("myEffector"));
+        
+        AttributeSensor<String> added = Sensors.newStringSensor("my.added");
+        entity1.getMutableEntityType().addSensor(added);
+        assertTrue(entity1.getEntityType().hasSensor("my.added"));
+        assertFalse(entity2.getEntityType().hasSensor("my.added"));
+        assertFalse(descriptor.getSensors().containsKey("my.added"));
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSameNamedClassFromOtherClassLoaderHasOwnDescriptor() throws Exception {
+        ClassLoader loader = new CopyingClassLoader(MyEntity.class);
+        Class<? extends Entity> copy = (Class<? extends Entity>) loader.loadClass(MyEntity.class.getName());
+        assertNotEquals(copy, MyEntity.class);
+        
+        BrooklynTypeDescriptor descriptor = BrooklynTypeDescriptor.of(MyEntity.class);
+        BrooklynTypeDescriptor copyDescriptor = BrooklynTypeDescriptor.of(copy);
+        assertNotSame(copyDescriptor, descriptor);
+        assertSame(copyDescriptor.getBrooklynClass(), copy);
+        assertEquals(copyDescriptor.getSensors().keySet(), descriptor.getSensors().keySet());
+        assertNotSame(copyDescriptor.getSensors().get("my.sensor"), MyEntity.MY_SENSOR);
+        
+        BrooklynTypeDescriptor.evict(loader);
+        assertFalse(BrooklynTypeDescriptor.isCached(copy));
+        assertTrue(BrooklynTypeDescriptor.isCached(MyEntity.class));
+    }
+    
+    /** defines its own copy of the given class, delegating for all others */
+    private static class CopyingClassLoader extends ClassLoader {
+        private final Class<?> copied;
+        
+        CopyingClassLoader(Class<?> copied) {
+            super(copied.getClassLoader());
+            this.copied = copied;
+        }
+        
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(copied.getName())) return super.loadClass(name, resolve);
+            Class<?> result = findLoadedClass(name);
+            if (result == null) {
+                try {
+                    InputStream in = copied.getResourceAsStream("/"+name.replace('.', '/')+".class");
+                    try {
+                        byte[] bytes = ByteStreams.toByteArray(in);
+                        result = defineClass(name, bytes, 0, bytes.length);
+                    } finally {
+                        in.close();
+                    }
+                } catch (Exception e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+            if (resolve) resolveClass(result);
+            return result;
+        }
+    }
+}
@@ -303,6 +303,65 @@ public class EnrichersTest extends BrooklynAppUnitTestSupport {
         EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 5);
     }
 
+    @Test
+    public void testAggregatingIncrementallyAcrossMemberChanges() {
+        AttributeSensor<Integer> count = Sensors.newIntegerSensor("test.count");
+        AttributeSensor<Integer> min = Sensors.newIntegerSensor("test.min");
+        AttributeSensor<Integer> max = Sensors.newIntegerSensor("test.max");
+        AttributeSensor<Double> median = Sensors.newDoubleSensor("test.median");
+        group.addMember(entity);
+        group.addMember(entity2);
+        group.addEnricher(Enrichers.builder().aggregating(NUM1).publishing(NUM2).fromMembers().computingSum().build());
+        group.addEnricher(Enrichers.builder().aggregating(NUM1).publishing(count).fromMembers().computingCount().build());
+        group.addEnricher(Enrichers.builder().aggregating(NUM1).publishing(min).fromMembers().computingMin().build());
+        group.addEnricher(Enrichers.builder().aggregating(NUM1).publishing(max).fromMembers().computingMax().build());
+        group.addEnricher(Enrichers.builder().aggregating(NUM1).publishing(median).fromMembers().computingPercentile(50).build());
+        
+        entity.setAttribute(NUM1, 3);
+        entity2.setAttribute(NUM1, 1);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 4);
+        EntityTestUtils.assertAttributeEqualsEventually(group, count, 2);
+        EntityTestUtils.assertAttributeEqualsEventually(group, min, 1);
+        EntityTestUtils.assertAttributeEqualsEventually(group, max, 3);
+        EntityTestUtils.assertAttributeEqualsEventually(group, median, 1d);
+        
+        entity2.setAttribute(NUM1, 5);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 8);
+        EntityTestUtils.assertAttributeEqualsEventually(group, min, 3);
+        EntityTestUtils.assertAttributeEqualsEventually(group, max, 5);
+        EntityTestUtils.assertAttributeEqualsEventually(group, median, 3d);
+        
+        group.removeMember(entity);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 5);
+        EntityTestUtils.assertAttributeEqualsEventually(group, count, 1);
+        EntityTestUtils.assertAttributeEqualsEventually(group, min, 5);
+        EntityTestUtils.assertAttributeEqualsEventually(group, median, 5d);
+        
+        group.removeMember(entity2);
+        EntityTestUtils.assertAttributeEqualsEventually(group, count, 0);
+        EntityTestUtils.assertAttributeEqualsEventually(group, min, null);
+    }
+    
+    @Test
+    public void testAggregatingRecomputingFully() {
+        group.addMember(entity);
+        group.addMember(entity2);
+        group.addEnricher(Enrichers.builder()
+                .aggregating(NUM1)
+                .publishing(NUM2)
+                .fromMembers()
+                .computingMax()
+                .recomputingFully()
+                .build());
+        
+        entity.setAttribute(NUM1, 2);
+        entity2.setAttribute(NUM1, 7);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 7);
+        
+        entity2.setAttribute(NUM1, 1);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 2);
+    }
+
     @Test
     public void testAggregatingExcludingBlankString() {
         group.addMember(entity);
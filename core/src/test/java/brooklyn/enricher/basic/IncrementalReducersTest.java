@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.enricher.basic;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import brooklyn.enricher.basic.IncrementalReducer.Accumulator;
+
+import com.google.common.collect.Lists;
+
+public class IncrementalReducersTest {
+
+    @Test
+    public void testSum() {
+        Accumulator<Number, Integer> acc = IncrementalReducers.sum(null, 0, Integer.class).newAccumulator();
+        assertEquals(acc.get(), (Integer)0);
+        acc.add(1);
+        acc.add(2);
+        acc.add(null);
+        assertEquals(acc.get(), (Integer)3);
+        acc.remove(1);
+        acc.remove(null);
+        assertEquals(acc.get(), (Integer)2);
+        acc.remove(2);
+        assertEquals(acc.get(), (Integer)0);
+    }
+
+    @Test
+    public void testSumAndAverageUseValueIfNull() {
+        Accumulator<Number, Double> sum = IncrementalReducers.sum(10, null, Double.class).newAccumulator();
+        Accumulator<Number, Double> avg = IncrementalReducers.average(10, null, Double.class).newAccumulator();
+        for (Accumulator<Number, Double> acc : Arrays.asList(sum, avg)) {
+            acc.add(2);
+            acc.add(null);
+        }
+        assertEquals(sum.get(), 12d);
+        assertEquals(avg.get(), 6d);
+    }
+
+    @Test
+    public void testAverageReportsValueIfNoneWhenEmpty() {
+        Accumulator<Number, Double> acc = IncrementalReducers.average(null, -1, Double.class).newAccumulator();
+        assertEquals(acc.get(), -1d);
+        acc.add(null);
+        assertEquals(acc.get(), -1d);
+        acc.add(3);
+        assertEquals(acc.get(), 3d);
+    }
+
+    @Test
+    public void testCount() {
+        Accumulator<Number, Integer> ignoringNulls = IncrementalReducers.count(null, Integer.class).newAccumulator();
+        Accumulator<Number, Integer> includingNulls = IncrementalReducers.count(0, Integer.class).newAccumulator();
+        for (Accumulator<Number, Integer> acc : Arrays.asList(ignoringNulls, includingNulls)) {
+            acc.add(5);
+            acc.add(null);
+            acc.add(6);
+            acc.remove(5);
+        }
+        assertEquals(ignoringNulls.get(), (Integer)1);
+        assertEquals(includingNulls.get(), (Integer)2);
+    }
+
+    @Test
+    public void testMinMaxPercentileWithDuplicates() {
+        Accumulator<Number, Integer> min = IncrementalReducers.min(null, null, Integer.class).newAccumulator();
+        Accumulator<Number, Integer> max = IncrementalReducers.max(null, null, Integer.class).newAccumulator();
+        Accumulator<Number, Integer> median = IncrementalReducers.percentile(50, null, null, Integer.class).newAccumulator();
+        for (Accumulator<Number, Integer> acc : Arrays.asList(min, max, median)) {
+            assertEquals(acc.get(), null);
+            for (int v : new int[] {4, 1, 4, 9, 4}) {
+                acc.add(v);
+            }
+        }
+        assertEquals(min.get(), (Integer)1);
+        assertEquals(max.get(), (Integer)9);
+        assertEquals(median.get(), (Integer)4);
+
+        for (Accumulator<Number, Integer> acc : Arrays.asList(min, max, median)) {
+            acc.remove(4);
+            acc.remove(1);
+            acc.remove(9);
+        }
+        assertEquals(min.get(), (Integer)4);
+        assertEquals(max.get(), (Integer)4);
+        assertEquals(median.get(), (Integer)4);
+    }
+
+    @Test
+    public void testRecomputingMatchesIncremental() {
+        List<Number> vals = Arrays.<Number>asList(3, 1, null, 4, 1, 5);
+        assertEquals(IncrementalReducers.recomputing(IncrementalReducers.sum(null, null, Integer.class)).apply(vals), (Integer)14);
+        assertEquals(IncrementalReducers.recomputing(IncrementalReducers.max(null, null, Integer.class)).apply(vals), (Integer)5);
+        assertEquals(IncrementalReducers.recomputing(IncrementalReducers.percentile(75, null, null, Integer.class)).apply(vals), (Integer)4);
+    }
+
+    @Test
+    public void testRandomUpdatesMatchFullRecompute() {
+        Random random = new Random(1234);
+        double[] percentiles = {0, 10, 50, 90, 99, 100};
+        List<Accumulator<Number, Double>> accs = Lists.newArrayList();
+        for (double p : percentiles) {
+            accs.add(IncrementalReducers.percentile(p, null, null, Double.class).newAccumulator());
+        }
+        Accumulator<Number, Double> sum = IncrementalReducers.sum(null, null, Double.class).newAccumulator();
+
+        List<Integer> current = Lists.newArrayList();
+        for (int i = 0; i < 2000; i++) {
+            if (!current.isEmpty() && random.nextInt(3) == 0) {
+                Integer removed = current.remove(random.nextInt(current.size()));
+                for (Accumulator<Number, Double> acc : accs) acc.remove(removed);
+                sum.remove(removed);
+            } else {
+                Integer added = random.nextInt(50);
+                current.add(added);
+                for (Accumulator<Number, Double> acc : accs) acc.add(added);
+                sum.add(added);
+            }
+
+            List<Integer> sorted = Lists.newArrayList(current);
+            Collections.sort(sorted);
+            long expectedSum = 0;
+            for (Integer v : sorted) expectedSum += v;
+            assertEquals(sum.get(), sorted.isEmpty() ? null : (double)expectedSum);
+            for (int p = 0; p < percentiles.length; p++) {
+                Double expected = sorted.isEmpty() ? null : (double)sorted.get(Math.max(1, (int)Math.ceil(percentiles[p] / 100 * sorted.size())) - 1);
+                assertEquals(accs.get(p).get(), expected, "percentile "+percentiles[p]+" of "+sorted);
+            }
+        }
+    }
+}
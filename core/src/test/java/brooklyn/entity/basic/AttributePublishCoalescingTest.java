@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.basic;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.AttributeMapTest.RecordingSensorEventListener;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.AttributeSensor.SensorPersistenceMode;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.basic.Sensors;
+import brooklyn.test.Asserts;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableMap;
+
+public class AttributePublishCoalescingTest {
+
+    private static final AttributeSensor<Integer> COALESCED = Sensors.builder(Integer.class, "test.coalesced")
+            .persistence(SensorPersistenceMode.REQUIRED)
+            .publishCoalescePeriod(Duration.millis(200))
+            .build();
+
+    private static final int NUM_UPDATES = 100;
+
+    private TestApplication app;
+    private RecordingSensorEventListener listener;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        app = TestApplication.Factory.newManagedInstanceForTests();
+        listener = new RecordingSensorEventListener();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (app != null) Entities.destroyAll(app.getManagementContext());
+    }
+
+    @Test
+    public void testCoalescesPublicationWhenSetOnSensor() {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        app.subscribe(entity, COALESCED, listener);
+
+        updateRepeatedly(entity, COALESCED);
+
+        assertCoalescedToLatest(COALESCED);
+    }
+
+    @Test
+    public void testCoalescesPublicationWhenSetInEntityConfig() {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(BrooklynConfigKeys.SENSOR_PUBLISH_COALESCE_PERIODS, ImmutableMap.<String, Object>of(TestEntity.SEQUENCE.getName(), "200ms")));
+        app.subscribe(entity, TestEntity.SEQUENCE, listener);
+
+        updateRepeatedly(entity, TestEntity.SEQUENCE);
+
+        assertCoalescedToLatest(TestEntity.SEQUENCE);
+    }
+
+    @Test
+    public void testEntityConfigCanDisableCoalescingSetOnSensor() {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(BrooklynConfigKeys.SENSOR_PUBLISH_COALESCE_PERIODS, ImmutableMap.<String, Object>of(COALESCED.getName(), 0)));
+        app.subscribe(entity, COALESCED, listener);
+
+        updateRepeatedly(entity, COALESCED);
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(listener.getEvents().size(), NUM_UPDATES);
+            }});
+    }
+
+    @Test
+    public void testPublishesAgainImmediatelyAfterQuietWindow() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        app.subscribe(entity, COALESCED, listener);
+
+        entity.setAttribute(COALESCED, 1);
+        assertEventsEventually(1);
+
+        // wait for the window to pass with no changes, so the next change is published directly
+        Thread.sleep(500);
+        entity.setAttribute(COALESCED, 2);
+        assertEventsEventually(1, 2);
+    }
+
+    private void updateRepeatedly(TestEntity entity, AttributeSensor<Integer> sensor) {
+        for (int i = 1; i <= NUM_UPDATES; i++) {
+            entity.setAttribute(sensor, i);
+            // the attribute itself is never stale
+            assertEquals(entity.getAttribute(sensor), (Integer)i);
+        }
+    }
+
+    private void assertCoalescedToLatest(AttributeSensor<Integer> sensor) {
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                List<SensorEvent<Object>> events = listener.getEvents();
+                assertTrue(events.size() > 0);
+                assertEquals(events.get(events.size()-1).getValue(), NUM_UPDATES);
+            }});
+        List<SensorEvent<Object>> events = listener.getEvents();
+        assertEquals(events.get(0).getValue(), 1, "events="+events);
+        assertTrue(events.size() < NUM_UPDATES / 2, "events="+events);
+    }
+
+    private void assertEventsEventually(final Integer... vals) {
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                List<SensorEvent<Object>> events = listener.getEvents();
+                assertEquals(events.size(), vals.length, "events="+events);
+                for (int i = 0; i < vals.length; i++) {
+                    assertEquals(events.get(i).getValue(), vals[i]);
+                }
+            }});
+    }
+}
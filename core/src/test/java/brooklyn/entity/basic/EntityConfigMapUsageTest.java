@@ -23,20 +23,25 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.Entity;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.event.basic.BasicConfigKey;
 import brooklyn.event.basic.DependentConfiguration;
 import brooklyn.location.basic.SimulatedLocation;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.task.DeferredSupplier;
+import brooklyn.util.task.MemoizableDeferredSupplier;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
@@ -314,4 +319,88 @@ public class EntityConfigMapUsageTest extends BrooklynAppUnitTestSupport {
             t.interrupt();
         }
     }
+    
+    @Test
+    public void testResolvedTaskValueIsReused() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity entity2 = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_NAME, DependentConfiguration.attributeWhenReady(entity, TestEntity.NAME)));
+        ((EntityLocal)entity).setAttribute(TestEntity.NAME, "aval");
+        
+        assertEquals(entity2.getConfig(TestEntity.CONF_NAME), "aval");
+        assertEquals(entity2.getConfig(TestEntity.CONF_NAME), "aval");
+        
+        // the task's value is fixed once it completes
+        ((EntityLocal)entity).setAttribute(TestEntity.NAME, "bval");
+        assertEquals(entity2.getConfig(TestEntity.CONF_NAME), "aval");
+        
+        Map<String, Object> metrics = ((EntityInternal)entity2).getConfigMap().getResolutionMetrics();
+        assertEquals(metrics.get("hits"), 2L);
+        assertEquals(metrics.get("misses"), 1L);
+        assertEquals(metrics.get("cached"), 1);
+    }
+    
+    @Test
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void testMemoizableSupplierResolvedAgainOnlyWhenSensorChanges() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        CountingSupplier supplier = new CountingSupplier(entity);
+        TestEntity entity2 = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_NAME, supplier));
+        TestEntity child = entity2.createAndManageChild(EntitySpec.create(TestEntity.class));
+        ((EntityLocal)entity).setAttribute(TestEntity.NAME, "aval");
+        
+        assertEquals(entity2.getConfig(TestEntity.CONF_NAME), "aval");
+        assertEquals(entity2.getConfig(TestEntity.CONF_NAME), "aval");
+        assertEquals(supplier.calls.get(), 1);
+        
+        ((EntityLocal)entity).setAttribute(TestEntity.NAME, "bval");
+        assertEquals(entity2.getConfig(TestEntity.CONF_NAME), "bval");
+        assertEquals(entity2.getConfig(TestEntity.CONF_NAME), "bval");
+        assertEquals(supplier.calls.get(), 2);
+        
+        // inherited suppliers are resolved, and their results held, in the context of the child
+        assertEquals(child.getConfig(TestEntity.CONF_NAME), "bval");
+        assertEquals(child.getConfig(TestEntity.CONF_NAME), "bval");
+        assertEquals(supplier.calls.get(), 3);
+        
+        // a new value replaces the result held
+        ((EntityLocal)entity2).setConfig((ConfigKey)TestEntity.CONF_NAME, new CountingSupplier(entity));
+        ((EntityLocal)entity).setAttribute(TestEntity.NAME, "cval");
+        assertEquals(entity2.getConfig(TestEntity.CONF_NAME), "cval");
+        assertEquals(supplier.calls.get(), 3);
+        
+        Map<String, Object> metrics = ((EntityInternal)entity2).getConfigMap().getResolutionMetrics();
+        assertEquals(metrics.get("hits"), 2L);
+        assertEquals(metrics.get("misses"), 3L);
+        assertEquals(metrics.get("hitRate"), 0.4);
+    }
+    
+    @Test
+    public void testOtherDeferredSuppliersResolvedEveryTime() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_NAME, new DeferredSupplier<String>() {
+                        @Override public String get() {
+                            return "aval"+calls.incrementAndGet();
+                        }}));
+        
+        assertEquals(entity.getConfig(TestEntity.CONF_NAME), "aval1");
+        assertEquals(entity.getConfig(TestEntity.CONF_NAME), "aval2");
+        assertEquals(entity.getConfigMap().getResolutionMetrics().get("misses"), 0L);
+    }
+    
+    private static class CountingSupplier implements MemoizableDeferredSupplier<String> {
+        final Entity source;
+        final AtomicInteger calls = new AtomicInteger();
+        
+        CountingSupplier(Entity source) {
+            this.source = source;
+        }
+        @Override
+        public String get() {
+            calls.incrementAndGet();
+            return DependentConfiguration.builder().attributeWhenReady(source, TestEntity.NAME).runNow();
+        }
+    }
 }
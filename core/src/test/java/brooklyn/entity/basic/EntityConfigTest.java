@@ -19,11 +19,14 @@
 package brooklyn.entity.basic;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.config.ConfigInheritance;
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.management.ManagementContext;
@@ -150,6 +153,58 @@ public class EntityConfigTest {
         assertEquals(child.getLocalConfigBag().getAllConfig(), ImmutableMap.of("mychildentity.myconfigwithflagname", "overrideMyval"));
     }
     
+    @Test
+    public void testDescendantsSeeConfigChangedAtAncestorAfterTheyRead() throws Exception {
+        EntityInternal entity = managementContext.getEntityManager().createEntity(EntitySpec.create(MyEntity.class)
+                .configure(MyEntity.MY_CONFIG, "myval1"));
+        EntityInternal child = managementContext.getEntityManager().createEntity(EntitySpec.create(MyChildEntity.class)
+                .parent(entity));
+        EntityInternal grandchild = managementContext.getEntityManager().createEntity(EntitySpec.create(MyChildEntity.class)
+                .parent(child));
+
+        assertEquals(grandchild.getConfig(MyEntity.MY_CONFIG), "myval1");
+        assertEquals(grandchild.getConfig(MyChildEntity.MY_CHILD_CONFIG), null);
+
+        entity.setConfig(MyEntity.MY_CONFIG, "myval2");
+        entity.setConfig(MyChildEntity.MY_CHILD_CONFIG, "mychildval");
+        assertEquals(grandchild.getConfig(MyEntity.MY_CONFIG), "myval2");
+        assertEquals(grandchild.getConfig(MyChildEntity.MY_CHILD_CONFIG), "mychildval");
+
+        // the nearest ancestor wins
+        child.setConfig(MyEntity.MY_CONFIG, "myval3");
+        assertEquals(grandchild.getConfig(MyEntity.MY_CONFIG), "myval3");
+        assertEquals(grandchild.getConfigRaw(MyEntity.MY_CONFIG, true).get(), "myval3");
+        assertEquals(grandchild.getAllConfig(), ImmutableMap.of(MyEntity.MY_CONFIG, "myval3", MyChildEntity.MY_CHILD_CONFIG, "mychildval"));
+    }
+
+    @Test
+    public void testUninheritedConfigNotSeenByDescendants() throws Exception {
+        ConfigKey<String> uninherited = ConfigKeys.builder(String.class, "myentity.uninherited")
+                .inheritance(ConfigInheritance.NONE)
+                .build();
+        EntityInternal entity = managementContext.getEntityManager().createEntity(EntitySpec.create(MyEntity.class)
+                .configure(uninherited, "myval"));
+        EntityInternal child = managementContext.getEntityManager().createEntity(EntitySpec.create(MyChildEntity.class)
+                .parent(entity));
+
+        assertEquals(entity.getConfig(uninherited), "myval");
+        assertEquals(child.getConfig(uninherited), null);
+        assertEquals(child.getAllConfig(), ImmutableMap.of());
+        assertTrue(child.getConfigMap().isEmpty());
+    }
+
+    @Test
+    public void testConfigMapIsEmptyOnlyWhenNothingOwnedOrInherited() throws Exception {
+        EntityInternal entity = managementContext.getEntityManager().createEntity(EntitySpec.create(MyEntity.class));
+        EntityInternal child = managementContext.getEntityManager().createEntity(EntitySpec.create(MyChildEntity.class)
+                .parent(entity));
+        assertTrue(child.getConfigMap().isEmpty());
+
+        entity.setConfig(MyEntity.MY_CONFIG, "myval");
+        assertFalse(child.getConfigMap().isEmpty());
+        assertEquals(child.getConfigMap().size(), 1);
+    }
+
     public static class MyEntity extends AbstractEntity {
         public static final ConfigKey<String> MY_CONFIG = ConfigKeys.newStringConfigKey("myentity.myconfig");
 
@@ -64,6 +64,7 @@ import brooklyn.test.EntityTestUtils;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.test.entity.TestEntityImpl;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.CompoundRuntimeException;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.time.Time;
 
@@ -875,6 +876,103 @@ public class DynamicClusterTest extends BrooklynAppUnitTestSupport {
         assertEquals(cluster.getMembers().size(), 1);
     }
 
+    @Test
+    public void testLimitsConcurrentMemberStarts() throws Exception {
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure("initialSize", 0)
+                .configure(DynamicCluster.PROVISIONING_MAX_CONCURRENT, 2)
+                .configure(DynamicCluster.MEMBER_SPEC, EntitySpec.create(FailingEntity.class)
+                        .configure(FailingEntity.LISTENER, new FailingEntity.EventListener() {
+                            @Override public void onEvent(Entity entity, String action, Object[] args) {
+                                if (!action.equals("start")) return;
+                                int now = concurrent.incrementAndGet();
+                                synchronized (maxConcurrent) {
+                                    maxConcurrent.set(Math.max(maxConcurrent.get(), now));
+                                }
+                                Time.sleep(50);
+                                concurrent.decrementAndGet();
+                            }})));
+
+        cluster.start(ImmutableList.of(loc));
+        cluster.resize(6);
+        assertEquals(cluster.getCurrentSize(), (Integer)6);
+        assertTrue(maxConcurrent.get() <= 2, "maxConcurrent="+maxConcurrent.get());
+    }
+
+    @Test
+    public void testContinuesWithNextBatchAfterPartialBatchFailure() throws Exception {
+        final int failNum = 2;
+        final AtomicInteger counter = new AtomicInteger(0);
+        DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure("quarantineFailedEntities", false)
+                .configure("initialSize", 0)
+                .configure(DynamicCluster.PROVISIONING_BATCH_SIZE, 2)
+                .configure("factory", new EntityFactory() {
+                    @Override public Entity newEntity(Map flags, Entity parent) {
+                        int num = counter.incrementAndGet();
+                        return app.getManagementContext().getEntityManager().createEntity(EntitySpec.create(FailingEntity.class)
+                                .configure(flags)
+                                .configure(FailingEntity.FAIL_ON_START, (num==failNum))
+                                .parent(parent));
+                    }}));
+
+        cluster.start(ImmutableList.of(loc));
+        resizeExpectingError(cluster, 5);
+        assertEquals(counter.get(), 5);
+        assertEquals(cluster.getCurrentSize(), (Integer)4);
+    }
+
+    @Test
+    public void testAbandonsRemainingBatchesWhenWholeBatchFails() throws Exception {
+        DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure("quarantineFailedEntities", false)
+                .configure("initialSize", 0)
+                .configure(DynamicCluster.PROVISIONING_BATCH_SIZE, 2)
+                .configure(DynamicCluster.MEMBER_SPEC, EntitySpec.create(FailingEntity.class)
+                        .configure(FailingEntity.FAIL_ON_START, true)));
+
+        cluster.start(ImmutableList.of(loc));
+        Exception e = resizeExpectingError(cluster, 6);
+        assertEquals(cluster.getCurrentSize(), (Integer)0);
+        assertEquals(cluster.getChildren().size(), 0, "children="+cluster.getChildren());
+
+        // only the first batch was attempted
+        List<Throwable> causes = Exceptions.getFirstThrowableOfType(e, CompoundRuntimeException.class).getAllCauses();
+        assertEquals(causes.size(), 3, "causes="+causes);
+        assertTrue(causes.get(2).getMessage().contains("Abandoned adding 4 members"), "causes="+causes);
+    }
+
+    @Test
+    public void testRateLimitsMemberStarts() throws Exception {
+        DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure("initialSize", 0)
+                .configure(DynamicCluster.PROVISIONING_RATE, 20d)
+                .configure(DynamicCluster.PROVISIONING_BURST, 1)
+                .configure(DynamicCluster.MEMBER_SPEC, EntitySpec.create(TestEntity.class)));
+
+        cluster.start(ImmutableList.of(loc));
+        long start = System.currentTimeMillis();
+        cluster.resize(5);
+        long duration = System.currentTimeMillis() - start;
+
+        // the first start is immediate, then one every 50ms
+        assertEquals(cluster.getCurrentSize(), (Integer)5);
+        assertTrue(duration >= 190, "duration="+duration);
+    }
+
+    @Test
+    public void testPublishesProvisioningTimes() throws Exception {
+        DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure("initialSize", 2)
+                .configure(DynamicCluster.MEMBER_SPEC, EntitySpec.create(TestEntity.class)));
+
+        cluster.start(ImmutableList.of(loc));
+        assertNotNull(cluster.getAttribute(DynamicCluster.PROVISIONING_CREATE_TIME));
+        assertNotNull(cluster.getAttribute(DynamicCluster.PROVISIONING_START_TIME));
+    }
+
     private Throwable unwrapException(Throwable e) {
         if (e instanceof ExecutionException) {
             return unwrapException(e.getCause());
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.Entity;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.entity.rebind.persister.MementoFormat;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.os.Os;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+public class RebindBinaryMementoFormatTest extends RebindTestFixtureWithApp {
+
+    private MementoFormat newFormat;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        newFormat = MementoFormat.XML;
+        super.setUp();
+    }
+
+    @Override
+    protected LocalManagementContext createOrigManagementContext() {
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(newProperties(MementoFormat.BINARY))
+                .persistPeriodMillis(getPersistPeriodMillis())
+                .forLive(useLiveManagementContext())
+                .emptyCatalog(useEmptyCatalog())
+                .buildStarted();
+    }
+
+    @Override
+    protected LocalManagementContext createNewManagementContext() {
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(newProperties(newFormat))
+                .forLive(useLiveManagementContext())
+                .emptyCatalog(useEmptyCatalog())
+                .buildUnstarted();
+    }
+
+    protected BrooklynProperties newProperties(MementoFormat format) {
+        BrooklynProperties properties = BrooklynProperties.Factory.newDefault();
+        properties.put(BrooklynMementoPersisterToObjectStore.PERSISTER_FORMAT, format);
+        return properties;
+    }
+
+    @Test
+    public void testRebindsFromBinary() throws Exception {
+        TestEntity origEntity = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        origEntity.setAttribute(TestEntity.NAME, "myname");
+        RebindTestUtils.waitForPersisted(origApp);
+        assertEquals(storedFormat(origEntity), MementoFormat.BINARY);
+
+        newApp = rebind();
+
+        Entity newEntity = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newEntity.getId(), origEntity.getId());
+        assertEquals(newEntity.getAttribute(TestEntity.NAME), "myname");
+    }
+
+    @Test
+    public void testSwitchesFormatOnRebind() throws Exception {
+        TestEntity origEntity = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        RebindTestUtils.waitForPersisted(origApp);
+        assertEquals(storedFormat(origEntity), MementoFormat.BINARY);
+
+        // binary store, now writing xml
+        newApp = rebind();
+        TestEntity newEntity = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        newEntity.setAttribute(TestEntity.NAME, "xml");
+        RebindTestUtils.waitForPersisted(newApp);
+        assertEquals(storedFormat(newEntity), MementoFormat.XML);
+
+        // and back again
+        switchOriginalToNewManagementContext();
+        newFormat = MementoFormat.BINARY;
+        newApp = rebind();
+        newEntity = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newEntity.getAttribute(TestEntity.NAME), "xml");
+        newEntity.setAttribute(TestEntity.NAME, "binary");
+        RebindTestUtils.waitForPersisted(newApp);
+        assertEquals(storedFormat(newEntity), MementoFormat.BINARY);
+    }
+
+    private MementoFormat storedFormat(Entity entity) throws Exception {
+        File file = new File(Os.mergePaths(mementoDir.getAbsolutePath(), "entities", entity.getId()));
+        return MementoFormat.of(Files.toString(file, Charsets.UTF_8));
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.Entity;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.entity.rebind.persister.MementoChangeLog;
+import brooklyn.entity.rebind.persister.MementoFormat;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.os.Os;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+public class RebindEntityChangeLogTest extends RebindTestFixtureWithApp {
+
+    private static final AttributeSensor<String> DYNAMIC_SENSOR = Sensors.newStringSensor("test.dynamic");
+
+    private int maxEntityChanges;
+    private MementoFormat format;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        maxEntityChanges = 100;
+        format = MementoFormat.XML;
+        super.setUp();
+    }
+
+    @Override
+    protected LocalManagementContext createOrigManagementContext() {
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(newProperties())
+                .persistPeriodMillis(getPersistPeriodMillis())
+                .forLive(useLiveManagementContext())
+                .emptyCatalog(useEmptyCatalog())
+                .buildStarted();
+    }
+
+    @Override
+    protected LocalManagementContext createNewManagementContext() {
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(newProperties())
+                .forLive(useLiveManagementContext())
+                .emptyCatalog(useEmptyCatalog())
+                .buildUnstarted();
+    }
+
+    protected BrooklynProperties newProperties() {
+        BrooklynProperties properties = BrooklynProperties.Factory.newDefault();
+        properties.put(BrooklynMementoPersisterToObjectStore.PERSISTER_MAX_ENTITY_CHANGES, maxEntityChanges);
+        properties.put(BrooklynMementoPersisterToObjectStore.PERSISTER_FORMAT, format);
+        return properties;
+    }
+
+    @Test
+    public void testAppendsAttributeChanges() throws Exception {
+        TestEntity origEntity = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        origEntity.setAttribute(TestEntity.NAME, "first");
+        RebindTestUtils.waitForPersisted(origApp);
+        String base = MementoChangeLog.getBase(stored(origEntity));
+
+        origEntity.setAttribute(TestEntity.NAME, "second");
+        RebindTestUtils.waitForPersisted(origApp);
+        origEntity.setAttribute(TestEntity.SEQUENCE, 2);
+        origEntity.setAttribute(DYNAMIC_SENSOR, "dynamic");
+        RebindTestUtils.waitForPersisted(origApp);
+
+        String contents = stored(origEntity);
+        assertEquals(MementoChangeLog.getBase(contents), base);
+        // other attributes (e.g. from enrichers) may also have changed in the meantime
+        assertTrue(MementoChangeLog.getChanges(contents).size() >= 2, contents);
+
+        newApp = rebind();
+        Entity newEntity = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newEntity.getAttribute(TestEntity.NAME), "second");
+        assertEquals(newEntity.getAttribute(TestEntity.SEQUENCE), (Integer)2);
+        assertEquals(newEntity.getAttribute(DYNAMIC_SENSOR), "dynamic");
+    }
+
+    @Test
+    public void testAppendsConfigChanges() throws Exception {
+        TestEntity origEntity = origApp.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_NAME, "first"));
+        RebindTestUtils.waitForPersisted(origApp);
+
+        origEntity.setConfig(TestEntity.CONF_NAME, "second");
+        RebindTestUtils.waitForPersisted(origApp);
+        assertTrue(MementoChangeLog.hasChanges(stored(origEntity)));
+
+        newApp = rebind();
+        Entity newEntity = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newEntity.getConfig(TestEntity.CONF_NAME), "second");
+    }
+
+    @Test
+    public void testIgnoresPartlyWrittenChange() throws Exception {
+        TestEntity origEntity = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        RebindTestUtils.waitForPersisted(origApp);
+        origEntity.setAttribute(TestEntity.NAME, "first");
+        RebindTestUtils.waitForPersisted(origApp);
+
+        // as if the process died while appending a change record
+        String contents = stored(origEntity);
+        String record = MementoChangeLog.toRecord(Iterables.getLast(MementoChangeLog.getChanges(contents)).replace("first", "second"));
+        File file = new File(Os.mergePaths(mementoDir.getAbsolutePath(), "entities", origEntity.getId()));
+        Files.append(record.substring(0, record.length()-10), file, Charsets.UTF_8);
+        assertEquals(MementoChangeLog.getChanges(stored(origEntity)), MementoChangeLog.getChanges(contents));
+
+        newApp = rebind();
+        Entity newEntity = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newEntity.getAttribute(TestEntity.NAME), "first");
+    }
+
+    @Test
+    public void testCompactsAfterMaxChanges() throws Exception {
+        origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        RebindTestUtils.waitForPersisted(origApp);
+        maxEntityChanges = 2;
+        newApp = rebind();
+        TestEntity entity = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        RebindTestUtils.waitForPersisted(newApp);
+
+        int maxChangesSeen = 0;
+        boolean compacted = false;
+        for (int i = 1; i <= 3; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+            RebindTestUtils.waitForPersisted(newApp);
+            int changes = MementoChangeLog.getChanges(stored(entity)).size();
+            assertTrue(changes <= 2, "changes="+changes);
+            if (changes < maxChangesSeen) compacted = true;
+            maxChangesSeen = Math.max(maxChangesSeen, changes);
+        }
+        assertEquals(maxChangesSeen, 2);
+        assertTrue(compacted);
+
+        switchOriginalToNewManagementContext();
+        newApp = rebind();
+        Entity newEntity = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newEntity.getAttribute(TestEntity.SEQUENCE), (Integer)3);
+    }
+
+    @Test
+    public void testOtherChangesRewriteWholeMemento() throws Exception {
+        TestEntity origEntity = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        RebindTestUtils.waitForPersisted(origApp);
+        origEntity.setAttribute(TestEntity.NAME, "myname");
+        RebindTestUtils.waitForPersisted(origApp);
+        assertTrue(MementoChangeLog.hasChanges(stored(origEntity)));
+
+        origEntity.setDisplayName("mydisplayname");
+        RebindTestUtils.waitForPersisted(origApp);
+        assertFalse(MementoChangeLog.hasChanges(stored(origEntity)));
+
+        newApp = rebind();
+        Entity newEntity = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newEntity.getDisplayName(), "mydisplayname");
+        assertEquals(newEntity.getAttribute(TestEntity.NAME), "myname");
+    }
+
+    @Test
+    public void testAppendsChangesInBinaryFormat() throws Exception {
+        origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        RebindTestUtils.waitForPersisted(origApp);
+        format = MementoFormat.BINARY;
+        newApp = rebind();
+        TestEntity entity = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        RebindTestUtils.waitForPersisted(newApp);
+
+        entity.setAttribute(TestEntity.NAME, "myname");
+        RebindTestUtils.waitForPersisted(newApp);
+        String contents = stored(entity);
+        assertEquals(MementoFormat.of(MementoChangeLog.getBase(contents)), MementoFormat.BINARY);
+        assertEquals(MementoFormat.of(MementoChangeLog.getChanges(contents).get(0)), MementoFormat.BINARY);
+
+        switchOriginalToNewManagementContext();
+        newApp = rebind();
+        Entity newEntity = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newEntity.getAttribute(TestEntity.NAME), "myname");
+    }
+
+    private String stored(Entity entity) throws Exception {
+        File file = new File(Os.mergePaths(mementoDir.getAbsolutePath(), "entities", entity.getId()));
+        return Files.toString(file, Charsets.UTF_8);
+    }
+}
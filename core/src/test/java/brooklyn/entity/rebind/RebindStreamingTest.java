@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.Entity;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+public class RebindStreamingTest extends RebindTestFixtureWithApp {
+
+    @Override
+    protected LocalManagementContext createNewManagementContext() {
+        BrooklynProperties properties = BrooklynProperties.Factory.newDefault();
+        properties.put(RebindManagerImpl.REBIND_STREAMING, true);
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(properties)
+                .forLive(useLiveManagementContext())
+                .emptyCatalog(useEmptyCatalog())
+                .buildUnstarted();
+    }
+
+    @Test
+    public void testRebindsHierarchyAndLocations() throws Exception {
+        SimulatedLocation loc = origManagementContext.getLocationManager().createLocation(LocationSpec.create(SimulatedLocation.class));
+        TestEntity origParent = origApp.createAndManageChild(EntitySpec.create(TestEntity.class).displayName("parent"));
+        TestEntity origChild = origParent.addChild(EntitySpec.create(TestEntity.class).displayName("child"));
+        origManagementContext.getEntityManager().manage(origChild);
+        origApp.start(ImmutableList.of(loc));
+        origChild.setAttribute(TestEntity.SEQUENCE, 123);
+
+        newApp = rebind();
+
+        assertTrue(((RebindManagerImpl)newManagementContext.getRebindManager()).isRebindStreaming());
+        Entity newParent = Iterables.getOnlyElement(newApp.getChildren());
+        Entity newChild = Iterables.getOnlyElement(newParent.getChildren());
+        assertEquals(newParent.getId(), origParent.getId());
+        assertEquals(newChild.getId(), origChild.getId());
+        assertEquals(newChild.getAttribute(TestEntity.SEQUENCE), (Integer)123);
+        assertEquals(Iterables.getOnlyElement(newApp.getLocations()).getId(), loc.getId());
+        assertEquals(Iterables.getOnlyElement(newParent.getLocations()).getId(), loc.getId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRebindReportsPhaseDurations() throws Exception {
+        origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+
+        newApp = rebind();
+
+        Map<String, Object> rebindMetrics = (Map<String, Object>) newManagementContext.getRebindManager().getMetrics().get("rebind");
+        Map<String, Long> phases = (Map<String, Long>) rebindMetrics.get("lastPhaseDurations");
+        assertEquals(ImmutableList.copyOf(phases.keySet()), ImmutableList.of("loadManifests", "rebuildCatalog", "instantiateLocationsAndEntities",
+                "loadMementos", "instantiateAdjuncts", "reconstruct", "associateAdjuncts", "manage", "finishingUp"));
+        for (Long duration : phases.values()) {
+            assertTrue(duration >= 0, "phases="+phases);
+        }
+    }
+}
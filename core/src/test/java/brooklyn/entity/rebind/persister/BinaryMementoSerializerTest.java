@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
+
+/** Runs all the {@link XmlMementoSerializerTest} tests against the binary form too */
+public class BinaryMementoSerializerTest extends XmlMementoSerializerTest {
+
+    private final ClassLoader classLoader = BinaryMementoSerializerTest.class.getClassLoader();
+
+    @Override
+    protected MementoSerializer<Object> newSerializer() {
+        return new BinaryMementoSerializer<Object>(classLoader);
+    }
+
+    @Test
+    public void testWritesCompactBinary() throws Exception {
+        Map<String, Object> obj = MutableMap.of();
+        for (int i = 0; i < 100; i++) {
+            obj.put("key"+i, MutableList.of("val"+i, i));
+        }
+        String binary = serializer.toString(obj);
+        String xml = new XmlMementoSerializer<Object>(classLoader).toString(obj);
+
+        assertTrue(BinaryMementoSerializer.isBinary(binary), binary);
+        assertEquals(MementoFormat.of(binary), MementoFormat.BINARY);
+        assertEquals(MementoFormat.of(xml), MementoFormat.XML);
+        assertTrue(binary.length() < xml.length() / 2, "binary="+binary.length()+"; xml="+xml.length());
+        assertEquals(serializer.fromString(binary), obj);
+    }
+
+    @Test
+    public void testEachFormatReadsTheOther() throws Exception {
+        Object obj = MutableMap.of("a", MutableList.of(1, "b"));
+        MementoSerializer<Object> xmlSerializer = new XmlMementoSerializer<Object>(classLoader);
+
+        assertEquals(serializer.fromString(xmlSerializer.toString(obj)), obj);
+        assertEquals(xmlSerializer.fromString(serializer.toString(obj)), obj);
+    }
+
+    @Test
+    public void testConvertsWithoutDeserializing() throws Exception {
+        Object obj = MutableMap.of("a", MutableList.of(1, "b"), "c", 'd');
+        String xml = new XmlMementoSerializer<Object>(classLoader).toString(obj);
+
+        String binary = MementoFormat.BINARY.convert(xml);
+        assertTrue(BinaryMementoSerializer.isBinary(binary), binary);
+        assertEquals(serializer.fromString(binary), obj);
+        assertEquals(MementoFormat.BINARY.convert(binary), binary);
+
+        String xml2 = MementoFormat.XML.convert(binary);
+        assertEquals(xml2.trim(), xml.trim());
+        assertEquals(MementoFormat.XML.convert(xml2), xml2);
+    }
+
+    @Test
+    public void testRejectsNewerVersion() throws Exception {
+        String binary = serializer.toString("abc");
+        String newer = binary.replaceFirst(BinaryMementoSerializer.HEADER_PREFIX+BinaryMementoSerializer.FORMAT_VERSION,
+                BinaryMementoSerializer.HEADER_PREFIX+(BinaryMementoSerializer.FORMAT_VERSION+1));
+        try {
+            serializer.fromString(newer);
+            fail("Should have rejected "+newer);
+        } catch (IllegalStateException e) {
+            assertTrue(e.toString().contains("Unsupported binary memento version"), e.toString());
+        }
+    }
+}
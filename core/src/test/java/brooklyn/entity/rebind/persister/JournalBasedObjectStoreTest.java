@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.Entities;
+import brooklyn.management.ha.HighAvailabilityMode;
+import brooklyn.test.Asserts;
+import brooklyn.test.entity.LocalManagementContextForTests;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.os.Os;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+public class JournalBasedObjectStoreTest {
+
+    private LocalManagementContextForTests mgmt;
+    private File basedir;
+    private List<JournalBasedObjectStore> stores;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        mgmt = new LocalManagementContextForTests();
+        basedir = Os.newTempDir(getClass());
+        stores = MutableList.of();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (stores != null) {
+            for (JournalBasedObjectStore store : stores) store.close();
+        }
+        if (basedir != null) Os.deleteRecursively(basedir);
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+
+    private JournalBasedObjectStore newStore() {
+        return newStore(JournalBasedObjectStore.DEFAULT_COMPACTION_MIN_BYTES, JournalBasedObjectStore.DEFAULT_COMPACTION_RATIO);
+    }
+
+    private JournalBasedObjectStore newStore(long compactionMinBytes, double compactionRatio) {
+        return prepare(new JournalBasedObjectStore(basedir, compactionMinBytes, compactionRatio));
+    }
+
+    private JournalBasedObjectStore prepare(JournalBasedObjectStore store) {
+        store.injectManagementContext(mgmt);
+        store.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        stores.add(store);
+        return store;
+    }
+
+    private JournalBasedObjectStore asMaster(JournalBasedObjectStore store) {
+        store.prepareForMasterUse();
+        return store;
+    }
+
+    @Test
+    public void testWritesToJournal() throws Exception {
+        JournalBasedObjectStore store = newStore();
+        store.createSubPath("entities");
+        store.prepareForMasterUse();
+
+        store.newAccessor("entities/a").put("abc");
+        store.newAccessor("entities/b").put("xyz");
+        store.newAccessor("entities/b").append("123");
+        store.newAccessor("entities/c").put("toDelete");
+        store.newAccessor("entities/c").delete();
+
+        assertEquals(store.newAccessor("entities/a").get(), "abc");
+        assertEquals(store.newAccessor("entities/b").get(), "xyz123");
+        assertNull(store.newAccessor("entities/c").get());
+        assertFalse(store.newAccessor("entities/c").exists());
+        assertEquals(ImmutableSet.copyOf(store.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/b"));
+        assertEquals(new File(basedir, "entities").list().length, 0);
+    }
+
+    @Test
+    public void testNonJournaledPathsWrittenAsFiles() throws Exception {
+        JournalBasedObjectStore store = newStore();
+        store.createSubPath("plane");
+        store.newAccessor("plane/node").put("abc");
+
+        assertEquals(Files.toString(new File(basedir, "plane/node"), Charsets.UTF_8), "abc");
+        assertEquals(store.listContentsWithSubPath("plane"), ImmutableSet.of("plane/node").asList());
+    }
+
+    @Test
+    public void testReplaysJournalWhenReopened() throws Exception {
+        JournalBasedObjectStore store = asMaster(newStore());
+        store.newAccessor("entities/a").put("abc");
+        store.newAccessor("entities/a").append("def");
+        store.newAccessor("locations/b").put("xyz");
+        store.close();
+
+        JournalBasedObjectStore store2 = newStore();
+        assertEquals(store2.newAccessor("entities/a").get(), "abcdef");
+        assertEquals(store2.newAccessor("locations/b").get(), "xyz");
+
+        store2.prepareForMasterUse();
+        store2.newAccessor("entities/a").put("ghi");
+        assertEquals(store2.getSegmentFiles().size(), 2);
+        store2.close();
+
+        assertEquals(newStore().newAccessor("entities/a").get(), "ghi");
+    }
+
+    @Test
+    public void testIgnoresTornRecord() throws Exception {
+        JournalBasedObjectStore store = asMaster(newStore());
+        store.newAccessor("entities/a").put("abc");
+        store.newAccessor("entities/b").put("xyz");
+        File segment = Iterables.getOnlyElement(store.getSegmentFiles());
+        store.close();
+
+        // as though writing the last record was interrupted
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.setLength(file.length()-3);
+        } finally {
+            file.close();
+        }
+
+        JournalBasedObjectStore store2 = newStore();
+        assertEquals(store2.newAccessor("entities/a").get(), "abc");
+        assertFalse(store2.newAccessor("entities/b").exists());
+
+        store2.prepareForMasterUse();
+        store2.newAccessor("entities/b").put("xyz2");
+        store2.close();
+        assertEquals(newStore().newAccessor("entities/b").get(), "xyz2");
+    }
+
+    @Test
+    public void testIgnoresRecordWithBadChecksum() throws Exception {
+        JournalBasedObjectStore store = asMaster(newStore());
+        store.newAccessor("entities/a").put("abc");
+        store.newAccessor("entities/a").put("xyz");
+        File segment = Iterables.getOnlyElement(store.getSegmentFiles());
+        store.close();
+
+        String contents = Files.toString(segment, Charsets.ISO_8859_1);
+        int index = contents.lastIndexOf("xyz");
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.seek(index);
+            file.write('X');
+        } finally {
+            file.close();
+        }
+
+        assertEquals(newStore().newAccessor("entities/a").get(), "abc");
+    }
+
+    @Test
+    public void testDiscardsFailedWrite() throws Exception {
+        JournalBasedObjectStore store = asMaster(prepare(new FailingJournalBasedObjectStore(basedir)));
+        store.newAccessor("entities/a").put("abc");
+
+        ((FailingJournalBasedObjectStore)store).failNextWrite = true;
+        try {
+            store.newAccessor("entities/b").put("xyz");
+            fail("write should have failed");
+        } catch (Exception e) {
+            // expected
+        }
+        assertFalse(store.newAccessor("entities/b").exists());
+
+        store.newAccessor("entities/c").put("def");
+        assertEquals(store.newAccessor("entities/c").get(), "def");
+        store.close();
+
+        JournalBasedObjectStore store2 = newStore();
+        assertEquals(store2.newAccessor("entities/a").get(), "abc");
+        assertFalse(store2.newAccessor("entities/b").exists());
+        assertEquals(store2.newAccessor("entities/c").get(), "def");
+    }
+
+    @Test
+    public void testCompactionKeepsLastModified() throws Exception {
+        JournalBasedObjectStore store = asMaster(newStore(Long.MAX_VALUE, 2));
+        store.newAccessor("entities/a").put("abc");
+        long lastModified = store.newAccessor("entities/a").getLastModifiedDate().getTime();
+        Thread.sleep(10);
+        store.newAccessor("entities/b").put("xyz");
+        store.newAccessor("entities/b").put("xyz2");
+        store.compactNow();
+        assertEquals(store.newAccessor("entities/a").getLastModifiedDate().getTime(), lastModified);
+        store.close();
+
+        assertEquals(newStore().newAccessor("entities/a").getLastModifiedDate().getTime(), lastModified);
+    }
+
+    @Test
+    public void testCompactsJournal() throws Exception {
+        final JournalBasedObjectStore store = asMaster(newStore(0, 2));
+        store.newAccessor("entities/a").put("abc");
+        for (int i = 0; i < 100; i++) {
+            store.newAccessor("entities/b").put("xyz"+i);
+        }
+        store.newAccessor("entities/b").append("-appended");
+        store.newAccessor("entities/c").put("toDelete");
+        store.newAccessor("entities/c").delete();
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                long[] sizes = store.getJournalAndLiveBytes();
+                assertTrue(sizes[0] <= 2*sizes[1], "journal="+sizes[0]+"; live="+sizes[1]);
+            }});
+        assertEquals(store.newAccessor("entities/a").get(), "abc");
+        assertEquals(store.newAccessor("entities/b").get(), "xyz99-appended");
+        assertFalse(store.newAccessor("entities/c").exists());
+        store.close();
+
+        JournalBasedObjectStore store2 = newStore();
+        assertEquals(store2.newAccessor("entities/a").get(), "abc");
+        assertEquals(store2.newAccessor("entities/b").get(), "xyz99-appended");
+        assertEquals(ImmutableSet.copyOf(store2.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/b"));
+    }
+
+    @Test
+    public void testStandbyTailsJournal() throws Exception {
+        JournalBasedObjectStore master = newStore(Long.MAX_VALUE, 2);
+        JournalBasedObjectStore standby = newStore();
+        master.prepareForMasterUse();
+
+        master.newAccessor("entities/a").put("abc");
+        assertEquals(standby.listContentsWithSubPath("entities"), ImmutableSet.of("entities/a").asList());
+        assertEquals(standby.newAccessor("entities/a").get(), "abc");
+
+        master.newAccessor("entities/a").append("def");
+        master.newAccessor("entities/b").put("xyz");
+        assertEquals(ImmutableSet.copyOf(standby.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/b"));
+        assertEquals(standby.newAccessor("entities/a").get(), "abcdef");
+
+        master.newAccessor("entities/b").delete();
+        master.newAccessor("entities/a").put("ghi");
+        master.compactNow();
+        assertEquals(standby.listContentsWithSubPath("entities"), ImmutableSet.of("entities/a").asList());
+        assertEquals(standby.newAccessor("entities/a").get(), "ghi");
+    }
+
+    @Test
+    public void testStandbyCannotWriteJournal() throws Exception {
+        JournalBasedObjectStore master = newStore();
+        JournalBasedObjectStore standby = newStore();
+        master.prepareForMasterUse();
+        master.newAccessor("entities/a").put("abc");
+
+        try {
+            standby.newAccessor("entities/a").put("fromStandby");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(new File(basedir, "journal").list().length, 1);
+        master.newAccessor("entities/a").append("def");
+        assertEquals(standby.newAccessor("entities/a").get(), "abcdef");
+    }
+
+    @Test
+    public void testMovesFilesIntoJournal() throws Exception {
+        FileBasedObjectStore fileStore = new FileBasedObjectStore(basedir);
+        fileStore.injectManagementContext(mgmt);
+        fileStore.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        fileStore.createSubPath("entities");
+        fileStore.newAccessor("entities/a").put("abc");
+        fileStore.close();
+
+        JournalBasedObjectStore store = newStore();
+        assertEquals(store.listContentsWithSubPath("entities"), ImmutableSet.of("entities/a").asList());
+        assertEquals(store.newAccessor("entities/a").get(), "abc");
+
+        store.prepareForMasterUse();
+        assertFalse(new File(basedir, "entities/a").exists());
+        assertEquals(Files.toString(new File(basedir, JournalBasedObjectStore.PRE_JOURNAL_BACKUP_SUB_PATH+"/entities/a"), Charsets.UTF_8), "abc");
+        assertEquals(store.newAccessor("entities/a").get(), "abc");
+        assertEquals(store.listContentsWithSubPath("entities"), ImmutableSet.of("entities/a").asList());
+    }
+
+    /** writes only part of the records, then fails, when {@link #failNextWrite} is set */
+    private static class FailingJournalBasedObjectStore extends JournalBasedObjectStore {
+        volatile boolean failNextWrite;
+
+        FailingJournalBasedObjectStore(File basedir) {
+            super(basedir);
+        }
+
+        @Override
+        protected void writeToActiveSegment(byte[] bytes) throws IOException {
+            if (failNextWrite) {
+                failNextWrite = false;
+                super.writeToActiveSegment(Arrays.copyOf(bytes, bytes.length/2));
+                throw new IOException("simulated failure writing journal");
+            }
+            super.writeToActiveSegment(bytes);
+        }
+    }
+}
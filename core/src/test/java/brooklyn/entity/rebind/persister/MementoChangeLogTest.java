@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class MementoChangeLogTest {
+
+    @Test
+    public void testSplitsBaseAndRecords() {
+        String contents = "base" + MementoChangeLog.toRecord("one") + MementoChangeLog.toRecord("two\nlines");
+        assertEquals(MementoChangeLog.getBase(contents), "base");
+        assertEquals(MementoChangeLog.getChanges(contents), ImmutableList.of("one", "two\nlines"));
+        assertEquals(MementoChangeLog.join(MementoChangeLog.split(contents)), contents);
+    }
+
+    @Test
+    public void testDropsTruncatedRecord() {
+        String complete = "base" + MementoChangeLog.toRecord("one");
+        String partial = MementoChangeLog.toRecord("two");
+        for (int i = 1; i < partial.length(); i++) {
+            assertEquals(MementoChangeLog.getChanges(complete + partial.substring(0, i)), ImmutableList.of("one"), "i="+i);
+        }
+    }
+
+    @Test
+    public void testDropsCorruptRecordAndAnyAfterIt() {
+        String contents = "base" + MementoChangeLog.toRecord("one") + MementoChangeLog.toRecord("two").replace("two", "tWo")
+                + MementoChangeLog.toRecord("three");
+        assertEquals(MementoChangeLog.getChanges(contents), ImmutableList.of("one"));
+    }
+
+    @Test
+    public void testIgnoresRecordWithoutLengthAndChecksum() {
+        String separator = "\n" + MementoChangeLog.RECORD_SEPARATOR + "\n";
+        String contents = "base" + MementoChangeLog.toRecord("one") + separator + "two";
+        assertEquals(MementoChangeLog.getBase(contents), "base");
+        assertEquals(MementoChangeLog.getChanges(contents), ImmutableList.of("one"));
+    }
+}
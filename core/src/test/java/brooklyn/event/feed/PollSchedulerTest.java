@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.test.Asserts;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class PollSchedulerTest {
+
+    private PollScheduler scheduler;
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (scheduler != null) scheduler.close();
+    }
+
+    private static class RecordingSubscriber implements PollScheduler.Subscriber {
+        final Object key;
+        final List<Long> pollTimes = new CopyOnWriteArrayList<Long>();
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicBoolean failing = new AtomicBoolean();
+        final AtomicBoolean obsolete = new AtomicBoolean();
+        final AtomicBoolean throwing = new AtomicBoolean();
+
+        RecordingSubscriber(Object key) {
+            this.key = key;
+        }
+        @Override public Object getDeduplicationKey() {
+            return key;
+        }
+        @Override public boolean isEnabled() {
+            return true;
+        }
+        @Override public boolean isObsolete() {
+            return obsolete.get();
+        }
+        @Override public ListenableFuture<Boolean> poll(List<PollScheduler.Subscriber> recipients, long dueTime) {
+            pollTimes.add(System.currentTimeMillis());
+            if (throwing.get()) throw new AssertionError("simulated error in poll");
+            for (PollScheduler.Subscriber recipient : recipients) {
+                ((RecordingSubscriber)recipient).received.incrementAndGet();
+            }
+            return Futures.immediateFuture(!failing.get());
+        }
+    }
+
+    @Test
+    public void testPollsPeriodically() throws Exception {
+        scheduler = new PollScheduler(Duration.millis(10), 0, false, Duration.ZERO, true);
+        final RecordingSubscriber subscriber = new RecordingSubscriber(null);
+        PollScheduler.Subscription subscription = scheduler.subscribe(subscriber, Duration.millis(50));
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(subscriber.pollTimes.size() >= 5, "polls="+subscriber.pollTimes.size());
+            }});
+        subscription.unsubscribe();
+        Time.sleep(Duration.millis(100));
+        int count = subscriber.pollTimes.size();
+        Time.sleep(Duration.millis(200));
+        assertEquals(subscriber.pollTimes.size(), count);
+    }
+
+    @Test
+    public void testSharesPollsOfEqualJobs() throws Exception {
+        scheduler = new PollScheduler(Duration.millis(10), 0, false, Duration.ZERO, true);
+        final RecordingSubscriber subscriber1 = new RecordingSubscriber("same");
+        final RecordingSubscriber subscriber2 = new RecordingSubscriber("same");
+        final RecordingSubscriber subscriber3 = new RecordingSubscriber("different");
+        scheduler.subscribe(subscriber1, Duration.millis(50));
+        scheduler.subscribe(subscriber2, Duration.millis(50));
+        scheduler.subscribe(subscriber3, Duration.millis(50));
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(subscriber2.received.get() >= 3, "received="+subscriber2.received.get());
+                assertTrue(subscriber3.received.get() >= 3, "received="+subscriber3.received.get());
+            }});
+        // only one of the equal subscribers polls
+        assertTrue(subscriber1.pollTimes.isEmpty() || subscriber2.pollTimes.isEmpty());
+        assertEquals(scheduler.getMetrics().get("registrations"), 2);
+        assertEquals(scheduler.getMetrics().get("subscribers"), 3);
+    }
+
+    @Test
+    public void testDoesNotShareWhenDeduplicationDisabled() throws Exception {
+        scheduler = new PollScheduler(Duration.millis(10), 0, false, Duration.ZERO, false);
+        final RecordingSubscriber subscriber1 = new RecordingSubscriber("same");
+        final RecordingSubscriber subscriber2 = new RecordingSubscriber("same");
+        scheduler.subscribe(subscriber1, Duration.millis(50));
+        scheduler.subscribe(subscriber2, Duration.millis(50));
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(subscriber1.pollTimes.size() >= 2);
+                assertTrue(subscriber2.pollTimes.size() >= 2);
+            }});
+    }
+
+    @Test
+    public void testSpreadsFirstPollsOverPeriod() throws Exception {
+        scheduler = new PollScheduler(Duration.millis(10), 0, true, Duration.ZERO, true);
+        final List<RecordingSubscriber> subscribers = MutableList.of();
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            RecordingSubscriber subscriber = new RecordingSubscriber(null);
+            subscribers.add(subscriber);
+            scheduler.subscribe(subscriber, Duration.seconds(1));
+        }
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                for (RecordingSubscriber subscriber : subscribers) {
+                    assertTrue(subscriber.pollTimes.size() >= 1);
+                }
+            }});
+        long earliest = Long.MAX_VALUE, latest = 0;
+        for (RecordingSubscriber subscriber : subscribers) {
+            long first = subscriber.pollTimes.get(0) - startTime;
+            earliest = Math.min(earliest, first);
+            latest = Math.max(latest, first);
+        }
+        // 20 random delays within the second; chance of all within a 250ms window is negligible
+        assertTrue(latest - earliest > 250, "earliest="+earliest+"; latest="+latest);
+    }
+
+    @Test
+    public void testBacksOffWhenFailing() throws Exception {
+        scheduler = new PollScheduler(Duration.millis(10), 0, false, Duration.seconds(10), true);
+        final RecordingSubscriber subscriber = new RecordingSubscriber(null);
+        subscriber.failing.set(true);
+        scheduler.subscribe(subscriber, Duration.millis(20));
+
+        // delays of 40, 80, 160, 320, 640ms...: so only a few polls in the first second
+        Time.sleep(Duration.seconds(1));
+        int failingPolls = subscriber.pollTimes.size();
+        assertTrue(failingPolls >= 3 && failingPolls <= 7, "polls="+failingPolls);
+        assertEquals(scheduler.getMetrics().get("failures"), (long)failingPolls);
+
+        subscriber.failing.set(false);
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(subscriber.pollTimes.size() >= 20, "polls="+subscriber.pollTimes.size());
+            }});
+    }
+
+    @Test
+    public void testKeepsPollingWhenPollThrowsError() throws Exception {
+        scheduler = new PollScheduler(Duration.millis(10), 0, false, Duration.ZERO, true);
+        final RecordingSubscriber throwing = new RecordingSubscriber(null);
+        throwing.throwing.set(true);
+        final RecordingSubscriber other = new RecordingSubscriber(null);
+        scheduler.subscribe(throwing, Duration.millis(20));
+        scheduler.subscribe(other, Duration.millis(20));
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(throwing.pollTimes.size() >= 5, "polls="+throwing.pollTimes.size());
+                assertTrue(other.pollTimes.size() >= 5, "polls="+other.pollTimes.size());
+            }});
+        assertTrue((Long)scheduler.getMetrics().get("failures") >= 5, "metrics="+scheduler.getMetrics());
+    }
+
+    @Test
+    public void testUnsubscribesObsolete() throws Exception {
+        scheduler = new PollScheduler(Duration.millis(10), 0, false, Duration.ZERO, true);
+        final RecordingSubscriber subscriber = new RecordingSubscriber(null);
+        scheduler.subscribe(subscriber, Duration.millis(20));
+        subscriber.obsolete.set(true);
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(scheduler.getMetrics().get("registrations"), 0);
+            }});
+    }
+}
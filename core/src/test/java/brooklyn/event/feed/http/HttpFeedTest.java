@@ -23,6 +23,7 @@ import static org.testng.Assert.assertTrue;
 
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
@@ -32,6 +33,7 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.config.BrooklynServerConfig;
 import brooklyn.entity.BrooklynAppUnitTestSupport;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityFunctions;
@@ -44,7 +46,9 @@ import brooklyn.event.basic.Sensors;
 import brooklyn.event.feed.FeedConfig;
 import brooklyn.event.feed.PollConfig;
 import brooklyn.location.Location;
+import brooklyn.management.internal.LocalManagementContext;
 import brooklyn.test.Asserts;
+import brooklyn.test.EntityTestUtils;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.util.collections.MutableList;
 import brooklyn.util.collections.MutableMap;
@@ -58,6 +62,7 @@ import com.google.common.base.Functions;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.mockwebserver.MockResponse;
 import com.google.mockwebserver.SocketPolicy;
@@ -120,6 +125,117 @@ public class HttpFeedTest extends BrooklynAppUnitTestSupport {
         assertSensorEventually(SENSOR_STRING, "{\"foo\":\"myfoo\"}", TIMEOUT_MS);
     }
     
+    @Test
+    public void testPollsAsyncAndParsesHttpGetResponse() throws Exception {
+        feed = HttpFeed.builder()
+                .entity(entity)
+                .baseUrl(baseUrl)
+                .async()
+                .poll(HttpPollConfig.forSensor(SENSOR_INT)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.responseCode()))
+                .poll(HttpPollConfig.forSensor(SENSOR_STRING)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.stringContentsFunction()))
+                .build();
+
+        assertSensorEventually(SENSOR_INT, (Integer)200, TIMEOUT_MS);
+        assertSensorEventually(SENSOR_STRING, "{\"foo\":\"myfoo\"}", TIMEOUT_MS);
+        Map<String, Object> metrics = mgmt.getHttpClientPool().getMetrics();
+        assertTrue((Long)metrics.get("asyncRequests") > 0, "metrics="+metrics);
+    }
+
+    @Test
+    public void testFeedsOfEntitiesShareConnectionPool() throws Exception {
+        final EntityLocal entity2 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        feed = HttpFeed.builder()
+                .entity(entity)
+                .baseUrl(baseUrl)
+                .poll(HttpPollConfig.forSensor(SENSOR_INT)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.responseCode()))
+                .build();
+        HttpFeed feed2 = HttpFeed.builder()
+                .entity(entity2)
+                .baseUrl(baseUrl)
+                .poll(HttpPollConfig.forSensor(SENSOR_INT)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.responseCode()))
+                .build();
+        try {
+            assertSensorEventually(SENSOR_INT, (Integer)200, TIMEOUT_MS);
+            EntityTestUtils.assertAttributeEqualsEventually(entity2, SENSOR_INT, 200);
+            Map<String, Object> metrics = mgmt.getHttpClientPool().getMetrics();
+            assertEquals(metrics.get("clients"), 2L, "metrics="+metrics);
+        } finally {
+            feed2.stop();
+        }
+    }
+
+    @Test
+    public void testFeedsPollingSameUrlShareOnePoll() throws Exception {
+        ((LocalManagementContext) mgmt).getBrooklynProperties().put(BrooklynServerConfig.FEED_POLL_DEDUPLICATE, true);
+        final EntityLocal entity2 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        feed = HttpFeed.builder()
+                .entity(entity)
+                .baseUrl(baseUrl)
+                .poll(HttpPollConfig.forSensor(SENSOR_INT)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.responseCode()))
+                .build();
+        HttpFeed feed2 = HttpFeed.builder()
+                .entity(entity2)
+                .baseUrl(baseUrl)
+                .poll(HttpPollConfig.forSensor(SENSOR_STRING)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.stringContentsFunction()))
+                .build();
+        try {
+            assertSensorEventually(SENSOR_INT, (Integer)200, TIMEOUT_MS);
+            EntityTestUtils.assertAttributeEqualsEventually(entity2, SENSOR_STRING, "{\"foo\":\"myfoo\"}");
+            Map<String, Object> metrics = mgmt.getPollScheduler().getMetrics();
+            assertEquals(metrics.get("shared"), 1L, "metrics="+metrics);
+            
+            Map<String, Object> feedMetrics = feed2.getPollMetrics();
+            Map<?, ?> pollMetrics = (Map<?, ?>) Iterables.getOnlyElement(feedMetrics.values());
+            assertTrue((Long)((Map<?, ?>)pollMetrics.get("latency")).get("count") > 0, "metrics="+feedMetrics);
+        } finally {
+            feed2.stop();
+        }
+    }
+
+    @Test
+    public void testFeedsPostingEqualBodiesShareOnePoll() throws Exception {
+        ((LocalManagementContext) mgmt).getBrooklynProperties().put(BrooklynServerConfig.FEED_POLL_DEDUPLICATE, true);
+        final EntityLocal entity2 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        feed = HttpFeed.builder()
+                .entity(entity)
+                .baseUrl(baseUrl)
+                .poll(HttpPollConfig.forSensor(SENSOR_INT)
+                        .method("post")
+                        .body("mybody".getBytes())
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.responseCode()))
+                .build();
+        HttpFeed feed2 = HttpFeed.builder()
+                .entity(entity2)
+                .baseUrl(baseUrl)
+                .poll(HttpPollConfig.forSensor(SENSOR_INT)
+                        .method("post")
+                        .body("mybody".getBytes())
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.responseCode()))
+                .build();
+        try {
+            assertSensorEventually(SENSOR_INT, (Integer)200, TIMEOUT_MS);
+            EntityTestUtils.assertAttributeEqualsEventually(entity2, SENSOR_INT, 200);
+            Map<String, Object> metrics = mgmt.getPollScheduler().getMetrics();
+            assertEquals(metrics.get("shared"), 1L, "metrics="+metrics);
+        } finally {
+            feed2.stop();
+        }
+    }
+
     @Test
     public void testFeedDeDupe() throws Exception {
         testPollsAndParsesHttpGetResponse();
@@ -148,6 +148,27 @@ public class SshFeedIntegrationTest extends BrooklynAppUnitTestSupport {
             Predicates.compose(Predicates.equalTo("hello"), StringFunctions.trim()));
     }
 
+    @Test(groups="Integration")
+    public void testBatchedReturnsEachCommandsResult() throws Exception {
+        feed = SshFeed.builder()
+                .entity(entity)
+                .machine(machine)
+                .batched()
+                .poll(new SshPollConfig<String>(SENSOR_STRING)
+                        .command("echo $GREETING")
+                        .env("GREETING", "hello")
+                        .onSuccess(SshValueFunctions.stdout()))
+                .poll(new SshPollConfig<Integer>(SENSOR_INT)
+                        .command("exit 123")
+                        .checkSuccess(Predicates.alwaysTrue())
+                        .onSuccess(SshValueFunctions.exitStatus()))
+                .build();
+
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_INT, 123);
+        EntityTestUtils.assertAttributeEventually(entity, SENSOR_STRING, 
+            Predicates.compose(Predicates.equalTo("hello"), StringFunctions.trim()));
+    }
+
     @Test(groups="Integration")
     public void testReturnsSshStderr() throws Exception {
         final String cmd = "thiscommanddoesnotexist";
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.ssh;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.internal.ssh.process.ProcessTool;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+
+public class SshPollBatchTest {
+
+    @Test
+    public void testParsesFramedOutput() throws Exception {
+        SshPollBatch batch = new SshPollBatch("MARK");
+        batch.add("echo a", null);
+        batch.add("printf b; exit 3", null);
+
+        String stdout = "MARK:start:0\na\nMARK:end:0:0\nMARK:start:1\nbMARK:end:1:3\n";
+        String stderr = "MARK:start:0\nMARK:end:0\nMARK:start:1\noops\nMARK:end:1\n";
+        List<Object> result = batch.parse(null, 0, stdout, stderr);
+
+        assertPollValue(result.get(0), 0, "a\n", "");
+        assertPollValue(result.get(1), 3, "b", "oops\n");
+    }
+
+    @Test
+    public void testReportsMissingOutput() throws Exception {
+        SshPollBatch batch = new SshPollBatch("MARK");
+        batch.add("echo a", null);
+        batch.add("sleep 100", null);
+
+        // as if killed while running the second command
+        String stdout = "MARK:start:0\na\nMARK:end:0:0\nMARK:start:1\n";
+        String stderr = "MARK:start:0\nMARK:end:0\nMARK:start:1\n";
+        List<Object> result = batch.parse(null, 137, stdout, stderr);
+
+        assertPollValue(result.get(0), 0, "a\n", "");
+        assertTrue(result.get(1) instanceof IllegalStateException, "result="+result.get(1));
+    }
+
+    @Test(groups="Integration")
+    public void testScriptRunsEachCommandSeparately() throws Exception {
+        SshPollBatch batch = new SshPollBatch();
+        batch.add("echo $GREETING; echo err >&2", ImmutableMap.of("GREETING", "hello \"world\""));
+        batch.add("false; echo notreached", null);
+        batch.add("exit 7", null);
+        batch.add("echo \"[$GREETING]\"", null);
+
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        int exitStatus = new ProcessTool().execScript(
+                ImmutableMap.of(ProcessTool.PROP_OUT_STREAM.getName(), stdout, ProcessTool.PROP_ERR_STREAM.getName(), stderr, ProcessTool.PROP_NO_EXTRA_OUTPUT.getName(), true),
+                batch.toScript(), ImmutableMap.<String, Object>of());
+        List<Object> result = batch.parse(null, exitStatus, new String(stdout.toByteArray()), new String(stderr.toByteArray()));
+
+        assertPollValue(result.get(0), 0, "hello \"world\"\n", "err\n");
+        assertPollValue(result.get(1), 1, "", "");
+        assertPollValue(result.get(2), 7, "", "");
+        assertPollValue(result.get(3), 0, "[]\n", "");
+    }
+
+    private void assertPollValue(Object val, int exitStatus, String stdout, String stderr) {
+        assertTrue(val instanceof SshPollValue, "val="+val);
+        SshPollValue pollValue = (SshPollValue) val;
+        String desc = Joiner.on("; ").join(pollValue.getExitStatus(), pollValue.getStdout(), pollValue.getStderr());
+        assertEquals(pollValue.getExitStatus(), exitStatus, desc);
+        assertEquals(pollValue.getStdout(), stdout, desc);
+        assertEquals(pollValue.getStderr(), stderr, desc);
+    }
+}
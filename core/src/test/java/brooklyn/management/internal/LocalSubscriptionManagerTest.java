@@ -101,6 +101,20 @@ public class LocalSubscriptionManagerTest extends BrooklynAppUnitTestSupport {
         }
     }
     
+    @Test
+    public void testIndexEntriesForSourceDiscardedWhenUnmanaged() throws Exception {
+        LocalSubscriptionManager subscriptionManager = (LocalSubscriptionManager) mgmt.getSubscriptionManager();
+        app.subscribe(null, TestEntity.SEQUENCE, new SensorEventListener<Object>() {
+                @Override public void onEvent(SensorEvent<Object> event) {}});
+        TestEntity other = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        entity.setSequenceValue(1);
+        other.setSequenceValue(2);
+        assertEquals(subscriptionManager.getNumIndexedSources(TestEntity.SEQUENCE), 2);
+
+        Entities.unmanage(other);
+        assertEquals(subscriptionManager.getNumIndexedSources(TestEntity.SEQUENCE), 1);
+    }
+
     @Test
     public void testSubscribeToChildAttributeChange() throws Exception {
         final CountDownLatch latch = new CountDownLatch(1);
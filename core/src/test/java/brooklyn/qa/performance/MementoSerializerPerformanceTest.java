@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.qa.performance;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.PersistenceExceptionHandler;
+import brooklyn.entity.rebind.PersistenceExceptionHandlerImpl;
+import brooklyn.entity.rebind.dto.MementosGenerators;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.entity.rebind.persister.FileBasedObjectStore;
+import brooklyn.entity.rebind.persister.MementoFormat;
+import brooklyn.entity.rebind.persister.MementoSerializer;
+import brooklyn.entity.rebind.persister.PersistMode;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.management.ha.HighAvailabilityMode;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.policy.PolicySpec;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.test.policy.TestPolicy;
+import brooklyn.util.os.Os;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Compares the {@link MementoFormat}s, for the time to serialize and to checkpoint, and for the bytes written.
+ */
+public class MementoSerializerPerformanceTest extends AbstractPerformanceTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MementoSerializerPerformanceTest.class);
+
+    private static final int NUM_ENTITIES = 100;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        for (int i = 0; i < NUM_ENTITIES; i++) {
+            TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                    .configure(TestEntity.CONF_NAME, "name-"+i)
+                    .location(mgmt.getLocationManager().createLocation(LocationSpec.create(SimulatedLocation.class))));
+            entity.addPolicy(PolicySpec.create(TestPolicy.class));
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+            entity.setAttribute(TestEntity.NAME, "entity-"+i);
+        }
+        app.start(ImmutableList.of(loc));
+    }
+
+    protected int numIterations() {
+        return 100;
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testSerializeXml() {
+        runSerialize(MementoFormat.XML);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testSerializeBinary() {
+        runSerialize(MementoFormat.BINARY);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCheckpointXml() {
+        runCheckpoint(MementoFormat.XML);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCheckpointBinary() {
+        runCheckpoint(MementoFormat.BINARY);
+    }
+
+    protected void runSerialize(MementoFormat format) {
+        final MementoSerializer<Object> serializer = format.newSerializer(getClass().getClassLoader());
+        final BrooklynMemento memento = MementosGenerators.newBrooklynMemento(mgmt);
+        double minRatePerSec = 10 * PERFORMANCE_EXPECTATION;
+
+        long bytes = 0;
+        for (EntityMemento entityMemento : memento.getEntityMementos().values()) {
+            bytes += serializer.toString(entityMemento).length();
+        }
+        logBytes("serialize "+format, bytes);
+
+        measureAndAssert("serialize "+format+" ("+NUM_ENTITIES+" entities)", numIterations(), minRatePerSec, new Runnable() {
+            public void run() {
+                for (EntityMemento entityMemento : memento.getEntityMementos().values()) {
+                    serializer.toString(entityMemento);
+                }
+            }});
+    }
+
+    protected void runCheckpoint(MementoFormat format) {
+        File dir = Os.newTempDir(getClass());
+        FileBasedObjectStore objectStore = new FileBasedObjectStore(dir);
+        try {
+            objectStore.injectManagementContext(mgmt);
+            objectStore.prepareForSharedUse(PersistMode.CLEAN, HighAvailabilityMode.DISABLED);
+            BrooklynProperties properties = BrooklynProperties.Factory.newEmpty();
+            properties.put(BrooklynMementoPersisterToObjectStore.PERSISTER_FORMAT, format);
+            final BrooklynMementoPersisterToObjectStore persister = new BrooklynMementoPersisterToObjectStore(
+                    objectStore, properties, getClass().getClassLoader());
+            final PersistenceExceptionHandler exceptionHandler = PersistenceExceptionHandlerImpl.builder().build();
+            final BrooklynMemento memento = MementosGenerators.newBrooklynMemento(mgmt);
+            double minRatePerSec = 10 * PERFORMANCE_EXPECTATION;
+            persister.enableWriteAccess();
+            try {
+                measureAndAssert("checkpoint "+format+" ("+NUM_ENTITIES+" entities)", numIterations(), minRatePerSec, new Runnable() {
+                    public void run() {
+                        persister.checkpoint(memento, exceptionHandler);
+                    }});
+                logBytes("checkpoint "+format, sizeOf(dir));
+            } finally {
+                persister.stop(false);
+            }
+        } finally {
+            objectStore.deleteCompletely();
+        }
+    }
+
+    private void logBytes(String prefix, long bytes) {
+        String msg = prefix+": "+bytes+" bytes written ("+(bytes/NUM_ENTITIES)+" per entity)";
+        LOG.info(msg);
+        System.out.println("\n"+msg+"\n");
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile()) return file.length();
+        long result = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) result += sizeOf(child);
+        }
+        return result;
+    }
+}
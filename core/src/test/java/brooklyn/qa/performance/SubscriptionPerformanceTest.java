@@ -22,6 +22,9 @@ import static org.testng.Assert.assertTrue;
 
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -30,6 +33,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.basic.BasicSensorEvent;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
 import brooklyn.management.SubscriptionManager;
@@ -165,4 +169,64 @@ public class SubscriptionPerformanceTest extends AbstractPerformanceTest {
             throw exception.get();
         }
     }
+
+    /**
+     * Publishes directly to the subscription manager from many threads, where there are many subscriptions
+     * but none for the published entity-sensor pairs; this measures the cost of dispatch (and contention
+     * between publishers) rather than of delivery. Each iteration is one publish from each of the threads 
+     * for each of a batch of events.
+     */
+    @Test(groups={"Integration", "Acceptance"})
+    public void testConcurrentPublishWithNoListenersButManyUnrelatedListeners() throws Exception {
+        final int numThreads = 10;
+        final int batchSize = 100;
+        int numUnrelatedSubscribers = 1000;
+        int numIterations = NUM_ITERATIONS / batchSize;
+        double minRatePerSec = 10 * PERFORMANCE_EXPECTATION; // i.e. 10*1000 events published per sec
+        final AtomicInteger iter = new AtomicInteger();
+        final AtomicReference<RuntimeException> exception = new AtomicReference<RuntimeException>();
+        
+        for (int i = 0; i < (numUnrelatedSubscribers/2); i++) {
+            subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", i), entities.get(1), TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                public void onEvent(SensorEvent<Integer> event) {
+                    exception.set(new RuntimeException("Unrelated subscriber called with "+event));
+                    throw exception.get();
+                }});
+            subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", i), null, TestEntity.MY_NOTIF, new SensorEventListener<Integer>() {
+                public void onEvent(SensorEvent<Integer> event) {
+                    exception.set(new RuntimeException("Unrelated subscriber called with "+event));
+                    throw exception.get();
+                }});
+        }
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            measureAndAssert("concurrentPublishWithUnrelatedListeners", numIterations, minRatePerSec, new Runnable() {
+                @Override public void run() {
+                    List<Future<?>> futures = Lists.newArrayList();
+                    for (int t = 0; t < numThreads; t++) {
+                        final TestEntity source = entities.get(2 + (t % (entities.size()-2)));
+                        futures.add(executor.submit(new Runnable() {
+                            @Override public void run() {
+                                for (int i = 0; i < batchSize; i++) {
+                                    subscriptionManager.publish(BasicSensorEvent.of(TestEntity.SEQUENCE, source, iter.incrementAndGet()));
+                                }
+                            }}));
+                    }
+                    try {
+                        for (Future<?> future : futures) {
+                            future.get();
+                        }
+                    } catch (Exception e) {
+                        throw Exceptions.propagate(e);
+                    }
+                }});
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        if (exception.get() != null) {
+            throw exception.get();
+        }
+    }
 }
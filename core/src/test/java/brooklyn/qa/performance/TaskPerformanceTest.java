@@ -18,6 +18,7 @@
  */
 package brooklyn.qa.performance;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 import java.util.List;
@@ -28,15 +29,19 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.management.Task;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.SingleThreadedScheduler;
+import brooklyn.util.task.VirtualThreadExecutionManager;
 import brooklyn.util.time.Time;
 
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
@@ -170,6 +175,57 @@ public class TaskPerformanceTest extends AbstractPerformanceTest {
         if (exceptions.size() > 0) throw exceptions.get(0);
     }
     
+    /**
+     * Submits many tasks which all block at once (as when polling over ssh or http) to a {@link VirtualThreadExecutionManager},
+     * checking they can all be running concurrently without needing a platform thread each.
+     * Skipped if this JVM does not support virtual threads.
+     */
+    @Test(groups={"Integration", "Acceptance"})
+    public void testManyConcurrentBlockingTasksOnVirtualThreads() throws Exception {
+        if (!VirtualThreadExecutionManager.isVirtualThreadsSupported()) {
+            throw new SkipException("Virtual threads not supported in this JVM ("+System.getProperty("java.version")+")");
+        }
+        final int numTasks = 10000;
+        VirtualThreadExecutionManager virtualExecutionManager = new VirtualThreadExecutionManager("perf-virtual");
+        try {
+            final CountDownLatch allStartedLatch = new CountDownLatch(numTasks);
+            final CountDownLatch releaseLatch = new CountDownLatch(1);
+            int platformThreadsBefore = Thread.activeCount();
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            
+            List<Task<?>> tasks = Lists.newArrayList();
+            for (int i = 0; i < numTasks; i++) {
+                tasks.add(virtualExecutionManager.submit(new Runnable() {
+                    public void run() {
+                        allStartedLatch.countDown();
+                        try {
+                            releaseLatch.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            throw Exceptions.propagate(e);
+                        }
+                    }}));
+            }
+            assertTrue(allStartedLatch.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS), "only "+(numTasks-allStartedLatch.getCount())+" of "+numTasks+" started");
+            long durationMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            int platformThreadsDuring = Thread.activeCount();
+            long activeTasks = virtualExecutionManager.getNumActiveTasks();
+            
+            releaseLatch.countDown();
+            for (Task<?> task : tasks) {
+                task.get();
+            }
+            
+            String msg = "manyConcurrentBlockingTasksOnVirtualThreads: "+numTasks+" tasks all blocked concurrently after "+durationMillis+"ms; "
+                    + "active tasks "+activeTasks+"; platform threads "+platformThreadsBefore+" before, "+platformThreadsDuring+" during";
+            LOG.info(msg);
+            System.out.println("\n"+msg+"\n");
+            assertEquals(activeTasks, numTasks, msg);
+            assertTrue(platformThreadsDuring - platformThreadsBefore < numTasks/10, msg);
+        } finally {
+            virtualExecutionManager.shutdownNow();
+        }
+    }
+    
     public static void main(String[] args) throws Exception {
         TaskPerformanceTest t = new TaskPerformanceTest();
         t.setUp();
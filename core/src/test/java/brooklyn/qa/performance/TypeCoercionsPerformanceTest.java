@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.qa.performance;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.Lifecycle;
+import brooklyn.util.flags.TypeCoercions;
+import brooklyn.util.time.Duration;
+
+import com.google.common.net.HostAndPort;
+import com.google.common.reflect.TypeToken;
+
+/**
+ * Measures the rate of common coercions, as done for every config lookup and flag.
+ */
+public class TypeCoercionsPerformanceTest extends AbstractPerformanceTest {
+
+    protected int numIterations() {
+        return 1000000;
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceSameType() {
+        measureCoercion("same-type", "abc", TypeToken.of(String.class));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceStringToPrimitive() {
+        measureCoercion("string-to-primitive", "123", TypeToken.of(Integer.class));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoercePrimitiveToPrimitive() {
+        measureCoercion("primitive-to-primitive", 123, TypeToken.of(Long.class));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceStringToEnum() {
+        measureCoercion("string-to-enum", "running", TypeToken.of(Lifecycle.class));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceWithAdapter() {
+        measureCoercion("adapter-string-to-hostandport", "localhost:1234", TypeToken.of(HostAndPort.class));
+        measureCoercion("adapter-object-to-duration", "5m", TypeToken.of(Duration.class));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceStringToGenericList() {
+        measureCoercion("string-to-list-of-integers", "1,2,3", new TypeToken<List<Integer>>() {});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testFailedCoercion() {
+        int numIterations = numIterations() / 10;
+        double minRatePerSec = 10000 * PERFORMANCE_EXPECTATION;
+        final Object value = new Object();
+        measureAndAssert("failed-coercion", numIterations, minRatePerSec, new Runnable() {
+            @Override public void run() {
+                TypeCoercions.tryCoerce(value, TypeToken.of(Integer.class));
+            }});
+    }
+
+    protected void measureCoercion(String prefix, final Object value, final TypeToken<?> targetType) {
+        double minRatePerSec = 100000 * PERFORMANCE_EXPECTATION;
+        measureAndAssert(prefix, numIterations(), minRatePerSec, new Runnable() {
+            @Override public void run() {
+                TypeCoercions.coerce(value, targetType);
+            }});
+    }
+}
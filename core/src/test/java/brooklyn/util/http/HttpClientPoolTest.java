@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.net.URI;
+import java.util.Map;
+
+import org.apache.http.client.HttpClient;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.util.http.HttpClientPool.TrustMode;
+import brooklyn.util.time.Duration;
+
+import com.google.mockwebserver.MockResponse;
+
+public class HttpClientPoolTest {
+
+    private BetterMockWebServer server;
+    private URI baseUri;
+    private HttpClientPool pool;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        server = BetterMockWebServer.newInstanceLocalhost();
+        for (int i = 0; i < 10; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200).setBody("hello"));
+        }
+        server.play();
+        baseUri = server.getUrl("/").toURI();
+        pool = new HttpClientPool(2, 10, Duration.seconds(30), Duration.seconds(10));
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (pool != null) pool.close();
+        if (server != null) server.shutdown();
+    }
+
+    @Test
+    public void testClientsShareConnections() throws Exception {
+        HttpClient client1 = HttpTool.httpClientBuilder().pool(pool).uri(baseUri).build();
+        HttpClient client2 = HttpTool.httpClientBuilder().pool(pool).uri(baseUri).build();
+
+        assertEquals(HttpTool.httpGet(client1, baseUri, null).getResponseCode(), 200);
+        assertEquals(HttpTool.httpGet(client2, baseUri, null).getResponseCode(), 200);
+        assertEquals(HttpTool.httpGet(client1, baseUri, null).getResponseCode(), 200);
+
+        // each request on the same connection as the last
+        assertEquals(server.takeRequest().getSequenceNumber(), 0);
+        assertEquals(server.takeRequest().getSequenceNumber(), 1);
+        assertEquals(server.takeRequest().getSequenceNumber(), 2);
+
+        Map<String, Object> metrics = pool.getMetrics();
+        assertEquals(metrics.get("clients"), 2L);
+        assertEquals(metrics.get("leased"), 0);
+        assertEquals(metrics.get("available"), 1);
+    }
+
+    @Test
+    public void testConnectionManagerPerTrustMode() throws Exception {
+        assertSame(pool.getConnectionManager(TrustMode.TRUST_ALL), pool.getConnectionManager(TrustMode.TRUST_ALL));
+        assertNotSame(pool.getConnectionManager(TrustMode.TRUST_ALL), pool.getConnectionManager(TrustMode.DEFAULT));
+    }
+
+    @Test
+    public void testUnpooledClientHasOwnConnections() throws Exception {
+        HttpClient client = HttpTool.httpClientBuilder().uri(baseUri).build();
+        assertEquals(HttpTool.httpGet(client, baseUri, null).getResponseCode(), 200);
+        assertEquals(pool.getMetrics().get("clients"), 0L);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.mockwebserver.MockResponse;
+import com.google.mockwebserver.RecordedRequest;
+
+public class NioHttpClientTest {
+
+    private BetterMockWebServer server;
+    private NioHttpClient client;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        server = BetterMockWebServer.newInstanceLocalhost();
+        client = new NioHttpClient(1);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (client != null) client.close();
+        if (server != null) server.shutdown();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).addHeader("X-Foo", "bar").setBody("hello"));
+        server.play();
+
+        HttpToolResponse response = client.request("GET", server.getUrl("/path?q=1").toURI())
+                .headers(ImmutableMap.of("X-Mine", "val"))
+                .credentials(new UsernamePasswordCredentials("me", "secret"))
+                .execute().get(10, TimeUnit.SECONDS);
+
+        assertEquals(response.getResponseCode(), 200);
+        assertEquals(response.getContentAsString(), "hello");
+        assertEquals(response.getHeaderLists().get("X-Foo"), ImmutableList.of("bar"));
+        RecordedRequest request = server.takeRequest();
+        assertEquals(request.getPath(), "/path?q=1");
+        assertTrue(request.getHeaders().contains("X-Mine: val"), "headers="+request.getHeaders());
+        assertTrue(request.getHeaders().contains(("Authorization: "+HttpTool.toBasicAuthorizationValue(new UsernamePasswordCredentials("me", "secret"))).trim()),
+                "headers="+request.getHeaders());
+        assertEquals(client.getMetrics().get("inFlight"), 0);
+    }
+
+    @Test
+    public void testPostWithBody() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201).setBody("created"));
+        server.play();
+
+        HttpToolResponse response = client.request("POST", server.getUrl("/").toURI())
+                .body("mybody".getBytes(Charsets.UTF_8))
+                .execute().get(10, TimeUnit.SECONDS);
+
+        assertEquals(response.getResponseCode(), 201);
+        assertEquals(response.getContentAsString(), "created");
+        RecordedRequest request = server.takeRequest();
+        assertEquals(request.getMethod(), "POST");
+        assertEquals(new String(request.getBody(), Charsets.UTF_8), "mybody");
+    }
+
+    @Test
+    public void testChunkedResponse() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setChunkedBody("a somewhat longer chunked body", 4));
+        server.play();
+
+        HttpToolResponse response = client.request("GET", server.getUrl("/").toURI()).execute().get(10, TimeUnit.SECONDS);
+
+        assertEquals(response.getContentAsString(), "a somewhat longer chunked body");
+    }
+
+    @Test
+    public void testChunkedResponseReadInPieces() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+        Thread serverThread = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    Socket socket = serverSocket.accept();
+                    try {
+                        OutputStream out = socket.getOutputStream();
+                        String[] pieces = { "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n", "5\r\nhel", "lo\r\n", "6", "\r\n wor", "ld\r\n0\r\n", "\r\n" };
+                        for (String piece : pieces) {
+                            out.write(piece.getBytes(Charsets.ISO_8859_1));
+                            out.flush();
+                            Time.sleep(Duration.millis(20));
+                        }
+                        Time.sleep(Duration.seconds(10));
+                    } finally {
+                        socket.close();
+                    }
+                } catch (Exception e) {
+                    // test will fail on reading the response
+                }
+            }});
+        serverThread.start();
+        try {
+            URI uri = URI.create("http://localhost:"+serverSocket.getLocalPort()+"/");
+            HttpToolResponse response = client.request("GET", uri).execute().get(10, TimeUnit.SECONDS);
+
+            assertEquals(response.getContentAsString(), "hello world");
+        } finally {
+            serverSocket.close();
+            serverThread.interrupt();
+        }
+    }
+
+    @Test
+    public void testFailsWhenHostUnknown() throws Exception {
+        try {
+            client.request("GET", URI.create("http://host.invalid/")).execute().get(30, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnknownHostException, "cause="+e.getCause());
+        }
+        assertEquals(client.getMetrics().get("inFlight"), 0);
+    }
+
+    @Test
+    public void testFollowsRedirectWhenLax() throws Exception {
+        server.play();
+        server.enqueue(new MockResponse().setResponseCode(302).addHeader("Location", server.getUrl("/other").toString()));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("redirected"));
+
+        HttpToolResponse response = client.request("GET", server.getUrl("/").toURI())
+                .laxRedirect(true)
+                .execute().get(10, TimeUnit.SECONDS);
+
+        assertEquals(response.getResponseCode(), 200);
+        assertEquals(response.getContentAsString(), "redirected");
+        assertEquals(server.takeRequest().getPath(), "/");
+        assertEquals(server.takeRequest().getPath(), "/other");
+    }
+
+    @Test
+    public void testTimesOutWhenServerDoesNotRespond() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+        try {
+            URI uri = URI.create("http://localhost:"+serverSocket.getLocalPort()+"/");
+            try {
+                client.request("GET", uri).socketTimeout(Duration.millis(100)).execute().get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SocketTimeoutException, "cause="+e.getCause());
+            }
+            assertEquals(client.getMetrics().get("failures"), 1L);
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testIsSupported() throws Exception {
+        assertTrue(NioHttpClient.isSupported(URI.create("http://localhost:8080/")));
+        assertFalse(NioHttpClient.isSupported(URI.create("https://localhost:8443/")));
+        assertFalse(NioHttpClient.isSupported(URI.create("/relative")));
+    }
+}
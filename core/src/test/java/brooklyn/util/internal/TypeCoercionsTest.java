@@ -38,6 +38,7 @@ import brooklyn.util.flags.ClassCoercionException;
 import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.text.StringPredicates;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -312,6 +313,45 @@ public class TypeCoercionsTest {
         TypeCoercions.coerce(new Object(), TypeToken.of(Integer.class));
     }
 
+    @Test
+    public void testRegisteringAdapterReplacesCachedFailure() {
+        class WithLateAdapter {
+            String value;
+        }
+        Assert.assertFalse(TypeCoercions.tryCoerce("x", TypeToken.of(WithLateAdapter.class)).isPresent());
+
+        TypeCoercions.registerAdapter(String.class, WithLateAdapter.class, new Function<String, WithLateAdapter>() {
+            @Override public WithLateAdapter apply(String input) {
+                WithLateAdapter result = new WithLateAdapter();
+                result.value = input;
+                return result;
+            }});
+        try {
+            assertEquals(TypeCoercions.coerce("x", WithLateAdapter.class).value, "x");
+            assertEquals(TypeCoercions.coerce("y", WithLateAdapter.class).value, "y");
+        } finally {
+            TypeCoercions.unregisterAdapter(String.class, WithLateAdapter.class);
+        }
+        Assert.assertFalse(TypeCoercions.tryCoerce("x", TypeToken.of(WithLateAdapter.class)).isPresent());
+    }
+
+    @Test
+    public void testRepeatedCoercionsOfSameTypes() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(TypeCoercions.coerce("1", Integer.class), (Integer)1);
+            assertEquals(TypeCoercions.coerce(new WithAs("3"), Integer.class), (Integer)3);
+            assertEquals(TypeCoercions.coerce("3", WithFrom.class).value, 3);
+            assertEquals(TypeCoercions.coerce("starting", Lifecycle.class), Lifecycle.STARTING);
+            assertEquals(TypeCoercions.coerce("1,2", new TypeToken<List<Integer>>() {}), ImmutableList.of(1, 2));
+            try {
+                TypeCoercions.coerce(new Object(), Integer.class);
+                Assert.fail();
+            } catch (ClassCoercionException e) {
+                // expected, every time
+            }
+        }
+    }
+
     public static class WithAs {
         String value;
         public WithAs(Object x) { value = ""+x; }
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.internal.ssh.sshj;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.connection.channel.direct.Session;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.Lists;
+import com.google.common.net.HostAndPort;
+
+public class SshjSessionRegistryTest {
+
+    private static final HostAndPort HOST = HostAndPort.fromParts("1.2.3.4", 22);
+
+    private SshjSessionRegistry registry;
+    private List<FakeSshClient> clients;
+    private Callable<SSHClient> connector;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        registry = new SshjSessionRegistry(Duration.ONE_MINUTE);
+        clients = Lists.newCopyOnWriteArrayList();
+        connector = new Callable<SSHClient>() {
+            @Override public SSHClient call() {
+                FakeSshClient result = new FakeSshClient();
+                clients.add(result);
+                return result;
+            }};
+    }
+
+    @Test
+    public void testSharesConnectionUntilFull() throws Exception {
+        SshjSessionRegistry.Lease lease1 = registry.lease(newKey("me", "pa55"), 2, 0, null, connector);
+        SshjSessionRegistry.Lease lease2 = registry.lease(newKey("me", "pa55"), 2, 0, null, connector);
+        SshjSessionRegistry.Lease lease3 = registry.lease(newKey("me", "pa55"), 2, 0, null, connector);
+
+        assertSame(lease1.getSSHClient(), lease2.getSSHClient());
+        assertNotSame(lease1.getSSHClient(), lease3.getSSHClient());
+        assertEquals(registry.getMetrics().get("sessions"), 2);
+        assertEquals(registry.getMetrics().get("leases"), 3);
+        assertEquals(registry.getMetrics().get("connects"), 2L);
+        assertEquals(registry.getMetrics().get("reuses"), 1L);
+
+        // released connections stay open for re-use
+        lease1.release();
+        lease1.release();
+        lease2.release();
+        assertEquals(registry.getMetrics().get("leases"), 1);
+        SshjSessionRegistry.Lease lease4 = registry.lease(newKey("me", "pa55"), 2, 0, null, connector);
+        assertEquals(registry.getMetrics().get("connects"), 2L);
+        assertEquals(clients.size(), 2);
+        assertTrue(clients.get(0).connected);
+        lease3.release();
+        lease4.release();
+    }
+
+    @Test
+    public void testDoesNotShareBetweenDifferentCredentials() throws Exception {
+        SshjSessionRegistry.Lease lease1 = registry.lease(newKey("me", "pa55"), 10, 0, null, connector);
+        SshjSessionRegistry.Lease lease2 = registry.lease(newKey("me", "other"), 10, 0, null, connector);
+        SshjSessionRegistry.Lease lease3 = registry.lease(newKey("you", "pa55"), 10, 0, null, connector);
+
+        assertNotSame(lease1.getSSHClient(), lease2.getSSHClient());
+        assertNotSame(lease1.getSSHClient(), lease3.getSSHClient());
+        assertEquals(registry.getMetrics().get("sessions"), 3);
+    }
+
+    @Test
+    public void testReplacesDisconnectedConnection() throws Exception {
+        SshjSessionRegistry.Lease lease1 = registry.lease(newKey("me", "pa55"), 10, 0, null, connector);
+        clients.get(0).connected = false;
+
+        SshjSessionRegistry.Lease lease2 = registry.lease(newKey("me", "pa55"), 10, 0, null, connector);
+        assertNotSame(lease1.getSSHClient(), lease2.getSSHClient());
+        assertEquals(registry.getMetrics().get("reconnects"), 1L);
+
+        lease1.release();
+        assertEquals(registry.getMetrics().get("sessions"), 1);
+        lease2.release();
+    }
+
+    @Test
+    public void testRetiredConnectionClosedWhenLastUserReleases() throws Exception {
+        SshjSessionRegistry.Lease lease1 = registry.lease(newKey("me", "pa55"), 10, 0, null, connector);
+        SshjSessionRegistry.Lease lease2 = registry.lease(newKey("me", "pa55"), 10, 0, null, connector);
+        lease1.retire();
+
+        SshjSessionRegistry.Lease lease3 = registry.lease(newKey("me", "pa55"), 10, 0, null, connector);
+        assertNotSame(lease1.getSSHClient(), lease3.getSSHClient());
+
+        lease1.release();
+        assertTrue(clients.get(0).connected);
+        lease2.release();
+        assertFalse(clients.get(0).connected);
+        assertEquals(registry.getMetrics().get("sessions"), 1);
+        lease3.release();
+    }
+
+    @Test
+    public void testClosesIdleConnections() throws Exception {
+        registry = new SshjSessionRegistry(Duration.ZERO);
+        SshjSessionRegistry.Lease lease1 = registry.lease(newKey("me", "pa55"), 10, 0, null, connector);
+        SshjSessionRegistry.Lease lease2 = registry.lease(newKey("you", "pa55"), 10, 0, null, connector);
+        lease1.release();
+        Thread.sleep(10);
+
+        registry.closeIdle();
+        assertFalse(clients.get(0).connected);
+        assertTrue(clients.get(1).connected);
+        assertEquals(registry.getMetrics().get("sessions"), 1);
+        assertEquals(registry.getMetrics().get("idleCloses"), 1L);
+        lease2.release();
+    }
+
+    @Test
+    public void testLimitsConcurrentSessionsPerHost() throws Exception {
+        // different users' connections to the same host share its limit
+        final SshjSessionRegistry.Lease lease1 = registry.lease(newKey("me", "pa55"), 10, 1, null, connector);
+        final SshjSessionRegistry.Lease lease2 = registry.lease(newKey("you", "pa55"), 10, 1, null, connector);
+
+        Session session1 = lease1.startSession();
+        assertEquals(registry.getMetrics().get("channels"), 1);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<Session> session2 = new AtomicReference<Session>();
+        Thread thread = new Thread() {
+            @Override public void run() {
+                try {
+                    session2.set(lease2.startSession());
+                    started.countDown();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }};
+        thread.start();
+        assertFalse(started.await(100, TimeUnit.MILLISECONDS));
+
+        lease1.sessionClosed(session1);
+        lease1.sessionClosed(session1);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(registry.getMetrics().get("channels"), 1);
+        assertEquals(registry.getMetrics().get("channelWaits"), 1L);
+
+        // releasing the lease gives back its unclosed channels
+        lease2.release();
+        assertEquals(registry.getMetrics().get("channels"), 0);
+        lease1.startSession();
+        lease1.release();
+    }
+
+    @Test
+    public void testHostLimitIsThatOfEachUser() throws Exception {
+        SshjSessionRegistry.Lease lease1 = registry.lease(newKey("me", "pa55"), 10, 1, null, connector);
+        SshjSessionRegistry.Lease lease2 = registry.lease(newKey("you", "pa55"), 10, 2, null, connector);
+
+        // the first user's limit does not apply to the second
+        lease1.startSession();
+        lease2.startSession();
+        lease2.startSession();
+        assertEquals(registry.getMetrics().get("channels"), 3);
+        assertEquals(registry.getMetrics().get("channelWaits"), 0L);
+        assertEquals(registry.getMetrics().get("hostLimits"), 2);
+        lease1.release();
+        lease2.release();
+    }
+
+    @Test
+    public void testClosingIdleForgetsUnusedHostLimits() throws Exception {
+        SshjSessionRegistry.Lease lease1 = registry.lease(newKey("me", "pa55"), 10, 1, null, connector);
+        SshjSessionRegistry.Lease lease2 = registry.lease(newKey("you", "pa55"), 10, 2, null, connector);
+        lease1.release();
+
+        registry.closeIdle();
+        assertEquals(registry.getMetrics().get("hostLimits"), 1);
+        lease2.release();
+        registry.closeIdle();
+        assertEquals(registry.getMetrics().get("hostLimits"), 0);
+    }
+
+    @Test
+    public void testSlowConnectDoesNotHoldUpReuse() throws Exception {
+        final SshjSessionRegistry.Lease lease1 = registry.lease(newKey("me", "pa55"), 1, 0, null, connector);
+        lease1.release();
+
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final CountDownLatch connected = new CountDownLatch(1);
+        final Callable<SSHClient> slowConnector = new Callable<SSHClient>() {
+            @Override public SSHClient call() throws Exception {
+                connecting.countDown();
+                assertTrue(connected.await(10, TimeUnit.SECONDS));
+                return connector.call();
+            }};
+        final SshjSessionRegistry.Lease lease2 = registry.lease(newKey("me", "pa55"), 1, 0, null, connector);
+        final AtomicReference<SshjSessionRegistry.Lease> lease3 = new AtomicReference<SshjSessionRegistry.Lease>();
+        Thread thread = new Thread() {
+            @Override public void run() {
+                try {
+                    // the only connection is full, so this must open another
+                    lease3.set(registry.lease(newKey("me", "pa55"), 1, 0, null, slowConnector));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }};
+        thread.start();
+        try {
+            assertTrue(connecting.await(10, TimeUnit.SECONDS));
+
+            // while it is connecting, the pool can still be used and reaped
+            lease2.release();
+            SshjSessionRegistry.Lease lease4 = registry.lease(newKey("me", "pa55"), 1, 0, null, connector);
+            assertSame(lease4.getSSHClient(), lease1.getSSHClient());
+            lease4.release();
+            registry.closeIdle();
+        } finally {
+            connected.countDown();
+        }
+        thread.join(10*1000);
+        assertEquals(registry.getMetrics().get("sessions"), 2);
+        assertEquals(registry.getMetrics().get("connects"), 2L);
+        lease3.get().release();
+    }
+
+    private SshjSessionRegistry.Key newKey(String user, String password) {
+        return new SshjSessionRegistry.Key(HOST, user, password, null, null, null, false, 0);
+    }
+
+    private static class FakeSshClient extends SSHClient {
+        volatile boolean connected = true;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean isAuthenticated() {
+            return connected;
+        }
+
+        @Override
+        public void disconnect() {
+            connected = false;
+        }
+
+        @Override
+        public Session startSession() {
+            return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Session.class}, new InvocationHandler() {
+                @Override public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+                    if (method.getName().equals("equals")) return proxy == args[0];
+                    return null;
+                }});
+        }
+    }
+}
@@ -270,6 +270,29 @@ public class SshjToolIntegrationTest extends SshToolAbstractIntegrationTest {
         }
     }
 
+    @Test(groups = {"Integration"})
+    public void testSharedConnectionUsedByToolsWithSameCredentials() throws Exception {
+        Map<String, ?> flags = ImmutableMap.of("host", "localhost", "privateKeyFile", "~/.ssh/id_rsa", "shareConnections", true);
+        SshjTool localtool1 = new SshjTool(flags);
+        SshjTool localtool2 = new SshjTool(flags);
+        tools.add(localtool1);
+        tools.add(localtool2);
+        
+        long connectsBefore = (Long) SshjSessionRegistry.getDefault().getMetrics().get("connects");
+        localtool1.connect();
+        localtool2.connect();
+        for (SshjTool localtool : ImmutableList.of(localtool1, localtool2)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int exitcode = localtool.execCommands(ImmutableMap.of("out", out), ImmutableList.of("echo hello"));
+            assertEquals(exitcode, 0);
+            assertTrue(new String(out.toByteArray()).contains("hello"));
+        }
+        
+        assertEquals(SshjSessionRegistry.getDefault().getMetrics().get("connects"), connectsBefore+1);
+        localtool1.disconnect();
+        assertTrue(localtool2.isConnected());
+    }
+
     
     protected String execShellDirect(List<String> cmds) {
         return execShellDirect(cmds, ImmutableMap.<String,Object>of());
@@ -28,9 +28,11 @@ import static org.testng.Assert.fail;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -240,6 +242,84 @@ public class BasicTaskExecutionTest {
         assertEquals(em.getTasksWithAllTags(ImmutableList.of("not_there","A")), ImmutableSet.of());
     }
     
+    @Test
+    public void testNumTasksWithTagAndEmptyTagRemovedOnDelete() throws Exception {
+        Task<?> t1 = em.submit(MutableMap.of("tags", ImmutableList.of("A", "B")), new BasicTask<Void>(newNoop()));
+        Task<?> t2 = em.submit(MutableMap.of("tag", "A"), new BasicTask<Void>(newNoop()));
+        t1.get();
+        t2.get();
+        assertEquals(em.getNumTasksWithTag("A"), 2);
+        assertEquals(em.getNumTasksWithTag("B"), 1);
+        assertEquals(em.getNumTasksWithTag("not_there"), 0);
+        
+        em.deleteTask(t1);
+        assertEquals(em.getNumTasksWithTag("A"), 1);
+        assertEquals(em.getNumTasksWithTag("B"), 0);
+        assertFalse(em.getTaskTags().contains("B"));
+        assertEquals(em.getTasksWithAllTags(ImmutableList.of("A", "B")), ImmutableSet.of());
+        assertEquals(em.getTasksWithAllTags(ImmutableList.of("A")), ImmutableList.of(t2));
+    }
+    
+    @Test
+    public void testConcurrentSubmitAndDeleteKeepsTagIndexConsistent() throws Exception {
+        final int numThreads = 8;
+        final int numIterations = 500;
+        final List<Task<?>> kept = new CopyOnWriteArrayList<Task<?>>();
+        List<Thread> threads = Lists.newArrayList();
+        for (int i = 0; i < numThreads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < numIterations; j++) {
+                        Task<?> t = em.submit(MutableMap.of("tags", ImmutableList.of("shared", "other")), new BasicTask<Void>(newNoop()));
+                        if (j % 2 == 0) {
+                            kept.add(t);
+                        } else {
+                            t.getUnchecked();
+                            em.deleteTask(t);
+                        }
+                    }
+                }});
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(em.getNumTasksWithTag("shared"), kept.size());
+        assertEquals(em.getTasksWithAllTags(ImmutableList.of("shared", "other")), ImmutableSet.copyOf(kept));
+    }
+    
+    @Test
+    public void testAddRacingWithDeleteOfLastTaskWithTagIsNotLost() throws Exception {
+        // each thread adds a task then deletes it, so the tag's set is repeatedly emptied while others add to it
+        final int numThreads = 4;
+        final int numIterations = 5000;
+        final List<String> lost = new CopyOnWriteArrayList<String>();
+        List<Thread> threads = Lists.newArrayList();
+        for (int i = 0; i < numThreads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < numIterations && lost.isEmpty(); j++) {
+                        Task<?> t = em.submit(MutableMap.of("tag", "shared"), new BasicTask<Void>(newNoop()));
+                        t.getUnchecked();
+                        if (!em.getTasksWithTag("shared").contains(t)) {
+                            lost.add(t+" at iteration "+j);
+                        }
+                        em.deleteTask(t);
+                    }
+                }});
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(lost, ImmutableList.of());
+        assertEquals(em.getNumTasksWithTag("shared"), 0);
+    }
+    
     @Test
     public void testRetrievedTasksIncludesTasksInProgress() throws Exception {
         final CountDownLatch runningLatch = new CountDownLatch(1);
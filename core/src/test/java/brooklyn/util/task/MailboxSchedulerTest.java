@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.test.Asserts;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.util.concurrent.Callables;
+
+public class MailboxSchedulerTest {
+
+    private static final int POOL_SIZE = 2;
+    
+    private BasicExecutionManager em;
+    
+    @BeforeMethod
+    public void setUp() {
+        em = new BasicExecutionManager("mycontextid");
+        em.useMailboxPool(POOL_SIZE, 10);
+        for (int i = 0; i < 5; i++) {
+            em.setTaskSchedulerForTag("category"+i, em.getSerialTaskSchedulerType());
+        }
+    }
+    
+    @AfterMethod
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+    
+    @Test
+    public void testUsesMailboxScheduler() throws Exception {
+        assertTrue(em.isUsingMailboxPool());
+        assertEquals(em.getSerialTaskSchedulerType(), MailboxScheduler.class);
+        MailboxScheduler scheduler = (MailboxScheduler) em.getTaskSchedulerForTag("category0");
+        assertEquals(scheduler.getBatchSize(), 10);
+    }
+    
+    @Test
+    public void testExecutesInOrderPerMailbox() throws Exception {
+        final int NUM_TIMES = 1000;
+        final int NUM_MAILBOXES = 5;
+        final List<List<Integer>> results = new CopyOnWriteArrayList<List<Integer>>();
+        for (int m = 0; m < NUM_MAILBOXES; m++) {
+            results.add(new CopyOnWriteArrayList<Integer>());
+        }
+        for (int i = 0; i < NUM_TIMES; i++) {
+            for (int m = 0; m < NUM_MAILBOXES; m++) {
+                final int counter = i;
+                final List<Integer> result = results.get(m);
+                em.submit(MutableMap.of("tag", "category"+m), new Runnable() {
+                    public void run() {
+                        result.add(counter);
+                    }});
+            }
+        }
+        
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                for (List<Integer> result : results) {
+                    assertEquals(result.size(), NUM_TIMES);
+                }
+            }});
+
+        for (List<Integer> result : results) {
+            for (int i = 0; i < NUM_TIMES; i++) {
+                assertEquals(result.get(i), (Integer)i);
+            }
+        }
+    }
+    
+    @Test
+    public void testBacklogsShareBoundedPool() throws Exception {
+        final int NUM_TIMES = 500;
+        final Set<Thread> threadsUsed = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final CountDownLatch latch = new CountDownLatch(1);
+        em.submit(MutableMap.of("tag", "category0"), newLatchAwaiter(latch));
+        
+        final List<Future<?>> futures = new CopyOnWriteArrayList<Future<?>>();
+        for (int i = 0; i < NUM_TIMES; i++) {
+            for (int m = 0; m < 5; m++) {
+                futures.add(em.submit(MutableMap.of("tag", "category"+m), new Runnable() {
+                    public void run() {
+                        threadsUsed.add(Thread.currentThread());
+                    }}));
+            }
+        }
+        latch.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        
+        assertTrue(threadsUsed.size() <= POOL_SIZE, "threads="+threadsUsed);
+    }
+    
+    @Test
+    public void testCancelQueuedTaskBeforeItExecutes() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        em.submit(MutableMap.of("tag", "category0"), newLatchAwaiter(latch));
+        
+        final AtomicBoolean executed = new AtomicBoolean();
+        BasicTask<?> t = new BasicTask<Void>(new Runnable() {
+            public void run() {
+                executed.set(true);
+            }});
+        Future<?> future = em.submit(MutableMap.of("tag", "category0"), t);
+        BasicTask<Integer> t2 = new BasicTask<Integer>(Callables.returning(123));
+        Future<Integer> future2 = em.submit(MutableMap.of("tag", "category0"), t2);
+
+        future.cancel(true);
+        latch.countDown();
+        assertEquals(future2.get(), (Integer)123);
+        try {
+            future.get();
+        } catch (CancellationException e) {
+            // success
+        }
+        assertFalse(executed.get());
+    }
+    
+    @Test
+    public void testGetResultOfQueuedTaskAfterItExecutes() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        em.submit(MutableMap.of("tag", "category0"), newLatchAwaiter(latch));
+        
+        BasicTask<Integer> t = new BasicTask<Integer>(Callables.returning(123));
+        Future<Integer> future = em.submit(MutableMap.of("tag", "category0"), t);
+
+        latch.countDown();
+        assertEquals(future.get(), (Integer)123);
+    }
+    
+    private Callable<Void> newLatchAwaiter(final CountDownLatch latch) {
+        return new Callable<Void>() {
+            public Void call() throws Exception {
+                latch.await();
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Ticker;
+
+public class TokenBucketTest {
+
+    private static class FakeTicker extends Ticker {
+        long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long millis) {
+            nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    @Test
+    public void testIssuesBurstThenAtSteadyRate() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        TokenBucket bucket = new TokenBucket(10, 2, ticker);
+
+        assertEquals(bucket.reserve(), Duration.ZERO);
+        assertEquals(bucket.reserve(), Duration.ZERO);
+        assertEquals(bucket.reserve(), Duration.millis(100));
+        assertEquals(bucket.reserve(), Duration.millis(200));
+
+        // waiting callers are served in turn, and the debt is paid off over time
+        ticker.advance(200);
+        assertEquals(bucket.reserve(), Duration.millis(100));
+    }
+
+    @Test
+    public void testSavesUpNoMoreThanBurst() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        TokenBucket bucket = new TokenBucket(10, 3, ticker);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(bucket.reserve(), Duration.ZERO);
+        }
+
+        ticker.advance(10000);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(bucket.reserve(), Duration.ZERO);
+        }
+        assertEquals(bucket.reserve(), Duration.millis(100));
+    }
+}
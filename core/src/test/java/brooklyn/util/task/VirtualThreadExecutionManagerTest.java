@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Runs on whatever JVM the build uses, so exercises virtual threads on Java 21+ and the fallback otherwise.
+ */
+public class VirtualThreadExecutionManagerTest {
+
+    private VirtualThreadExecutionManager em;
+    private BasicExecutionContext ec;
+    
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new VirtualThreadExecutionManager("mycontext");
+        ec = new BasicExecutionContext(em);
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+    
+    @Test
+    public void testUsesVirtualThreadsIffSupported() {
+        assertEquals(em.isUsingVirtualThreads(), VirtualThreadExecutionManager.isVirtualThreadsSupported());
+    }
+    
+    @Test
+    public void testCurrentTaskAndTags() throws Exception {
+        Task<Task<?>> t = em.submit(MutableMap.of("tags", ImmutableList.of("a", "b")), new Callable<Task<?>>() {
+            public Task<?> call() {
+                return Tasks.current();
+            }});
+        
+        assertEquals(t.get(), t);
+        assertEquals(em.getTasksWithAllTags(ImmutableList.of("a", "b")), ImmutableSet.of(t));
+    }
+    
+    @Test
+    public void testDynamicTasksQueueing() throws Exception {
+        final List<String> messages = new CopyOnWriteArrayList<String>();
+        DynamicSequentialTask<String> t = new DynamicSequentialTask<String>(new Callable<String>() {
+            public String call() {
+                messages.add("main");
+                DynamicTasks.queue("child", new Runnable() {
+                    public void run() {
+                        messages.add("child");
+                    }});
+                return "done";
+            }});
+        ec.submit(t);
+        
+        assertEquals(t.getUnchecked(Duration.TEN_SECONDS), "done");
+        assertEquals(messages, ImmutableList.of("main", "child"));
+        assertTrue(t.getChildren().iterator().hasNext());
+    }
+    
+    @Test
+    public void testSerialSchedulerStillInOrder() throws Exception {
+        em.setTaskSchedulerForTag("serial", em.getSerialTaskSchedulerType());
+        final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+        Task<?> last = null;
+        for (int i = 0; i < 100; i++) {
+            final int counter = i;
+            last = em.submit(MutableMap.of("tag", "serial"), new Runnable() {
+                public void run() {
+                    result.add(counter);
+                }});
+        }
+        last.get();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(result.get(i), (Integer)i);
+        }
+    }
+}
@@ -18,25 +18,24 @@
  */
 package brooklyn.enricher;
 
-import java.util.LinkedList;
-
 import brooklyn.catalog.Catalog;
 import brooklyn.enricher.basic.AbstractTypeTransformingEnricher;
 import brooklyn.entity.Entity;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.SensorEvent;
+import brooklyn.util.collections.TimeWindowedDoubles;
 import brooklyn.util.flags.SetFromFlag;
 import brooklyn.util.javalang.JavaClassNames;
 
 
 /**
 * Transforms a sensor into a rolling average based on a fixed window size. This is useful for smoothing sample type metrics, 
-* such as latency or CPU time
+* such as latency or CPU time. Null values are ignored.
 */
 //@Catalog(name="Rolling Mean", description="Transforms a sensor into a rolling average based on a fixed "
 //        + "window size. This is useful for smoothing sample type metrics, such as latency or CPU time")
 public class RollingMeanEnricher<T extends Number> extends AbstractTypeTransformingEnricher<T,Double> {
-    private LinkedList<T> values = new LinkedList<T>();
+    private TimeWindowedDoubles values;
     
     @SetFromFlag
     int windowSize;
@@ -54,28 +53,28 @@ public class RollingMeanEnricher<T extends Number> extends AbstractTypeTransform
     
     /** @returns null when no data has been received or windowSize is 0 */
     public Double getAverage() {
-        pruneValues();
-        return values.size() == 0 ? null : sum(values) / values.size();
+        double result = getValues().getMean();
+        return Double.isNaN(result) ? null : result;
     }
     
     @Override
     public void onEvent(SensorEvent<T> event) {
-        values.addLast(event.getValue());
-        pruneValues();
-        entity.setAttribute((AttributeSensor<Double>)target, getAverage());
-    }
-    
-    private void pruneValues() {
-        while(windowSize > -1 && values.size() > windowSize) {
-            values.removeFirst();
+        Double average;
+        synchronized (this) {
+            T val = event.getValue();
+            if (val != null) {
+                getValues().add(val.doubleValue());
+            }
+            average = getAverage();
         }
+        entity.setAttribute((AttributeSensor<Double>)target, average);
     }
     
-    private double sum(Iterable<? extends Number> vals) {
-        double result = 0;
-        for (Number val : vals) {
-            result += val.doubleValue();
+    /** Created on first use, as {@link #windowSize} is set after construction when rebinding. */
+    private synchronized TimeWindowedDoubles getValues() {
+        if (values == null) {
+            values = new TimeWindowedDoubles(null, (windowSize > -1) ? windowSize : Integer.MAX_VALUE, 0);
         }
-        return result;
+        return values;
     }
 }
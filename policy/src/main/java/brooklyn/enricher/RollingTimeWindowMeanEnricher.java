@@ -18,9 +18,6 @@
  */
 package brooklyn.enricher;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-
 import com.google.common.base.Preconditions;
 
 import brooklyn.catalog.Catalog;
@@ -29,6 +26,7 @@ import brooklyn.entity.Entity;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
+import brooklyn.util.collections.TimeWindowedDoubles;
 import brooklyn.util.flags.SetFromFlag;
 import brooklyn.util.javalang.JavaClassNames;
 import brooklyn.util.time.Duration;
@@ -54,7 +52,9 @@ import brooklyn.util.time.Duration;
  * the window empties. A third alternative is to, at a certain confidence threshold, report that
  * the average is no longer meaningful.
  * <p>
- * The default average when no data has been received is 0, with a confidence of 0
+ * The default average when no data has been received is 0, with a confidence of 0. Null values are ignored.
+ * <p>
+ * The values are held in a {@link TimeWindowedDoubles}, so each new value and each average is O(1).
  */
 //@Catalog(name="Rolling Mean in Time Window", description="Transforms a sensor's data into a rolling average "
 //        + "based on a time window.")
@@ -69,8 +69,7 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
         }
     }
     
-    private final LinkedList<T> values = new LinkedList<T>();
-    private final LinkedList<Long> timestamps = new LinkedList<Long>();
+    private TimeWindowedDoubles values;
     volatile ConfidenceQualifiedNumber lastAverage = new ConfidenceQualifiedNumber(0d,0d);
     
     @SetFromFlag
@@ -101,59 +100,57 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
     }
     
     public void onEvent(SensorEvent<T> event, long eventTime) {
-        values.addLast(event.getValue());
-        timestamps.addLast(eventTime);
-        pruneValues(eventTime);
-        entity.setAttribute((AttributeSensor<Double>)target, getAverage(eventTime).value); //TODO this can potentially go stale... maybe we need to timestamp as well?
+        Double average;
+        synchronized (this) {
+            T val = event.getValue();
+            if (val != null) {
+                getValues().add(eventTime, val.doubleValue());
+            }
+            average = getAverage(eventTime).value;
+        }
+        entity.setAttribute((AttributeSensor<Double>)target, average); //TODO this can potentially go stale... maybe we need to timestamp as well?
     }
     
     public ConfidenceQualifiedNumber getAverage() {
         return getAverage(System.currentTimeMillis());
     }
     
-    public ConfidenceQualifiedNumber getAverage(long now) {
-        pruneValues(now);
-        if (timestamps.isEmpty()) {
+    // synchronized because pruning writes to the values, which must only be done by one thread at a time
+    public synchronized ConfidenceQualifiedNumber getAverage(long now) {
+        TimeWindowedDoubles values = getValues();
+        values.prune(now);
+        TimeWindowedDoubles.Stats stats = values.getStats();
+        if (stats.getSize() == 0) {
             return lastAverage = new ConfidenceQualifiedNumber(lastAverage.value, 0.0d);
         }
 
         // XXX grkvlt - see email to development list
 
         
-        long lastTimestamp = timestamps.get(timestamps.size()-1);
+        long lastTimestamp = stats.getLatestTimestamp();
         Double confidence = ((double)(timePeriod.toMilliseconds() - (now - lastTimestamp))) / timePeriod.toMilliseconds();
         if (confidence <= 0.0d) {
-            double lastValue = values.get(values.size()-1).doubleValue();
+            double lastValue = stats.getLatestValue();
             return lastAverage = new ConfidenceQualifiedNumber(lastValue, 0.0d);
         }
         
+        // Each value is weighted by the time since the previous one, and the oldest by the time since the start 
+        // of the window; pruning (keeping at least one value) means the oldest is not before the start.
         long start = (now - timePeriod.toMilliseconds());
-        long end;
-        double weightedAverage = 0.0d;
-        
-        Iterator<T> valuesIter = values.iterator();
-        Iterator<Long> timestampsIter = timestamps.iterator();
-        while (valuesIter.hasNext()) {
-            // Ignores null and out-of-date values (and also values that are received out-of-order, but that shouldn't happen!)
-            Number val = valuesIter.next();
-            Long timestamp = timestampsIter.next();
-            if (val!=null && timestamp >= start) {
-                end = timestamp;
-                weightedAverage += ((end - start) / (confidence * timePeriod.toMilliseconds())) * val.doubleValue();
-                start = timestamp;
-            }
-        }
+        double weightedTotal = (stats.getOldestTimestamp() - start) * stats.getOldestValue() + stats.getTimeWeightedSum();
+        double weightedAverage = weightedTotal / (confidence * timePeriod.toMilliseconds());
         
         return lastAverage = new ConfidenceQualifiedNumber(weightedAverage, confidence);
     }
     
     /**
+     * Created on first use, as {@link #timePeriod} is set after construction when rebinding.
      * Discards out-of-date values, but keeps at least one value.
      */
-    private void pruneValues(long now) {
-        while(timestamps.size() > 1 && timestamps.get(0) < (now - timePeriod.toMilliseconds())) {
-            timestamps.removeFirst();
-            values.removeFirst();
+    private synchronized TimeWindowedDoubles getValues() {
+        if (values == null) {
+            values = new TimeWindowedDoubles(timePeriod, Integer.MAX_VALUE, 1);
         }
+        return values;
     }
 }
@@ -63,7 +63,9 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 /**
  * Policy that is attached to a {@link Resizable} entity and dynamically adjusts its size in response to
  * emitted {@code POOL_COLD} and {@code POOL_HOT} events. Alternatively, the policy can be configured to
- * keep a given metric within a required range.
+ * keep a given metric within a required range. The value kept in range is by default the metric's latest value,
+ * but can instead be derived from its recent values by a {@link MetricEstimator}, e.g. a rolling percentile, 
+ * or a forecast so that the pool is resized for predicted rather than current load.
  * <p>
  * TThis policy does not itself determine whether the pool is hot or cold, but instead relies on these 
  * events being emitted by the monitored entity itself, or by another policy that is attached to it; see, 
@@ -100,6 +102,8 @@ public class AutoScalerPolicy extends AbstractPolicy {
         private BasicNotificationSensor<?> poolOkSensor;
         private BasicNotificationSensor<? super MaxPoolSizeReachedEvent> maxSizeReachedSensor;
         private Duration maxReachedNotificationDelay;
+        private MetricEstimator metricEstimator;
+        private Duration metricWindow;
         
         public Builder id(String val) {
             this.id = val; return this;
@@ -193,6 +197,12 @@ public class AutoScalerPolicy extends AbstractPolicy {
         public Builder maxReachedNotificationDelay(Duration val) {
             this.maxReachedNotificationDelay = val; return this;
         }
+        public Builder metricEstimator(MetricEstimator val) {
+            this.metricEstimator = val; return this;
+        }
+        public Builder metricWindow(Duration val) {
+            this.metricWindow = val; return this;
+        }
         public AutoScalerPolicy build() {
             return new AutoScalerPolicy(toFlags());
         }
@@ -220,6 +230,8 @@ public class AutoScalerPolicy extends AbstractPolicy {
                     .putIfNotNull("poolOkSensor", poolOkSensor)
                     .putIfNotNull("maxSizeReachedSensor", maxSizeReachedSensor)
                     .putIfNotNull("maxReachedNotificationDelay", maxReachedNotificationDelay)
+                    .putIfNotNull("metricEstimator", metricEstimator)
+                    .putIfNotNull("metricWindow", metricWindow)
                     .build();
         }
     }
@@ -237,6 +249,12 @@ public class AutoScalerPolicy extends AbstractPolicy {
                 };
             }
         });
+        TypeCoercions.registerAdapter(String.class, MetricEstimator.class, new Function<String,MetricEstimator>() {
+            @Override
+            public MetricEstimator apply(String input) {
+                return MetricEstimators.fromString(input);
+            }
+        });
     }
     
     // Pool workrate notifications.
@@ -282,6 +300,29 @@ public class AutoScalerPolicy extends AbstractPolicy {
             .reconfigurable(true)
             .build();
     
+    @SetFromFlag("metricEstimator")
+    public static final ConfigKey<MetricEstimator> METRIC_ESTIMATOR = BasicConfigKey.builder(MetricEstimator.class)
+            .name("autoscaler.metricEstimator")
+            .description("How the value compared against the metric bounds is derived from the metric's recent values, " +
+                    "e.g. a rolling percentile or a forecast (see MetricEstimators); defaults to the latest value")
+            .defaultValue(MetricEstimators.latest())
+            .reconfigurable(true)
+            .build();
+    
+    @SetFromFlag("metricWindow")
+    public static final ConfigKey<Duration> METRIC_WINDOW = BasicConfigKey.builder(Duration.class)
+            .name("autoscaler.metricWindow")
+            .description("Time window of the metric's recent values, used by the metricEstimator")
+            .defaultValue(Duration.ONE_MINUTE)
+            .build();
+    
+    @SetFromFlag("metricWindowMaxSamples")
+    public static final ConfigKey<Integer> METRIC_WINDOW_MAX_SAMPLES = BasicConfigKey.builder(Integer.class)
+            .name("autoscaler.metricWindowMaxSamples")
+            .description("Max number of the metric's values kept in the metricWindow; if more arrive within the window, the oldest are dropped")
+            .defaultValue(1000)
+            .build();
+    
     @SetFromFlag("minPeriodBetweenExecs")
     public static final ConfigKey<Duration> MIN_PERIOD_BETWEEN_EXECS = BasicConfigKey.builder(Duration.class)
             .name("autoscaler.minPeriodBetweenExecs")
@@ -378,6 +419,8 @@ public class AutoScalerPolicy extends AbstractPolicy {
 
     private SizeHistory recentDesiredResizes;
     
+    private MetricWindow recentMetricValues;
+    
     private long maxReachedLastNotifiedTime;
     
     private final SensorEventListener<Map> utilizationEventHandler = new SensorEventListener<Map>() {
@@ -429,6 +472,8 @@ public class AutoScalerPolicy extends AbstractPolicy {
         long maxResizeStabilizationDelay = Math.max(getResizeUpStabilizationDelay().toMilliseconds(), getResizeDownStabilizationDelay().toMilliseconds());
         recentDesiredResizes = new SizeHistory(maxResizeStabilizationDelay);
         
+        recentMetricValues = new MetricWindow(getConfig(METRIC_WINDOW), getConfig(METRIC_WINDOW_MAX_SAMPLES));
+        
         // TODO Should re-use the execution manager's thread pool, somehow
         executor = Executors.newSingleThreadScheduledExecutor(newThreadFactory());
     }
@@ -505,6 +550,10 @@ public class AutoScalerPolicy extends AbstractPolicy {
         return getConfig(METRIC_UPPER_BOUND);
     }
     
+    private MetricEstimator getMetricEstimator() {
+        return getConfig(METRIC_ESTIMATOR);
+    }
+    
     private Duration getMinPeriodBetweenExecs() {
         return getConfig(MIN_PERIOD_BETWEEN_EXECS);
     }
@@ -567,6 +616,8 @@ public class AutoScalerPolicy extends AbstractPolicy {
             // and same for those below...
         } else if (key.equals(METRIC_UPPER_BOUND)) {
 
+        } else if (key.equals(METRIC_ESTIMATOR)) {
+
         } else if (key.equals(MIN_POOL_SIZE)) {
             int newMin = (Integer) val;
             if (newMin > getConfig(MAX_POOL_SIZE)) {
@@ -663,7 +714,16 @@ public class AutoScalerPolicy extends AbstractPolicy {
             return;
         }
         
-        double currentMetricD = val.doubleValue();
+        long now = System.currentTimeMillis();
+        recentMetricValues.add(now, val.doubleValue());
+        Double estimate = getMetricEstimator().estimate(recentMetricValues, now);
+        if (estimate == null) {
+            if (LOG.isTraceEnabled()) LOG.trace("{} not resizing pool {}, no estimate of metric from {}", new Object[] {this, poolEntity, recentMetricValues});
+            return;
+        }
+        if (LOG.isTraceEnabled() && estimate != val.doubleValue()) LOG.trace("{} using {} estimate of pool-metric for {}: {}", new Object[] {this, getMetricEstimator(), poolEntity, estimate});
+        
+        double currentMetricD = estimate;
         double metricUpperBoundD = getMetricUpperBound().doubleValue();
         double metricLowerBoundD = getMetricLowerBound().doubleValue();
         int currentSize = getCurrentSizeOperator().apply(entity);
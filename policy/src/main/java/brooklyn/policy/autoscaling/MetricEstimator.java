@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.policy.autoscaling;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Derives the value of the {@link AutoScalerPolicy}'s metric to compare against its bounds,
+ * from the metric's recent values; see {@link MetricEstimators} for the usual ones.
+ */
+@Beta
+public interface MetricEstimator {
+
+    /**
+     * @return the value to scale on, given the metric's recent values; or null if there is not enough data to act on
+     */
+    public Double estimate(MetricWindow window, long now);
+}
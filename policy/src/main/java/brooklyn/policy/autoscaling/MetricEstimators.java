@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.policy.autoscaling;
+
+import java.io.Serializable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * The {@link MetricEstimator}s for the {@link AutoScalerPolicy}: the latest value (the default), the window's mean,
+ * its exponentially weighted moving average, a rolling percentile, or a forecast of the value a given time ahead.
+ * <p>
+ * These can also be given as strings (e.g. in YAML), as {@code latest}, {@code mean}, {@code ewma},
+ * {@code percentile(95)} or {@code forecast(5m)}.
+ */
+@Beta
+public class MetricEstimators {
+
+    private static final Pattern WITH_ARG = Pattern.compile("\\s*(\\w+)\\s*\\(\\s*(.*?)\\s*\\)\\s*");
+
+    private MetricEstimators() {}
+
+    /** The most recent value, i.e. reacting to each value as it arrives. */
+    public static MetricEstimator latest() {
+        return new Latest();
+    }
+
+    /** The mean of the values in the window. */
+    public static MetricEstimator mean() {
+        return new Mean();
+    }
+
+    /** The exponentially weighted moving average, with the window as its time constant. */
+    public static MetricEstimator ewma() {
+        return new Ewma();
+    }
+
+    /** The given percentile (between 0 and 100) of the values in the window, e.g. 95 to ignore occasional spikes. */
+    public static MetricEstimator percentile(double percentile) {
+        return new Percentile(percentile);
+    }
+
+    /**
+     * The value forecast for the given time ahead (e.g. the time taken to add a member), by linear regression
+     * over the values in the window; so the policy scales on predicted rather than current load.
+     */
+    public static MetricEstimator forecast(Duration horizon) {
+        return new Forecast(horizon);
+    }
+
+    public static MetricEstimator fromString(String val) {
+        String name = val.trim();
+        String arg = null;
+        Matcher matcher = WITH_ARG.matcher(val);
+        if (matcher.matches()) {
+            name = matcher.group(1);
+            arg = matcher.group(2);
+        }
+        if (name.equalsIgnoreCase("latest") && arg == null) {
+            return latest();
+        } else if (name.equalsIgnoreCase("mean") && arg == null) {
+            return mean();
+        } else if (name.equalsIgnoreCase("ewma") && arg == null) {
+            return ewma();
+        } else if (name.equalsIgnoreCase("percentile") && arg != null) {
+            return percentile(Double.parseDouble(arg));
+        } else if (name.equalsIgnoreCase("forecast") && arg != null) {
+            return forecast(Duration.of(arg));
+        } else {
+            throw new IllegalArgumentException("Invalid metric estimator '"+val+"'; expected one of latest, mean, ewma, "
+                    + "percentile(<0-100>) or forecast(<duration>)");
+        }
+    }
+
+    private static class Latest implements MetricEstimator, Serializable {
+        private static final long serialVersionUID = -5384283624405329446L;
+        @Override public Double estimate(MetricWindow window, long now) {
+            return window.getLatest();
+        }
+        @Override public String toString() {
+            return "latest";
+        }
+    }
+
+    private static class Mean implements MetricEstimator, Serializable {
+        private static final long serialVersionUID = 4126342532876003917L;
+        @Override public Double estimate(MetricWindow window, long now) {
+            return window.getMean(now);
+        }
+        @Override public String toString() {
+            return "mean";
+        }
+    }
+
+    private static class Ewma implements MetricEstimator, Serializable {
+        private static final long serialVersionUID = -2043935311396436455L;
+        @Override public Double estimate(MetricWindow window, long now) {
+            return window.getEwma();
+        }
+        @Override public String toString() {
+            return "ewma";
+        }
+    }
+
+    private static class Percentile implements MetricEstimator, Serializable {
+        private static final long serialVersionUID = 8779270361633917519L;
+        private final double percentile;
+        Percentile(double percentile) {
+            Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100, but was %s", percentile);
+            this.percentile = percentile;
+        }
+        @Override public Double estimate(MetricWindow window, long now) {
+            return window.getPercentile(now, percentile);
+        }
+        @Override public boolean equals(Object obj) {
+            return (obj instanceof Percentile) && ((Percentile)obj).percentile == percentile;
+        }
+        @Override public int hashCode() {
+            return Objects.hashCode(percentile);
+        }
+        @Override public String toString() {
+            return "percentile("+percentile+")";
+        }
+    }
+
+    private static class Forecast implements MetricEstimator, Serializable {
+        private static final long serialVersionUID = 1934026718370357108L;
+        private final Duration horizon;
+        Forecast(Duration horizon) {
+            this.horizon = Preconditions.checkNotNull(horizon, "horizon");
+        }
+        @Override public Double estimate(MetricWindow window, long now) {
+            return window.getForecast(now, horizon);
+        }
+        @Override public boolean equals(Object obj) {
+            return (obj instanceof Forecast) && ((Forecast)obj).horizon.equals(horizon);
+        }
+        @Override public int hashCode() {
+            return horizon.hashCode();
+        }
+        @Override public String toString() {
+            return "forecast("+horizon+")";
+        }
+    }
+}
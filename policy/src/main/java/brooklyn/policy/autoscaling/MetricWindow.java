@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.policy.autoscaling;
+
+import java.util.Arrays;
+
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * The recent values of a metric, within a time window, from which statistics such as the mean, rolling
+ * percentiles, an exponentially weighted moving average and a linear-regression forecast can be obtained.
+ * <p>
+ * Values are held in a fixed-size ring buffer, so memory is bounded whatever the rate of values: if more
+ * than {@code maxSamples} values arrive within the window then the oldest are dropped early. Adding a value
+ * is O(1) amortized (the sums for the mean and regression are maintained incrementally, and recomputed
+ * only occasionally to avoid accumulating rounding errors); percentiles sort a copy of the window's values.
+ * <p>
+ * The most recent value is always kept, even once older than the window, so that there is something
+ * to act on if the metric stops changing.
+ */
+@Beta
+public class MetricWindow {
+
+    private final long windowMillis;
+    private final long[] timestamps;
+    private final double[] values;
+    private int head;
+    private int size;
+
+    // for the mean and linear regression; times are relative to base, which is moved on occasionally
+    private long base;
+    private double sumT;
+    private double sumV;
+    private double sumTT;
+    private double sumTV;
+
+    private double ewma = Double.NaN;
+    private long ewmaTime;
+
+    public MetricWindow(Duration window, int maxSamples) {
+        Preconditions.checkArgument(maxSamples > 0, "maxSamples must be positive, but was %s", maxSamples);
+        this.windowMillis = Math.max(0, window.toMilliseconds());
+        this.timestamps = new long[maxSamples];
+        this.values = new double[maxSamples];
+    }
+
+    public Duration getWindow() {
+        return Duration.millis(windowMillis);
+    }
+
+    public synchronized void add(long timestamp, double value) {
+        if (size == values.length) {
+            removeOldest();
+        }
+        updateEwma(timestamp, value);
+
+        if (size == 0) {
+            resetSums(timestamp);
+        } else if (timestamp - base > 4 * Math.max(windowMillis, 1000)) {
+            rebase();
+        }
+        int index = (head + size) % values.length;
+        timestamps[index] = timestamp;
+        values[index] = value;
+        size++;
+        addToSums(timestamp, value);
+
+        prune(timestamp);
+    }
+
+    private void updateEwma(long timestamp, double value) {
+        if (Double.isNaN(ewma) || windowMillis == 0) {
+            ewma = value;
+        } else {
+            // decays by the time since the last value, with the window as the time constant, so irregular intervals are weighted fairly
+            double alpha = 1 - Math.exp(-Math.max(0, timestamp - ewmaTime) / (double) windowMillis);
+            ewma += alpha * (value - ewma);
+        }
+        ewmaTime = timestamp;
+    }
+
+    /** The number of values in the window (at least one, if there has ever been a value). */
+    public synchronized int size(long now) {
+        prune(now);
+        return size;
+    }
+
+    /** The most recent value, or null if there have been none. */
+    public synchronized Double getLatest() {
+        return (size == 0) ? null : values[(head + size - 1) % values.length];
+    }
+
+    /** The exponentially weighted moving average of all values, with the window as its time constant; null if there have been none. */
+    public synchronized Double getEwma() {
+        return Double.isNaN(ewma) ? null : ewma;
+    }
+
+    /** The mean of the values in the window, or null if there have been none. */
+    public synchronized Double getMean(long now) {
+        prune(now);
+        return (size == 0) ? null : sumV / size;
+    }
+
+    /**
+     * The given percentile (between 0 and 100) of the values in the window, using the nearest-rank method;
+     * or null if there have been none.
+     */
+    public synchronized Double getPercentile(long now, double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100, but was %s", percentile);
+        prune(now);
+        if (size == 0) return null;
+        double[] sorted = new double[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = values[(head + i) % values.length];
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * size);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /** The slope of the least-squares line through the values in the window, per second; zero if fewer than two values. */
+    public synchronized double getTrend(long now) {
+        prune(now);
+        return slopePerMilli() * 1000;
+    }
+
+    /**
+     * The value forecast for the given time ahead of now, by extrapolating the least-squares line through
+     * the values in the window; or null if there have been none. With only one value, that is the forecast.
+     */
+    public synchronized Double getForecast(long now, Duration horizon) {
+        prune(now);
+        if (size == 0) return null;
+        double meanT = sumT / size;
+        double meanV = sumV / size;
+        double target = (now + horizon.toMilliseconds()) - base;
+        return meanV + slopePerMilli() * (target - meanT);
+    }
+
+    private double slopePerMilli() {
+        if (size < 2) return 0;
+        double denominator = size * sumTT - sumT * sumT;
+        if (denominator <= 0) return 0;
+        return (size * sumTV - sumT * sumV) / denominator;
+    }
+
+    private void prune(long now) {
+        long cutoff = now - windowMillis;
+        while (size > 1 && timestamps[head] < cutoff) {
+            removeOldest();
+        }
+    }
+
+    private void removeOldest() {
+        removeFromSums(timestamps[head], values[head]);
+        head = (head + 1) % values.length;
+        size--;
+    }
+
+    private void addToSums(long timestamp, double value) {
+        double t = timestamp - base;
+        sumT += t;
+        sumV += value;
+        sumTT += t * t;
+        sumTV += t * value;
+    }
+
+    private void removeFromSums(long timestamp, double value) {
+        double t = timestamp - base;
+        sumT -= t;
+        sumV -= value;
+        sumTT -= t * t;
+        sumTV -= t * value;
+    }
+
+    private void resetSums(long newBase) {
+        base = newBase;
+        sumT = 0;
+        sumV = 0;
+        sumTT = 0;
+        sumTV = 0;
+    }
+
+    /** Recomputes the sums relative to the oldest value, keeping them small and discarding accumulated rounding errors. */
+    private void rebase() {
+        resetSums(timestamps[head]);
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % values.length;
+            addToSums(timestamps[index], values[index]);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Objects.toStringHelper(this).add("window", getWindow()).add("size", size)
+                .add("latest", getLatest()).add("ewma", getEwma()).toString();
+    }
+}
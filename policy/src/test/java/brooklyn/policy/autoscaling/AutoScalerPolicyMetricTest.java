@@ -40,6 +40,8 @@ import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestCluster;
 import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.time.Duration;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -93,6 +95,37 @@ public class AutoScalerPolicyMetricTest {
         Asserts.succeedsEventually(ImmutableMap.of("timeout", TIMEOUT_MS), currentSizeAsserter(tc, 1));
     }
     
+    @Test
+    public void testIncrementsSizeOnForecastMetric() {
+        tc.resize(1);
+        
+        AutoScalerPolicy policy = new AutoScalerPolicy.Builder().metric(MY_ATTRIBUTE).metricLowerBound(50).metricUpperBound(100)
+                .maxPoolSize(3)
+                .metricEstimator(MetricEstimators.forecast(Duration.ONE_MINUTE))
+                .build();
+        tc.addPolicy(policy);
+
+        // still below the upper bound, but rising fast
+        tc.setAttribute(MY_ATTRIBUTE, 60);
+        Asserts.succeedsContinually(ImmutableMap.of("timeout", SHORT_WAIT_MS), currentSizeAsserter(tc, 1));
+        tc.setAttribute(MY_ATTRIBUTE, 80);
+        Asserts.succeedsEventually(ImmutableMap.of("timeout", TIMEOUT_MS), currentSizeAsserter(tc, 3));
+    }
+    
+    @Test
+    public void testMetricEstimatorFromString() {
+        tc.resize(2);
+        
+        AutoScalerPolicy policy = new AutoScalerPolicy(MutableMap.of("metric", MY_ATTRIBUTE, "metricLowerBound", 50, "metricUpperBound", 100,
+                "metricEstimator", "percentile(100)"));
+        tc.addPolicy(policy);
+
+        // the high value stays in the window, so the low one does not cause a resize
+        tc.setAttribute(MY_ATTRIBUTE, 90);
+        tc.setAttribute(MY_ATTRIBUTE, 10);
+        Asserts.succeedsContinually(ImmutableMap.of("timeout", SHORT_WAIT_MS), currentSizeAsserter(tc, 2));
+    }
+    
     @Test(groups="Integration")
     public void testIncrementsSizeInProportionToMetric() {
         tc.resize(5);
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.policy.autoscaling;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.time.Duration;
+
+public class MetricWindowTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void testEmptyWindow() {
+        MetricWindow window = new MetricWindow(Duration.seconds(10), 100);
+        assertNull(window.getLatest());
+        assertNull(window.getMean(0));
+        assertNull(window.getEwma());
+        assertNull(window.getPercentile(0, 50));
+        assertNull(window.getForecast(0, Duration.ONE_MINUTE));
+        assertEquals(window.getTrend(0), 0d);
+    }
+
+    @Test
+    public void testStatisticsOfValuesInWindow() {
+        MetricWindow window = new MetricWindow(Duration.seconds(10), 100);
+        for (int i = 1; i <= 10; i++) {
+            window.add(i*1000, i*10);
+        }
+        assertEquals(window.size(10000), 10);
+        assertEquals(window.getLatest(), 100d, DELTA);
+        assertEquals(window.getMean(10000), 55d, DELTA);
+        assertEquals(window.getPercentile(10000, 50), 50d, DELTA);
+        assertEquals(window.getPercentile(10000, 95), 100d, DELTA);
+        assertEquals(window.getPercentile(10000, 0), 10d, DELTA);
+        // 10 per second, so forecast 5 seconds ahead is 150
+        assertEquals(window.getTrend(10000), 10d, DELTA);
+        assertEquals(window.getForecast(10000, Duration.seconds(5)), 150d, DELTA);
+    }
+
+    @Test
+    public void testDropsValuesOutsideWindowButKeepsLatest() {
+        MetricWindow window = new MetricWindow(Duration.seconds(10), 100);
+        window.add(1000, 10);
+        window.add(2000, 20);
+        window.add(15000, 30);
+        assertEquals(window.size(15000), 1);
+        assertEquals(window.getMean(15000), 30d, DELTA);
+
+        assertEquals(window.size(100000), 1);
+        assertEquals(window.getMean(100000), 30d, DELTA);
+        assertEquals(window.getForecast(100000, Duration.ONE_MINUTE), 30d, DELTA);
+    }
+
+    @Test
+    public void testMemoryBoundedWhateverTheRate() {
+        MetricWindow window = new MetricWindow(Duration.ONE_HOUR, 10);
+        for (int i = 0; i < 1000; i++) {
+            window.add(i, i);
+        }
+        assertEquals(window.size(1000), 10);
+        assertEquals(window.getMean(1000), 994.5d, DELTA);
+    }
+
+    @Test
+    public void testStatisticsStayAccurateOverLongRuns() {
+        MetricWindow window = new MetricWindow(Duration.seconds(10), 100);
+        MetricWindow fresh = new MetricWindow(Duration.seconds(10), 100);
+        long start = System.currentTimeMillis();
+        int count = 100000;
+        for (int i = 0; i < count; i++) {
+            long timestamp = start + i*1000L;
+            double value = 1000000 + (i % 7) * 0.5 + i;
+            window.add(timestamp, value);
+            if (i >= count - 11) fresh.add(timestamp, value);
+        }
+        long now = start + (count-1)*1000L;
+        assertEquals(window.size(now), fresh.size(now));
+        assertEquals(window.getMean(now), fresh.getMean(now), 0.000001);
+        assertEquals(window.getTrend(now), fresh.getTrend(now), 0.000001);
+        assertEquals(window.getForecast(now, Duration.ONE_MINUTE), fresh.getForecast(now, Duration.ONE_MINUTE), 0.000001);
+    }
+
+    @Test
+    public void testEwmaWeightsRecentValues() {
+        MetricWindow window = new MetricWindow(Duration.seconds(10), 100);
+        window.add(0, 100);
+        assertEquals(window.getEwma(), 100d, DELTA);
+        window.add(10000, 0);
+        // one time-constant later, so moved 1-1/e of the way
+        assertEquals(window.getEwma(), 100 * Math.exp(-1), DELTA);
+    }
+
+    @Test
+    public void testEstimatorsFromString() {
+        MetricWindow window = new MetricWindow(Duration.seconds(10), 100);
+        for (int i = 1; i <= 10; i++) {
+            window.add(i*1000, i*10);
+        }
+        assertEquals(MetricEstimators.fromString("latest").estimate(window, 10000), 100d, DELTA);
+        assertEquals(MetricEstimators.fromString("mean").estimate(window, 10000), 55d, DELTA);
+        assertEquals(MetricEstimators.fromString("percentile(90)").estimate(window, 10000), 90d, DELTA);
+        assertEquals(MetricEstimators.fromString("forecast(5s)").estimate(window, 10000), 150d, DELTA);
+        assertEquals(MetricEstimators.fromString(" Forecast ( 5s ) ").toString(), MetricEstimators.forecast(Duration.seconds(5)).toString());
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testInvalidEstimatorString() {
+        MetricEstimators.fromString("median");
+    }
+}
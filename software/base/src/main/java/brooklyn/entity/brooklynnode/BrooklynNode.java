@@ -48,6 +48,7 @@ import brooklyn.util.net.Networking;
 import brooklyn.util.ssh.BashCommands;
 import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
@@ -227,6 +228,18 @@ public interface BrooklynNode extends SoftwareProcess, UsesJava {
     public static final AttributeSensor<ManagementNodeState> MANAGEMENT_NODE_STATE = new BasicAttributeSensor<ManagementNodeState>(
             ManagementNodeState.class, "brooklynnode.ha.state", "High-availability state of the management node (MASTER, HOT_STANDBY, etc)");
     
+    @Beta
+    public static final AttributeSensor<Integer> HTTP_POOL_LEASED = Sensors.newIntegerSensor(
+            "brooklynnode.http.pool.leased", "Pooled http connections in use by the management node (e.g. by http feeds)");
+
+    @Beta
+    public static final AttributeSensor<Integer> HTTP_POOL_AVAILABLE = Sensors.newIntegerSensor(
+            "brooklynnode.http.pool.available", "Pooled http connections of the management node which are idle and kept alive");
+
+    @Beta
+    public static final AttributeSensor<Integer> HTTP_POOL_PENDING = Sensors.newIntegerSensor(
+            "brooklynnode.http.pool.pending", "Requests of the management node waiting for a pooled http connection");
+
     public static final ConfigKey<Duration> POLL_PERIOD = ConfigKeys.newConfigKey(Duration.class, "brooklynnode.poll_period",
             "Frequency to poll for client sensors", Duration.seconds(2));
 
@@ -427,6 +427,18 @@ public class BrooklynNodeImpl extends SoftwareProcessImpl implements BrooklynNod
                             .suburl("/v1/server/ha/state")
                             .onSuccess(Functionals.chain(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.cast(String.class)), Enums.fromStringFunction(ManagementNodeState.class)))
                             .setOnFailureOrException(null))
+                    .poll(new HttpPollConfig<Integer>(HTTP_POOL_LEASED)
+                            .suburl("/v1/server/ha/metrics")
+                            .onSuccess(HttpValueFunctions.jsonContents(new String[] {"httpClientPool", "leased"}, Integer.class))
+                            .setOnFailureOrException(null))
+                    .poll(new HttpPollConfig<Integer>(HTTP_POOL_AVAILABLE)
+                            .suburl("/v1/server/ha/metrics")
+                            .onSuccess(HttpValueFunctions.jsonContents(new String[] {"httpClientPool", "available"}, Integer.class))
+                            .setOnFailureOrException(null))
+                    .poll(new HttpPollConfig<Integer>(HTTP_POOL_PENDING)
+                            .suburl("/v1/server/ha/metrics")
+                            .onSuccess(HttpValueFunctions.jsonContents(new String[] {"httpClientPool", "pending"}, Integer.class))
+                            .setOnFailureOrException(null))
                     // TODO sensors for load, size, etc
                     .build();
 
@@ -0,0 +1,412 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.jmx;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Reference-counted JMX connections, shared by all {@link JmxHelper}s connecting to the same url
+ * with the same connection environment (e.g. credentials); so an entity's feeds, effectors and
+ * {@code JavaAppUtils} sensors all use one connection to its JVM.
+ * <p>
+ * A connection is closed when its last user releases it. A connection that reports itself failed or closed,
+ * or which does not respond to a health check (made when it is next acquired if not checked within the 
+ * health-check interval, or when a user {@link PooledConnection#verify() reports a problem}), is replaced by a new one.
+ * Connects and health checks are made without holding any lock, so a slow server does not hold up its other users.
+ * <p>
+ * Environments are compared with equals (credential arrays by content), so those with non-comparable entries
+ * such as the SSL socket factory of a JMXMP-over-TLS helper are never shared.
+ */
+@Beta
+public class JmxConnectionPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmxConnectionPool.class);
+
+    public static final Duration DEFAULT_HEALTH_CHECK_INTERVAL = Duration.seconds(30);
+
+    private static final JmxConnectionPool DEFAULT = new JmxConnectionPool(DEFAULT_HEALTH_CHECK_INTERVAL);
+
+    /** the pool used by all {@link JmxHelper}s */
+    public static JmxConnectionPool getDefault() {
+        return DEFAULT;
+    }
+
+    private final Duration healthCheckInterval;
+    private final Map<Key, Entry> entries = Maps.newLinkedHashMap();
+
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong healthCheckFailures = new AtomicLong();
+    private final List<Long> recentReconnectTimes = new LinkedList<Long>();
+
+    public JmxConnectionPool(Duration healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /**
+     * Returns a connection to the given url, connecting if there is not already a healthy one
+     * shared with the same environment. The caller must {@link PooledConnection#release() release} it when done.
+     */
+    public PooledConnection acquire(String url, Map<String, ?> env) throws IOException {
+        Key key = new Key(url, env);
+        while (true) {
+            Entry entry;
+            synchronized (entries) {
+                entry = entries.get(key);
+                if (entry == null) {
+                    entry = new Entry(key);
+                    entries.put(key, entry);
+                }
+                entry.refCount++;
+            }
+
+            synchronized (entry) {
+                if (entry.removed) {
+                    // raced with the last user releasing it; try again with a new entry
+                    continue;
+                }
+            }
+            try {
+                return acquire(entry, env);
+            } catch (IOException e) {
+                release(entry);
+                throw e;
+            } catch (RuntimeException e) {
+                release(entry);
+                throw e;
+            }
+        }
+    }
+
+    // health checks and connects are made without holding the entry's lock, so that one slow or unreachable 
+    // server does not hold up its other users (nor the release of the connection); the result is then published 
+    // under the lock unless another user has got there first
+    private PooledConnection acquire(Entry entry, Map<String, ?> env) throws IOException {
+        while (true) {
+            JMXConnector connector;
+            MBeanServerConnection connection;
+            boolean healthy;
+            boolean checked;
+            synchronized (entry) {
+                connector = entry.connector;
+                connection = entry.connection;
+                healthy = (connector != null) && entry.healthy;
+                checked = System.currentTimeMillis() - entry.lastCheckedTime < healthCheckInterval.toMilliseconds();
+            }
+
+            if (healthy && (checked || check(entry, connection))) {
+                if (!checked) {
+                    synchronized (entry) {
+                        if (entry.connector == connector) entry.lastCheckedTime = System.currentTimeMillis();
+                    }
+                }
+                reuses.incrementAndGet();
+                return new PooledConnection(entry, connector, connection);
+            }
+
+            PooledConnection result = connect(entry, env, connector);
+            if (result != null) return result;
+        }
+    }
+
+    private boolean check(Entry entry, MBeanServerConnection connection) {
+        try {
+            connection.getMBeanCount();
+            return true;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            healthCheckFailures.incrementAndGet();
+            if (LOG.isDebugEnabled()) LOG.debug("Health check failed for JMX connection to {} ({})", entry.key.url, e);
+            return false;
+        }
+    }
+
+    /**
+     * Opens a new connection, and puts it in place of the given one (or null) which was found to be missing or 
+     * unhealthy; returns null, having closed the new connection, if another user has replaced it in the meantime.
+     */
+    private PooledConnection connect(final Entry entry, Map<String, ?> env, JMXConnector previous) throws IOException {
+        JMXConnector connector;
+        try {
+            connector = JMXConnectorFactory.connect(new JMXServiceURL(entry.key.url), env);
+        } catch (IOException e) {
+            connectFailures.incrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            connectFailures.incrementAndGet();
+            throw e;
+        }
+        final MBeanServerConnection connection;
+        try {
+            connection = connector.getMBeanServerConnection();
+        } catch (IOException e) {
+            connectFailures.incrementAndGet();
+            closeQuietly(entry.key.url, connector);
+            throw e;
+        }
+
+        connector.addConnectionNotificationListener(new NotificationListener() {
+            @Override public void handleNotification(Notification notification, Object handback) {
+                String type = notification.getType();
+                if (JMXConnectionNotification.FAILED.equals(type) || JMXConnectionNotification.CLOSED.equals(type)) {
+                    if (entry.connection == connection) entry.healthy = false;
+                }
+            }}, null, null);
+
+        boolean installed;
+        boolean replacing = false;
+        synchronized (entry) {
+            installed = (entry.connector == previous);
+            if (installed) {
+                replacing = (previous != null) || entry.connectedBefore;
+                detach(entry);
+                entry.connector = connector;
+                entry.connection = connection;
+                entry.healthy = true;
+                entry.connectedBefore = true;
+                entry.lastCheckedTime = System.currentTimeMillis();
+            }
+        }
+        if (!installed) {
+            // another user has already replaced it; use theirs
+            closeQuietly(entry.key.url, connector);
+            return null;
+        }
+        if (previous != null) closeQuietly(entry.key.url, previous);
+
+        connects.incrementAndGet();
+        if (replacing) {
+            reconnects.incrementAndGet();
+            synchronized (recentReconnectTimes) {
+                recentReconnectTimes.add(System.currentTimeMillis());
+            }
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("{} shared JMX connection to {}", (replacing ? "Re-opened" : "Opened"), entry.key.url);
+        return new PooledConnection(entry, connector, connection);
+    }
+
+    private void release(Entry entry) {
+        JMXConnector connector = null;
+        synchronized (entry) {
+            boolean last;
+            synchronized (entries) {
+                last = (--entry.refCount <= 0);
+                if (last) {
+                    entry.removed = true;
+                    entries.remove(entry.key);
+                }
+            }
+            if (last) connector = detach(entry);
+        }
+        if (connector != null) closeQuietly(entry.key.url, connector);
+    }
+
+    private void verify(Entry entry, JMXConnector connector, MBeanServerConnection connection) {
+        synchronized (entry) {
+            // only if not already replaced by another user of the connection
+            if (entry.connector != connector) return;
+        }
+        if (!check(entry, connection)) {
+            synchronized (entry) {
+                if (entry.connector != connector) return;
+                detach(entry);
+            }
+            closeQuietly(entry.key.url, connector);
+        }
+    }
+
+    /** clears the entry's connection, returning it (or null) for the caller to close; must be called holding the entry's lock */
+    private JMXConnector detach(Entry entry) {
+        JMXConnector result = entry.connector;
+        entry.connector = null;
+        entry.connection = null;
+        entry.healthy = false;
+        return result;
+    }
+
+    private static void closeQuietly(String url, JMXConnector connector) {
+        try {
+            if (LOG.isDebugEnabled()) LOG.debug("Closing shared JMX connection to {}", url);
+            connector.close();
+        } catch (Exception e) {
+            // as for JmxHelper.disconnectNow: the other side has often already gone away, so swallow
+            if (LOG.isDebugEnabled()) LOG.debug("Caught exception closing JMX connection to {} ({})", url, e.getMessage());
+            if (LOG.isTraceEnabled()) LOG.trace("Details for exception closing JMX connection", e);
+        }
+    }
+
+    /**
+     * The number of open connections and their users, and counts of connects, reconnects (including those
+     * in the last minute), connect failures, reuses and failed health checks.
+     */
+    public Map<String, Object> getMetrics() {
+        int connections = 0;
+        int references = 0;
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                if (entry.connector != null) connections++;
+                references += entry.refCount;
+            }
+        }
+        long recentReconnects;
+        synchronized (recentReconnectTimes) {
+            long cutoff = System.currentTimeMillis() - Duration.ONE_MINUTE.toMilliseconds();
+            for (Iterator<Long> iter = recentReconnectTimes.iterator(); iter.hasNext();) {
+                if (iter.next() < cutoff) iter.remove();
+            }
+            recentReconnects = recentReconnectTimes.size();
+        }
+        return MutableMap.<String, Object>builder()
+                .put("connections", connections)
+                .put("references", references)
+                .put("connects", connects.get())
+                .put("reconnects", reconnects.get())
+                .put("reconnectsLastMinute", recentReconnects)
+                .put("connectFailures", connectFailures.get())
+                .put("reuses", reuses.get())
+                .put("healthCheckFailures", healthCheckFailures.get())
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("metrics", getMetrics()).toString();
+    }
+
+    /**
+     * A user's reference to a shared connection.
+     */
+    public class PooledConnection {
+        private final Entry entry;
+        private final JMXConnector connector;
+        private final MBeanServerConnection connection;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PooledConnection(Entry entry, JMXConnector connector, MBeanServerConnection connection) {
+            this.entry = entry;
+            this.connector = connector;
+            this.connection = connection;
+        }
+
+        public String getUrl() {
+            return entry.key.url;
+        }
+
+        public JMXConnector getConnector() {
+            return connector;
+        }
+
+        public MBeanServerConnection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Checks the connection still works (e.g. after an IOException), closing it if not so that all its users 
+         * reconnect. Has no effect if it has already been replaced.
+         */
+        public void verify() {
+            JmxConnectionPool.this.verify(entry, connector, connection);
+        }
+
+        /** Gives up this reference; the connection is closed if there are no others. Safe to call more than once. */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                JmxConnectionPool.this.release(entry);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("url", getUrl()).add("released", released.get()).toString();
+        }
+    }
+
+    private static class Entry {
+        final Key key;
+        int refCount;
+        boolean removed;
+        boolean connectedBefore;
+        volatile JMXConnector connector;
+        volatile MBeanServerConnection connection;
+        volatile boolean healthy;
+        long lastCheckedTime;
+
+        Entry(Key key) {
+            this.key = key;
+        }
+    }
+
+    private static class Key {
+        final String url;
+        final Map<String, Object> env;
+
+        Key(String url, Map<String, ?> env) {
+            this.url = url;
+            this.env = Maps.newLinkedHashMap();
+            if (env != null) {
+                for (Map.Entry<String, ?> entry : env.entrySet()) {
+                    Object val = entry.getValue();
+                    // e.g. JMXConnector.CREDENTIALS, which is a String[]
+                    this.env.put(entry.getKey(), (val instanceof Object[]) ? Lists.newArrayList(Arrays.asList((Object[])val)) : val);
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key o = (Key) obj;
+            return url.equals(o.url) && env.equals(o.env);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(url, env);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package brooklyn.event.feed.jmx;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,11 +44,13 @@ import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
 import brooklyn.event.feed.PollHandler;
 import brooklyn.event.feed.Poller;
+import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.time.Duration;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
@@ -297,9 +300,23 @@ public class JmxFeed extends AbstractFeed {
             });
         }
         
-        // Setup polling of sensors
-        for (final String jmxAttributeName : attributePolls.keys()) {
-            registerAttributePoller(attributePolls.get(jmxAttributeName));
+        // Setup polling of sensors; attributes polled at the same period are read together
+        Map<Long, List<Set<JmxAttributePollConfig<?>>>> attributePollsByPeriod = Maps.newLinkedHashMap();
+        for (final String jmxAttributeName : attributePolls.keySet()) {
+            Set<JmxAttributePollConfig<?>> configs = attributePolls.get(jmxAttributeName);
+            long minPeriod = Integer.MAX_VALUE;
+            for (JmxAttributePollConfig<?> config : configs) {
+                if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+            }
+            List<Set<JmxAttributePollConfig<?>>> batch = attributePollsByPeriod.get(minPeriod);
+            if (batch == null) {
+                batch = Lists.newArrayList();
+                attributePollsByPeriod.put(minPeriod, batch);
+            }
+            batch.add(configs);
+        }
+        for (Map.Entry<Long, List<Set<JmxAttributePollConfig<?>>>> entry : attributePollsByPeriod.entrySet()) {
+            registerAttributePoller(entry.getValue(), entry.getKey());
         }
         
         // Setup polling of operations
@@ -358,29 +375,164 @@ public class JmxFeed extends AbstractFeed {
     }
 
     /**
-     * Registers to poll a jmx-attribute for an ObjectName, where all the given configs are for that same ObjectName + attribute.
+     * Registers to poll jmx-attributes at the given period, where each of the given sets of configs is for
+     * a single ObjectName + attribute. Each poll reads all the attributes of an ObjectName with one 
+     * {@link JmxHelper#getAttributes(ObjectName, Collection)} call, rather than a round-trip per attribute.
      */
-    private void registerAttributePoller(Set<JmxAttributePollConfig<?>> configs) {
-        Set<AttributePollHandler<? super Object>> handlers = Sets.newLinkedHashSet();
-        long minPeriod = Integer.MAX_VALUE;
-        
-        final ObjectName objectName = Iterables.get(configs, 0).getObjectName();
-        final String jmxAttributeName = Iterables.get(configs, 0).getAttributeName();
+    private void registerAttributePoller(List<Set<JmxAttributePollConfig<?>>> configsByAttribute, long period) {
+        final Map<ObjectName, Map<String, DelegatingPollHandler<Object>>> handlers = Maps.newLinkedHashMap();
         
-        for (JmxAttributePollConfig<?> config : configs) {
-            handlers.add(new AttributePollHandler<Object>(config, getEntity(), this));
-            if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+        for (Set<JmxAttributePollConfig<?>> configs : configsByAttribute) {
+            ObjectName objectName = Iterables.get(configs, 0).getObjectName();
+            String jmxAttributeName = Iterables.get(configs, 0).getAttributeName();
+            
+            Set<AttributePollHandler<? super Object>> attributeHandlers = Sets.newLinkedHashSet();
+            for (JmxAttributePollConfig<?> config : configs) {
+                attributeHandlers.add(new AttributePollHandler<Object>(config, getEntity(), this));
+            }
+            Map<String, DelegatingPollHandler<Object>> objectNameHandlers = handlers.get(objectName);
+            if (objectNameHandlers == null) {
+                objectNameHandlers = Maps.newLinkedHashMap();
+                handlers.put(objectName, objectNameHandlers);
+            }
+            objectNameHandlers.put(jmxAttributeName, new DelegatingPollHandler<Object>(attributeHandlers));
         }
         
         // TODO Not good calling this holding the synchronization lock
         getPoller().scheduleAtFixedRate(
                 new Callable<Object>() {
                     public Object call() throws Exception {
-                        if (log.isTraceEnabled()) log.trace("jmx attribute polling for {} sensors at {} -> {}", new Object[] {getEntity(), getJmxUri(), jmxAttributeName});
-                        return getHelper().getAttribute(objectName, jmxAttributeName);
+                        if (log.isTraceEnabled()) log.trace("jmx attribute polling for {} sensors at {} -> {}", new Object[] {getEntity(), getJmxUri(), handlers.keySet()});
+                        return readAttributes(handlers);
                     }
                 }, 
-                new DelegatingPollHandler<Object>(handlers), minPeriod);
+                new AttributeBatchPollHandler(handlers), period);
+    }
+
+    /**
+     * Reads the attributes of each ObjectName, keeping going if one fails: attributes that could not be read 
+     * have an {@link AttributeReadFailure} as their value. Throws if nothing at all could be read 
+     * (e.g. not connected), so that it counts as a failed poll.
+     */
+    private Map<ObjectName, Map<String, Object>> readAttributes(Map<ObjectName, Map<String, DelegatingPollHandler<Object>>> handlers) throws Exception {
+        Map<ObjectName, Map<String, Object>> result = Maps.newLinkedHashMap();
+        Exception firstException = null;
+        boolean anyRead = false;
+        
+        for (Map.Entry<ObjectName, Map<String, DelegatingPollHandler<Object>>> entry : handlers.entrySet()) {
+            ObjectName objectName = entry.getKey();
+            Set<String> jmxAttributeNames = entry.getValue().keySet();
+            Map<String, Object> values = Maps.newLinkedHashMap();
+            result.put(objectName, values);
+            
+            Map<String, Object> read;
+            try {
+                read = getHelper().getAttributes(objectName, jmxAttributeNames);
+                anyRead = true;
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                if (firstException == null) firstException = e;
+                for (String jmxAttributeName : jmxAttributeNames) {
+                    values.put(jmxAttributeName, new AttributeReadFailure(e));
+                }
+                continue;
+            }
+            
+            for (String jmxAttributeName : jmxAttributeNames) {
+                if (read == null) {
+                    // no such mbean (yet); as for getAttribute
+                    values.put(jmxAttributeName, null);
+                } else if (read.containsKey(jmxAttributeName)) {
+                    values.put(jmxAttributeName, read.get(jmxAttributeName));
+                } else {
+                    // getAttributes omits those it could not read; ask again individually, to get the reason
+                    try {
+                        values.put(jmxAttributeName, getHelper().getAttribute(objectName, jmxAttributeName));
+                    } catch (Exception e) {
+                        Exceptions.propagateIfFatal(e);
+                        values.put(jmxAttributeName, new AttributeReadFailure(e));
+                    }
+                }
+            }
+        }
+        
+        if (!anyRead && firstException != null) throw firstException;
+        return result;
+    }
+
+    private static class AttributeReadFailure {
+        final Exception exception;
+        
+        AttributeReadFailure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Hands each attribute value read by {@link JmxFeed#readAttributes(Map)} to the handlers for that attribute.
+     */
+    private static class AttributeBatchPollHandler implements PollHandler<Object> {
+        private final Map<ObjectName, Map<String, DelegatingPollHandler<Object>>> handlers;
+        
+        AttributeBatchPollHandler(Map<ObjectName, Map<String, DelegatingPollHandler<Object>>> handlers) {
+            this.handlers = handlers;
+        }
+        
+        @Override
+        public boolean checkSuccess(Object val) {
+            // success or otherwise is decided per attribute
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSuccess(Object val) {
+            Map<ObjectName, Map<String, Object>> values = (Map<ObjectName, Map<String, Object>>) val;
+            for (Map.Entry<ObjectName, Map<String, DelegatingPollHandler<Object>>> entry : handlers.entrySet()) {
+                Map<String, Object> objectNameValues = values.get(entry.getKey());
+                for (Map.Entry<String, DelegatingPollHandler<Object>> attributeEntry : entry.getValue().entrySet()) {
+                    DelegatingPollHandler<Object> handler = attributeEntry.getValue();
+                    Object attributeVal = objectNameValues.get(attributeEntry.getKey());
+                    if (attributeVal instanceof AttributeReadFailure) {
+                        handler.onException(((AttributeReadFailure)attributeVal).exception);
+                    } else if (handler.checkSuccess(attributeVal)) {
+                        handler.onSuccess(attributeVal);
+                    } else {
+                        handler.onFailure(attributeVal);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(Object val) {
+            onSuccess(val);
+        }
+
+        @Override
+        public void onException(Exception exception) {
+            for (Map<String, DelegatingPollHandler<Object>> objectNameHandlers : handlers.values()) {
+                for (DelegatingPollHandler<Object> handler : objectNameHandlers.values()) {
+                    handler.onException(exception);
+                }
+            }
+        }
+
+        @Override
+        public String getDescription() {
+            List<String> descriptions = Lists.newArrayList();
+            for (Map<String, DelegatingPollHandler<Object>> objectNameHandlers : handlers.values()) {
+                for (DelegatingPollHandler<Object> handler : objectNameHandlers.values()) {
+                    descriptions.add(handler.getDescription());
+                }
+            }
+            return descriptions.toString();
+        }
+        
+        @Override
+        public String toString() {
+            return super.toString()+"["+getDescription()+"]";
+        }
     }
 
     /**
@@ -27,6 +27,7 @@ import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -37,6 +38,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
@@ -53,8 +56,6 @@ import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
 import javax.management.remote.JMXConnector;
-import javax.management.remote.JMXConnectorFactory;
-import javax.management.remote.JMXServiceURL;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
@@ -75,6 +76,7 @@ import brooklyn.util.repeat.Repeater;
 import brooklyn.util.time.Duration;
 import brooklyn.util.time.Time;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
@@ -153,7 +155,7 @@ public class JmxHelper {
     final String user;
     final String password;
 
-    private volatile transient JMXConnector connector;
+    private volatile transient JmxConnectionPool.PooledConnection pooledConnection;
     private volatile transient MBeanServerConnection connection;
     private transient boolean triedConnecting;
     private transient boolean failedReconnecting;
@@ -245,6 +247,8 @@ public class JmxHelper {
     }
     
     public synchronized void reconnect() throws IOException {
+        // the connection may be shared; only replace it (for all its users) if it really is broken
+        if (pooledConnection != null) pooledConnection.verify();
         disconnect();
 
         try {
@@ -262,18 +266,20 @@ public class JmxHelper {
         }
     }
 
-    /** attempts to connect immediately */
+    /** 
+     * attempts to connect immediately; the connection is shared (through {@link JmxConnectionPool#getDefault()}) 
+     * with other helpers for the same url and credentials 
+     */
     @SuppressWarnings({ "rawtypes", "unchecked" })
     public synchronized void connect() throws IOException {
         if (terminated.get()) throw new IllegalStateException("JMX Helper "+this+" already terminated");
         if (connection != null) return;
 
+        if (pooledConnection != null) disconnectNow();
         triedConnecting = true;
-        if (connector != null) connector.close();
-        JMXServiceURL serviceUrl = new JMXServiceURL(url);
         Map env = getConnectionEnvVars();
         try {
-            connector = JMXConnectorFactory.connect(serviceUrl, env);
+            pooledConnection = JmxConnectionPool.getDefault().acquire(url, env);
         } catch (NullPointerException npe) {
             //some software -- eg WSO2 -- will throw an NPE exception if the JMX connection can't be created, instead of an IOException.
             //this is a break of contract with the JMXConnectorFactory.connect method, so this code verifies if the NPE is
@@ -293,7 +299,7 @@ public class JmxHelper {
                 throw e;
             }
         }
-        connection = connector.getMBeanServerConnection();
+        connection = pooledConnection.getConnection();
         
         if (terminated.get()) {
             disconnectNow();
@@ -430,20 +436,14 @@ public class JmxHelper {
     
     protected void disconnectNow() {
         triedConnecting = false;
-        if (connector != null) {
+        JmxConnectionPool.PooledConnection oldConnection = pooledConnection;
+        pooledConnection = null;
+        connection = null;
+        if (oldConnection != null) {
             if (LOG.isDebugEnabled()) LOG.debug("Disconnecting from JMX URL {}", url);
-            try {
-                connector.close();
-            } catch (Exception e) {
-                // close attempts to connect to close cleanly; and if it can't, it throws;
-                // often we disconnect as part of shutdown, even if the other side has already stopped --
-                // so swallow exceptions (no situations known where we need a clean closure on the remote side)
-                if (LOG.isDebugEnabled()) LOG.debug("Caught exception disconnecting from JMX at {} ({})", url, e.getMessage());
-                if (LOG.isTraceEnabled()) LOG.trace("Details for exception disconnecting JMX", e);
-            } finally {
-                connector = null;
-                connection = null;
-            }
+            // closes the connection if no other helper is using it, swallowing exceptions:
+            // often we disconnect as part of shutdown, even if the other side has already stopped
+            oldConnection.release();
         }
     }
 
@@ -617,6 +617,35 @@ public class JmxHelper {
         }
     }
 
+    /**
+     * Reads several attributes of the same MBean in one {@link MBeanServerConnection#getAttributes(ObjectName, String[])} 
+     * round-trip. Attributes that could not be read are absent from the result (as per the JMX contract);
+     * use {@link #getAttribute(ObjectName, String)} to find out why.
+     * 
+     * @return the attribute values by name, or null if no MBean matches the given name
+     */
+    @Beta
+    public Map<String, Object> getAttributes(ObjectName objectName, Collection<String> attributes) {
+        final ObjectName realObjectName = toLiteralObjectName(objectName);
+        final String[] attributeNames = attributes.toArray(new String[attributes.size()]);
+        
+        if (realObjectName != null) {
+            AttributeList attributeList = invokeWithReconnect(new Callable<AttributeList>() {
+                    public AttributeList call() throws Exception {
+                        return getConnectionOrFail().getAttributes(realObjectName, attributeNames);
+                    }});
+            
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (Attribute attribute : attributeList.asList()) {
+                result.put(attribute.getName(), attribute.getValue());
+            }
+            if (LOG.isTraceEnabled()) LOG.trace("From {}, for jmx attributes {}.{}, got values {}", new Object[] {url, objectName.getCanonicalName(), attributes, result});
+            return result;
+        } else {
+            return null;
+        }
+    }
+
     public void setAttribute(String objectName, String attribute, Object val) {
         setAttribute(createObjectName(objectName), attribute, val);
     }
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.jmx;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.util.Map;
+
+import javax.management.remote.JMXConnector;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.Entities;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.JmxService;
+import brooklyn.test.entity.LocalManagementContextForTests;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableMap;
+
+public class JmxConnectionPoolTest {
+
+    private static final String LOCALHOST_NAME = "localhost";
+
+    private JmxService jmxService;
+    private JmxConnectionPool pool;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        jmxService = newJmxServiceRetrying(LOCALHOST_NAME, 5);
+        pool = new JmxConnectionPool(Duration.ONE_MINUTE);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (jmxService != null) jmxService.shutdown();
+        jmxService = null;
+    }
+
+    @Test
+    public void testSharesConnectionUntilLastReleased() throws Exception {
+        JmxConnectionPool.PooledConnection conn1 = pool.acquire(jmxService.getUrl(), null);
+        JmxConnectionPool.PooledConnection conn2 = pool.acquire(jmxService.getUrl(), null);
+
+        assertSame(conn1.getConnection(), conn2.getConnection());
+        assertEquals(pool.getMetrics().get("connections"), 1);
+        assertEquals(pool.getMetrics().get("references"), 2);
+        assertEquals(pool.getMetrics().get("connects"), 1L);
+        assertEquals(pool.getMetrics().get("reuses"), 1L);
+
+        conn1.release();
+        conn1.release();
+        assertEquals(pool.getMetrics().get("connections"), 1);
+        assertEquals(pool.getMetrics().get("references"), 1);
+        // still usable by the remaining user
+        conn2.getConnection().getMBeanCount();
+
+        conn2.release();
+        assertEquals(pool.getMetrics().get("connections"), 0);
+        assertEquals(pool.getMetrics().get("references"), 0);
+    }
+
+    @Test
+    public void testDoesNotShareBetweenDifferentCredentials() throws Exception {
+        Map<String, ?> env1 = ImmutableMap.of(JMXConnector.CREDENTIALS, new String[] {"me", "pa55"});
+        Map<String, ?> env2 = ImmutableMap.of(JMXConnector.CREDENTIALS, new String[] {"me", "pa55"});
+        Map<String, ?> env3 = ImmutableMap.of(JMXConnector.CREDENTIALS, new String[] {"you", "pa55"});
+
+        JmxConnectionPool.PooledConnection conn1 = pool.acquire(jmxService.getUrl(), env1);
+        JmxConnectionPool.PooledConnection conn2 = pool.acquire(jmxService.getUrl(), env2);
+        JmxConnectionPool.PooledConnection conn3 = pool.acquire(jmxService.getUrl(), env3);
+        try {
+            assertSame(conn1.getConnection(), conn2.getConnection());
+            assertNotSame(conn1.getConnection(), conn3.getConnection());
+            assertEquals(pool.getMetrics().get("connections"), 2);
+        } finally {
+            conn1.release();
+            conn2.release();
+            conn3.release();
+        }
+    }
+
+    @Test
+    public void testReplacesBrokenConnection() throws Exception {
+        int port = jmxService.getJmxPort();
+        JmxConnectionPool.PooledConnection conn1 = pool.acquire(jmxService.getUrl(), null);
+        JmxConnectionPool.PooledConnection conn2 = pool.acquire(jmxService.getUrl(), null);
+
+        // Simulate temporary network-failure, noticed by one user of the connection
+        jmxService.shutdown();
+        conn1.verify();
+        assertEquals(pool.getMetrics().get("connections"), 0);
+        assertEquals(pool.getMetrics().get("healthCheckFailures"), 1L);
+        jmxService = new JmxService(LOCALHOST_NAME, port);
+
+        // Both users then get the new connection
+        conn1.release();
+        JmxConnectionPool.PooledConnection conn3 = pool.acquire(jmxService.getUrl(), null);
+        conn2.verify();
+        conn2.release();
+        JmxConnectionPool.PooledConnection conn4 = pool.acquire(jmxService.getUrl(), null);
+        try {
+            assertSame(conn3.getConnection(), conn4.getConnection());
+            assertEquals(pool.getMetrics().get("connections"), 1);
+            assertEquals(pool.getMetrics().get("reconnects"), 1L);
+            assertEquals(pool.getMetrics().get("reconnectsLastMinute"), 1L);
+        } finally {
+            conn3.release();
+            conn4.release();
+        }
+    }
+
+    @Test
+    public void testDefaultPoolReportedWithManagementMetrics() throws Exception {
+        LocalManagementContext mgmt = LocalManagementContextForTests.newInstance();
+        try {
+            Map<String, Object> metrics = mgmt.getHighAvailabilityManager().getMetrics();
+            assertEquals(metrics.get("jmxConnectionPool"), JmxConnectionPool.getDefault().getMetrics());
+        } finally {
+            Entities.destroyAll(mgmt);
+        }
+    }
+
+    private JmxService newJmxServiceRetrying(String host, int retries) throws Exception {
+        Exception lastexception = null;
+        for (int i = 0; i < retries; i++) {
+            try {
+                return new JmxService(host, (int)(11000+(500*Math.random())));
+            } catch (Exception e) {
+                lastexception = e;
+            }
+        }
+        throw lastexception;
+    }
+}
@@ -22,6 +22,7 @@ import static brooklyn.test.TestUtils.executeUntilSucceeds;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -77,6 +78,7 @@ import brooklyn.test.entity.TestEntity;
 import brooklyn.test.entity.TestEntityImpl;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
@@ -169,6 +171,61 @@ public class JmxFeedTest {
         assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
     }
 
+    @Test
+    public void testJmxAttributePollsOfSameMBeanReadTogether() throws Exception {
+        final AtomicInteger getAttributeCalls = new AtomicInteger();
+        final AtomicInteger getAttributesCalls = new AtomicInteger();
+        jmxHelper = new JmxHelper(entity) {
+            @Override public Object getAttribute(ObjectName objectName, String attribute) {
+                getAttributeCalls.incrementAndGet();
+                return super.getAttribute(objectName, attribute);
+            }
+            @Override public Map<String, Object> getAttributes(ObjectName objectName, Collection<String> attributes) {
+                getAttributesCalls.incrementAndGet();
+                return super.getAttributes(objectName, attributes);
+            }
+        };
+        jmxService.registerMBean(ImmutableMap.of(attributeName, 42, "myotherattrib", "myval"), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .helper(jmxHelper)
+                .period(50)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .attributeName(attributeName))
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .attributeName("myotherattrib"))
+                .build();
+        
+        assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "myval", TIMEOUT_MS);
+        assertTrue(getAttributesCalls.get() > 0);
+        assertEquals(getAttributeCalls.get(), 0);
+    }
+
+    @Test
+    public void testJmxAttributePollsReportEachUnreadableAttribute() throws Exception {
+        jmxService.registerMBean(ImmutableMap.of(attributeName, 42), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .period(50)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .attributeName(attributeName))
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName("Brooklyn:type=MyTestMBean,name=doesnotexist")
+                        .attributeName(attributeName)
+                        .onException(Functions.constant("failed")))
+                .build();
+        
+        // the unknown mbean's failure is reported to its own sensor, and does not stop the other being read
+        assertSensorEventually(stringAttribute, "failed", TIMEOUT_MS);
+        assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+    }
+
     @Test
     public void testJmxAttributeOfTypeTabularDataProviderConvertedToMap() throws Exception {
         // Create the CompositeType and TabularData
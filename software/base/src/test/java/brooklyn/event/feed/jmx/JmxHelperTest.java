@@ -20,6 +20,7 @@ package brooklyn.event.feed.jmx;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.fail;
 
 import java.io.IOException;
@@ -194,6 +195,22 @@ public class JmxHelperTest {
         assertEquals(jmxHelper.getAttribute(jmxObjectName, "myattr"), "myval2");
     }
     
+    @Test
+    public void testHelpersForSameUrlShareConnection() throws Exception {
+        JmxHelper jmxHelper2 = new JmxHelper(jmxService.getUrl());
+        try {
+            jmxHelper2.connect(TIMEOUT_MS);
+            assertSame(jmxHelper2.getConnection(), jmxHelper.getConnection());
+            
+            // disconnecting one does not affect the other
+            jmxHelper2.disconnect();
+            jmxService.registerMBean(MutableMap.of("myattr", "myval"), objectName);
+            assertEquals(jmxHelper.getAttribute(jmxObjectName, "myattr"), "myval");
+        } finally {
+            jmxHelper2.terminate();
+        }
+    }
+
     @Test(expectedExceptions = {IllegalStateException.class})
     public void testJmxCheckInstanceExistsEventuallyThrowsIfNotFound() throws Exception {
         jmxHelper.assertMBeanExistsEventually(new ObjectName("Brooklyn:type=DoesNotExist,name=doesNotExist"), 1L);
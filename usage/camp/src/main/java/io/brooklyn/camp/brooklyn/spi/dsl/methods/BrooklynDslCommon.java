@@ -30,6 +30,7 @@ import java.util.Map;
 
 import org.apache.commons.beanutils.BeanUtils;
 
+import brooklyn.basic.BrooklynTypeDescriptor;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.EntityDynamicType;
 import brooklyn.entity.trait.Configurable;
@@ -106,7 +107,7 @@ public class BrooklynDslCommon {
             Class<?> clazz = Class.forName(clazzName);
             Sensor<?> sensor;
             if (Entity.class.isAssignableFrom(clazz)) {
-                sensor = new EntityDynamicType((Class<? extends Entity>) clazz).getSensor(sensorName);
+                sensor = BrooklynTypeDescriptor.of((Class<? extends Entity>) clazz).getSensors().get(sensorName);
             } else {
                 // Some non-entity classes (e.g. ServiceRestarter policy) declare sensors that other
                 // entities/policies/enrichers may wish to reference.
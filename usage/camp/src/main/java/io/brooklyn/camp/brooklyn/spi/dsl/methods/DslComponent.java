@@ -37,6 +37,7 @@ import brooklyn.event.basic.Sensors;
 import brooklyn.management.Task;
 import brooklyn.management.internal.EntityManagerInternal;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.task.MemoizableDeferredSupplier;
 import brooklyn.util.task.TaskBuilder;
 import brooklyn.util.task.Tasks;
 
@@ -176,8 +177,9 @@ public class DslComponent extends BrooklynDslDeferredSupplier<Entity> {
     public BrooklynDslDeferredSupplier<?> attributeWhenReady(final String sensorName) {
         return new AttributeWhenReady(this, sensorName);
     }
-    // class simply makes the memento XML files nicer
-    protected static class AttributeWhenReady extends BrooklynDslDeferredSupplier<Object> {
+    // class simply makes the memento XML files nicer;
+    // memoizable as the attributeWhenReady task records the sensor it depends on
+    protected static class AttributeWhenReady extends BrooklynDslDeferredSupplier<Object> implements MemoizableDeferredSupplier<Object> {
         private static final long serialVersionUID = 1740899524088902383L;
         private final DslComponent component;
         private final String sensorName;
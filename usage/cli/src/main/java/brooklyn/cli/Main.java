@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 import java.util.Collection;
 
 import org.slf4j.Logger;
@@ -55,7 +56,9 @@ import brooklyn.entity.basic.ApplicationBuilder;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.StartableApplication;
 import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
 import brooklyn.entity.rebind.persister.BrooklynPersistenceUtils;
+import brooklyn.entity.rebind.persister.MementoFormat;
 import brooklyn.entity.rebind.persister.PersistMode;
 import brooklyn.entity.rebind.transformer.CompoundTransformer;
 import brooklyn.entity.trait.Startable;
@@ -747,6 +750,11 @@ public class Main extends AbstractMain {
                 description = "local transformations file, to be applied to the copy of the data before uploading it")
         public String transformations;
         
+        @Option(name = { "--format" }, title = "format",
+                description = "The format in which to write the copied state (xml or binary); "
+                        + "copying a store with a different format converts it")
+        public String format;
+        
         @Override
         public Void call() throws Exception {
             checkNotNull(destinationDir, "destinationDir"); // presumably because required=true this will never be null!
@@ -769,6 +777,14 @@ public class Main extends AbstractMain {
                         .persistenceDir(persistenceDir)
                         .persistenceLocation(persistenceLocation)
                         .highAvailabilityMode(highAvailabilityMode);
+                if (Strings.isNonBlank(format)) {
+                    Maybe<MementoFormat> mementoFormat = Enums.valueOfIgnoreCase(MementoFormat.class, format);
+                    if (!mementoFormat.isPresent()) {
+                        throw new FatalConfigurationRuntimeException("Illegal format setting: "+format+"; must be one of "
+                                + Arrays.asList(MementoFormat.values()).toString().toLowerCase());
+                    }
+                    launcher.brooklynProperties(BrooklynMementoPersisterToObjectStore.PERSISTER_FORMAT, mementoFormat.get());
+                }
                 
             } catch (FatalConfigurationRuntimeException e) {
                 throw e;
@@ -808,7 +824,8 @@ public class Main extends AbstractMain {
                     .add("localBrooklynProperties", localBrooklynProperties)
                     .add("persistenceLocation", persistenceLocation)
                     .add("persistenceDir", persistenceDir)
-                    .add("destinationDir", destinationDir);
+                    .add("destinationDir", destinationDir)
+                    .add("format", format);
         }
     }
 
@@ -45,6 +45,12 @@ define(["underscore", "backbone"], function (_, Backbone) {
         getSensorUpdateUrl:function () {
             return this.getLinkByName("self") + "/sensors/current-state"
         },
+        /** the server-sent events stream of changes to the sensors of this entity's application
+         * (one stream per application is shared by all views on the page; see ViewUtils.getSensorsStreamingOrRepeatedly) */
+        getSensorStreamUrl:function () {
+            var self = this.getLinkByName("self")
+            return self.substring(0, self.indexOf("/entities/")) + "/sensors/stream"
+        },
         getConfigUpdateUrl:function () {
             return this.getLinkByName("self") + "/config/current-state"
         }
@@ -53,6 +53,9 @@ define([
         _.each(this._periodicFunctions, function (i) {
             clearInterval(i);
         });
+        _.each(this._sensorStreamSubscriptions, function (unsubscribe) {
+            unsubscribe();
+        });
         this.remove();
         this.unbind();
     };
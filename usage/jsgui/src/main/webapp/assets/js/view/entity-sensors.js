@@ -458,7 +458,7 @@ define([
         },
         updateSensorsPeriodically:function () {
             var that = this;
-            ViewUtils.getRepeatedlyWithDelay(that, that.model.getSensorUpdateUrl(), function(data) { that.updateWithData(data); },
+            ViewUtils.getSensorsStreamingOrRepeatedly(that, that.model, function(data) { that.updateWithData(data); },
                     { enablement: that.isRefreshActive });
         },
         updateWithData: function (data) {
@@ -54,7 +54,7 @@ define([
 
             // TODO we should have a backbone object exported from the sensors view which we can listen to here
             // (currently we just take the URL from that view) - and do the same for active tasks;
-            ViewUtils.getRepeatedlyWithDelay(this, this.model.getSensorUpdateUrl(),
+            ViewUtils.getSensorsStreamingOrRepeatedly(this, this.model,
                 function(data) { that.updateWithData(data); });
             // however if we only use external objects we must either subscribe to their errors also
             // or do our own polling against the server, so we know when to disable ourselves
@@ -20,6 +20,44 @@ define([
         "underscore", "jquery", "brooklyn"
 ], function (_, $, BrooklynConfig) {
 
+    /** open sensor change streams, by url; see ViewUtils.getSensorsStreamingOrRepeatedly */
+    var sensorStreams = {}
+
+    var openSensorStream = function(url) {
+        var stream = { source: new EventSource(url), listeners: [], values: {}, snapshotReceived: false }
+        var onEvent = function(isSnapshot) {
+            return function(event) {
+                var changes = JSON.parse(event.data)
+                // the server sends a new snapshot whenever the browser reconnects
+                if (isSnapshot) {
+                    stream.values = changes
+                    stream.snapshotReceived = true
+                } else {
+                    _.each(changes, function(sensors, entityId) {
+                        stream.values[entityId] = _.extend({}, stream.values[entityId], sensors)
+                    })
+                }
+                _.each(stream.listeners, function(listener) {
+                    if (isSnapshot || _.has(changes, listener.entityId)) {
+                        listener.notify(stream.values[listener.entityId] || {})
+                    }
+                })
+            }
+        }
+        stream.source.addEventListener('snapshot', onEvent(true), false)
+        stream.source.addEventListener('sensors', onEvent(false), false)
+        stream.source.onerror = function() {
+            // the browser retries automatically, unless the request was rejected
+            if (stream.source.readyState == EventSource.CLOSED) {
+                if (sensorStreams[url] === stream) delete sensorStreams[url]
+                var listeners = stream.listeners
+                stream.listeners = []
+                _.each(listeners, function(listener) { listener.fallBack() })
+            }
+        }
+        return stream
+    }
+
     var ViewUtils = {
         myDataTable:function($table, extra) {
             $.fn.dataTableExt.sErrMode = 'throw';
@@ -387,6 +425,53 @@ define([
             ViewUtils.get(view, url, success, options)
         },
 
+        /** invokes the success callback with the current sensor values of the given entity model
+         * whenever they change, by subscribing to the server-sent events stream of sensor changes;
+         * changes are merged so the callback always gets all values, as from current-state.
+         * all views on the page share one stream per application (the server limits how many are open),
+         * which is closed when the last of those views closes.
+         * falls back to getRepeatedlyWithDelay on current-state if the browser does not support EventSource,
+         * or if the stream is rejected (e.g. as the server has too many open).
+         * options are as per getRepeatedlyWithDelay; when not enabled, changes are kept but the callback is not invoked.
+         */
+        getSensorsStreamingOrRepeatedly: function(view, model, success, options) {
+            if (!options) options = {}
+            if (typeof window.EventSource === 'undefined' || !model.getSensorStreamUrl) {
+                ViewUtils.getRepeatedlyWithDelay(view, model.getSensorUpdateUrl(), success, options)
+                return
+            }
+            var url = model.getSensorStreamUrl()
+            var stream = sensorStreams[url]
+            if (!stream) {
+                stream = sensorStreams[url] = openSensorStream(url)
+            }
+            var listener = {
+                entityId: model.get('id'),
+                notify: function(values) {
+                    if (view.viewIsClosed) return
+                    var disabled = (options['enablement'] && !options['enablement']())
+                        || !BrooklynConfig.view.refresh
+                    if (!disabled) success(values)
+                },
+                fallBack: function() {
+                    if (view.viewIsClosed) return
+                    log("sensor stream closed; reverting to polling - "+url)
+                    ViewUtils.getRepeatedlyWithDelay(view, model.getSensorUpdateUrl(), success, options)
+                }
+            }
+            stream.listeners.push(listener)
+            if (stream.snapshotReceived) listener.notify(stream.values[listener.entityId] || {})
+
+            if (!view._sensorStreamSubscriptions) view._sensorStreamSubscriptions = []
+            view._sensorStreamSubscriptions.push(function() {
+                stream.listeners = _.without(stream.listeners, listener)
+                if (stream.listeners.length == 0) {
+                    stream.source.close()
+                    if (sensorStreams[url] === stream) delete sensorStreams[url]
+                }
+            })
+        },
+
         /** As fetchRepeatedlyWithDelay(view, model, options), but without updating a view. */
         fetchModelRepeatedlyWithDelay: function(model, options) {
             this.fetchRepeatedlyWithDelay(undefined, model, options);
@@ -24,6 +24,8 @@ define([
     EntitySummary.Model.prototype.getSensorUpdateUrl = function () {
         return "fixtures/sensor-current-state.json";
     };
+    // no server to stream from, so fall back to polling the fixture above
+    EntitySummary.Model.prototype.getSensorStreamUrl = null;
 
     // TODO test complains about various things; $.get in entity-config gives weird errors;
     // previously complains about 'url' needing to be set
@@ -210,4 +210,34 @@ public interface ApplicationApi {
             @DefaultValue(".*")
             @QueryParam("typeRegex") String typeRegex);
 
+    @GET
+    @Path("/{application}/sensors/stream")
+    @Produces("text/event-stream")
+    @ApiOperation(value = "Stream changes to the sensors of all (or filtered) descendants, as server-sent events",
+            notes = "Starts with a 'snapshot' event of current values, followed by 'sensors' events with the latest values "
+                    + "of those which have changed, each a map of entity id to a map of sensor name to value; "
+                    + "changes are coalesced so that events are sent at most once per period")
+    @ApiErrors(value = {
+            @ApiError(code = 400, reason = "Invalid period or duration"),
+            @ApiError(code = 404, reason = "Application not found"),
+            @ApiError(code = 503, reason = "Too many streams open")
+    })
+    public Response streamSensors(
+            @ApiParam(value = "Application ID or name", required = true)
+            @PathParam("application") String application,
+            @ApiParam(value = "Glob which the entity ID or display name must match", required = false)
+            @DefaultValue("*")
+            @QueryParam("entity") String entityGlob,
+            @ApiParam(value = "Glob which the sensor name must match", required = false)
+            @DefaultValue("*")
+            @QueryParam("sensor") String sensorGlob,
+            @ApiParam(value = "Whether to return raw sensor data, without applying display hints", required = false)
+            @DefaultValue("false")
+            @QueryParam("raw") Boolean raw,
+            @ApiParam(value = "Minimum interval between events, e.g. 500ms or 2s; at least 100ms", required = false)
+            @DefaultValue("500ms")
+            @QueryParam("period") String period,
+            @ApiParam(value = "How long to stream for; by default until the client disconnects", required = false)
+            @QueryParam("duration") String duration);
+
 }
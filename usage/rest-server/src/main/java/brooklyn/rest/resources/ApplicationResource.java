@@ -72,10 +72,12 @@ import brooklyn.rest.transform.ApplicationTransformer;
 import brooklyn.rest.transform.EntityTransformer;
 import brooklyn.rest.transform.TaskTransformer;
 import brooklyn.rest.util.BrooklynRestResourceUtils;
+import brooklyn.rest.util.SensorChangeStream;
 import brooklyn.rest.util.WebResourceUtils;
 import brooklyn.util.ResourceUtils;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
@@ -417,6 +419,34 @@ public class ApplicationResource extends AbstractBrooklynRestResource implements
         return getSensorMap(sensor, descs);
     }
 
+    @Override
+    public Response streamSensors(String application, String entityGlob, String sensorGlob, Boolean raw, String period, String duration) {
+        Application app = brooklyn().getApplication(application);
+        Duration periodDuration = parseDuration("period", period);
+        if (periodDuration.isShorterThan(SensorChangeStream.MIN_PERIOD)) {
+            throw WebResourceUtils.badRequest("Period must be at least %s, but given %s", SensorChangeStream.MIN_PERIOD, period);
+        }
+        Duration maxDuration = (duration == null) ? null : parseDuration("duration", duration);
+        SensorChangeStream stream = new SensorChangeStream(mgmt(), app, entityGlob, sensorGlob, Boolean.TRUE.equals(raw),
+                periodDuration, maxDuration, mapper());
+        // too many open streams are rejected (503) when written, so a response which is never written holds no place
+        return Response.ok(stream, SensorChangeStream.MEDIA_TYPE)
+                .header("Cache-Control", "no-cache")
+                .build();
+    }
+
+    private static Duration parseDuration(String name, String value) {
+        Duration result;
+        try {
+            result = Duration.parse(value);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            result = null;
+        }
+        if (result == null) throw WebResourceUtils.badRequest("Invalid %s '%s'; expected a duration such as 500ms or 2s", name, value);
+        return result;
+    }
+
     public static Map<String, Object> getSensorMap(String sensor, Iterable<Entity> descs) {
         if (Iterables.isEmpty(descs))
             return Collections.emptyMap();
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.rest.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.config.render.RendererHints;
+import brooklyn.entity.Application;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.basic.Entities;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.Sensor;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.management.ManagementContext;
+import brooklyn.management.SubscriptionHandle;
+import brooklyn.management.entitlement.EntitlementContext;
+import brooklyn.management.entitlement.Entitlements;
+import brooklyn.management.entitlement.Entitlements.EntityAndItem;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.text.WildcardGlobs;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+
+/**
+ * Streams changes to the sensors of an application's entities, as
+ * <a href="http://www.w3.org/TR/eventsource/">server-sent events</a>.
+ * <p>
+ * The stream starts with a {@code snapshot} event giving the current values of all matching sensors,
+ * followed by {@code sensors} events giving those which have changed since, each as a JSON map
+ * of entity id to a map of sensor name to value. Entities are matched by a glob against their id or
+ * display name, and sensors by a glob against their name.
+ * <p>
+ * Changes are coalesced: only the latest value of each sensor is kept until the next batch is written,
+ * at most once per period. Memory is therefore bounded by the number of matching sensors however fast
+ * they change, and a slow client simply receives fewer, larger batches, as the next batch is only
+ * assembled once the previous write has completed. The subscription listener never blocks on the client.
+ * <p>
+ * Each open stream holds a request thread of the web server, so the number open at once is limited
+ * by {@link #MAX_CONCURRENT_STREAMS}. A place is taken when {@link #write(OutputStream)} is called, and released
+ * when it returns; if none is free, it fails with a 503 before anything is written.
+ */
+@Beta
+public class SensorChangeStream implements StreamingOutput {
+
+    private static final Logger log = LoggerFactory.getLogger(SensorChangeStream.class);
+
+    public static final String MEDIA_TYPE = "text/event-stream";
+
+    public static final ConfigKey<Integer> MAX_CONCURRENT_STREAMS = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.rest.sensors.stream.maxConcurrent",
+            "Maximum number of sensor change streams open at once; each holds a request thread of the web server", 32);
+
+    /** the minimum period between batches, so that a stream does not busy-wait */
+    public static final Duration MIN_PERIOD = Duration.millis(100);
+
+    private static final Duration KEEPALIVE_PERIOD = Duration.seconds(15);
+
+    /** streams open, in this JVM (as the request threads they hold are shared by all management contexts) */
+    private static final AtomicInteger openStreams = new AtomicInteger();
+
+    private final ManagementContext mgmt;
+    private final Application app;
+    private final String entityGlob;
+    private final String sensorGlob;
+    private final boolean raw;
+    private final Duration period;
+    private final Duration maxDuration;
+    private final ObjectMapper mapper;
+    private final EntitlementContext entitlementContext;
+
+    // match results are cached, as the filter is applied in the publishing thread
+    private final ConcurrentMap<String, EntityMatch> entityMatches = new ConcurrentHashMap<String, EntityMatch>();
+    private final ConcurrentMap<String, Boolean> sensorMatches = new ConcurrentHashMap<String, Boolean>();
+
+    /** latest changed values, by entity then sensor name; guarded by this */
+    private Map<Entity, Map<String, Object>> pending = MutableMap.of();
+
+    /**
+     * @param period the minimum interval between batches of changes
+     * @param maxDuration how long to stream for, or null to stream until the client disconnects
+     *   or the application is unmanaged
+     */
+    public SensorChangeStream(ManagementContext mgmt, Application app, String entityGlob, String sensorGlob,
+            boolean raw, Duration period, Duration maxDuration, ObjectMapper mapper) {
+        this.mgmt = mgmt;
+        this.app = app;
+        this.entityGlob = entityGlob;
+        this.sensorGlob = sensorGlob;
+        this.raw = raw;
+        this.period = period;
+        this.maxDuration = maxDuration;
+        this.mapper = mapper;
+        // captured here as the request's context may not be available when the body is written
+        this.entitlementContext = Entitlements.getEntitlementContext();
+    }
+
+    /** takes one of the {@link #MAX_CONCURRENT_STREAMS} places, returning false if they are all taken */
+    private boolean tryReserve(int max) {
+        while (true) {
+            int count = openStreams.get();
+            if (count >= max) return false;
+            if (openStreams.compareAndSet(count, count+1)) return true;
+        }
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        int max = mgmt.getConfig().getConfig(MAX_CONCURRENT_STREAMS);
+        if (!tryReserve(max)) {
+            // nothing has been written, so the response can still be an error
+            throw WebResourceUtils.throwWebApplicationException(Response.Status.SERVICE_UNAVAILABLE,
+                    "Too many sensor change streams open (maximum %s); poll current-state instead", max);
+        }
+        Writer writer = new OutputStreamWriter(output, Charsets.UTF_8);
+        SubscriptionHandle subscription = null;
+        try {
+            subscription = mgmt.getSubscriptionManager().subscribe(
+                    MutableMap.<String, Object>of("subscriber", this, "eventFilter", new MatchingSensorFilter()),
+                    null, null, new CoalescingListener());
+            long startTime = System.currentTimeMillis();
+            long lastWriteTime = startTime;
+            writeEvent(writer, "snapshot", snapshot());
+
+            while (Entities.isManaged(app)) {
+                if (maxDuration != null && System.currentTimeMillis() - startTime >= maxDuration.toMilliseconds()) break;
+                Time.sleep(period);
+
+                Map<Entity, Map<String, Object>> changes;
+                synchronized (this) {
+                    changes = pending;
+                    pending = MutableMap.of();
+                }
+                Map<String, Object> data = render(changes);
+                if (!data.isEmpty()) {
+                    writeEvent(writer, "sensors", data);
+                    lastWriteTime = System.currentTimeMillis();
+                } else if (System.currentTimeMillis() - lastWriteTime >= KEEPALIVE_PERIOD.toMilliseconds()) {
+                    // a comment, ignored by clients, so that a dead connection is noticed
+                    writer.write(": keepalive\n\n");
+                    writer.flush();
+                    lastWriteTime = System.currentTimeMillis();
+                }
+            }
+        } catch (IOException e) {
+            // normal when the client goes away
+            if (log.isDebugEnabled()) log.debug("Sensor change stream for "+app+" closed: "+e);
+        } finally {
+            if (subscription != null) mgmt.getSubscriptionManager().unsubscribe(subscription);
+            openStreams.decrementAndGet();
+        }
+    }
+
+    private Map<String, Object> snapshot() {
+        Map<Entity, Map<String, Object>> values = MutableMap.of();
+        for (Entity entity : Entities.descendants(app)) {
+            if (!isEntityMatched(entity)) continue;
+            Map<String, Object> sensors = MutableMap.of();
+            for (Sensor<?> sensor : entity.getEntityType().getSensors()) {
+                if (sensor instanceof AttributeSensor && isSensorMatched(sensor.getName())) {
+                    sensors.put(sensor.getName(), entity.getAttribute((AttributeSensor<?>) sensor));
+                }
+            }
+            values.put(entity, sensors);
+        }
+        return render(values);
+    }
+
+    /** Applies entitlements and display hints, returning a map of entity id to sensor values. */
+    private Map<String, Object> render(Map<Entity, Map<String, Object>> values) {
+        Map<String, Object> result = MutableMap.of();
+        for (Map.Entry<Entity, Map<String, Object>> entry : values.entrySet()) {
+            Entity entity = entry.getKey();
+            if (!mgmt.getEntitlementManager().isEntitled(entitlementContext, Entitlements.SEE_ENTITY, entity)) continue;
+            Map<String, Object> sensors = MutableMap.of();
+            for (Map.Entry<String, Object> sensorValue : entry.getValue().entrySet()) {
+                String sensorName = sensorValue.getKey();
+                if (!mgmt.getEntitlementManager().isEntitled(entitlementContext, Entitlements.SEE_SENSOR, EntityAndItem.of(entity, sensorName))) continue;
+                Object value = sensorValue.getValue();
+                if (!raw) {
+                    Sensor<?> sensor = entity.getEntityType().getSensor(sensorName);
+                    if (sensor instanceof AttributeSensor) value = RendererHints.applyDisplayValueHint((AttributeSensor<?>) sensor, value);
+                }
+                sensors.put(sensorName, WebResourceUtils.getValueForDisplay(mapper, value, true, false));
+            }
+            if (!sensors.isEmpty()) result.put(entity.getId(), sensors);
+        }
+        return result;
+    }
+
+    private void writeEvent(Writer writer, String type, Map<String, Object> data) throws IOException {
+        writer.write("event: "+type+"\n");
+        writer.write("data: "+mapper.writeValueAsString(data)+"\n\n");
+        writer.flush();
+    }
+
+    private boolean isEntityMatched(Entity entity) {
+        String displayName = entity.getDisplayName();
+        EntityMatch result = entityMatches.get(entity.getId());
+        // recomputed if the entity has been renamed
+        if (result == null || !Objects.equal(result.displayName, displayName)) {
+            result = new EntityMatch(displayName, isGlobMatched(entityGlob, entity.getId()) || isGlobMatched(entityGlob, displayName));
+            entityMatches.put(entity.getId(), result);
+        }
+        return result.matched;
+    }
+
+    private boolean isSensorMatched(String sensorName) {
+        Boolean result = sensorMatches.get(sensorName);
+        if (result == null) {
+            result = isGlobMatched(sensorGlob, sensorName);
+            sensorMatches.put(sensorName, result);
+        }
+        return result;
+    }
+
+    private static boolean isGlobMatched(String glob, String text) {
+        if (text == null) return false;
+        try {
+            return WildcardGlobs.isGlobMatched(glob, text);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            return false;
+        }
+    }
+
+    private static class EntityMatch {
+        final String displayName;
+        final boolean matched;
+        EntityMatch(String displayName, boolean matched) {
+            this.displayName = displayName;
+            this.matched = matched;
+        }
+    }
+
+    private class MatchingSensorFilter implements Predicate<SensorEvent<Object>> {
+        @Override
+        public boolean apply(SensorEvent<Object> event) {
+            Entity source = event.getSource();
+            return event.getSensor() instanceof AttributeSensor && source != null
+                    && app.getId().equals(source.getApplicationId())
+                    && isSensorMatched(event.getSensor().getName())
+                    && isEntityMatched(source);
+        }
+    }
+
+    private class CoalescingListener implements SensorEventListener<Object> {
+        @Override
+        public void onEvent(SensorEvent<Object> event) {
+            synchronized (SensorChangeStream.this) {
+                Map<String, Object> sensors = pending.get(event.getSource());
+                if (sensors == null) {
+                    sensors = MutableMap.of();
+                    pending.put(event.getSource(), sensors);
+                }
+                sensors.put(event.getSensor().getName(), event.getValue());
+            }
+        }
+    }
+}
@@ -20,10 +20,13 @@ package brooklyn.rest.resources;
 
 import static com.google.common.collect.Iterables.find;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Map;
@@ -44,11 +47,17 @@ import brooklyn.entity.basic.BasicApplication;
 import brooklyn.entity.basic.BasicEntity;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityFunctions;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.basic.EntityPredicates;
 import brooklyn.entity.basic.Lifecycle;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
 import brooklyn.location.Location;
 import brooklyn.location.basic.AbstractLocation;
 import brooklyn.location.basic.LocationConfigKeys;
 import brooklyn.location.geo.HostGeoInfo;
+import brooklyn.management.internal.LocalSubscriptionManager;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.rest.domain.ApiError;
 import brooklyn.rest.domain.ApplicationSpec;
 import brooklyn.rest.domain.ApplicationSummary;
@@ -65,12 +74,14 @@ import brooklyn.rest.testing.mocks.NameMatcherGroup;
 import brooklyn.rest.testing.mocks.RestMockApp;
 import brooklyn.rest.testing.mocks.RestMockAppBuilder;
 import brooklyn.rest.testing.mocks.RestMockSimpleEntity;
+import brooklyn.rest.util.SensorChangeStream;
 import brooklyn.test.Asserts;
 import brooklyn.test.HttpTestUtils;
 import brooklyn.util.collections.CollectionFunctionals;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.time.Duration;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableMap;
@@ -103,6 +114,7 @@ public class ApplicationResourceTest extends BrooklynRestResourceTest {
      */
 
     private static final Logger log = LoggerFactory.getLogger(ApplicationResourceTest.class);
+    private static final AttributeSensor<Integer> STREAM_SENSOR = Sensors.newIntegerSensor("test.stream.counter");
     
     private final ApplicationSpec simpleSpec = ApplicationSpec.builder().name("simple-app")
           .entities(ImmutableSet.of(
@@ -546,7 +558,116 @@ public class ApplicationResourceTest extends BrooklynRestResourceTest {
         assertEquals(details.get("leafEntityCount"), 2);
     }
 
-    @Test(dependsOnMethods = {"testListEffectors", "testFetchApplicationsAndEntity", "testTriggerSampleEffector", "testListApplications","testReadEachSensor","testPolicyWhichCapitalizes","testLocatedLocation"})
+    /** Check changes are streamed as server-sent events, after a snapshot of the current values, until the client goes away */
+    @Test(dependsOnMethods = "testDeployApplication")
+    public void testStreamSensorChanges() throws Exception {
+        Application app = Iterables.find(getManagementContext().getApplications(), EntityPredicates.displayNameEqualTo("simple-app"));
+        EntityLocal entity = (EntityLocal) Iterables.find(app.getChildren(), EntityPredicates.displayNameEqualTo("simple-ent"));
+        final String prefix = "{\""+entity.getId()+"\":{\""+STREAM_SENSOR.getName()+"\":";
+        entity.setAttribute(STREAM_SENSOR, 1);
+
+        final SensorChangeStream stream = new SensorChangeStream(getManagementContext(), app, "simple-ent", STREAM_SENSOR.getName(),
+                true, Duration.millis(100), null, mapper());
+        final ClientOutputStream out = new ClientOutputStream();
+        Thread writer = new Thread() {
+            @Override public void run() {
+                try {
+                    stream.write(out);
+                } catch (IOException e) {
+                    throw Exceptions.propagate(e);
+                }
+            }};
+        writer.start();
+        try {
+            Asserts.succeedsEventually(new Runnable() {
+                @Override public void run() {
+                    assertTrue(out.toString().endsWith("\n\n"), out.toString());
+                }});
+            assertEquals(out.toString(), "event: snapshot\ndata: "+prefix+"1}}\n\n");
+
+            entity.setAttribute(STREAM_SENSOR, 2);
+            entity.setAttribute(STREAM_SENSOR, 3);
+            Asserts.succeedsEventually(new Runnable() {
+                @Override public void run() {
+                    assertTrue(out.toString().endsWith("event: sensors\ndata: "+prefix+"3}}\n\n"), out.toString());
+                }});
+
+            // the client going away ends the stream, on its next write
+            out.closed = true;
+            entity.setAttribute(STREAM_SENSOR, 4);
+            writer.join(30*1000);
+            assertFalse(writer.isAlive());
+            assertTrue(((LocalSubscriptionManager) getManagementContext().getSubscriptionManager()).getSubscriptionsForSubscriber(stream).isEmpty());
+        } finally {
+            writer.interrupt();
+        }
+    }
+
+    @Test(dependsOnMethods = "testDeployApplication")
+    public void testStreamSensorsOverHttp() throws Exception {
+        ClientResponse response = client().resource("/v1/applications/simple-app/sensors/stream")
+                .queryParam("sensor", RestMockSimpleEntity.SAMPLE_SENSOR.getName())
+                .queryParam("period", "100ms")
+                .queryParam("duration", "100ms")
+                .get(ClientResponse.class);
+
+        assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+        assertEquals(response.getType().toString(), SensorChangeStream.MEDIA_TYPE);
+        String body = response.getEntity(String.class);
+        assertTrue(body.startsWith("event: snapshot\ndata: {"), body);
+    }
+
+    @Test(dependsOnMethods = "testDeployApplication")
+    public void testStreamSensorsRejectsInvalidPeriodOrDuration() throws Exception {
+        assertStreamStatus(ImmutableMap.of("period", "0"), 400);
+        assertStreamStatus(ImmutableMap.of("period", "10ms"), 400);
+        assertStreamStatus(ImmutableMap.of("period", "often"), 400);
+        assertStreamStatus(ImmutableMap.of("duration", "a while"), 400);
+    }
+
+    @Test(dependsOnMethods = "testDeployApplication")
+    public void testStreamSensorsRejectedWhenTooManyOpen() throws Exception {
+        ((ManagementContextInternal) getManagementContext()).getBrooklynProperties().put(SensorChangeStream.MAX_CONCURRENT_STREAMS, 0);
+        try {
+            assertStreamStatus(ImmutableMap.of("duration", "100ms"), 503);
+        } finally {
+            ((ManagementContextInternal) getManagementContext()).getBrooklynProperties().remove(SensorChangeStream.MAX_CONCURRENT_STREAMS.getName());
+        }
+        assertStreamStatus(ImmutableMap.of("duration", "100ms"), 200);
+    }
+
+    private void assertStreamStatus(Map<String, String> params, int expectedStatus) {
+        WebResource resource = client().resource("/v1/applications/simple-app/sensors/stream");
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            resource = resource.queryParam(param.getKey(), param.getValue());
+        }
+        ClientResponse response = resource.get(ClientResponse.class);
+        assertEquals(response.getStatus(), expectedStatus, "params="+params+"; response="+response.getEntity(String.class));
+    }
+
+    /** records what is written, failing writes (as though disconnected) once closed */
+    private static class ClientOutputStream extends OutputStream {
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        volatile boolean closed;
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (closed) throw new IOException("client gone");
+            written.write(b);
+        }
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("client gone");
+            written.write(b, off, len);
+        }
+        @Override
+        public synchronized String toString() {
+            return new String(written.toByteArray(), Charsets.UTF_8);
+        }
+    }
+
+    @Test(dependsOnMethods = {"testListEffectors", "testFetchApplicationsAndEntity", "testTriggerSampleEffector", "testListApplications","testReadEachSensor","testPolicyWhichCapitalizes","testLocatedLocation",
+            "testStreamSensorChanges", "testStreamSensorsOverHttp", "testStreamSensorsRejectsInvalidPeriodOrDuration", "testStreamSensorsRejectedWhenTooManyOpen"})
     public void testDeleteApplication() throws TimeoutException, InterruptedException {
         waitForPageFoundResponse("/v1/applications/simple-app", ApplicationSummary.class);
         Collection<Application> apps = getManagementContext().getApplications();
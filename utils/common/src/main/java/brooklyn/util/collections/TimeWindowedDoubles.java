@@ -0,0 +1,400 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.collections;
+
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * Keeps the timestamped {@code double} values that are in the given time-period, as does {@link TimeWindowedList},
+ * but in primitive ring buffers (so no objects are created per value) and with the sum, mean, min and max
+ * of the window available in O(1) (the min and max are tracked with monotonic queues, amortized O(1) per value).
+ * <p>
+ * At most {@code maxSize} values are kept, the oldest being dropped first; the buffers grow as needed up to that size.
+ * At least {@code minVals} values are kept, even if older than the time-period.
+ * <p>
+ * This is designed for a single writer: {@link #add(long, double)}, {@link #prune(long)} and {@link #setTimePeriod(Duration)}
+ * must not be called concurrently (e.g. only from a sensor-event handler, or while holding a lock). The statistics can be read
+ * by any thread without locking; they reflect the window as of the last write. {@link #getStats()} gives a consistent
+ * snapshot of all of them.
+ */
+@Beta
+public class TimeWindowedDoubles {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maxSize;
+    private final int minVals;
+    private volatile long timePeriodMillis;
+
+    // writer state; values are numbered by sequence, held at index (seq % capacity)
+    private long[] timestamps;
+    private double[] values;
+    private long oldest;
+    private long next;
+    private final SeqDeque minCandidates = new SeqDeque();
+    private final SeqDeque maxCandidates = new SeqDeque();
+    private double sum;
+    private double timeWeightedSum;
+    private int removalsSinceRecompute;
+
+    // published for readers; consistent when version is even and unchanged across the reads
+    private volatile long version;
+    private volatile int publishedSize;
+    private volatile double publishedSum;
+    private volatile double publishedTimeWeightedSum;
+    private volatile double publishedMin = Double.NaN;
+    private volatile double publishedMax = Double.NaN;
+    private volatile long publishedOldestTimestamp = -1;
+    private volatile double publishedOldestValue = Double.NaN;
+    private volatile long publishedLatestTimestamp = -1;
+    private volatile double publishedLatestValue = Double.NaN;
+
+    /** Keeps all values in the time-period. */
+    public TimeWindowedDoubles(Duration timePeriod) {
+        this(timePeriod, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * @param timePeriod values older than this (relative to the latest time given) are discarded; null for forever
+     * @param maxSize the max number of values kept
+     * @param minVals the number of values kept even if older than the time-period
+     */
+    public TimeWindowedDoubles(Duration timePeriod, int maxSize, int minVals) {
+        Preconditions.checkArgument(maxSize >= 0, "maxSize must not be negative, but was %s", maxSize);
+        Preconditions.checkArgument(minVals >= 0, "minVals must not be negative, but was %s", minVals);
+        this.maxSize = maxSize;
+        this.minVals = minVals;
+        setTimePeriod(timePeriod);
+        int capacity = Math.max(1, Math.min(maxSize, INITIAL_CAPACITY));
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    public void setTimePeriod(Duration newTimePeriod) {
+        timePeriodMillis = (newTimePeriod == null) ? Long.MAX_VALUE : newTimePeriod.toMilliseconds();
+    }
+
+    public Duration getTimePeriod() {
+        return (timePeriodMillis == Long.MAX_VALUE) ? null : Duration.millis(timePeriodMillis);
+    }
+
+    public void add(double value) {
+        add(System.currentTimeMillis(), value);
+    }
+
+    /** Adds a value, and discards those then outside the time-period. Values should be added in timestamp order. */
+    public void add(long timestamp, double value) {
+        if (maxSize == 0) return;
+        if (next - oldest == maxSize) {
+            removeOldest();
+        } else if (next - oldest == values.length) {
+            grow();
+        }
+
+        long seq = next;
+        int index = index(seq);
+        if (next > oldest) {
+            timeWeightedSum += (timestamp - timestamps[index(next - 1)]) * value;
+        }
+        timestamps[index] = timestamp;
+        values[index] = value;
+        sum += value;
+        next++;
+
+        while (!minCandidates.isEmpty() && values[index(minCandidates.peekLast())] >= value) minCandidates.removeLast();
+        minCandidates.addLast(seq);
+        while (!maxCandidates.isEmpty() && values[index(maxCandidates.peekLast())] <= value) maxCandidates.removeLast();
+        maxCandidates.addLast(seq);
+
+        pruneValues(timestamp);
+        publish();
+    }
+
+    /** Discards values outside the time-period relative to the given time (but keeping at least {@code minVals}). */
+    public void prune(long now) {
+        if (pruneValues(now)) publish();
+    }
+
+    private boolean pruneValues(long now) {
+        if (timePeriodMillis == Long.MAX_VALUE) return false;
+        long cutoff = now - timePeriodMillis;
+        boolean changed = false;
+        while (next - oldest > minVals && timestamps[index(oldest)] < cutoff) {
+            removeOldest();
+            changed = true;
+        }
+        return changed;
+    }
+
+    private void removeOldest() {
+        long seq = oldest;
+        int index = index(seq);
+        sum -= values[index];
+        if (next - oldest > 1) {
+            int nextIndex = index(seq + 1);
+            timeWeightedSum -= (timestamps[nextIndex] - timestamps[index]) * values[nextIndex];
+        }
+        if (!minCandidates.isEmpty() && minCandidates.peekFirst() == seq) minCandidates.removeFirst();
+        if (!maxCandidates.isEmpty() && maxCandidates.peekFirst() == seq) maxCandidates.removeFirst();
+        oldest++;
+
+        // the running sums drift with rounding errors as values are subtracted, so recompute them occasionally
+        if (++removalsSinceRecompute >= values.length) {
+            recomputeSums();
+        }
+    }
+
+    private void recomputeSums() {
+        removalsSinceRecompute = 0;
+        sum = 0;
+        timeWeightedSum = 0;
+        for (long seq = oldest; seq < next; seq++) {
+            int index = index(seq);
+            sum += values[index];
+            if (seq > oldest) {
+                timeWeightedSum += (timestamps[index] - timestamps[index(seq - 1)]) * values[index];
+            }
+        }
+    }
+
+    private void grow() {
+        int newCapacity = (int) Math.min(maxSize, Math.max(1L, 2L * values.length));
+        long[] newTimestamps = new long[newCapacity];
+        double[] newValues = new double[newCapacity];
+        for (long seq = oldest; seq < next; seq++) {
+            newTimestamps[(int) (seq % newCapacity)] = timestamps[index(seq)];
+            newValues[(int) (seq % newCapacity)] = values[index(seq)];
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+    }
+
+    private int index(long seq) {
+        return (int) (seq % values.length);
+    }
+
+    private void publish() {
+        int size = (int) (next - oldest);
+        version++;
+        publishedSize = size;
+        publishedSum = sum;
+        publishedTimeWeightedSum = timeWeightedSum;
+        if (size == 0) {
+            publishedMin = Double.NaN;
+            publishedMax = Double.NaN;
+            publishedOldestTimestamp = -1;
+            publishedOldestValue = Double.NaN;
+            publishedLatestTimestamp = -1;
+            publishedLatestValue = Double.NaN;
+        } else {
+            publishedMin = values[index(minCandidates.peekFirst())];
+            publishedMax = values[index(maxCandidates.peekFirst())];
+            publishedOldestTimestamp = timestamps[index(oldest)];
+            publishedOldestValue = values[index(oldest)];
+            publishedLatestTimestamp = timestamps[index(next - 1)];
+            publishedLatestValue = values[index(next - 1)];
+        }
+        version++;
+    }
+
+    public int size() {
+        return publishedSize;
+    }
+
+    public boolean isEmpty() {
+        return publishedSize == 0;
+    }
+
+    public double getSum() {
+        return publishedSum;
+    }
+
+    /** The mean of the values, or NaN if there are none. */
+    public double getMean() {
+        return getStats().getMean();
+    }
+
+    /** The smallest value, or NaN if there are none. */
+    public double getMin() {
+        return publishedMin;
+    }
+
+    /** The largest value, or NaN if there are none. */
+    public double getMax() {
+        return publishedMax;
+    }
+
+    /** The most recent value, or NaN if there are none. */
+    public double getLatestValue() {
+        return publishedLatestValue;
+    }
+
+    /** The timestamp of the most recent value, or -1 if there are none. */
+    public long getLatestTimestamp() {
+        return publishedLatestTimestamp;
+    }
+
+    /** A consistent snapshot of the statistics of the values, as of the last write. */
+    public Stats getStats() {
+        while (true) {
+            long before = version;
+            if ((before & 1) == 0) {
+                Stats result = new Stats(publishedSize, publishedSum, publishedTimeWeightedSum, publishedMin, publishedMax,
+                        publishedOldestTimestamp, publishedOldestValue, publishedLatestTimestamp, publishedLatestValue);
+                if (version == before) return result;
+            }
+            // a write is in progress; it is short, so just retry
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("timePeriod", getTimePeriod()).add("stats", getStats()).toString();
+    }
+
+    /** Statistics of the values in the window. */
+    public static class Stats {
+        private final int size;
+        private final double sum;
+        private final double timeWeightedSum;
+        private final double min;
+        private final double max;
+        private final long oldestTimestamp;
+        private final double oldestValue;
+        private final long latestTimestamp;
+        private final double latestValue;
+
+        Stats(int size, double sum, double timeWeightedSum, double min, double max,
+                long oldestTimestamp, double oldestValue, long latestTimestamp, double latestValue) {
+            this.size = size;
+            this.sum = sum;
+            this.timeWeightedSum = timeWeightedSum;
+            this.min = min;
+            this.max = max;
+            this.oldestTimestamp = oldestTimestamp;
+            this.oldestValue = oldestValue;
+            this.latestTimestamp = latestTimestamp;
+            this.latestValue = latestValue;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        /** The mean, or NaN if there are no values. */
+        public double getMean() {
+            return (size == 0) ? Double.NaN : sum / size;
+        }
+
+        /**
+         * The sum of each value multiplied by the time (in millis) since the value before it, excluding the oldest value;
+         * i.e. the integral of the values over time (from the oldest to the latest), if each value is taken to hold
+         * from the previous timestamp up to its own.
+         */
+        public double getTimeWeightedSum() {
+            return timeWeightedSum;
+        }
+
+        /** The smallest value, or NaN if there are none. */
+        public double getMin() {
+            return min;
+        }
+
+        /** The largest value, or NaN if there are none. */
+        public double getMax() {
+            return max;
+        }
+
+        /** The timestamp of the oldest value, or -1 if there are none. */
+        public long getOldestTimestamp() {
+            return oldestTimestamp;
+        }
+
+        /** The oldest value, or NaN if there are none. */
+        public double getOldestValue() {
+            return oldestValue;
+        }
+
+        /** The timestamp of the most recent value, or -1 if there are none. */
+        public long getLatestTimestamp() {
+            return latestTimestamp;
+        }
+
+        /** The most recent value, or NaN if there are none. */
+        public double getLatestValue() {
+            return latestValue;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("size", size).add("mean", getMean()).add("min", min).add("max", max)
+                    .add("latest", latestValue).toString();
+        }
+    }
+
+    /** A growable ring-buffer deque of sequence numbers, for the min and max candidates. */
+    private static class SeqDeque {
+        private long[] elements = new long[INITIAL_CAPACITY];
+        private int head;
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peekFirst() {
+            return elements[head];
+        }
+
+        long peekLast() {
+            return elements[(head + size - 1) % elements.length];
+        }
+
+        void addLast(long val) {
+            if (size == elements.length) {
+                long[] newElements = new long[elements.length * 2];
+                for (int i = 0; i < size; i++) {
+                    newElements[i] = elements[(head + i) % elements.length];
+                }
+                elements = newElements;
+                head = 0;
+            }
+            elements[(head + size) % elements.length] = val;
+            size++;
+        }
+
+        void removeFirst() {
+            head = (head + 1) % elements.length;
+            size--;
+        }
+
+        void removeLast() {
+            size--;
+        }
+    }
+}
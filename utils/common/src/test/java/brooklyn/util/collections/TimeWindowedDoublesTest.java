@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.time.Duration;
+
+public class TimeWindowedDoublesTest {
+
+    private static final double DELTA = 0.000001;
+
+    @Test
+    public void testEmpty() {
+        TimeWindowedDoubles vals = new TimeWindowedDoubles(Duration.ONE_SECOND);
+        assertTrue(vals.isEmpty());
+        assertTrue(Double.isNaN(vals.getMean()));
+        assertTrue(Double.isNaN(vals.getMin()));
+        assertTrue(Double.isNaN(vals.getMax()));
+        assertTrue(Double.isNaN(vals.getLatestValue()));
+        assertEquals(vals.getLatestTimestamp(), -1);
+    }
+
+    @Test
+    public void testKeepsOnlyRecentVals() {
+        TimeWindowedDoubles vals = new TimeWindowedDoubles(Duration.ONE_SECOND);
+        vals.add(0L, 5);
+        vals.add(100L, 1);
+        vals.add(200L, 3);
+        assertStats(vals.getStats(), 3, 9, 1, 5);
+
+        vals.prune(1050L);
+        assertStats(vals.getStats(), 2, 4, 1, 3);
+        vals.prune(1150L);
+        assertStats(vals.getStats(), 1, 3, 3, 3);
+        vals.prune(1201L);
+        assertEquals(vals.size(), 0);
+    }
+
+    @Test
+    public void testKeepsMinVals() {
+        TimeWindowedDoubles vals = new TimeWindowedDoubles(Duration.millis(1), Integer.MAX_VALUE, 2);
+        vals.add(0L, 1);
+        vals.add(100L, 2);
+        vals.add(200L, 3);
+        vals.prune(10000L);
+        assertStats(vals.getStats(), 2, 5, 2, 3);
+        assertEquals(vals.getStats().getOldestTimestamp(), 100L);
+    }
+
+    @Test
+    public void testKeepsMaxSize() {
+        TimeWindowedDoubles vals = new TimeWindowedDoubles(null, 3, 0);
+        for (int i = 0; i < 10; i++) {
+            vals.add(i, i);
+        }
+        assertStats(vals.getStats(), 3, 7+8+9, 7, 9);
+    }
+
+    @Test
+    public void testZeroMaxSizeKeepsNothing() {
+        TimeWindowedDoubles vals = new TimeWindowedDoubles(null, 0, 0);
+        vals.add(0L, 1);
+        assertTrue(vals.isEmpty());
+    }
+
+    @Test
+    public void testTimeWeightedSum() {
+        TimeWindowedDoubles vals = new TimeWindowedDoubles(Duration.ONE_SECOND);
+        vals.add(0L, 5);
+        vals.add(100L, 1);
+        vals.add(300L, 3);
+        assertEquals(vals.getStats().getTimeWeightedSum(), 100*1 + 200*3, DELTA);
+        vals.prune(1050L);
+        assertEquals(vals.getStats().getTimeWeightedSum(), 200*3, DELTA);
+    }
+
+    @Test
+    public void testMatchesBruteForceOverManyValues() {
+        Random random = new Random(1234);
+        int maxSize = 50;
+        TimeWindowedDoubles vals = new TimeWindowedDoubles(Duration.millis(500), maxSize, 0);
+        long[] timestamps = new long[10000];
+        double[] values = new double[10000];
+        long now = 0;
+        for (int i = 0; i < values.length; i++) {
+            now += random.nextInt(20);
+            timestamps[i] = now;
+            values[i] = random.nextGaussian() * 1000;
+            vals.add(now, values[i]);
+
+            int count = 0;
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int j = i; j >= 0 && count < maxSize && timestamps[j] >= now - 500; j--) {
+                count++;
+                sum += values[j];
+                min = Math.min(min, values[j]);
+                max = Math.max(max, values[j]);
+            }
+            assertStats(vals.getStats(), count, sum, min, max);
+        }
+    }
+
+    private void assertStats(TimeWindowedDoubles.Stats stats, int size, double sum, double min, double max) {
+        assertEquals(stats.getSize(), size, "stats="+stats);
+        assertEquals(stats.getSum(), sum, Math.max(DELTA, Math.abs(sum) * DELTA), "stats="+stats);
+        assertEquals(stats.getMean(), sum / size, DELTA, "stats="+stats);
+        assertEquals(stats.getMin(), min, "stats="+stats);
+        assertEquals(stats.getMax(), max, "stats="+stats);
+    }
+}